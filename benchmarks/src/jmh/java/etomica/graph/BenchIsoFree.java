@@ -0,0 +1,95 @@
+package etomica.graph;
+
+import etomica.graph.isomorphism.Match;
+import etomica.graph.isomorphism.SearchState;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.Graph;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.Relabel;
+import etomica.graph.operations.RelabelParameters;
+import etomica.virial.cluster.VirialDiagrams;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times IsoFree on the virial diagrams from VirialDiagrams, each included
+ * along with several randomly relabeled copies.  With algorithm=canonical,
+ * graphs are grouped by canonical form; otherwise graphs with the same
+ * signature are compared pairwise with the given Match algorithm.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchIsoFree {
+
+    @Param({"5", "6", "7"})
+    private int nPoints;
+
+    @Param({"canonical", SearchState.VF2_ALGORITHM, SearchState.ULLMAN_ALGORITHM})
+    private String algorithm;
+
+    private Set<Graph> graphs;
+    private IsoFree isoFree;
+    private boolean oldDebugMode, oldUseCanonicalForm;
+    private String oldAlgorithm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        oldDebugMode = IsomorphismFilter.DEBUG_MODE;
+        oldUseCanonicalForm = IsomorphismFilter.USE_CANONICAL_FORM;
+        oldAlgorithm = Match.DEF_ISOMORPHISM_ALGO;
+        IsomorphismFilter.DEBUG_MODE = false;
+
+        VirialDiagrams diagrams = new VirialDiagrams(nPoints, false, false);
+        diagrams.setDoShortcut(true);
+        Random random = new Random(1);
+        Relabel relabel = new Relabel();
+        graphs = new HashSet<Graph>();
+        for (Graph g : diagrams.getVirialGraphs()) {
+            graphs.add(g);
+            for (int i = 0; i < 3; i++) {
+                graphs.add(relabel.apply(g, new RelabelParameters(randomPermutation(g.nodeCount(), random))));
+            }
+        }
+        isoFree = new IsoFree();
+
+        IsomorphismFilter.USE_CANONICAL_FORM = algorithm.equals("canonical");
+        if (!IsomorphismFilter.USE_CANONICAL_FORM) {
+            Match.DEF_ISOMORPHISM_ALGO = algorithm;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        IsomorphismFilter.DEBUG_MODE = oldDebugMode;
+        IsomorphismFilter.USE_CANONICAL_FORM = oldUseCanonicalForm;
+        Match.DEF_ISOMORPHISM_ALGO = oldAlgorithm;
+    }
+
+    private static byte[] randomPermutation(byte n, Random random) {
+        byte[] p = new byte[n];
+        for (byte i = 0; i < n; i++) {
+            p[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            byte t = p[i];
+            p[i] = p[j];
+            p[j] = t;
+        }
+        return p;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(time = 1, iterations = 3)
+    @Measurement(time = 1, timeUnit = TimeUnit.SECONDS, iterations = 5)
+    public int isoFree() {
+        // IsoFree copies the graphs, so the input set is left unchanged
+        return isoFree.apply(graphs, null).size();
+    }
+}
@@ -0,0 +1,125 @@
+package etomica.integrator;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomType;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.list.NeighborListManager;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a velocity-Verlet step for Lennard-Jones atoms with neighbor
+ * lists.  Run with the gc profiler (-prof gc, or via main, which fails if the
+ * step allocates) to check that the step does not allocate once the neighbor
+ * lists have reached their working size.  With per-atom neighbor lists, an
+ * atom's list still grows now and then when it gets more neighbors than it
+ * ever had before; flat neighbor lists keep all neighbors in a few shared
+ * arrays, which stop growing almost immediately.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchVelocityVerletAlloc {
+
+    /**
+     * Bytes per step allowed by main with flat neighbor lists.  The step
+     * itself should not allocate, but the profiler also sees a little garbage
+     * from the JMH harness, which matters when the steps are slow.
+     */
+    public static final double MAX_BYTES_PER_STEP = 64;
+
+    @Param({"500", "4000"})
+    private int numAtoms;
+
+    @Param({"false", "true"})
+    private boolean flatLists;
+
+    private IntegratorVelocityVerlet integrator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        PotentialMasterList potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        Box box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, numAtoms);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+        integrator = new IntegratorVelocityVerlet(sim, potentialMaster, space);
+        integrator.setTimeStep(0.005);
+        integrator.setBox(box);
+        AtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5), new AtomType[]{leafType, leafType});
+        NeighborListManager nbrManager = potentialMaster.getNeighborManager(box);
+        nbrManager.setFlatLists(flatLists);
+        integrator.getEventManager().addListener(nbrManager);
+        integrator.reset();
+        // let the neighbor lists reach their working size
+        for (int i = 0; i < 2000; i++) {
+            integrator.doStep();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(time = 1, iterations = 5)
+    @Measurement(time = 1, timeUnit = TimeUnit.SECONDS)
+    public long integratorStep() {
+        integrator.doStep();
+        return integrator.getStepCount();
+    }
+
+    /**
+     * Runs the benchmark with the gc profiler and fails if a step with flat
+     * neighbor lists allocates more than MAX_BYTES_PER_STEP.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(BenchVelocityVerletAlloc.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        boolean failed = false;
+        for (RunResult runResult : new Runner(opt).run()) {
+            for (String label : runResult.getSecondaryResults().keySet()) {
+                if (!label.endsWith("gc.alloc.rate.norm")) continue;
+                Result<?> result = runResult.getSecondaryResults().get(label);
+                double bytesPerStep = result.getScore();
+                BenchmarkParams params = runResult.getParams();
+                boolean flat = Boolean.parseBoolean(params.getParam("flatLists"));
+                System.out.println(params.getParam("numAtoms") + " atoms, flat lists " + flat + ": " + bytesPerStep + " bytes/step");
+                if (flat && bytesPerStep > MAX_BYTES_PER_STEP) {
+                    failed = true;
+                }
+            }
+        }
+        if (failed) {
+            System.err.println("velocity-Verlet step allocates more than " + MAX_BYTES_PER_STEP + " bytes/step");
+            System.exit(1);
+        }
+    }
+}
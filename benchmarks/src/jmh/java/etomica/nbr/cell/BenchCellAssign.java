@@ -0,0 +1,61 @@
+package etomica.nbr.cell;
+
+import etomica.action.BoxInflate;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchCellAssign {
+
+    @Param({"32000", "256000"})
+    private int numAtoms;
+
+    @Param({"1", "2", "4", "8"})
+    private int numThreads;
+
+    private NeighborCellManager cellManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        Box box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, numAtoms);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+
+        cellManager = new NeighborCellManager(sim, box, 3.0, space);
+        cellManager.setDoApplyPBC(true);
+        cellManager.setParallelThreads(numThreads);
+        cellManager.assignCellAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cellManager.setParallelThreads(1);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(time = 1, iterations = 5)
+    @Measurement(time = 1, timeUnit = TimeUnit.SECONDS)
+    public Object assignCellAll() {
+        cellManager.assignCellAll();
+        return cellManager.getCell(cellManager.box.getLeafList().getAtom(0));
+    }
+}
@@ -0,0 +1,84 @@
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the Wheatley recursion (calcValue, without computing the Mayer
+ * functions) for Lennard-Jones clusters.  With numThreads=1,
+ * ClusterWheatleySoft is used; otherwise ClusterWheatleySoftParallel is used
+ * for every cluster size, so that the point where threads start to pay off
+ * can be seen.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class BenchClusterWheatleySoft {
+
+    @Param({"6", "7", "8", "9", "10", "11"})
+    private int nPoints;
+
+    @Param({"1", "2", "4"})
+    private int numThreads;
+
+    private ClusterWheatleySoft cluster;
+    private BoxCluster box;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Space space = Space3D.getInstance();
+        MayerFunction f = new MayerGeneralSpherical(new P2LennardJones(space));
+        if (numThreads == 1) {
+            cluster = new ClusterWheatleySoft(nPoints, f, 0);
+        }
+        else {
+            ClusterWheatleySoftParallel parallel = new ClusterWheatleySoftParallel(nPoints, f, 0, numThreads);
+            parallel.setMinParallelPoints(0);
+            cluster = parallel;
+        }
+        cluster.setTemperature(1.0);
+
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(space, new ElementSimple("A"));
+        sim.addSpecies(species);
+        box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addBox(box);
+        box.setNMolecules(species, nPoints);
+        RandomMersenneTwister random = new RandomMersenneTwister(new int[]{1, 2, 3});
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < nPoints; i++) {
+            Vector r = atoms.getAtom(i).getPosition();
+            r.setRandomInSphere(random);
+            r.TE(1.5);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+        cluster.updateF(box);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (cluster instanceof ClusterWheatleySoftParallel) {
+            ((ClusterWheatleySoftParallel) cluster).dispose();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(time = 1, iterations = 5)
+    @Measurement(time = 1, timeUnit = TimeUnit.SECONDS)
+    public double calcValue() {
+        cluster.calcValue(box);
+        return cluster.value;
+    }
+}
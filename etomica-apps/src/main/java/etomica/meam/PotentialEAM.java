@@ -2,6 +2,7 @@ package etomica.meam;
 
 import etomica.atom.IAtomList;
 import etomica.box.Box;
+import etomica.potential.PotentialEmbedding;
 import etomica.potential.PotentialN;
 import etomica.potential.PotentialSoft;
 import etomica.space.Boundary;
@@ -15,7 +16,7 @@ import etomica.space.Tensor;
  * @author Joe Kromph
  * @author Sabry Moustafa
  */
-public class PotentialEAM extends PotentialN implements PotentialSoft{
+public class PotentialEAM extends PotentialN implements PotentialSoft, PotentialEmbedding {
 
     protected double n , m , eps , a , C , rC1, rC2;
     protected Boundary boundary;
@@ -79,6 +80,34 @@ public class PotentialEAM extends PotentialN implements PotentialSoft{
         boundary=box.getBoundary();
     }
 
+    public double phi(double r2) {
+        double r = Math.sqrt(r2);
+        return r<=rC1 ? eps*Math.pow(a/r, n) : 0;
+    }
+
+    public double dphi(double r2) {
+        double r = Math.sqrt(r2);
+        return r<=rC1 ? -n*eps*Math.pow(a/r, n) : 0;
+    }
+
+    public double rho(double r2) {
+        double r = Math.sqrt(r2);
+        return r<=rC2 ? Math.pow(a/r, m) : 0;
+    }
+
+    public double drho(double r2) {
+        double r = Math.sqrt(r2);
+        return r<=rC2 ? -m*Math.pow(a/r, m) : 0;
+    }
+
+    public double embedding(double rho) {
+        return -eps*C*Math.sqrt(rho);
+    }
+
+    public double dembedding(double rho) {
+        return -eps*C/2.0/Math.sqrt(rho);
+    }
+
     public double virial(IAtomList atoms) {
         double virial=0;
         gradient(atoms);
@@ -8,6 +8,7 @@ import etomica.atom.IAtomList;
 import etomica.space.Boundary;
 import etomica.box.Box;
 import etomica.space.Vector;
+import etomica.potential.PotentialEmbedding;
 import etomica.potential.PotentialN;
 import etomica.potential.PotentialSoft;
 import etomica.space.Space;
@@ -18,7 +19,7 @@ import etomica.space.Tensor;
  * 
  * @author Joe Kromph
  */
-public class PotentialEFS extends PotentialN implements PotentialSoft{
+public class PotentialEFS extends PotentialN implements PotentialSoft, PotentialEmbedding {
 
     protected double rCc, c0, c1, c2, c3, c4;
     protected double A, rCd, B;
@@ -87,6 +88,42 @@ public class PotentialEFS extends PotentialN implements PotentialSoft{
         boundary=box.getBoundary();
     }
 
+    public double phi(double r2) {
+        double r = Math.sqrt(r2);
+        if (r > rCc) return 0;
+        double r_c = r - rCc;
+        return r_c*r_c*(c0+r*(c1+r*(c2+r*(c3+c4*r))));
+    }
+
+    public double dphi(double r2) {
+        double r = Math.sqrt(r2);
+        if (r > rCc) return 0;
+        double r_c = r - rCc;
+        return r*r_c*(2*(c0+r*(c1+r*(c2+r*(c3+c4*r))))+r_c*(c1+r*(2*c2+r*(3*c3+4*c4*r))));
+    }
+
+    public double rho(double r2) {
+        double r = Math.sqrt(r2);
+        if (r > rCd) return 0;
+        double r_d = r - rCd;
+        return r_d*r_d*(1+B*B*r_d*r_d);
+    }
+
+    public double drho(double r2) {
+        double r = Math.sqrt(r2);
+        if (r > rCd) return 0;
+        double r_d = r - rCd;
+        return r*(2*r_d+4*B*B*r_d*r_d*r_d);
+    }
+
+    public double embedding(double rho) {
+        return -A*Math.sqrt(rho);
+    }
+
+    public double dembedding(double rho) {
+        return -A/2.0/Math.sqrt(rho);
+    }
+
     public double virial(IAtomList atoms) {
         double virial=0;
         gradient(atoms);
@@ -0,0 +1,22 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+/**
+ * Cluster that can compute its value for a block of configurations in one
+ * call.
+ */
+public interface ClusterAbstractBatch extends ClusterAbstract {
+
+    /**
+     * Computes the value of this cluster for each configuration in batch and
+     * puts them in values.  The box provides the molecules (and anything else
+     * the Mayer functions need besides the pair distances); its coordinates
+     * are not used.  The value cached for the box's current configuration
+     * is not changed.
+     */
+    public void values(BoxCluster box, CoordinatePairBatch batch, double[] values);
+
+}
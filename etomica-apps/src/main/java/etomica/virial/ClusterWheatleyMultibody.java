@@ -102,6 +102,14 @@ public class ClusterWheatleyMultibody extends ClusterWheatleySoft {
         }
     }
 
+    /**
+     * Not supported; the multibody contributions need the coordinates, not
+     * just the pair distances.
+     */
+    public void values(BoxCluster box, CoordinatePairBatch batch, double[] values) {
+        throw new RuntimeException("batches are not supported for multibody clusters");
+    }
+
     public void setRCut(double newRCut) {
         rCut2 = newRCut * newRCut;
     }
@@ -85,6 +85,14 @@ public class ClusterWheatleyMultibodyMix extends ClusterWheatleySoftMix {
         return c;
     }
 
+    /**
+     * Not supported; the rCut2 check and the 3-body contributions need the
+     * coordinates, not just the pair distances.
+     */
+    public void values(BoxCluster box, CoordinatePairBatch batch, double[] values) {
+        throw new RuntimeException("batches are not supported for multibody clusters");
+    }
+
     public void calcValue(BoxCluster box) {
         if (!nonAdditiveOnly) {
             doMulti = true;
@@ -5,6 +5,7 @@
 package etomica.virial;
 
 import etomica.math.SpecialFunctions;
+import etomica.molecule.IMoleculeList;
 
 
 /**
@@ -13,7 +14,7 @@ import etomica.math.SpecialFunctions;
  * 
  * @author David Kofke and Andrew Schultz 
  */
-public class ClusterWheatleySoft implements ClusterAbstract {
+public class ClusterWheatleySoft implements ClusterAbstractBatch {
 
     protected final int n;
     protected final MayerFunction f;
@@ -28,6 +29,11 @@ public class ClusterWheatleySoft implements ClusterAbstract {
     protected ClusterWheatleySoftBD clusterBD;
     protected boolean debug = false;
     protected boolean doCaching = true;
+    // Mayer function values for a batch, packed as in CoordinatePairBatch
+    protected double[] batchF;
+    // Mayer function values for the batch configuration being computed
+    protected final double[] pairF;
+    protected boolean inBatch;
 
     public ClusterWheatleySoft(int nPoints, MayerFunction f, double tol) {
         this.n = nPoints;
@@ -40,6 +46,7 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         }
         fA = new double[nf];
         fB = new double[nf];
+        pairF = new double[n*(n-1)/2];
         this.tol = tol;
         clusterBD = tol == 0 ? null : new ClusterWheatleySoftBD(nPoints, f, -3*(int)Math.log10(tol));
     }
@@ -95,6 +102,45 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         return value;
     }
 
+    /**
+     * Computes the value for each configuration in the batch.  All Mayer
+     * functions are computed for the whole batch first and the recursion is
+     * then done for each configuration.  The Mayer functions are passed the
+     * box's molecules with the batch's distances, so they must depend only on
+     * the distance (as MayerGeneralSpherical does).
+     */
+    public void values(BoxCluster box, CoordinatePairBatch batch, double[] values) {
+        if (pushme) {
+            throw new RuntimeException("pushme is not supported for batches");
+        }
+        int nConfigs = batch.getConfigCount();
+        if (batchF == null || batchF.length != pairF.length*nConfigs) {
+            batchF = new double[pairF.length*nConfigs];
+        }
+        updateF(box, batch);
+
+        // calcValue overwrites value, which holds the cached value for the
+        // box's configuration
+        double savedValue = value;
+        inBatch = true;
+        try {
+            for (int c=0; c<nConfigs; c++) {
+                for (int i=0, p=0, k=c; i<n-1; i++) {
+                    for (int j=i+1; j<n; j++, p++, k+=nConfigs) {
+                        pairF[p] = batchF[k];
+                        fQ[(1<<i)|(1<<j)] = batchF[k]+1;
+                    }
+                }
+                calcValue(box);
+                values[c] = value;
+            }
+        }
+        finally {
+            inBatch = false;
+            value = savedValue;
+        }
+    }
+
     /**
      * This calculates all FQ values given that the entries for pairs have
      * already been populated.
@@ -266,19 +312,28 @@ public class ClusterWheatleySoft implements ClusterAbstract {
                 fB[i] -= fA[i];//remove from B graphs that contain articulation point at v
             }
         }
-        if (Math.abs(fB[nf-1]) < tol) {
+        setValue(box, fB[nf-1]);
+        if (pushme && maxR2 > 2*2) {
+//            value *= Math.pow(maxR2/4, 6);
+        }
+    }
+
+    /**
+     * Sets the cluster value from the sum of biconnected diagrams, falling
+     * back to ClusterWheatleySoftBD (if any) when the sum is within
+     * tolerance of 0.
+     */
+    protected void setValue(BoxCluster box, double fBFull) {
+        if (Math.abs(fBFull) < tol) {
             if (clusterBD != null) {
-                value = clusterBD.value(box);
+                value = inBatch ? clusterBD.value(box, pairF) : clusterBD.value(box);
             }
             else {
                 value = 0;
             }
             return;
         }
-        value = (1-n)*fB[nf-1]/SpecialFunctions.factorial(n);
-        if (pushme && maxR2 > 2*2) {
-//            value *= Math.pow(maxR2/4, 6);
-        }
+        value = (1-n)*fBFull/SpecialFunctions.factorial(n);
     }
 
     protected void updateF(BoxCluster box) {
@@ -300,6 +355,26 @@ public class ClusterWheatleySoft implements ClusterAbstract {
         }
     }
 
+    /**
+     * Computes the Mayer function for every pair in every configuration of
+     * the batch, storing them in batchF.
+     */
+    protected void updateF(BoxCluster box, CoordinatePairBatch batch) {
+        AtomPairSet aPairs = box.getAPairSet();
+        double[] r2 = batch.getR2();
+        int nConfigs = batch.getConfigCount();
+
+        f.setBox(box);
+        for (int i=0, k=0; i<n-1; i++) {
+            for (int j=i+1; j<n; j++) {
+                IMoleculeList pair = aPairs.getAPair(i,j);
+                for (int c=0; c<nConfigs; c++, k++) {
+                    batchF[k] = f.f(pair, r2[k], beta);
+                }
+            }
+        }
+    }
+
     public void setTemperature(double temperature) {
         beta = 1/temperature;
         if (clusterBD != null) {
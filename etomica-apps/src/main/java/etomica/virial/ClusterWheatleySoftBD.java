@@ -95,6 +95,24 @@ public class ClusterWheatleySoftBD implements ClusterAbstract {
         return value;
     }
 
+    /**
+     * Returns the cluster value for the given Mayer function values (one for
+     * each pair, ordered as in CoordinatePairBatch) without using or
+     * changing the cached value.
+     */
+    public double value(BoxCluster box, double[] pairF) {
+        double savedValue = value;
+        for (int i=0, p=0; i<n-1; i++) {
+            for (int j=i+1; j<n; j++, p++) {
+                fQ[(1<<i)|(1<<j)] = new BigDecimal(pairF[p]).add(BDONE, mc);
+            }
+        }
+        calcValue(box);
+        double batchValue = value;
+        value = savedValue;
+        return batchValue;
+    }
+
     /**
      * This calculates all FQ values given that the entries for pairs have
      * already been populated.
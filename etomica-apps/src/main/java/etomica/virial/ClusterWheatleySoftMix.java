@@ -4,6 +4,8 @@
 
 package etomica.virial;
 
+import etomica.molecule.IMoleculeList;
+
 /**
  * Cluster class using Whealtey's recursion to handle mixtures.
  * 
@@ -68,4 +70,25 @@ public class ClusterWheatleySoftMix extends ClusterWheatleySoft {
             }
         }
     }
+
+    protected void updateF(BoxCluster box, CoordinatePairBatch batch) {
+        AtomPairSet aPairs = box.getAPairSet();
+        double[] r2 = batch.getR2();
+        int nConfigs = batch.getConfigCount();
+        for (int i=0; i<mixF.length; i++) {
+            for (int j=0; j<mixF[i].length; j++) {
+                mixF[i][j].setBox(box);
+            }
+        }
+
+        for (int i=0, k=0; i<n-1; i++) {
+            for (int j=i+1; j<n; j++) {
+                MayerFunction fij = fMap[i][j];
+                IMoleculeList pair = aPairs.getAPair(i,j);
+                for (int c=0; c<nConfigs; c++, k++) {
+                    batchF[k] = fij.f(pair, r2[k], beta);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,254 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * ClusterWheatleySoft that evaluates the recursion using several threads.
+ * <p>
+ * Every quantity for a set of points (fQ, fC, and fA and fB for each
+ * articulation point v) depends only on quantities for proper subsets of
+ * that set.  The sets are therefore handled in order of their size, and all
+ * sets of the same size are divided among the threads.  Each thread
+ * computes all the quantities for its sets, so there are only n-1 points
+ * where the threads must wait for each other.  fA and fB are kept for each
+ * v separately to allow this.  The sums are done in the same order as in
+ * ClusterWheatleySoft, so the results are identical.
+ * <p>
+ * Threads only pay off for larger clusters; for fewer than
+ * minParallelPoints points (9 by default), ClusterWheatleySoft's serial
+ * calculation is used.  The thread pool is shared with copies made by
+ * makeCopy; call dispose when this cluster and its copies are no longer
+ * needed.
+ */
+public class ClusterWheatleySoftParallel extends ClusterWheatleySoft {
+
+    protected final ParallelTasks parallelTasks;
+    protected final int numThreads;
+    protected final double[][] fAv, fBv;
+    // setsBySize[m] holds all sets with m points
+    protected final int[][] setsBySize;
+    protected final List<List<Callable<Object>>> sizeTasks;
+    protected int minParallelPoints = 9;
+
+    public ClusterWheatleySoftParallel(int nPoints, MayerFunction f, double tol, int numThreads) {
+        this(nPoints, f, tol, new ParallelTasks(numThreads));
+    }
+
+    protected ClusterWheatleySoftParallel(int nPoints, MayerFunction f, double tol, ParallelTasks parallelTasks) {
+        super(nPoints, f, tol);
+        numThreads = parallelTasks.getNumThreads();
+        this.parallelTasks = parallelTasks;
+        int nf = 1<<n;
+        fAv = new double[n][nf];
+        fBv = new double[n][nf];
+
+        int[] numSets = new int[n+1];
+        for (int i=1; i<nf; i++) {
+            numSets[Integer.bitCount(i)]++;
+        }
+        setsBySize = new int[n+1][];
+        for (int m=1; m<=n; m++) {
+            setsBySize[m] = new int[numSets[m]];
+            numSets[m] = 0;
+        }
+        for (int i=1; i<nf; i++) {
+            int m = Integer.bitCount(i);
+            setsBySize[m][numSets[m]++] = i;
+        }
+
+        sizeTasks = new ArrayList<List<Callable<Object>>>(n+1);
+        for (int m=0; m<=n; m++) {
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(numThreads);
+            if (m > 0) {
+                final int[] sets = setsBySize[m];
+                for (int t=0; t<numThreads; t++) {
+                    final int thread = t;
+                    tasks.add(new Callable<Object>() {
+                        public Object call() {
+                            // interleave sets among threads; the work per set
+                            // grows with the set's bits
+                            for (int k=thread; k<sets.length; k+=ClusterWheatleySoftParallel.this.numThreads) {
+                                calcSet(sets[k]);
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+            sizeTasks.add(tasks);
+        }
+    }
+
+    public ClusterAbstract makeCopy() {
+        ClusterWheatleySoftParallel c = new ClusterWheatleySoftParallel(n, f, tol, parallelTasks);
+        c.setTemperature(1/beta);
+        c.setDoCaching(doCaching);
+        c.setMinParallelPoints(minParallelPoints);
+        return c;
+    }
+
+    /**
+     * Sets the smallest number of points for which threads are used.
+     */
+    public void setMinParallelPoints(int newMinParallelPoints) {
+        minParallelPoints = newMinParallelPoints;
+    }
+
+    public int getMinParallelPoints() {
+        return minParallelPoints;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void calcValue(BoxCluster box) {
+        if (n < minParallelPoints || pushme) {
+            super.calcValue(box);
+            return;
+        }
+        for (int m=1; m<=n; m++) {
+            if (setsBySize[m].length < 2*numThreads) {
+                for (int i : setsBySize[m]) {
+                    calcSet(i);
+                }
+            }
+            else {
+                parallelTasks.invokeAll(sizeTasks.get(m));
+            }
+        }
+        setValue(box, fBv[n-1][(1<<n)-1]);
+    }
+
+    /**
+     * Computes fQ, fC, fA and fB (for each v) for the set i.  Values for all
+     * proper subsets of i must already be known.
+     */
+    protected void calcSet(int i) {
+        // fQ; for 1- and 2-point sets these were filled when bonds were computed
+        int iLowBit = i & -i;
+        int k = i & ~iLowBit;
+        if (k != (k & -k)) {
+            double q = fQ[k];
+            if (q != 0) {
+                for (int l=(iLowBit<<1); l<i; l=(l<<1)) {
+                    if ((l&i)==0) continue;
+                    q *= fQ[l | iLowBit];
+                }
+            }
+            fQ[i] = q;
+        }
+
+        // fC
+        double c = fQ[i];
+        int inc = iLowBit<<1;
+        for (int j=iLowBit; j<i; j+=inc) {
+            int jComp = i & ~j;
+            while ((j|jComp) != i && j<i) {
+                int jHighBits = j^iLowBit;
+                int jlow = jHighBits & -jHighBits;
+                j += jlow;
+                jComp = (i & ~j);
+            }
+            if (j==i) break;
+            c -= fC[j] * fQ[jComp];
+        }
+        fC[i] = c;
+
+        // fA and fB for articulation point at 0
+        double[] fA0 = fAv[0];
+        double[] fB0 = fBv[0];
+        double a = 0;
+        if ((i & 1) == 1 && i != 1) {
+            int ii = i - 1;
+            int iLow2Bit = (ii & -ii);
+            int jBits = 1 | iLow2Bit;
+            if (jBits != i) {
+                int iii = ii ^ iLow2Bit;
+                int jInc = (iii & -iii);
+                for (int j=jBits; j<i; j+=jInc) {
+                    int jComp = (i & ~j);
+                    while ((j|jComp) != i && j<i) {
+                        int jHighBits = j^jBits;
+                        int jlow = jHighBits & -jHighBits;
+                        j += jlow;
+                        jComp = (i & ~j);
+                    }
+                    if (j==i) break;
+                    a += fB0[j] * fC[jComp|1];
+                }
+            }
+        }
+        fA0[i] = a;
+        fB0[i] = c - a;
+
+        // fA and fB for articulation point at v
+        for (int v=1; v<n; v++) {
+            int vs1 = 1<<v;
+            double[] fA = fAv[v];
+            double[] fB = fBv[v];
+            a = 0;
+            if (i > vs1 && (i & vs1) != 0 && iLowBit != i) {
+                int ii = i ^ iLowBit;
+                int iLow2Bit = (ii & -ii);
+                if (iLowBit != vs1 && iLow2Bit != vs1) {
+                    //v is not in the lowest 2 bits
+                    int jBits = iLowBit | vs1;
+                    int jInc = iLow2Bit;
+                    for (int j=jBits; j<i; j+=jInc) {
+                        if ((j & jBits) != jBits) {
+                            j |= vs1;
+                            if (j==i) break;
+                        }
+                        int jComp = i & ~j;
+                        while ((j|jComp) != i && j<i) {
+                            int jHighBits = j^jBits;
+                            int jlow = jHighBits & -jHighBits;
+                            j += jlow;
+                            j |= vs1;
+                            jComp = (i & ~j);
+                        }
+                        if (j==i) break;
+                        a += fB[j] * (fB[jComp|vs1] + fA[jComp|vs1]);
+                    }
+                }
+                else {
+                    //lowest 2 bits contain v
+                    int jBits = iLowBit | iLow2Bit;
+                    if (jBits != i) {
+                        int iii = ii ^ iLow2Bit;
+                        int jInc = (iii & -iii);
+                        for (int j=jBits; j<i; j+=jInc) {
+                            int jComp = i & ~j;
+                            while ((j|jComp) != i && j<i) {
+                                int jHighBits = j^jBits;
+                                int jlow = jHighBits & -jHighBits;
+                                j += jlow;
+                                jComp = (i & ~j);
+                            }
+                            if (j==i) break;
+                            a += fB[j] * (fB[jComp|vs1] + fA[jComp|vs1]);
+                        }
+                    }
+                }
+            }
+            fA[i] = a;
+            fB[i] = fBv[v-1][i] - a;
+        }
+    }
+
+    /**
+     * Shuts down the threads used by this cluster and its copies.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+}
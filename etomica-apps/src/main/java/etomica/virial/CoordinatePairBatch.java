@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Holds the squared pair distances for a block of configurations of the same
+ * set of points.  The distances are packed into a single array, grouped by
+ * pair, so that a quantity for one pair can be computed for every
+ * configuration in a single pass.  Unlike CoordinatePairSet, a batch has no
+ * ID and is not used by a cluster's cached value.
+ */
+public class CoordinatePairBatch {
+
+    protected final int nPoints, nConfigs;
+    protected final double[] r2;
+    protected final Vector dr;
+
+    public CoordinatePairBatch(int nPoints, int nConfigs, Space space) {
+        this.nPoints = nPoints;
+        this.nConfigs = nConfigs;
+        r2 = new double[nPoints*(nPoints-1)/2*nConfigs];
+        dr = space.makeVector();
+    }
+
+    public int getPointCount() {
+        return nPoints;
+    }
+
+    public int getConfigCount() {
+        return nConfigs;
+    }
+
+    /**
+     * Returns the index of the (i,j) pair (i&lt;j).  Pairs are ordered
+     * (0,1), (0,2)... (0,n-1), (1,2)...
+     */
+    public int getPairIndex(int i, int j) {
+        return i*(2*nPoints-i-1)/2 + j-i-1;
+    }
+
+    /**
+     * Returns the packed array of squared distances.  The value for pair p
+     * (see getPairIndex) in configuration c is at p*getConfigCount()+c.
+     */
+    public double[] getR2() {
+        return r2;
+    }
+
+    public double getr2(int iConfig, int i, int j) {
+        return r2[getPairIndex(i,j)*nConfigs + iConfig];
+    }
+
+    /**
+     * Stores the pair distances of the given atoms as configuration iConfig.
+     */
+    public void setConfig(int iConfig, IAtomList atoms) {
+        for (int i=0, p=iConfig; i<nPoints-1; i++) {
+            Vector pos1 = atoms.getAtom(i).getPosition();
+            for (int j=i+1; j<nPoints; j++, p+=nConfigs) {
+                dr.Ev1Mv2(pos1, atoms.getAtom(j).getPosition());
+                r2[p] = dr.squared();
+            }
+        }
+    }
+
+    /**
+     * Stores the pair distances of the given positions as configuration
+     * iConfig.
+     */
+    public void setConfig(int iConfig, Vector[] positions) {
+        for (int i=0, p=iConfig; i<nPoints-1; i++) {
+            for (int j=i+1; j<nPoints; j++, p+=nConfigs) {
+                dr.Ev1Mv2(positions[i], positions[j]);
+                r2[p] = dr.squared();
+            }
+        }
+    }
+
+    /**
+     * Copies the pair distances from cPairs into configuration iConfig.
+     */
+    public void setConfig(int iConfig, CoordinatePairSet cPairs) {
+        for (int i=0, p=iConfig; i<nPoints-1; i++) {
+            for (int j=i+1; j<nPoints; j++, p+=nConfigs) {
+                r2[p] = cPairs.getr2(i,j);
+            }
+        }
+    }
+}
@@ -43,11 +43,70 @@ public class MCMoveClusterAtomMulti extends MCMoveAtom {
     }
     
 	public boolean doTrial() {
-        uOld = ((BoxCluster)box).getSampleCluster().value((BoxCluster)box);
         IAtomList leafAtoms = box.getLeafList();
         for(int i=startAtom; i<leafAtoms.getAtomCount(); i++) {
             translationVectors[i-1].setRandomCube(random);
             translationVectors[i-1].TE(stepSize);
+        }
+        return doTranslation();
+	}
+
+    /**
+     * Generates batch.getConfigCount() trial configurations, each displaced
+     * from the current configuration as doTrial would do, and stores their
+     * pair distances in batch.  The atoms are not moved.  The displacements
+     * are kept so that any one of the trials can then be made with
+     * doBatchTrial.
+     */
+    public void makeTrialBatch(CoordinatePairBatch batch) {
+        IAtomList leafAtoms = box.getLeafList();
+        int nAtoms = leafAtoms.getAtomCount();
+        int nConfigs = batch.getConfigCount();
+        if (batchTranslations == null || batchTranslations.length != nConfigs) {
+            batchTranslations = new Vector[nConfigs][nAtoms-1];
+            for (int c=0; c<nConfigs; c++) {
+                for (int i=0; i<nAtoms-1; i++) {
+                    batchTranslations[c][i] = space.makeVector();
+                }
+            }
+            batchPositions = new Vector[nAtoms];
+            for (int i=0; i<nAtoms; i++) {
+                batchPositions[i] = space.makeVector();
+            }
+        }
+        for (int c=0; c<nConfigs; c++) {
+            for (int i=0; i<nAtoms; i++) {
+                batchPositions[i].E(leafAtoms.getAtom(i).getPosition());
+                if (i < startAtom) continue;
+                Vector t = batchTranslations[c][i-1];
+                t.setRandomCube(random);
+                t.TE(stepSize);
+                batchPositions[i].PE(t);
+            }
+            batch.setConfig(c, batchPositions);
+        }
+    }
+
+    /**
+     * Makes the trial iConfig from the last call to makeTrialBatch.  The move
+     * can then be accepted or rejected as for doTrial.
+     */
+    public boolean doBatchTrial(int iConfig) {
+        Vector[] t = batchTranslations[iConfig];
+        for (int i=startAtom; i<t.length+1; i++) {
+            translationVectors[i-1].E(t[i-1]);
+        }
+        return doTranslation();
+    }
+
+    /**
+     * Moves the atoms by translationVectors and computes the old and new
+     * weights.
+     */
+    protected boolean doTranslation() {
+        uOld = ((BoxCluster)box).getSampleCluster().value((BoxCluster)box);
+        IAtomList leafAtoms = box.getLeafList();
+        for(int i=startAtom; i<leafAtoms.getAtomCount(); i++) {
             leafAtoms.getAtom(i).getPosition().PE(translationVectors[i-1]);
         }
 		((BoxCluster)box).trialNotify();
@@ -76,5 +135,7 @@ public class MCMoveClusterAtomMulti extends MCMoveAtom {
     }
 
     protected Vector[] translationVectors;
+    protected Vector[][] batchTranslations;
+    protected Vector[] batchPositions;
     protected int startAtom = 1;
 }
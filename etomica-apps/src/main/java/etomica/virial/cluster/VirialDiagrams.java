@@ -115,6 +115,7 @@ public class VirialDiagrams {
     protected final char nodeColor = Metadata.COLOR_CODE_0;
     protected char[] flexColors;
     protected boolean allPermutations = false;
+    protected String cacheDir;
     public char fBond, bBond, eBond, excBond, mBond, mmBond, fmBond, efbcBond, ffBond, mxcBond, MxcBond;
 
     protected static int[][][] groupStart = new int[0][0][0];
@@ -291,6 +292,31 @@ public class VirialDiagrams {
         allPermutations = newAllPermutations;
     }
 
+    /**
+     * Sets a directory in which the generated diagrams are stored.  If the
+     * diagrams for these parameters are already there, they are read instead
+     * of being generated.  By default (null), no files are used.
+     */
+    public void setCacheDir(String newCacheDir) {
+        cacheDir = newCacheDir;
+    }
+
+    /**
+     * Returns the name of the cache file (without extension) for the current
+     * parameters.
+     */
+    protected String getCacheKey() {
+        // one digit for each option that affects the diagrams
+        boolean[] options = new boolean[]{doReeHoover, doShortcut, doMinimalMulti, doMultiFromPair, doMinimalBC,
+                doKeepEBonds, doExchange, doExchangeF, doExchangeCondensing, doDisconnectedMatching,
+                doNegativeExchange, doHB, allPermutations};
+        String key = getClass().getSimpleName()+"_n"+n+(multibody ? "_multi" : "")+(flex ? "_flex" : "")+"_";
+        for (boolean option : options) {
+            key += option ? "1" : "0";
+        }
+        return key;
+    }
+
     public Set<Graph> getVirialGraphs() {
         if (p == null) {
             makeVirialDiagrams();
@@ -1361,6 +1387,20 @@ public class VirialDiagrams {
         colorOrderMap.put(MxcBond, 8);
         colorOrderMap.put(excBond, 9);
 
+        VirialDiagramsCache cache = null;
+        if (cacheDir != null) {
+            cache = new VirialDiagramsCache(cacheDir, getCacheKey());
+            if (cache.read()) {
+                p = cache.getSet(0, makeGraphList());
+                disconnectedP = cache.getSet(1, makeGraphList());
+                minMultiP = cache.getSet(2, makeGraphList());
+                fullMultiP = cache.getSet(3, makeGraphList());
+                trueMultiP = cache.getSet(4, makeGraphList());
+                cancelMap = cache.getCancelMap();
+                return;
+            }
+        }
+
         Property happyArticulation = new ArticulatedAt0(doExchange, multibody ? mmBond : '0');
 
         if (doShortcut && !multibody && !flex) {
@@ -2306,6 +2346,16 @@ outer:                      for (int i=1; i<biComp.size(); i++) {
         disconnectedPFinal.addAll(disconnectedP);
         disconnectedP = disconnectedPFinal;
 
+        if (cache != null) {
+            List<Set<Graph>> sets = new ArrayList<Set<Graph>>();
+            sets.add(p);
+            sets.add(disconnectedP);
+            sets.add(minMultiP);
+            sets.add(fullMultiP);
+            sets.add(trueMultiP);
+            cache.write(sets, cancelMap);
+        }
+
     }
 
     public static final class ArticulatedAt0 implements Property {
@@ -0,0 +1,186 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import etomica.graph.model.Graph;
+import etomica.graph.util.GraphIO;
+
+/**
+ * Stores the diagram sets generated by VirialDiagrams (and its relatives) in
+ * a binary file so that later runs with the same parameters can read them
+ * instead of generating them again.  The file name is given by a key that
+ * must include everything that affects the diagrams.
+ * <p>
+ * The cache stores a list of graph sets (any of which may be null) and a
+ * cancel map.  Keys of the cancel map that are in the first set are stored
+ * as indices so that, after reading, they are the same objects as those in
+ * the first set (Graph does not define hashCode, so the map relies on that).
+ * <p>
+ * Problems reading or writing the file are reported and otherwise ignored;
+ * the diagrams are then just generated as usual.
+ */
+public class VirialDiagramsCache {
+
+    protected static final int VERSION = 1;
+
+    protected final File file;
+    protected final String key;
+    protected List<List<Graph>> sets;
+    protected Map<Graph,Graph> cancelMap;
+
+    public VirialDiagramsCache(String dirName, String key) {
+        this.key = key;
+        file = new File(dirName, key+".bin");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads the cache file.  Returns false if there is no file or it can't be
+     * used.
+     */
+    public boolean read() {
+        if (!file.exists()) return false;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != VERSION || !in.readUTF().equals(key)) {
+                System.err.println("ignoring diagram cache "+file+" from a different version");
+                return false;
+            }
+            int nSets = in.readInt();
+            sets = new ArrayList<List<Graph>>(nSets);
+            for (int i=0; i<nSets; i++) {
+                List<Graph> set = null;
+                if (in.readBoolean()) {
+                    set = new ArrayList<Graph>();
+                    GraphIO.readGraphs(in, set);
+                }
+                sets.add(set);
+            }
+            cancelMap = null;
+            if (in.readBoolean()) {
+                List<Graph> set0 = sets.get(0);
+                cancelMap = new HashMap<Graph,Graph>();
+                int nMap = in.readInt();
+                for (int i=0; i<nMap; i++) {
+                    int idx = in.readInt();
+                    Graph g = idx < 0 ? GraphIO.readGraph(in) : set0.get(idx);
+                    cancelMap.put(g, GraphIO.readGraph(in));
+                }
+            }
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println("unable to read diagram cache "+file+": "+e.getMessage());
+            sets = null;
+            cancelMap = null;
+            return false;
+        }
+        finally {
+            if (in != null) {
+                try {
+                    in.close();
+                }
+                catch (IOException e) {}
+            }
+        }
+    }
+
+    /**
+     * Adds the graphs from set i (as read) to newSet and returns newSet, or
+     * returns null if a null set was written.
+     */
+    public Set<Graph> getSet(int i, Set<Graph> newSet) {
+        List<Graph> set = sets.get(i);
+        if (set == null) return null;
+        newSet.addAll(set);
+        return newSet;
+    }
+
+    /**
+     * Returns the cancel map read from the file (null if null was written).
+     */
+    public Map<Graph,Graph> getCancelMap() {
+        return cancelMap;
+    }
+
+    /**
+     * Writes the given sets and cancel map to the cache file.  The file is
+     * written under a temporary name and then renamed, so that a concurrent
+     * run never sees a partial file.
+     */
+    public void write(List<Set<Graph>> newSets, Map<Graph,Graph> newCancelMap) {
+        File tmpFile = new File(file.getPath()+".tmp"+System.nanoTime());
+        DataOutputStream out = null;
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("could not create "+dir);
+            }
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeInt(newSets.size());
+            for (Set<Graph> set : newSets) {
+                out.writeBoolean(set != null);
+                if (set != null) {
+                    GraphIO.writeGraphs(out, set);
+                }
+            }
+            out.writeBoolean(newCancelMap != null);
+            if (newCancelMap != null) {
+                Map<Graph,Integer> set0Index = new IdentityHashMap<Graph,Integer>();
+                int idx = 0;
+                for (Graph g : newSets.get(0)) {
+                    set0Index.put(g, idx++);
+                }
+                out.writeInt(newCancelMap.size());
+                for (Map.Entry<Graph,Graph> entry : newCancelMap.entrySet()) {
+                    Integer gIdx = set0Index.get(entry.getKey());
+                    out.writeInt(gIdx == null ? -1 : gIdx);
+                    if (gIdx == null) {
+                        GraphIO.writeGraph(out, entry.getKey());
+                    }
+                    GraphIO.writeGraph(out, entry.getValue());
+                }
+            }
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("could not rename "+tmpFile);
+            }
+        }
+        catch (IOException e) {
+            System.err.println("unable to write diagram cache "+file+": "+e.getMessage());
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {}
+            }
+            tmpFile.delete();
+        }
+    }
+}
@@ -80,6 +80,7 @@ public class VirialDiagramsMix2 {
     protected boolean doDisconnectedMatching = true;
     public char fBond, eBond, excBond, efbcBond;
     protected boolean allPermutations = false;
+    protected String cacheDir;
     
     
     public static void main(String[] args) {
@@ -132,6 +133,33 @@ public class VirialDiagramsMix2 {
     public void setDoDisconnectedMatching(boolean newDoDisconnectedMatching) {
         doDisconnectedMatching = newDoDisconnectedMatching;
     }
+
+    /**
+     * Sets a directory in which the generated diagrams are stored.  If the
+     * diagrams for these parameters are already there, they are read instead
+     * of being generated.  By default (null), no files are used.
+     */
+    public void setCacheDir(String newCacheDir) {
+        cacheDir = newCacheDir;
+    }
+
+    /**
+     * Returns the name of the cache file (without extension) for the current
+     * parameters.
+     */
+    protected String getCacheKey() {
+        String key = getClass().getSimpleName()+"_n"+n+"_flex";
+        for (boolean f : flex) {
+            key += f ? "1" : "0";
+        }
+        // one digit for each option that affects the diagrams
+        boolean[] options = new boolean[]{doReeHoover, doShortcut, doKeepEBonds, doDisconnectedMatching, allPermutations};
+        key += "_";
+        for (boolean option : options) {
+            key += option ? "1" : "0";
+        }
+        return key;
+    }
     
     public Set<Graph> getExtraDisconnectedVirialGraphs(int[] numPoints) {
         if (p == null) {
@@ -195,7 +223,11 @@ public class VirialDiagramsMix2 {
         return false;
     }
         
-    public void makeRhoDiagrams() {
+    /**
+     * Sets up the node and bond colors and the metadata comparator used by
+     * the diagrams.
+     */
+    protected void initMetadata() {
         final char nodeA = Metadata.COLOR_CODE_0;
         final char nodeB = Metadata.COLOR_CODE_1;
         // we'll pretend that everything is flexible until the end
@@ -262,6 +294,12 @@ public class VirialDiagramsMix2 {
         Metadata.COLOR_MAP.put(efbcBond, "fuchsia");
         Metadata.COLOR_MAP.put(excBond, "red");
         Metadata.DASH_MAP.put(excBond, 3);
+    }
+
+    public void makeRhoDiagrams() {
+        initMetadata();
+        final char nodeB = Metadata.COLOR_CODE_1;
+        char oneBond = 'o';
         
         Set<Graph> topSet = makeGraphList();
         // ==================================================== eXi ======================================================= //
@@ -377,6 +415,17 @@ public class VirialDiagramsMix2 {
     } //end makeRhoDiagrams method
     
     public void makeVirialDiagrams() {
+        VirialDiagramsCache cache = null;
+        if (cacheDir != null && rhoA == null) {
+            cache = new VirialDiagramsCache(cacheDir, getCacheKey());
+            if (cache.read()) {
+                initMetadata();
+                p = cache.getSet(0, makeGraphList());
+                disconnectedP = cache.getSet(1, makeGraphList());
+                cancelMap = cache.getCancelMap();
+                return;
+            }
+        }
         if (rhoA == null) {
             makeRhoDiagrams();
         }
@@ -684,6 +733,12 @@ public class VirialDiagramsMix2 {
         	topSet.addAll(cancel);
         	ClusterViewer.createView("cancelMap diagrams", topSet);
         }
+        if (cache != null) {
+            List<Set<Graph>> sets = new ArrayList<Set<Graph>>();
+            sets.add(p);
+            sets.add(disconnectedP);
+            cache.write(sets, cancelMap);
+        }
     }// end makeVirialDiagrams method
     
     // add property class
@@ -52,6 +52,7 @@ import etomica.graph.operations.MulFlexible;
 import etomica.graph.operations.MulFlexible.MulFlexibleParameters;
 import etomica.graph.operations.MulScalar;
 import etomica.graph.operations.MulScalarParameters;
+import etomica.graph.operations.ParallelOps;
 import etomica.graph.operations.Relabel;
 import etomica.graph.operations.RelabelParameters;
 import etomica.graph.operations.RelabelWertheim;
@@ -94,6 +95,7 @@ public class WertheimDiagrams3SiteRho {
         long t1 = System.currentTimeMillis();
     	GraphImpl.useReverseEdges = true;
     	MetadataImpl.rootPointsSpecial = true;
+        ParallelOps.setNumThreads(Runtime.getRuntime().availableProcessors());
         final int n = 4;
         boolean multibody = true;
         boolean bondDecomp = true;
@@ -464,91 +464,57 @@ public class SimulationVirialOverlap2 extends Simulation {
     }
 
     public void initRefPref(String fileName, long initSteps) {
-        // use the old refpref value as a starting point so that an initial
-        // guess can be provided
-        double oldRefPref = refPref;
-        // refPref = -1 indicates we are searching for an appropriate value
-        refPref = -1.0;
-        if (fileName != null) {
-            try { 
-                FileReader fileReader = new FileReader(fileName);
-                BufferedReader bufReader = new BufferedReader(fileReader);
-                String refPrefString = bufReader.readLine();
-                refPref = Double.parseDouble(refPrefString);
-                bufReader.close();
-                fileReader.close();
-                System.out.println("setting ref pref (from file) to "+refPref);
-                dpVirialOverlap[0].setNumAlpha(numAlpha);
-                dpVirialOverlap[1].setNumAlpha(numAlpha);
-                setRefPref(refPref,1);
-            }
-            catch (IOException e) {
-                // file not there, which is ok.
-            }
+        if (readRefPref(fileName)) return;
+        startRefPrefSearch(initSteps);
+        ai.setMaxSteps(initSteps);
+        ai.actionPerformed();
+        double newRefPref = dvo.getOverlapAverage();
+        System.out.println("setting initial ref pref to "+newRefPref);
+        if (Double.isInfinite(newRefPref) || Double.isNaN(newRefPref)) {
+            throw new RuntimeException("oops");
         }
-        
-        if (refPref == -1) {
-            for (int i=0; i<2; i++) {
-                integrators[i].getMoveManager().setEquilibrating(true);
-            }
+        finishRefPrefSearch(newRefPref);
+    }
 
-            long oldBlockSize = blockSize;
-            // 1000 blocks
-            long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
-            if (newBlockSize < 1000) {
-                // make block size at least 1000, even if it means fewer blocks
-                newBlockSize = 1000;
-            }
-            if (newBlockSize > 1000000) {
-                // needs to be an int.  1e6 steps/block is a bit crazy.
-                newBlockSize = 1000000;
-            }
-            setAccumulatorBlockSize(newBlockSize);
-            dpVirialOverlap[0].setNumAlpha(21);
-            dpVirialOverlap[1].setNumAlpha(21);
-            setRefPref(oldRefPref,30);
-            boolean adjustable = integratorOS.isAdjustStepFraction();
-            if (adjustable) {
-                // we do this initialization to
-                // 1. find alpha
-                // 2. get molecules out of their starting configuration
-                // 3. find optimal mc move step sizes
-                // all of these are about as hard in the reference as in the target system
-                // so force integratorOS to run both systems equally.
-                integratorOS.setRefStepFraction(0.5);
-                integratorOS.setAdjustStepFraction(false);
-            }
-            ai.setMaxSteps(initSteps);
-            ai.actionPerformed();
-            if (adjustable) {
-                integratorOS.setAdjustStepFraction(true);
-            }
+    /**
+     * Reads the reference preference from the given file and uses it (with
+     * numAlpha alpha values) if the file exists.  Returns true if the
+     * reference preference was read.
+     */
+    protected boolean readRefPref(String fileName) {
+        if (fileName == null) return false;
+        try {
+            FileReader fileReader = new FileReader(fileName);
+            BufferedReader bufReader = new BufferedReader(fileReader);
+            String refPrefString = bufReader.readLine();
+            double newRefPref = Double.parseDouble(refPrefString);
+            bufReader.close();
+            fileReader.close();
+            System.out.println("setting ref pref (from file) to "+newRefPref);
+            dpVirialOverlap[0].setNumAlpha(numAlpha);
+            dpVirialOverlap[1].setNumAlpha(numAlpha);
+            setRefPref(newRefPref,1);
+            return true;
+        }
+        catch (IOException e) {
+            // file not there, which is ok.
+            return false;
+        }
+    }
 
-            refPref = dvo.getOverlapAverage();
-            System.out.println("setting initial ref pref to "+refPref);
-            if (Double.isInfinite(refPref) || Double.isNaN(refPref)) {
-                dvo.getOverlapAverage();
-                throw new RuntimeException("oops");
-            }
-            setAccumulatorBlockSize(oldBlockSize);
-            dpVirialOverlap[0].setNumAlpha(15);
-            dpVirialOverlap[1].setNumAlpha(15);
-            setRefPref(refPref,4);
-            for (int i=0; i<2; i++) {
-                integrators[i].reset();
-            }
-            // set refPref back to -1 so that later on we know that we've been looking for
-            // the appropriate value
-            refPref = -1;
+    /**
+     * Prepares for a short run to find the reference preference, using a
+     * wide range of alpha values centered on the current reference preference.
+     */
+    protected void startRefPrefSearch(long initSteps) {
+        // use the old refpref value as a starting point so that an initial
+        // guess can be provided
+        double oldRefPref = refPref;
+        for (int i=0; i<2; i++) {
+            integrators[i].getMoveManager().setEquilibrating(true);
         }
 
-    }
-    
-    public void equilibrate(String fileName, long initSteps) {
-        // run a short simulation to get reasonable MC Move step sizes and
-        // (if needed) narrow in on a reference preference
-        ai.setMaxSteps(initSteps);
-        long oldBlockSize = blockSize;
+        savedBlockSize = blockSize;
         // 1000 blocks
         long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
         if (newBlockSize < 1000) {
@@ -559,12 +525,34 @@ public class SimulationVirialOverlap2 extends Simulation {
             // needs to be an int.  1e6 steps/block is a bit crazy.
             newBlockSize = 1000000;
         }
-        setAccumulatorBlockSize((int)newBlockSize);
+        setAccumulatorBlockSize(newBlockSize);
+        dpVirialOverlap[0].setNumAlpha(21);
+        dpVirialOverlap[1].setNumAlpha(21);
+        setRefPref(oldRefPref,30);
+        startEqualSampling();
+    }
+
+    /**
+     * Centers the alpha values on the reference preference found by the
+     * search and restores the settings changed by startRefPrefSearch.
+     */
+    protected void finishRefPrefSearch(double newRefPref) {
+        finishEqualSampling();
+        setAccumulatorBlockSize(savedBlockSize);
+        dpVirialOverlap[0].setNumAlpha(15);
+        dpVirialOverlap[1].setNumAlpha(15);
+        setRefPref(newRefPref,4);
         for (int i=0; i<2; i++) {
-            integrators[i].getMoveManager().setEquilibrating(true);
+            integrators[i].reset();
         }
-        boolean adjustable = integratorOS.isAdjustStepFraction();
-        if (adjustable) {
+        // set refPref back to -1 so that later on we know that we've been looking for
+        // the appropriate value
+        refPref = -1;
+    }
+
+    protected void startEqualSampling() {
+        savedAdjustStepFraction = integratorOS.isAdjustStepFraction();
+        if (savedAdjustStepFraction) {
             // we do this initialization to
             // 1. find alpha
             // 2. get molecules out of their starting configuration
@@ -574,38 +562,75 @@ public class SimulationVirialOverlap2 extends Simulation {
             integratorOS.setRefStepFraction(0.5);
             integratorOS.setAdjustStepFraction(false);
         }
-        ai.actionPerformed();
-        if (adjustable) {
+    }
+
+    protected void finishEqualSampling() {
+        if (savedAdjustStepFraction) {
             integratorOS.setAdjustStepFraction(true);
         }
+    }
+
+    public void equilibrate(String fileName, long initSteps) {
+        // run a short simulation to get reasonable MC Move step sizes and
+        // (if needed) narrow in on a reference preference
+        startEquilibration(initSteps);
+        ai.setMaxSteps(initSteps);
+        ai.actionPerformed();
 
+        double newRefPref = refPref;
         if (refPref == -1) {
-            refPref = dvo.getOverlapAverage();
-            System.out.println("setting ref pref to "+refPref);
-            if (Double.isInfinite(refPref) || Double.isNaN(refPref)) {
-                dvo.getOverlapAverage();
+            newRefPref = dvo.getOverlapAverage();
+            System.out.println("setting ref pref to "+newRefPref);
+            if (Double.isInfinite(newRefPref) || Double.isNaN(newRefPref)) {
                 throw new RuntimeException("oops");
             }
+        }
+        boolean foundRefPref = refPref == -1;
+        finishEquilibration(newRefPref);
+        if (foundRefPref) {
+            writeRefPref(fileName);
+        }
+    }
+
+    /**
+     * Prepares for a short run to adjust step sizes and (if needed) narrow in
+     * on the reference preference.
+     */
+    protected void startEquilibration(long initSteps) {
+        savedBlockSize = blockSize;
+        // 1000 blocks
+        long newBlockSize = initSteps*integratorOS.getNumSubSteps()/1000;
+        if (newBlockSize < 1000) {
+            // make block size at least 1000, even if it means fewer blocks
+            newBlockSize = 1000;
+        }
+        if (newBlockSize > 1000000) {
+            // needs to be an int.  1e6 steps/block is a bit crazy.
+            newBlockSize = 1000000;
+        }
+        setAccumulatorBlockSize((int)newBlockSize);
+        for (int i=0; i<2; i++) {
+            integrators[i].getMoveManager().setEquilibrating(true);
+        }
+        startEqualSampling();
+    }
+
+    /**
+     * Finishes equilibration.  If the reference preference was being searched
+     * for, the given value is used (with numAlpha alpha values); otherwise the
+     * data collected during equilibration is discarded.
+     */
+    protected void finishEquilibration(double newRefPref) {
+        finishEqualSampling();
+        if (refPref == -1) {
             dpVirialOverlap[0].setNumAlpha(numAlpha);
             dpVirialOverlap[1].setNumAlpha(numAlpha);
-            setRefPref(refPref,1);
-            if (fileName != null) {
-                try {
-                    FileWriter fileWriter = new FileWriter(fileName);
-                    BufferedWriter bufWriter = new BufferedWriter(fileWriter);
-                    bufWriter.write(String.valueOf(refPref)+"\n");
-                    bufWriter.close();
-                    fileWriter.close();
-                }
-                catch (IOException e) {
-                    throw new RuntimeException("couldn't write to refpref file");
-                }
-            }
+            setRefPref(newRefPref,1);
         }
         else {
             dvo.reset();
         }
-        setAccumulatorBlockSize(oldBlockSize);
+        setAccumulatorBlockSize(savedBlockSize);
         for (int i=0; i<2; i++) {
             integrators[i].getMoveManager().setEquilibrating(false);
         }
@@ -614,11 +639,36 @@ public class SimulationVirialOverlap2 extends Simulation {
         }
     }
 
+    /**
+     * Writes the reference preference to the given file (if not null).
+     */
+    protected void writeRefPref(String fileName) {
+        if (fileName == null) return;
+        try {
+            FileWriter fileWriter = new FileWriter(fileName);
+            BufferedWriter bufWriter = new BufferedWriter(fileWriter);
+            bufWriter.write(String.valueOf(refPref)+"\n");
+            bufWriter.close();
+            fileWriter.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException("couldn't write to refpref file");
+        }
+    }
+
     public void printResults(double refIntegral) {
         printResults(refIntegral, null);
     }
 
     public void printResults(double refIntegral, String[] extraNames) {
+        printResults(refIntegral, extraNames, dvo, accumulators);
+    }
+
+    /**
+     * Prints results using the given overlap analysis and accumulators, which
+     * must have been collected with this simulation's clusters and alpha values.
+     */
+    protected void printResults(double refIntegral, String[] extraNames, DataVirialOverlap dvo, AccumulatorRatioAverageCovarianceFull[] accumulators) {
         double[] ratioAndError = dvo.getAverageAndError();
         double ratio = ratioAndError[0];
         double error = ratioAndError[1];
@@ -737,7 +787,8 @@ public class SimulationVirialOverlap2 extends Simulation {
     public ActivityIntegrate ai;
     public IntegratorOverlap integratorOS;
     public double refPref;
-    protected long blockSize;
+    protected long blockSize, savedBlockSize;
+    protected boolean savedAdjustStepFraction;
     protected int numAlpha = 1;
     protected HistogramSimple targHist;
     protected HistogramNotSoSimple targPiHist;
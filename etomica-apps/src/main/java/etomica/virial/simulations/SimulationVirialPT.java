@@ -17,11 +17,16 @@ import etomica.space.Space;
 import etomica.species.ISpecies;
 import etomica.species.SpeciesSpheresMono;
 import etomica.species.SpeciesSpheresRotating;
+import etomica.util.random.IRandom;
 import etomica.virial.*;
 import etomica.virial.paralleltempering.MCMoveSwapCluster;
 
 /**
  * Generic simulation using Mayer sampling to evaluate cluster integrals
+ * <p>
+ * Each temperature has its own random number generator (seeded from the
+ * simulation's), PotentialMaster and clusters, so the temperatures can be
+ * run concurrently with integratorPT.setNumThreads.
  */
 public class SimulationVirialPT extends Simulation {
 
@@ -32,7 +37,6 @@ public class SimulationVirialPT extends Simulation {
 			double[] temperature, ClusterWeight.Factory sampleClusterFactory, 
 			ClusterAbstract refCluster, ClusterAbstract[] targetClusters) {
 		super(space);
-        PotentialMaster potentialMaster = new PotentialMaster();
 		int nMolecules = refCluster.pointCount();
 		species = speciesFactory.makeSpecies(space);//SpheresMono(this,AtomLinker.FACTORY);
         addSpecies(species);
@@ -72,8 +76,8 @@ public class SimulationVirialPT extends Simulation {
             box[iTemp] = new BoxCluster(sampleCluster[iTemp], space);
             box[iTemp].setNMolecules(species, nMolecules);
             
-            integrator[iTemp] = new IntegratorMC(this, potentialMaster);
-            integrator[iTemp].setTemperature(temperature[iTemp]);
+            IRandom replicaRandom = IntegratorPT.makeReplicaRandom(random);
+            integrator[iTemp] = new IntegratorMC(new PotentialMaster(), replicaRandom, temperature[iTemp]);
             integrator[iTemp].setBox(box[iTemp]);
             integrator[iTemp].getMoveManager().setEquilibrating(false);
             integratorPT.addIntegrator(integrator[iTemp]);
@@ -81,13 +85,13 @@ public class SimulationVirialPT extends Simulation {
             MCMoveManager moveManager = integrator[iTemp].getMoveManager();
             
             if (species instanceof SpeciesSpheresMono || species instanceof SpeciesSpheresRotating) {
-                mcMoveMulti[iTemp] = new MCMoveClusterAtomMulti(random, space);
+                mcMoveMulti[iTemp] = new MCMoveClusterAtomMulti(replicaRandom, space);
                 moveManager.addMCMove(mcMoveMulti[iTemp]);
             }
             else {
-                mcMoveMulti[iTemp] = new MCMoveClusterMoleculeMulti(this, space);
+                mcMoveMulti[iTemp] = new MCMoveClusterMoleculeMulti(null, replicaRandom, space, 1.0);
                 moveManager.addMCMove(mcMoveMulti[iTemp]);
-                mcMoveRotate[iTemp] = new MCMoveClusterRotateMoleculeMulti(getRandom(), space);
+                mcMoveRotate[iTemp] = new MCMoveClusterRotateMoleculeMulti(replicaRandom, space);
                 moveManager.addMCMove(mcMoveRotate[iTemp]);
             }
             
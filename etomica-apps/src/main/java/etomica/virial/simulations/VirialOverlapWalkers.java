@@ -0,0 +1,299 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.data.AccumulatorRatioAverageCovarianceFull;
+import etomica.util.ParallelTasks;
+import etomica.util.random.RandomMersenneTwister;
+import etomica.util.random.RandomNumberGeneratorUnix;
+import etomica.virial.overlap.DataVirialOverlap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs several independent overlap-sampling simulations ("walkers") of the
+ * same system concurrently and combines their results.  Each walker is a
+ * SimulationVirialOverlap2 with its own boxes, clusters, integrators and
+ * random number generator.  The walkers' accumulators are merged whenever
+ * the walkers stop, and the reference preference (alpha) is determined from
+ * the merged data and applied to all walkers.
+ * <p>
+ * Walkers must not share clusters, potentials or species, since those keep
+ * internal state; the WalkerFactory should construct everything each walker
+ * needs.  The factory should return a walker that has not been initialized
+ * (created with one of the constructors that do not call init).  Each
+ * walker is given a RandomMersenneTwister seeded from the base seeds and the
+ * walker index and is then initialized.
+ * <p>
+ * The methods here correspond to those of SimulationVirialOverlap2:
+ * initRefPref, then equilibrate, then runSteps and printResults.  Call
+ * dispose when finished.
+ */
+public class VirialOverlapWalkers {
+
+    protected final SimulationVirialOverlap2[] walkers;
+    protected final int[] seeds;
+    protected final ParallelTasks parallelTasks;
+    protected final AccumulatorRatioAverageCovarianceFull[] accumulators;
+    protected final DataVirialOverlap dvo;
+    protected double refPref;
+    protected double progressRefIntegral;
+    protected long stepCount;
+
+    /**
+     * Creates numWalkers walkers using the factory.  The walkers run using
+     * numThreads threads.  If seeds is null, seeds are generated.
+     */
+    public VirialOverlapWalkers(WalkerFactory factory, int numWalkers, int numThreads, int[] seeds) {
+        if (numWalkers < 1 || numThreads < 1) {
+            throw new IllegalArgumentException("need at least one walker and one thread");
+        }
+        this.seeds = seeds == null ? RandomNumberGeneratorUnix.getRandSeedArray() : seeds.clone();
+        walkers = new SimulationVirialOverlap2[numWalkers];
+        for (int i = 0; i < numWalkers; i++) {
+            walkers[i] = factory.makeWalker(i);
+            if (walkers[i].initialized) {
+                throw new IllegalArgumentException("walkers must not be initialized before their random number generator is set");
+            }
+            walkers[i].setRandom(new RandomMersenneTwister(getWalkerSeeds(i)));
+            walkers[i].init();
+        }
+        parallelTasks = new ParallelTasks(numThreads);
+        accumulators = new AccumulatorRatioAverageCovarianceFull[2];
+        for (int i = 0; i < 2; i++) {
+            accumulators[i] = new AccumulatorRatioAverageCovarianceFull(walkers[0].blockSize);
+        }
+        dvo = new DataVirialOverlap(walkers[0].dpVirialOverlap[0], accumulators[0], accumulators[1]);
+        refPref = walkers[0].refPref;
+    }
+
+    /**
+     * Returns the seeds used for the given walker's random number generator:
+     * the base seeds followed by the walker index.
+     */
+    public int[] getWalkerSeeds(int iWalker) {
+        int[] walkerSeeds = new int[seeds.length + 1];
+        System.arraycopy(seeds, 0, walkerSeeds, 0, seeds.length);
+        walkerSeeds[seeds.length] = iWalker;
+        return walkerSeeds;
+    }
+
+    public int getNumWalkers() {
+        return walkers.length;
+    }
+
+    public SimulationVirialOverlap2 getWalker(int iWalker) {
+        return walkers[iWalker];
+    }
+
+    /**
+     * Returns the merged reference and target accumulators.  These are
+     * updated each time the walkers stop.
+     */
+    public AccumulatorRatioAverageCovarianceFull[] getAccumulators() {
+        return accumulators;
+    }
+
+    /**
+     * Returns the analysis of the merged data.
+     */
+    public DataVirialOverlap getDataVirialOverlap() {
+        return dvo;
+    }
+
+    /**
+     * Returns the total number of overlap steps taken by each walker during
+     * runSteps.
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    public void setAccumulatorBlockSize(long newBlockSize) {
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.setAccumulatorBlockSize(newBlockSize);
+        }
+    }
+
+    public void setRefPref(double refPrefCenter, double span) {
+        refPref = refPrefCenter;
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.setRefPref(refPrefCenter, span);
+        }
+    }
+
+    /**
+     * Uses the given reference preference (with a single alpha value) for
+     * all walkers.
+     */
+    public void setRefPref(double newRefPref) {
+        refPref = newRefPref;
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.setRefPref(newRefPref);
+        }
+    }
+
+    public double getRefPref() {
+        return refPref;
+    }
+
+    /**
+     * Causes the merged result to be reported (multiplied by refIntegral)
+     * each time the walkers stop during runSteps.  Pass 0 to disable.
+     */
+    public void setProgressReport(double refIntegral) {
+        progressRefIntegral = refIntegral;
+    }
+
+    /**
+     * Reads the reference preference from the given file, or (if the file
+     * does not exist) runs all walkers for initSteps steps with a wide range
+     * of alpha values and finds the reference preference from their merged
+     * data.
+     */
+    public void initRefPref(final String fileName, final long initSteps) {
+        boolean fromFile = fileName != null && walkers[0].readRefPref(fileName);
+        if (fromFile) {
+            for (int i = 1; i < walkers.length; i++) {
+                // as readRefPref did for walker 0
+                walkers[i].setNumAlpha(walkers[0].getNumAlpha());
+                walkers[i].setRefPref(walkers[0].refPref, 1);
+            }
+            refPref = walkers[0].refPref;
+            return;
+        }
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.startRefPrefSearch(initSteps);
+        }
+        runWalkers(initSteps);
+        merge();
+        double newRefPref = dvo.getOverlapAverage();
+        System.out.println("setting initial ref pref to " + newRefPref);
+        if (Double.isInfinite(newRefPref) || Double.isNaN(newRefPref)) {
+            throw new RuntimeException("oops");
+        }
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.finishRefPrefSearch(newRefPref);
+        }
+        refPref = -1;
+    }
+
+    /**
+     * Runs all walkers for initSteps steps to find MC move step sizes and,
+     * if the reference preference was not read from a file, refines it using
+     * the merged data and writes it to the file.
+     */
+    public void equilibrate(String fileName, long initSteps) {
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.startEquilibration(initSteps);
+        }
+        runWalkers(initSteps);
+        double newRefPref = walkers[0].refPref;
+        boolean searching = newRefPref == -1;
+        if (searching) {
+            merge();
+            newRefPref = dvo.getOverlapAverage();
+            System.out.println("setting ref pref to " + newRefPref);
+            if (Double.isInfinite(newRefPref) || Double.isNaN(newRefPref)) {
+                throw new RuntimeException("oops");
+            }
+        }
+        for (SimulationVirialOverlap2 walker : walkers) {
+            walker.finishEquilibration(newRefPref);
+        }
+        refPref = walkers[0].refPref;
+        if (searching) {
+            walkers[0].writeRefPref(fileName);
+        }
+    }
+
+    /**
+     * Runs each walker for the given number of overlap steps, stopping every
+     * mergeInterval steps to merge the data (and report progress).
+     */
+    public void runSteps(long steps, long mergeInterval) {
+        if (mergeInterval <= 0) mergeInterval = steps;
+        for (long done = 0; done < steps; ) {
+            long n = Math.min(mergeInterval, steps - done);
+            runWalkers(n);
+            done += n;
+            stepCount += n;
+            merge();
+            if (progressRefIntegral != 0) {
+                double[] ratioAndError = dvo.getAverageAndError();
+                System.out.println(stepCount + " steps (x" + walkers.length + " walkers): abs average: "
+                        + ratioAndError[0] * progressRefIntegral + ", error: " + ratioAndError[1] * Math.abs(progressRefIntegral));
+            }
+        }
+    }
+
+    /**
+     * Runs each walker for the given number of steps.
+     */
+    public void runSteps(long steps) {
+        runSteps(steps, steps);
+    }
+
+    /**
+     * Returns the ratio of target to reference integrals and its uncertainty
+     * from the merged data.
+     */
+    public double[] getAverageAndError() {
+        return dvo.getAverageAndError();
+    }
+
+    public void printResults(double refIntegral) {
+        printResults(refIntegral, null);
+    }
+
+    public void printResults(double refIntegral, String[] extraNames) {
+        System.out.println("results merged from " + walkers.length + " walkers");
+        walkers[0].printResults(refIntegral, extraNames, dvo, accumulators);
+    }
+
+    /**
+     * Combines the data from all walkers into the merged accumulators.
+     */
+    public void merge() {
+        for (int i = 0; i < 2; i++) {
+            accumulators[i].setBlockSize(walkers[0].accumulators[i].getBlockSize());
+            accumulators[i].putDataInfo(walkers[0].dpVirialOverlap[i].getDataInfo());
+            for (SimulationVirialOverlap2 walker : walkers) {
+                accumulators[i].merge(walker.accumulators[i]);
+            }
+        }
+    }
+
+    protected void runWalkers(final long steps) {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(walkers.length);
+        for (final SimulationVirialOverlap2 walker : walkers) {
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    walker.ai.setMaxSteps(steps);
+                    walker.ai.actionPerformed();
+                    return null;
+                }
+            });
+        }
+        parallelTasks.invokeAll(tasks);
+    }
+
+    /**
+     * Shuts down the threads used to run the walkers.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+
+    /**
+     * Makes the walkers.  Each call must return a new, uninitialized
+     * simulation with its own clusters, potentials and species.
+     */
+    public interface WalkerFactory {
+        SimulationVirialOverlap2 makeWalker(int iWalker);
+    }
+}
@@ -0,0 +1,157 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.meam;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.nbr.CriterionSimple;
+import etomica.nbr.list.NeighborListEmbeddingSum;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.IPotentialAtomic;
+import etomica.potential.IteratorDirective;
+import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialCalculationForceSum;
+import etomica.potential.PotentialCalculationVirialSum;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PotentialEmbeddingTest {
+    Space space;
+    Box box;
+    PotentialMasterList potentialMaster;
+    PotentialEAM potential;
+    IteratorDirective id;
+    double EPSILON = 1e-9;
+
+    @Before
+    public void setUp() throws Exception {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        potential = new PotentialEAM(space, 9, 6, 1, 1, 39.432, 2.0);
+        potentialMaster = new PotentialMasterList(sim, 2.4, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 256);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(1.4);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.03 * ((i * 7) % 5 - 2));
+        }
+        potentialMaster.addPotential(potential, new AtomType[]{species.getLeafType()});
+        potentialMaster.setCriterion(potential, new CriterionSimple(sim, space, potential.getRange(), 2.4));
+        potentialMaster.getNeighborManager(box).reset();
+        id = new IteratorDirective();
+    }
+
+    /**
+     * Returns the energy, virial and forces, found with the two-pass sum if
+     * twoPass is true, or else atom by atom (subclasses of the calculations
+     * that declare doCalculation are not handled by the two-pass sum).
+     */
+    protected double[] calculate(boolean twoPass) {
+        PotentialCalculationEnergySum pcEnergy = twoPass ? new PotentialCalculationEnergySum() : new SerialEnergySum();
+        pcEnergy.zeroSum();
+        potentialMaster.calculate(box, id, pcEnergy);
+        PotentialCalculationVirialSum pcVirial = twoPass ? new PotentialCalculationVirialSum() : new SerialVirialSum();
+        pcVirial.zeroSum();
+        potentialMaster.calculate(box, id, pcVirial);
+
+        IntegratorVelocityVerlet integrator = new IntegratorVelocityVerlet(potentialMaster, null, 0.001, 1, space);
+        integrator.setBox(box);
+        PotentialCalculationForceSum pcForce = twoPass ? new PotentialCalculationForceSum() : new SerialForceSum();
+        AtomLeafAgentManager<IntegratorVelocityVerlet.MyAgent> agentManager = integrator.getAgentManager();
+        pcForce.setAgentManager(agentManager);
+        pcForce.reset();
+        potentialMaster.calculate(box, id, pcForce);
+        int n = box.getLeafList().getAtomCount();
+        double[] x = new double[3 * n + 2];
+        x[0] = pcEnergy.getSum();
+        x[1] = pcVirial.getSum();
+        for (int i = 0; i < n; i++) {
+            Vector fi = agentManager.getAgent(box.getLeafList().getAtom(i)).force;
+            for (int k = 0; k < 3; k++) {
+                x[2 + 3 * i + k] = fi.getX(k);
+            }
+        }
+        agentManager.dispose();
+        return x;
+    }
+
+    protected void check(double[] expected, double[] actual) {
+        assertEquals(expected[0], actual[0], EPSILON * Math.abs(expected[0]));
+        for (int i = 1; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i], EPSILON * Math.abs(expected[0]));
+        }
+    }
+
+    @Test
+    public void testTwoPass() throws Exception {
+        double[] x = calculate(false);
+        // with one thread, the potential is summed atom by atom
+        double[] xOneThread = calculate(true);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(x[i], xOneThread[i], 0);
+        }
+
+        // the two-pass sum with a single chunk
+        NeighborListEmbeddingSum embeddingSum = new NeighborListEmbeddingSum(potentialMaster, space, 1);
+        PotentialCalculationEnergySum pcEnergy = new PotentialCalculationEnergySum();
+        pcEnergy.zeroSum();
+        embeddingSum.calculate(box, pcEnergy, potentialMaster.getNeighborManager(box), potential);
+        embeddingSum.dispose();
+        assertEquals(x[0], pcEnergy.getSum(), EPSILON * Math.abs(x[0]));
+
+        potentialMaster.setParallelThreads(3);
+        double[] xParallel = calculate(true);
+        check(x, xParallel);
+        // same answer (bit for bit) every time
+        assertEquals(xParallel[0], calculate(true)[0], 0);
+
+        potentialMaster.getNeighborManager(box).setFlatLists(true);
+        check(x, calculate(true));
+        potentialMaster.setParallelThreads(1);
+    }
+
+    static class SerialEnergySum extends PotentialCalculationEnergySum {
+        private static final long serialVersionUID = 1L;
+
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            super.doCalculation(atoms, potential);
+        }
+    }
+
+    static class SerialVirialSum extends PotentialCalculationVirialSum {
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            super.doCalculation(atoms, potential);
+        }
+    }
+
+    static class SerialForceSum extends PotentialCalculationForceSum {
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            super.doCalculation(atoms, potential);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.species.Species;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ClusterBatchTest {
+
+    /**
+     * Checks that values computed for a batch of trials made by
+     * MCMoveClusterAtomMulti match the values computed for each trial
+     * individually, and that the cached value is not disturbed.
+     */
+    protected void check(ClusterWheatleySoft cluster, int nPoints) {
+        Space space = Space.getInstance(3);
+        Species species = new SpeciesSpheresMono(space, new ElementSimple(""));
+        cluster.setTemperature(1.2);
+
+        Simulation sim = new Simulation(space);
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(cluster), space);
+        sim.addSpecies(species);
+        sim.addBox(box);
+        box.setNMolecules(species, nPoints);
+        RandomMersenneTwister random = new RandomMersenneTwister(new int[]{3, 4, 5});
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < nPoints; i++) {
+            atoms.getAtom(i).getPosition().setRandomInSphere(random);
+        }
+        box.trialNotify();
+        box.acceptNotify();
+
+        MCMoveClusterAtomMulti move = new MCMoveClusterAtomMulti(random, space);
+        move.setBox(box);
+        move.setStepSize(0.5);
+        CoordinatePairBatch batch = new CoordinatePairBatch(nPoints, 6, space);
+        double[] values = new double[batch.getConfigCount()];
+        for (int iBatch = 0; iBatch < 3; iBatch++) {
+            double oldValue = cluster.value(box);
+            move.makeTrialBatch(batch);
+            cluster.values(box, batch, values);
+            assertEquals(oldValue, cluster.value(box), 0);
+            for (int c = 0; c < values.length; c++) {
+                move.doBatchTrial(c);
+                // rejectNotify moves the atoms back with some roundoff, so
+                // later trials do not start from exactly the same positions
+                assertEquals(values[c], cluster.value(box), 1e-10 * Math.abs(values[c]));
+                // all trials start from the same configuration, so only the
+                // last one can be accepted
+                if (c == values.length - 1) {
+                    move.acceptNotify();
+                }
+                else {
+                    move.rejectNotify();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testValues() {
+        MayerFunction f = new MayerGeneralSpherical(new P2LennardJones(Space.getInstance(3)));
+        check(new ClusterWheatleySoft(5, f, 0), 5);
+        check(new ClusterWheatleySoft(6, f, 1e-12), 6);
+        ClusterWheatleySoftParallel parallel = new ClusterWheatleySoftParallel(6, f, 0, 2);
+        parallel.setMinParallelPoints(2);
+        check(parallel, 6);
+        parallel.dispose();
+    }
+
+    @Test
+    public void testMultibodyMix() {
+        MayerFunction[][] f = new MayerFunction[][]{{new MayerGeneralSpherical(new P2LennardJones(Space.getInstance(3)))}};
+        ClusterWheatleyMultibodyMix cluster = new ClusterWheatleyMultibodyMix(3, new int[]{3}, f, new MayerFunctionNonAdditive[1][1][1], 1e-12, false);
+        try {
+            // the 3-body terms would come from the box's coordinates
+            cluster.values(null, new CoordinatePairBatch(3, 2, Space.getInstance(3)), new double[2]);
+            fail("multibody clusters can't do batches");
+        }
+        catch (RuntimeException e) {
+            assertEquals("batches are not supported for multibody clusters", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.species.Species;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterWheatleySoftParallelTest {
+
+    /**
+     * Checks that the parallel recursion gives exactly the serial value for
+     * several configurations.
+     */
+    protected void check(int nPoints, int numThreads) {
+        Space space = Space.getInstance(3);
+        Species species = new SpeciesSpheresMono(space, new ElementSimple(""));
+        MayerFunction f = new MayerGeneralSpherical(new P2LennardJones(space));
+        ClusterWheatleySoft serial = new ClusterWheatleySoft(nPoints, f, 0);
+        serial.setTemperature(1.2);
+        serial.setDoCaching(false);
+        ClusterWheatleySoftParallel parallel = new ClusterWheatleySoftParallel(nPoints, f, 0, numThreads);
+        parallel.setTemperature(1.2);
+        parallel.setDoCaching(false);
+        parallel.setMinParallelPoints(2);
+
+        Simulation sim = new Simulation(space);
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(serial), space);
+        sim.addSpecies(species);
+        sim.addBox(box);
+        box.setNMolecules(species, nPoints);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(new int[]{5, 6, 7});
+        IAtomList atoms = box.getLeafList();
+        for (int iConfig = 0; iConfig < 5; iConfig++) {
+            for (int i = 0; i < nPoints; i++) {
+                Vector r = atoms.getAtom(i).getPosition();
+                r.setRandomInSphere(random);
+                r.TE(1.5);
+            }
+            box.trialNotify();
+            box.acceptNotify();
+            double expected = serial.value(box);
+            assertTrue(expected != 0);
+            assertEquals(expected, parallel.value(box), 0);
+            assertEquals(expected, ((ClusterWheatleySoftParallel) parallel.makeCopy()).value(box), 0);
+        }
+        parallel.dispose();
+    }
+
+    @Test
+    public void testValue() {
+        check(4, 2);
+        check(7, 3);
+        check(9, 4);
+    }
+}
@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.cluster;
+
+import etomica.graph.model.Graph;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VirialDiagramsCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected VirialDiagrams makeDiagrams(int n, boolean multibody, boolean flex, String cacheDir) {
+        VirialDiagrams diagrams = new VirialDiagrams(n, multibody, flex);
+        if (multibody) {
+            diagrams.setDoMinimalMulti(true);
+            diagrams.setDoMultiFromPair(true);
+            diagrams.setDoReeHoover(false);
+        }
+        diagrams.setCacheDir(cacheDir);
+        return diagrams;
+    }
+
+    protected static String toString(Set<Graph> graphs, Map<Graph,Graph> cancelMap) {
+        String s = "";
+        for (Graph g : graphs) {
+            s += g + "\n";
+            if (cancelMap != null && cancelMap.get(g) != null) {
+                s += "  " + cancelMap.get(g) + "\n";
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Checks that diagrams read from the cache are the same as those that
+     * were generated (and written to the cache).
+     */
+    protected void check(int n, boolean multibody, boolean flex) throws Exception {
+        String dir = folder.getRoot().getPath();
+        VirialDiagrams generated = makeDiagrams(n, multibody, flex, dir);
+        String expected = toString(generated.getMSMCGraphs(false, false), generated.getCancelMap());
+        if (multibody) {
+            expected += toString(generated.getMSMCGraphs(false, true), generated.getCancelMap());
+        }
+        expected += toString(generated.getExtraDisconnectedVirialGraphs(), null);
+        File file = new File(dir, generated.getCacheKey() + ".bin");
+        assertTrue(file.exists());
+
+        VirialDiagrams cached = makeDiagrams(n, multibody, flex, dir);
+        String actual = toString(cached.getMSMCGraphs(false, false), cached.getCancelMap());
+        if (multibody) {
+            actual += toString(cached.getMSMCGraphs(false, true), cached.getCancelMap());
+        }
+        actual += toString(cached.getExtraDisconnectedVirialGraphs(), null);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        check(5, false, false);
+        check(4, false, true);
+        check(4, true, true);
+    }
+
+    @Test
+    public void testCacheMix() {
+        String dir = folder.getRoot().getPath();
+        String[] s = new String[2];
+        for (int i = 0; i < 2; i++) {
+            VirialDiagramsMix2 diagrams = new VirialDiagramsMix2(4, new boolean[]{false, true});
+            diagrams.setCacheDir(dir);
+            s[i] = toString(diagrams.getMSMCGraphs(false, -1, new int[]{2, 2}), diagrams.getCancelMap());
+        }
+        assertEquals(s[0], s[1]);
+        assertTrue(s[0].length() > 0);
+    }
+}
@@ -0,0 +1,66 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.chem.elements.ElementSimple;
+import etomica.potential.P2LennardJones;
+import etomica.potential.Potential2Spherical;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.virial.*;
+import etomica.virial.cluster.Standard;
+import junit.framework.TestCase;
+
+/**
+ * Runs the VirialLJTest system with several walkers and checks the merged
+ * results against the same limits.
+ */
+public class VirialOverlapWalkersTest extends TestCase {
+
+    public void testWalkers() {
+        final int nPoints = 3;
+        final double temperature = 1;
+        final double sigmaHSRef = 1.5;
+        final Space space = Space3D.getInstance();
+        long steps = 1000;
+        int numWalkers = 4;
+
+        VirialOverlapWalkers.WalkerFactory factory = new VirialOverlapWalkers.WalkerFactory() {
+            public SimulationVirialOverlap2 makeWalker(int iWalker) {
+                MayerHardSphere fRef = new MayerHardSphere(sigmaHSRef);
+                MayerEHardSphere eRef = new MayerEHardSphere(sigmaHSRef);
+                Potential2Spherical pTarget = new P2LennardJones(space, 1.0, 1.0);
+                MayerGeneralSpherical fTarget = new MayerGeneralSpherical(pTarget);
+                MayerESpherical eTarget = new MayerESpherical(pTarget);
+                ClusterAbstract targetCluster = Standard.virialCluster(nPoints, fTarget, nPoints > 3, eTarget, true);
+                targetCluster.setTemperature(temperature);
+                ClusterAbstract refCluster = Standard.virialCluster(nPoints, fRef, nPoints > 3, eRef, true);
+                refCluster.setTemperature(temperature);
+                return new SimulationVirialOverlap2(space, new SpeciesSpheresMono(space, new ElementSimple("LJ")),
+                        nPoints, temperature, refCluster, targetCluster);
+            }
+        };
+        VirialOverlapWalkers walkers = new VirialOverlapWalkers(factory, numWalkers, 2, new int[]{1, 2, 3, 4});
+        for (int i = 0; i < numWalkers; i++) {
+            walkers.getWalker(i).integratorOS.setNumSubSteps(1000);
+        }
+        walkers.initRefPref(null, steps / 100);
+        walkers.equilibrate(null, steps / 40);
+        assertTrue("Ref pref (alpha) within expected limits: " + walkers.getRefPref(), Math.abs(walkers.getRefPref() - 1.34) < 0.12);
+
+        walkers.runSteps(steps, steps / 2);
+        walkers.dispose();
+        assertEquals(numWalkers * 1000 * steps, walkers.getAccumulators()[0].getSampleCount() + walkers.getAccumulators()[1].getSampleCount());
+
+        double[] ratioAndError = walkers.getAverageAndError();
+        double ratio = ratioAndError[0];
+        double error = ratioAndError[1];
+        // the single-walker test expects 0.0604 +/- 0.0034; the walkers take
+        // 4 times as much data
+        assertTrue("Final ratio within expected limits: " + ratio, Math.abs(ratio - 0.0604) < 0.006);
+        assertTrue("Ratio uncertainty within expected limits: " + error, Math.abs(error - 0.0017) < 0.0003);
+    }
+}
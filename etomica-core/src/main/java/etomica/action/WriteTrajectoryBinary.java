@@ -0,0 +1,325 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.action;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.integrator.Integrator;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Appends a box's configuration to a binary trajectory file each time the
+ * action is performed.  The file can be read by ConfigurationFileTrajectory,
+ * which can go directly to any frame.
+ * <p>
+ * All numbers are little-endian.  The file starts with a header
+ * <pre>
+ *   int MAGIC, int number of atoms, int dimension, int bytes per coordinate (4 or 8)
+ * </pre>
+ * followed by frames of the same size
+ * <pre>
+ *   long step, double[dimension] box size, float or double[atoms*dimension] coordinates
+ * </pre>
+ * and, once the writer is closed, a footer holding the step of each frame
+ * <pre>
+ *   long[frames] steps, int number of frames, int FOOTER_MAGIC
+ * </pre>
+ * A file whose writer was not closed has no footer; its frames can still be
+ * read.  When appending to an existing file, the footer is removed and
+ * rewritten when the writer is closed again.
+ */
+public class WriteTrajectoryBinary implements IAction {
+
+    public static final int MAGIC = 0x45545231;
+    public static final int FOOTER_MAGIC = 0x45544958;
+    public static final int HEADER_SIZE = 16;
+
+    public WriteTrajectoryBinary(Space space) {
+        writePosition = space.makeVector();
+        setDoApplyPBC(true);
+        setDoublePrecision(true);
+    }
+
+    /**
+     * Sets the file to write to.  If the writer is open, it is closed first.
+     */
+    public void setFileName(String newFileName) {
+        close();
+        fileName = newFileName;
+        wasOpened = false;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Sets the box whose atom coordinates get written to the file.
+     */
+    public void setBox(Box newBox) {
+        box = newBox;
+    }
+
+    /**
+     * Returns the box whose atom coordinates get written to the file.
+     */
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Sets the integrator whose step count is written with each frame.  If
+     * null (the default), frames are numbered from 0 instead.
+     */
+    public void setIntegrator(Integrator newIntegrator) {
+        integrator = newIntegrator;
+    }
+
+    public Integrator getIntegrator() {
+        return integrator;
+    }
+
+    /**
+     * Directs the writer to apply periodic boundary conditions or not (true
+     * by default).
+     */
+    public void setDoApplyPBC(boolean newDoApplyPBC) {
+        doApplyPBC = newDoApplyPBC;
+    }
+
+    /**
+     * Returns true if PBC are applied to coordinates written to the file.
+     */
+    public boolean getDoApplyPBC() {
+        return doApplyPBC;
+    }
+
+    /**
+     * Sets whether coordinates are written as doubles (true, the default) or
+     * floats.  This has no effect when appending to an existing file, which
+     * keeps its own precision.
+     */
+    public void setDoublePrecision(boolean newDoublePrecision) {
+        doublePrecision = newDoublePrecision;
+    }
+
+    public boolean isDoublePrecision() {
+        return doublePrecision;
+    }
+
+    /**
+     * Sets whether frames are appended to an existing file (true) or the
+     * file is overwritten when first written to (false, the default).
+     */
+    public void setAppend(boolean newAppend) {
+        append = newAppend;
+    }
+
+    public boolean isAppend() {
+        return append;
+    }
+
+    /**
+     * Returns the number of frames in the file, including those that were
+     * there before the writer was opened.
+     */
+    public int getFrameCount() {
+        return nFrames;
+    }
+
+    /**
+     * Appends the current configuration to the file, opening it first if
+     * needed.
+     */
+    public void actionPerformed() {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        int dim = writePosition.getD();
+        try {
+            if (channel == null) {
+                open(nLeaf, dim);
+            }
+            else if (nLeaf != nAtoms) {
+                throw new RuntimeException("number of atoms changed from "+nAtoms+" to "+nLeaf);
+            }
+            long step = integrator == null ? nFrames : integrator.getStepCount();
+            frameBuffer.clear();
+            frameBuffer.putLong(step);
+            Vector boxSize = box.getBoundary().getBoxSize();
+            for (int j=0; j<dim; j++) {
+                frameBuffer.putDouble(boxSize.getX(j));
+            }
+            for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+                writePosition.E(leafList.getAtom(iLeaf).getPosition());
+                if (doApplyPBC) {
+                    Vector shift = box.getBoundary().centralImage(writePosition);
+                    if (!shift.isZero()) {
+                        writePosition.PE(shift);
+                    }
+                }
+                if (bytesPerCoord == 8) {
+                    for (int j=0; j<dim; j++) {
+                        frameBuffer.putDouble(writePosition.getX(j));
+                    }
+                }
+                else {
+                    for (int j=0; j<dim; j++) {
+                        frameBuffer.putFloat((float)writePosition.getX(j));
+                    }
+                }
+            }
+            frameBuffer.flip();
+            long position = HEADER_SIZE + (long)nFrames*frameSize;
+            while (frameBuffer.hasRemaining()) {
+                position += channel.write(frameBuffer, position);
+            }
+            if (nFrames == steps.length) {
+                long[] newSteps = new long[2*steps.length];
+                System.arraycopy(steps, 0, newSteps, 0, nFrames);
+                steps = newSteps;
+            }
+            steps[nFrames++] = step;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the footer and closes the file.  Nothing happens if the file is
+     * not open.  A frame written after this is appended to the file.
+     */
+    public void close() {
+        if (channel == null) return;
+        try {
+            ByteBuffer footer = ByteBuffer.allocate(8*nFrames+8).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i=0; i<nFrames; i++) {
+                footer.putLong(steps[i]);
+            }
+            footer.putInt(nFrames);
+            footer.putInt(FOOTER_MAGIC);
+            footer.flip();
+            long position = HEADER_SIZE + (long)nFrames*frameSize;
+            while (footer.hasRemaining()) {
+                position += channel.write(footer, position);
+            }
+            channel.truncate(position);
+            channel.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * Returns the size of each frame, in bytes.
+     */
+    public static long frameSize(int nAtoms, int dim, int bytesPerCoord) {
+        return 8 + 8L*dim + (long)bytesPerCoord*nAtoms*dim;
+    }
+
+    /**
+     * Returns the steps held in the footer of a trajectory file with the
+     * given size, or null if the file has no valid footer.
+     */
+    public static long[] readFooter(FileChannel fileChannel, long fileSize, long frameSize) throws IOException {
+        if (fileSize < HEADER_SIZE + 8) return null;
+        ByteBuffer tail = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        fileChannel.read(tail, fileSize - 8);
+        int n = tail.getInt(0);
+        if (tail.getInt(4) != FOOTER_MAGIC || n < 0 || HEADER_SIZE + n*(frameSize+8) + 8 != fileSize) {
+            return null;
+        }
+        long[] steps = new long[n];
+        if (n > 0) {
+            MappedByteBuffer footer = fileChannel.map(FileChannel.MapMode.READ_ONLY, fileSize - 8 - 8L*n, 8L*n);
+            footer.order(ByteOrder.LITTLE_ENDIAN);
+            footer.asLongBuffer().get(steps);
+        }
+        return steps;
+    }
+
+    protected void open(int nLeaf, int dim) throws IOException {
+        File file = new File(fileName);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        nFrames = 0;
+        steps = new long[16];
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long fileSize = channel.size();
+        if ((append || wasOpened) && fileSize >= HEADER_SIZE) {
+            channel.read(header, 0);
+            if (header.getInt(0) != MAGIC) {
+                channel.close();
+                channel = null;
+                throw new RuntimeException(fileName+" is not a trajectory file");
+            }
+            if (header.getInt(4) != nLeaf || header.getInt(8) != dim) {
+                channel.close();
+                channel = null;
+                throw new RuntimeException(fileName+" has "+header.getInt(4)+" atoms in "+header.getInt(8)+" dimensions, not "+nLeaf+" in "+dim);
+            }
+            bytesPerCoord = header.getInt(12);
+            frameSize = frameSize(nLeaf, dim, bytesPerCoord);
+            steps = readFooter(channel, fileSize, frameSize);
+            if (steps != null) {
+                nFrames = steps.length;
+            }
+            else {
+                // no footer; read the steps from the frames themselves
+                nFrames = (int)((fileSize - HEADER_SIZE)/frameSize);
+                steps = new long[nFrames];
+                ByteBuffer stepBuffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                for (int i=0; i<nFrames; i++) {
+                    stepBuffer.clear();
+                    channel.read(stepBuffer, HEADER_SIZE + i*frameSize);
+                    steps[i] = stepBuffer.getLong(0);
+                }
+            }
+            if (steps.length == 0) {
+                steps = new long[16];
+            }
+            // drop the footer and any partial frame
+            channel.truncate(HEADER_SIZE + nFrames*frameSize);
+        }
+        else {
+            bytesPerCoord = doublePrecision ? 8 : 4;
+            frameSize = frameSize(nLeaf, dim, bytesPerCoord);
+            channel.truncate(0);
+            header.putInt(MAGIC).putInt(nLeaf).putInt(dim).putInt(bytesPerCoord);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        nAtoms = nLeaf;
+        wasOpened = true;
+        frameBuffer = ByteBuffer.allocateDirect((int)frameSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private String fileName;
+    private Box box;
+    private Integrator integrator;
+    private boolean doApplyPBC, doublePrecision, append;
+    protected final Vector writePosition;
+    protected FileChannel channel;
+    protected ByteBuffer frameBuffer;
+    protected boolean wasOpened;
+    protected int nAtoms, bytesPerCoord, nFrames;
+    protected long frameSize;
+    protected long[] steps;
+}
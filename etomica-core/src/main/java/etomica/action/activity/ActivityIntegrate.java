@@ -102,6 +102,14 @@ public class ActivityIntegrate extends Activity {
 		this.maxSteps = maxSteps;
 	}
     
+    /**
+     * Returns true if an overlap found when the integrator is reset at the
+     * start of the run is ignored.
+     */
+    public boolean isIgnoreOverlap() {
+        return ignoreOverlap;
+    }
+
     public long getCurrentStep() {
         return stepCount;
     }
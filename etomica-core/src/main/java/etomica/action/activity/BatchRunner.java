@@ -0,0 +1,246 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.action.activity;
+
+import java.io.PrintStream;
+
+import etomica.action.IAction;
+import etomica.exception.ConfigurationOverlapException;
+import etomica.integrator.Integrator;
+import etomica.simulation.Simulation;
+import etomica.util.Arrays;
+
+/**
+ * Runs the actions held by a Controller for a batch job, without the
+ * machinery the Controller needs to interact with a GUI.  All actions are
+ * performed on the calling thread.  An ActivityIntegrate is not run itself;
+ * instead its integrator is stepped directly, without sleeping or checking
+ * for pause requests between steps.  The actions of an ActivityGroup are
+ * performed in turn in the same way.
+ * <p>
+ * While an integrator runs, a checkpoint action (typically writing the
+ * configuration and the data collected so far) can be performed every
+ * checkpointInterval steps and after the last step, and progress can be
+ * reported every progressInterval steps.  The runner can be halted from
+ * another thread; the run then ends after the current step.
+ * <p>
+ * The Controller's action status and events are updated as they would be if
+ * the Controller ran the actions, but the Controller is not active while
+ * the runner runs, so it should not be paused, halted or sent urgent actions
+ * meanwhile.
+ */
+public class BatchRunner {
+
+    public BatchRunner(Simulation sim) {
+        this(sim.getController());
+    }
+
+    public BatchRunner(Controller controller) {
+        this.controller = controller;
+        progressStream = System.out;
+    }
+
+    /**
+     * Sets the action performed every interval steps while an integrator
+     * runs, and after its last step.  An interval of 0 (the default) or a
+     * null action disables checkpointing.
+     */
+    public void setCheckpoint(IAction newCheckpointAction, long interval) {
+        if (interval < 0) throw new IllegalArgumentException("interval must not be negative");
+        checkpointAction = newCheckpointAction;
+        checkpointInterval = interval;
+    }
+
+    public IAction getCheckpointAction() {
+        return checkpointAction;
+    }
+
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Sets the number of steps between progress reports.  An interval of 0
+     * (the default) disables progress reports.
+     */
+    public void setProgressInterval(long interval) {
+        if (interval < 0) throw new IllegalArgumentException("interval must not be negative");
+        progressInterval = interval;
+    }
+
+    public long getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * Sets the stream progress reports are written to (System.out by
+     * default).
+     */
+    public void setProgressStream(PrintStream newProgressStream) {
+        progressStream = newProgressStream;
+    }
+
+    public PrintStream getProgressStream() {
+        return progressStream;
+    }
+
+    /**
+     * Returns the number of steps taken by the integrator currently running.
+     */
+    public long getCurrentStep() {
+        return stepCount;
+    }
+
+    /**
+     * Requests that the run end after the current step (or current action,
+     * if it is not an ActivityIntegrate).  This can be called from any
+     * thread and returns immediately.
+     */
+    public void halt() {
+        haltRequested = true;
+    }
+
+    /**
+     * Performs the Controller's pending actions in sequence.  If an action
+     * throws, it is marked as failed and a RuntimeException is thrown.
+     */
+    public void run() {
+        haltRequested = false;
+        controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.START));
+        while (!haltRequested) {
+            IAction action;
+            synchronized (controller) {
+                if (controller.numActions == 0) break;
+                action = controller.pendingActions[0];
+                controller.removeAction(action);
+                controller.actionStatusMap.put(action, Controller.ActionStatus.CURRENT);
+                controller.currentAction = action;
+            }
+            controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.START_ACTION, action));
+            Throwable exception = null;
+            try {
+                performAction(action);
+            }
+            catch (Throwable e) {
+                exception = e;
+            }
+
+            synchronized (controller) {
+                controller.actionStatusMap.remove(action);
+                if (exception != null) {
+                    controller.actionStatusMap.put(action, Controller.ActionStatus.FAILED);
+                    controller.actionExceptionMap.put(action, exception);
+                }
+                else if (haltRequested) {
+                    controller.actionStatusMap.put(action, Controller.ActionStatus.STOPPED);
+                }
+                else {
+                    controller.actionStatusMap.put(action, Controller.ActionStatus.COMPLETED);
+                }
+                controller.completedActions = (IAction[])Arrays.addObject(controller.completedActions, action);
+                controller.currentAction = null;
+            }
+            controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.END_ACTION, action));
+
+            if (exception != null) {
+                controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.NO_MORE_ACTIONS));
+                throw new RuntimeException("action failed", exception);
+            }
+        }
+        if (haltRequested) {
+            controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.HALTED));
+        }
+        controller.getEventManager().fireEvent(new ControllerEvent(controller, ControllerEvent.NO_MORE_ACTIONS));
+    }
+
+    /**
+     * Performs the given action.  An ActivityIntegrate's integrator is run
+     * by runIntegrator and the actions of an ActivityGroup are performed in
+     * turn (until a halt is requested).
+     */
+    protected void performAction(IAction action) {
+        if (action instanceof ActivityIntegrate) {
+            runIntegrator((ActivityIntegrate)action);
+        }
+        else if (action instanceof ActivityGroup) {
+            for (IAction groupAction : ((ActivityGroup)action).getAllActions()) {
+                if (haltRequested) break;
+                performAction(groupAction);
+            }
+        }
+        else {
+            action.actionPerformed();
+        }
+    }
+
+    /**
+     * Steps the activity's integrator maxSteps times, performing checkpoints
+     * and progress reports along the way.
+     */
+    protected void runIntegrator(ActivityIntegrate activity) {
+        Integrator integrator = activity.getIntegrator();
+        try {
+            integrator.reset();
+        }
+        catch (ConfigurationOverlapException e) {
+            if (!activity.isIgnoreOverlap()) {
+                throw e;
+            }
+        }
+        integrator.resetStepCount();
+        long maxSteps = activity.getMaxSteps();
+        long nextCheckpoint = (checkpointAction != null && checkpointInterval > 0) ? checkpointInterval : Long.MAX_VALUE;
+        long nextProgress = (progressInterval > 0 && progressStream != null) ? progressInterval : Long.MAX_VALUE;
+        long startTime = System.currentTimeMillis();
+        long lastCheckpoint = 0;
+        long step = 0;
+        stepCount = 0;
+        while (step < maxSteps && !haltRequested) {
+            // step without checks until the next checkpoint or report
+            long nextStop = Math.min(maxSteps, Math.min(nextCheckpoint, nextProgress));
+            while (step < nextStop && !haltRequested) {
+                integrator.doStep();
+                step++;
+            }
+            stepCount = step;
+            activity.stepCount = step;
+            if (step == nextCheckpoint) {
+                checkpointAction.actionPerformed();
+                lastCheckpoint = step;
+                nextCheckpoint += checkpointInterval;
+            }
+            if (step == nextProgress) {
+                reportProgress(activity, maxSteps, System.currentTimeMillis() - startTime);
+                nextProgress += progressInterval;
+            }
+        }
+        if (nextCheckpoint < Long.MAX_VALUE && lastCheckpoint != step) {
+            checkpointAction.actionPerformed();
+        }
+    }
+
+    /**
+     * Writes a line to the progress stream giving the number of steps done,
+     * the elapsed time and the estimated time remaining.
+     */
+    protected void reportProgress(ActivityIntegrate activity, long maxSteps, long elapsedMillis) {
+        String line = activity.getIntegrator().getClass().getSimpleName()+" step "+stepCount;
+        if (maxSteps < Long.MAX_VALUE) {
+            line += " of "+maxSteps+" ("+(100*stepCount/maxSteps)+"%)";
+        }
+        line += ", "+(elapsedMillis/1000.0)+" s";
+        if (maxSteps < Long.MAX_VALUE && stepCount > 0) {
+            line += ", "+((double)elapsedMillis*(maxSteps-stepCount)/stepCount/1000.0)+" s remaining";
+        }
+        progressStream.println(line);
+    }
+
+    protected final Controller controller;
+    protected IAction checkpointAction;
+    protected long checkpointInterval, progressInterval;
+    protected PrintStream progressStream;
+    protected volatile long stepCount;
+    protected volatile boolean haltRequested;
+}
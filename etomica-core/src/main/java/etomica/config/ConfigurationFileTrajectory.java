@@ -0,0 +1,217 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.config;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import etomica.action.WriteTrajectoryBinary;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Reads configurations from a trajectory file written by
+ * WriteTrajectoryBinary and assigns them to the leaf atoms in a box.  The
+ * file is memory-mapped, so any frame can be read without reading the ones
+ * before it.  initializeCoordinates uses the current frame (the last frame
+ * by default) and also sets the box size to that of the frame.
+ * <p>
+ * The frames are those in the file when it was opened; frames appended
+ * later are seen only after calling reload.
+ */
+public class ConfigurationFileTrajectory implements Configuration {
+
+    public ConfigurationFileTrajectory(String aFileName) {
+        fileName = aFileName;
+        setDoSetBoxSize(true);
+        reload();
+    }
+
+    /**
+     * Opens (or reopens) the file and maps its frames.  The current frame is
+     * set to the last frame.
+     */
+    public void reload() {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                long fileSize = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(WriteTrajectoryBinary.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(header, 0);
+                if (fileSize < WriteTrajectoryBinary.HEADER_SIZE || header.getInt(0) != WriteTrajectoryBinary.MAGIC) {
+                    throw new RuntimeException(fileName+" is not a trajectory file");
+                }
+                nAtoms = header.getInt(4);
+                dim = header.getInt(8);
+                bytesPerCoord = header.getInt(12);
+                frameSize = WriteTrajectoryBinary.frameSize(nAtoms, dim, bytesPerCoord);
+                steps = WriteTrajectoryBinary.readFooter(channel, fileSize, frameSize);
+                nFrames = steps != null ? steps.length : (int)((fileSize - WriteTrajectoryBinary.HEADER_SIZE)/frameSize);
+
+                // each segment holds as many whole frames as fit in a buffer
+                framesPerSegment = (int)Math.max(1, Integer.MAX_VALUE/frameSize);
+                int nSegments = (nFrames + framesPerSegment - 1)/framesPerSegment;
+                segments = new MappedByteBuffer[nSegments];
+                for (int i=0; i<nSegments; i++) {
+                    int segmentFrames = Math.min(framesPerSegment, nFrames - i*framesPerSegment);
+                    long start = WriteTrajectoryBinary.HEADER_SIZE + (long)i*framesPerSegment*frameSize;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, segmentFrames*frameSize);
+                    segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                }
+            }
+            finally {
+                // the mapped buffers remain valid after the file is closed
+                raf.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException("Cannot read "+fileName+", caught IOException: " + e.getMessage());
+        }
+        frame = nFrames - 1;
+    }
+
+    /**
+     * Returns the number of frames in the file.
+     */
+    public int getFrameCount() {
+        return nFrames;
+    }
+
+    public int getAtomCount() {
+        return nAtoms;
+    }
+
+    /**
+     * Sets the frame used by initializeCoordinates.
+     */
+    public void setFrame(int newFrame) {
+        if (newFrame < 0 || newFrame >= nFrames) {
+            throw new IllegalArgumentException("frame "+newFrame+" not in [0,"+nFrames+")");
+        }
+        frame = newFrame;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns the step written with the given frame.
+     */
+    public long getStep(int k) {
+        if (steps != null) return steps[k];
+        return segmentFor(k).getLong(offsetFor(k));
+    }
+
+    /**
+     * Returns the last frame whose step is not more than the given step, or
+     * -1 if there is none.  Steps must increase from one frame to the next.
+     */
+    public int findFrame(long step) {
+        int lo = 0, hi = nFrames;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (getStep(mid) <= step) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /**
+     * Copies the box size of frame k into boxSize.
+     */
+    public void getBoxSize(int k, Vector boxSize) {
+        ByteBuffer segment = segmentFor(k);
+        int offset = offsetFor(k) + 8;
+        for (int j=0; j<dim; j++) {
+            boxSize.setX(j, segment.getDouble(offset + 8*j));
+        }
+    }
+
+    /**
+     * Copies the coordinates of frame k into x, which must have at least
+     * nAtoms*dim elements, ordered by atom.
+     */
+    public void getCoordinates(int k, double[] x) {
+        ByteBuffer segment = segmentFor(k);
+        int offset = offsetFor(k) + 8 + 8*dim;
+        int n = nAtoms*dim;
+        if (bytesPerCoord == 8) {
+            for (int i=0; i<n; i++) {
+                x[i] = segment.getDouble(offset + 8*i);
+            }
+        }
+        else {
+            for (int i=0; i<n; i++) {
+                x[i] = segment.getFloat(offset + 4*i);
+            }
+        }
+    }
+
+    /**
+     * Sets whether initializeCoordinates sets the box size from the frame
+     * (true by default).
+     */
+    public void setDoSetBoxSize(boolean newDoSetBoxSize) {
+        doSetBoxSize = newDoSetBoxSize;
+    }
+
+    public boolean getDoSetBoxSize() {
+        return doSetBoxSize;
+    }
+
+    public void initializeCoordinates(Box box) {
+        if (nFrames == 0) {
+            throw new RuntimeException(fileName+" has no frames");
+        }
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        if (nLeaf != nAtoms) {
+            throw new RuntimeException(fileName+" has "+nAtoms+" atoms, but the box has "+nLeaf);
+        }
+        if (doSetBoxSize) {
+            Vector boxSize = Space.makeVector(dim);
+            getBoxSize(frame, boxSize);
+            box.getBoundary().setBoxSize(boxSize);
+        }
+        if (x == null || x.length != nAtoms*dim) {
+            x = new double[nAtoms*dim];
+        }
+        getCoordinates(frame, x);
+        for (int iLeaf=0; iLeaf<nLeaf; iLeaf++) {
+            Vector p = leafList.getAtom(iLeaf).getPosition();
+            for (int j=0; j<dim; j++) {
+                p.setX(j, x[iLeaf*dim+j]);
+            }
+        }
+    }
+
+    protected ByteBuffer segmentFor(int k) {
+        return segments[k/framesPerSegment];
+    }
+
+    protected int offsetFor(int k) {
+        return (int)((k%framesPerSegment)*frameSize);
+    }
+
+    protected final String fileName;
+    protected boolean doSetBoxSize;
+    protected int nAtoms, dim, bytesPerCoord, nFrames, framesPerSegment, frame;
+    protected long frameSize;
+    protected long[] steps;
+    protected MappedByteBuffer[] segments;
+    protected double[] x;
+}
@@ -97,6 +97,22 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         super.doBlockSum();
     }
 
+    /**
+     * Adds the data collected by another accumulator to this one, including
+     * the covariance sums.  See AccumulatorAverageFixed.merge.
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (!(other instanceof AccumulatorAverageCovariance)
+                || ((AccumulatorAverageCovariance)other).fullCovariance != fullCovariance) {
+            throw new IllegalArgumentException("can only merge an AccumulatorAverageCovariance with the same fullCovariance setting");
+        }
+        super.merge(other);
+        AccumulatorAverageCovariance otherCov = (AccumulatorAverageCovariance)other;
+        if (otherCov.covSum == null) return;
+        covSum.PE(otherCov.covSum);
+        blockCovSum.PE(otherCov.blockCovSum);
+    }
+
     public IData getData() {
         if (average == null)
             return null;
@@ -104,7 +120,7 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
 
         int n = average.getLength();
         covariance.E(covSum);
-        long nTotalData = count*blockSize + (blockCountDown-blockSize);
+        long nTotalData = count*blockSize + (blockSize-blockCountDown);
         covariance.TE(1.0/nTotalData);
         double[] x = covariance.getData();
 
@@ -131,6 +131,50 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         currentBlockSum.E(0.0);
     }
 
+    /**
+     * Adds the data collected by another accumulator to this one, as if this
+     * accumulator had collected it after its own data.  The other
+     * accumulator's completed blocks are added as blocks.  The data in its
+     * incomplete block contributes to the average and standard deviation but
+     * not to the block statistics.  If the incomplete blocks together contain
+     * a full block's worth of data, no more data should be added to this
+     * accumulator via addData.  The other accumulator is not changed.
+     *
+     * @param other accumulator with the same block size that received the
+     *              same type of data
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        if (other.blockSize != blockSize) {
+            throw new IllegalArgumentException("block sizes must match");
+        }
+        if (other.sum == null) return;
+        if (sum == null) {
+            throw new IllegalStateException("accumulator has not received its data info");
+        }
+        if (other.count > 0) {
+            if (count > 0) {
+                // the other accumulator's first block follows our most recent block
+                work.E(mostRecentBlock);
+                work.TE(other.firstBlock);
+                correlationSum.PE(work);
+            }
+            else {
+                firstBlock.E(other.firstBlock);
+            }
+            correlationSum.PE(other.correlationSum);
+            mostRecentBlock.E(other.mostRecentBlock);
+            sum.PE(other.sum);
+            sumBlockSquare.PE(other.sumBlockSquare);
+            count += other.count;
+        }
+        if (other.blockCountDown < blockSize || other.count > 0) {
+            mostRecent.E(other.mostRecent);
+        }
+        currentBlockSum.PE(other.currentBlockSum);
+        blockCountDown -= blockSize - other.blockCountDown;
+        sumSquare.PE(other.sumSquare);
+    }
+
     /**
      * Returns a DataGroup with Data instances holding the statistics kept by
      * this accumulator (as described in general comments for this class).
@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * DataSink that lets several threads accumulate averages of the same
+ * quantity without locking.  Each thread that calls putData (or
+ * getAccumulator) gets its own accumulator, made by the factory given at
+ * construction; the accumulators are combined into a single one, with block
+ * averages, block correlation and (for AccumulatorAverageCovariance) the
+ * covariances intact, by merge.  Workers that are not tied to a thread (such
+ * as walkers that might run on any thread of a pool) can instead be given
+ * their own accumulator from makeAccumulator and feed it directly.
+ * <p>
+ * Data given to putData goes to the calling thread's accumulator without
+ * being pushed on to the accumulator's sinks.  putDataInfo likewise goes to
+ * the calling thread's accumulator, and is also kept for accumulators made
+ * later and for the merged accumulator.  merge should only be called when
+ * no data is being added.
+ * <p>
+ * The accumulators are merged in the order they were made, so the merged
+ * averages are reproducible only if the accumulators are made in a fixed
+ * order (via makeAccumulator, before the workers start).
+ */
+public class AccumulatorAverageParallel<T extends AccumulatorAverageFixed> implements IDataSink {
+
+    protected final AccumulatorFactory<T> factory;
+    protected final ConcurrentLinkedQueue<T> accumulators;
+    protected final ThreadLocal<T> threadAccumulator;
+    protected volatile IEtomicaDataInfo dataInfo;
+    protected T merged;
+    protected IEtomicaDataInfo mergedDataInfo;
+
+    public AccumulatorAverageParallel(AccumulatorFactory<T> factory) {
+        this.factory = factory;
+        accumulators = new ConcurrentLinkedQueue<T>();
+        threadAccumulator = new ThreadLocal<T>() {
+            protected T initialValue() {
+                return makeAccumulator();
+            }
+        };
+    }
+
+    /**
+     * Returns a new accumulator whose data will be included by merge.  If
+     * this sink has received its DataInfo, the accumulator is given it.
+     */
+    public T makeAccumulator() {
+        T accumulator = factory.makeAccumulator();
+        IEtomicaDataInfo info = dataInfo;
+        if (info != null) {
+            accumulator.putDataInfo(info);
+        }
+        accumulators.add(accumulator);
+        return accumulator;
+    }
+
+    /**
+     * Returns the calling thread's accumulator, making it if needed.
+     */
+    public T getAccumulator() {
+        return threadAccumulator.get();
+    }
+
+    /**
+     * Adds the given data to the calling thread's accumulator.  The DataInfo
+     * must have been given (to putDataInfo) first.
+     */
+    public void putData(IData data) {
+        T accumulator = threadAccumulator.get();
+        if (accumulator.sum == null) {
+            // made before the DataInfo arrived (from another thread)
+            IEtomicaDataInfo info = dataInfo;
+            if (info == null) {
+                throw new IllegalStateException("no DataInfo has been received");
+            }
+            accumulator.putDataInfo(info);
+        }
+        accumulator.addData(data);
+    }
+
+    /**
+     * Gives the DataInfo to the calling thread's accumulator and keeps it
+     * for accumulators made later and for the merged accumulator.
+     */
+    public void putDataInfo(IEtomicaDataInfo inputDataInfo) {
+        dataInfo = inputDataInfo;
+        threadAccumulator.get().putDataInfo(inputDataInfo);
+    }
+
+    /**
+     * Returns null; the accumulators take any data.
+     */
+    public DataPipe getDataCaster(IEtomicaDataInfo inputDataInfo) {
+        return null;
+    }
+
+    /**
+     * Combines the data from all accumulators and returns the result.  The
+     * returned accumulator is reused (and its data replaced) by the next call
+     * to merge.  This must not be called while data is being added.
+     */
+    public T merge() {
+        if (dataInfo == null) {
+            throw new IllegalStateException("no DataInfo has been received");
+        }
+        if (merged == null) {
+            merged = factory.makeAccumulator();
+        }
+        if (mergedDataInfo != dataInfo) {
+            mergedDataInfo = dataInfo;
+            merged.putDataInfo(mergedDataInfo);
+        }
+        merged.reset();
+        for (T accumulator : accumulators) {
+            merged.merge(accumulator);
+        }
+        return merged;
+    }
+
+    /**
+     * Resets all of the accumulators.  This must not be called while data is
+     * being added.
+     */
+    public void reset() {
+        for (T accumulator : accumulators) {
+            accumulator.reset();
+        }
+    }
+
+    /**
+     * Makes the accumulators that hold the data from each thread or worker.
+     * All of them must have the same block size.
+     */
+    public interface AccumulatorFactory<T extends AccumulatorAverageFixed> {
+        public T makeAccumulator();
+    }
+}
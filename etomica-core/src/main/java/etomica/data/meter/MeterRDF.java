@@ -150,11 +150,13 @@ public class MeterRDF implements IAction, IEtomicaDataSource, DataSourceIndepend
             numAtomPairs = numAtoms*(numAtoms-1)/2;
         }
         else {
-            iterator.setBox(box);
-            iterator.reset();
-            for (IAtomList pair = iterator.next(); pair != null; pair = iterator.next()) {
-                if (pair.getAtom(0).getType() != type1 || pair.getAtom(1).getType() != type2) continue;
-                numAtomPairs++;
+            // count the pairs (i<j) where atom i is type1 and atom j is type2
+            IAtomList leafList = box.getLeafList();
+            long numType1 = 0;
+            for (int j = 0; j < leafList.getAtomCount(); j++) {
+                AtomType type = leafList.getAtom(j).getType();
+                if (type == type2) numAtomPairs += numType1;
+                if (type == type1) numType1++;
             }
         }
 	    double norm = numAtomPairs * callCount / box.getBoundary().volume();
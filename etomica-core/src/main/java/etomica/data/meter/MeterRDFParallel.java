@@ -0,0 +1,237 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.space.Boundary;
+import etomica.space.BoundaryRectangular;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * MeterRDF that takes the RDF using several threads and, when the box is
+ * rectangular and periodic and at least 3 times xMax on each side, cell lists
+ * with cells at least xMax wide, so that only nearby pairs are examined.
+ * Each thread fills its own histogram, and the histograms are added into
+ * the RDF sum afterwards, so the result is the same as MeterRDF's.
+ * <p>
+ * The boundary's nearestImage method must be safe to call from several
+ * threads.  Call dispose when the meter is no longer needed.
+ */
+public class MeterRDFParallel extends MeterRDF {
+
+    private static final long serialVersionUID = 1L;
+    protected final ParallelTasks parallelTasks;
+    protected final int numThreads;
+    protected final List<Callable<Object>> tasks;
+    protected final long[][] threadSums;
+    protected final Vector[] work;
+    // per-thread cell index and neighbor offset for sumCells
+    protected final int[][] cellIdx, cellOffset;
+    protected int[] atomCell, cellOffsets, cellAtoms;
+    protected int[] nCells;
+    protected boolean useCells;
+    protected double xMaxSquared;
+
+    public MeterRDFParallel(Space space, int numThreads) {
+        super(space);
+        parallelTasks = new ParallelTasks(numThreads);
+        this.numThreads = numThreads;
+        threadSums = new long[numThreads][];
+        work = new Vector[numThreads];
+        cellIdx = new int[numThreads][space.D()];
+        cellOffset = new int[numThreads][space.D()];
+        nCells = new int[space.D()];
+        atomCell = new int[0];
+        cellAtoms = new int[0];
+        cellOffsets = new int[1];
+        tasks = new ArrayList<Callable<Object>>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            work[i] = space.makeVector();
+            final int thread = i;
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    if (useCells) {
+                        sumCells(thread);
+                    }
+                    else {
+                        sumAllPairs(thread);
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of threads used to take the RDF
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void actionPerformed() {
+        if (rData != xDataSource.getData() ||
+            data.getLength() != rData.getLength() ||
+            xDataSource.getXMax() != xMax) {
+            reset();
+        }
+
+        xMaxSquared = xMax * xMax;
+        for (int i = 0; i < numThreads; i++) {
+            if (threadSums[i] == null || threadSums[i].length != gSum.length) {
+                threadSums[i] = new long[gSum.length];
+            }
+        }
+        useCells = assignCells();
+        parallelTasks.invokeAll(tasks);
+        for (int i = 0; i < numThreads; i++) {
+            long[] s = threadSums[i];
+            for (int j = 0; j < gSum.length; j++) {
+                gSum[j] += s[j];
+                s[j] = 0;
+            }
+        }
+        callCount++;
+    }
+
+    /**
+     * Sorts the atoms into cells, if the box allows it.  Returns false if
+     * cells can't be used.
+     */
+    protected boolean assignCells() {
+        Boundary boundary = box.getBoundary();
+        if (!(boundary instanceof BoundaryRectangular)) return false;
+        int D = space.D();
+        Vector dimensions = boundary.getBoxSize();
+        int totalCells = 1;
+        for (int d = 0; d < D; d++) {
+            if (!boundary.getPeriodicity(d)) return false;
+            nCells[d] = (int) (dimensions.getX(d) / xMax);
+            if (nCells[d] < 3) return false;
+            totalCells *= nCells[d];
+        }
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        if (atomCell.length < nAtoms) {
+            atomCell = new int[nAtoms];
+            cellAtoms = new int[nAtoms];
+        }
+        if (cellOffsets.length < totalCells + 1) {
+            cellOffsets = new int[totalCells + 1];
+        }
+        else {
+            for (int c = 0; c <= totalCells; c++) {
+                cellOffsets[c] = 0;
+            }
+        }
+        for (int i = 0; i < nAtoms; i++) {
+            Vector r = leafList.getAtom(i).getPosition();
+            int c = 0;
+            for (int d = 0; d < D; d++) {
+                double f = r.getX(d) / dimensions.getX(d) + 0.5;
+                f -= Math.floor(f);
+                int k = (int) (f * nCells[d]);
+                if (k == nCells[d]) k--;
+                c = c * nCells[d] + k;
+            }
+            atomCell[i] = c;
+            cellOffsets[c + 1]++;
+        }
+        for (int c = 0; c < totalCells; c++) {
+            cellOffsets[c + 1] += cellOffsets[c];
+        }
+        // atoms within each cell end up in leaf-index order
+        for (int i = 0; i < nAtoms; i++) {
+            cellAtoms[cellOffsets[atomCell[i]]++] = i;
+        }
+        for (int c = totalCells; c > 0; c--) {
+            cellOffsets[c] = cellOffsets[c - 1];
+        }
+        cellOffsets[0] = 0;
+        return true;
+    }
+
+    /**
+     * Adds the pair (i, j), i < j, to the thread's histogram if it is within
+     * xMax and has the right types.
+     */
+    protected void addPair(IAtomList leafList, int i, int j, Vector dr, long[] sum) {
+        if (type1 != null && (leafList.getAtom(i).getType() != type1 || leafList.getAtom(j).getType() != type2)) return;
+        dr.Ev1Mv2(leafList.getAtom(j).getPosition(), leafList.getAtom(i).getPosition());
+        box.getBoundary().nearestImage(dr);
+        double r2 = dr.squared();
+        if (r2 < xMaxSquared) {
+            sum[xDataSource.getIndex(Math.sqrt(r2))]++;
+        }
+    }
+
+    protected void sumAllPairs(int thread) {
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        Vector dr = work[thread];
+        long[] sum = threadSums[thread];
+        // interleave the atoms so each thread gets a similar number of pairs
+        for (int i = thread; i < nAtoms; i += numThreads) {
+            for (int j = i + 1; j < nAtoms; j++) {
+                addPair(leafList, i, j, dr, sum);
+            }
+        }
+    }
+
+    protected void sumCells(int thread) {
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        int D = space.D();
+        Vector dr = work[thread];
+        long[] sum = threadSums[thread];
+        int[] idx = cellIdx[thread];
+        int[] offset = cellOffset[thread];
+        int nNbrCells = 1;
+        for (int d = 0; d < D; d++) {
+            nNbrCells *= 3;
+        }
+        for (int i = thread; i < nAtoms; i += numThreads) {
+            AtomType iType = leafList.getAtom(i).getType();
+            if (type1 != null && iType != type1) continue;
+            int c = atomCell[i];
+            for (int d = D - 1; d >= 0; d--) {
+                idx[d] = c % nCells[d];
+                c /= nCells[d];
+            }
+            // loop over the 3^D cells around (and including) atom i's cell
+            for (int n = 0; n < nNbrCells; n++) {
+                int m = n;
+                int nbrCell = 0;
+                for (int d = 0; d < D; d++) {
+                    offset[d] = m % 3 - 1;
+                    m /= 3;
+                    int k = idx[d] + offset[d];
+                    if (k < 0) k += nCells[d];
+                    else if (k >= nCells[d]) k -= nCells[d];
+                    nbrCell = nbrCell * nCells[d] + k;
+                }
+                for (int k = cellOffsets[nbrCell]; k < cellOffsets[nbrCell + 1]; k++) {
+                    int j = cellAtoms[k];
+                    if (j <= i) continue;
+                    addPair(leafList, i, j, dr, sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shuts down the threads used by this meter.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+}
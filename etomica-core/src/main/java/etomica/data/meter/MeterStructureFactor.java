@@ -149,21 +149,28 @@ public class MeterStructureFactor implements IEtomicaDataSource, DataSourceIndep
 	}
 
     public IData getData() {
-        long numAtoms = atomList.getAtomCount();
-        long n2 = numAtoms*numAtoms;
         for(int k=0; k<waveVec.length; k++){
-            double term1 = 0;
-            double term2 = 0;
-            for(int i=0; i<numAtoms; i++){
-                double dotprod = waveVec[k].dot(atomList.getAtom(i).getPosition());
-                term1 += Math.cos(dotprod);
-                term2 += Math.sin(dotprod);
-            }
-            struct[k] = ((term1*term1) + (term2*term2))/n2;
+            struct[k] = structureFactor(k);
         }
         return data;
     }
 
+    /**
+     * Returns the structure factor for wave vector k.
+     */
+    protected double structureFactor(int k) {
+        long numAtoms = atomList.getAtomCount();
+        long n2 = numAtoms*numAtoms;
+        double term1 = 0;
+        double term2 = 0;
+        for(int i=0; i<numAtoms; i++){
+            double dotprod = waveVec[k].dot(atomList.getAtom(i).getPosition());
+            term1 += Math.cos(dotprod);
+            term2 += Math.sin(dotprod);
+        }
+        return ((term1*term1) + (term2*term2))/n2;
+    }
+
     public DataTag getTag() {
         return tag;
     }
@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.box.Box;
+import etomica.data.IData;
+import etomica.space.Space;
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * MeterStructureFactor that divides the wave vectors among several threads.
+ * Each wave vector is handled exactly as in MeterStructureFactor, so the
+ * results are identical.  Call dispose when the meter is no longer needed.
+ */
+public class MeterStructureFactorParallel extends MeterStructureFactor {
+
+    protected final ParallelTasks parallelTasks;
+    protected final int numThreads;
+    protected final List<Callable<Object>> tasks;
+
+    public MeterStructureFactorParallel(Space space, Box aBox, double cutoff, int numThreads) {
+        super(space, aBox, cutoff);
+        parallelTasks = new ParallelTasks(numThreads);
+        this.numThreads = numThreads;
+        tasks = new ArrayList<Callable<Object>>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            final int thread = i;
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    int nVec = waveVec.length;
+                    computeStruct(nVec * thread / MeterStructureFactorParallel.this.numThreads,
+                            nVec * (thread + 1) / MeterStructureFactorParallel.this.numThreads);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of threads used to compute the structure factor
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Computes the structure factor for wave vectors kStart to kEnd-1.
+     */
+    protected void computeStruct(int kStart, int kEnd) {
+        for (int k = kStart; k < kEnd; k++) {
+            struct[k] = structureFactor(k);
+        }
+    }
+
+    public IData getData() {
+        parallelTasks.invokeAll(tasks);
+        return data;
+    }
+
+    /**
+     * Shuts down the threads used by this meter.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+}
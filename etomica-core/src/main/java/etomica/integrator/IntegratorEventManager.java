@@ -9,6 +9,9 @@ import java.util.ArrayList;
 public class IntegratorEventManager {
 
     protected final ArrayList<IntegratorListener> listeners = new ArrayList<IntegratorListener>();
+    // copy of listeners that events iterate over, replaced (not modified)
+    // when a listener is added or removed, even during an event
+    protected IntegratorListener[] listenerArray = new IntegratorListener[0];
     private final IntegratorEvent event;
     protected boolean eventing;
 
@@ -17,7 +20,9 @@ public class IntegratorEventManager {
     }
 
     /**
-     * Adds the given listener to this event manager.
+     * Adds the given listener to this event manager.  If this is called
+     * while an event is being fired, the listener receives only later
+     * events.
      */
     public void addListener(IntegratorListener newListener) {
         if (newListener == null) throw new NullPointerException("Cannot add null as a listener to Integrator");
@@ -25,13 +30,17 @@ public class IntegratorEventManager {
             throw new RuntimeException(newListener + " is already an interval action");
         }
         listeners.add(newListener);
+        listenerArray = listeners.toArray(new IntegratorListener[listeners.size()]);
     }
 
     /**
-     * Removes the given listener from this event manager.
+     * Removes the given listener from this event manager.  If this is called
+     * while an event is being fired, the listener still receives that event.
      */
     public void removeListener(IntegratorListener listener) {
-        listeners.remove(listener);
+        if (listeners.remove(listener)) {
+            listenerArray = listeners.toArray(new IntegratorListener[listeners.size()]);
+        }
     }
 
     /**
@@ -43,7 +52,7 @@ public class IntegratorEventManager {
 
     public void stepStarted() {
         eventing = true;
-        for (IntegratorListener listener : listeners) {
+        for (IntegratorListener listener : listenerArray) {
             listener.integratorStepStarted(event);
         }
         eventing = false;
@@ -51,7 +60,7 @@ public class IntegratorEventManager {
 
     public void stepFinished() {
         eventing = true;
-        for (IntegratorListener listener : listeners) {
+        for (IntegratorListener listener : listenerArray) {
             listener.integratorStepFinished(event);
         }
         eventing = false;
@@ -59,7 +68,7 @@ public class IntegratorEventManager {
 
     public void initialized() {
         eventing = true;
-        for (IntegratorListener listener : listeners) {
+        for (IntegratorListener listener : listenerArray) {
             listener.integratorInitialized(event);
         }
         eventing = false;
@@ -67,7 +76,7 @@ public class IntegratorEventManager {
 
     public void forcePrecomputed() {
         eventing = true;
-        for (IntegratorListener l : listeners) {
+        for (IntegratorListener l : listenerArray) {
             if (l instanceof IntegratorListenerMD) {
                 ((IntegratorListenerMD) l).integratorForcePrecomputed(event);
             }
@@ -77,7 +86,7 @@ public class IntegratorEventManager {
 
     public void forceComputed() {
         eventing = true;
-        for (IntegratorListener l : listeners) {
+        for (IntegratorListener l : listenerArray) {
             if (l instanceof IntegratorListenerMD) {
                 ((IntegratorListenerMD) l).integratorForceComputed(event);
             }
@@ -18,8 +18,7 @@ import etomica.simulation.Simulation;
 import etomica.space.Space;
 import etomica.space.Vector;
 import etomica.util.Debug;
-import etomica.util.TreeLinker;
-import etomica.util.TreeList;
+import etomica.util.EventHeap;
 import etomica.util.random.IRandom;
 
 /**
@@ -39,7 +38,7 @@ public class IntegratorHard extends IntegratorMD
     protected final IteratorDirective upList = new IteratorDirective(IteratorDirective.Direction.UP);
     protected final IteratorDirective downList = new IteratorDirective(IteratorDirective.Direction.DOWN);
     protected final AtomArrayList listToUpdate = new AtomArrayList();
-    protected final TreeList eventList = new TreeList();
+    protected final EventHeap eventList = new EventHeap();
     protected final ReverseCollisionHandler reverseCollisionHandler;
     protected final CollisionHandlerUp collisionHandlerUp;
     protected final CollisionHandlerDown collisionHandlerDown;
@@ -266,7 +265,7 @@ public class IntegratorHard extends IntegratorMD
     }
 
    /**
-	* Loops through all atoms to identify the one with the smallest value of collisionTime
+	* Takes the agent with the smallest value of collisionTime from the event heap.
 	* Collision time is obtained from the value stored in the Integrator.Agent from each atom.
 	*/
 	protected void findNextCollider() {
@@ -657,10 +656,10 @@ public class IntegratorHard extends IntegratorMD
 	//value and their value with given atom
 	private static final class CollisionHandlerDown implements PotentialCalculation, java.io.Serializable {
         private static final long serialVersionUID = 1L;
-        final TreeList eventList;
+        final EventHeap eventList;
         double collisionTimeStep;
         private AtomLeafAgentManager<Agent> integratorAgentManager;
-        CollisionHandlerDown(TreeList list) {
+        CollisionHandlerDown(EventHeap list) {
             eventList = list;
         }
 
@@ -752,14 +751,14 @@ public class IntegratorHard extends IntegratorMD
         protected final IntegratorHard integrator;
         public IAtom atom, collisionPartner;
         public PotentialHard collisionPotential;  //potential governing interaction between collisionPartner and atom containing this Agent
-        public TreeLinker eventLinker;
+        public EventHeap.HeapLinker eventLinker;
         protected PotentialHard nullPotential;
         protected AtomSetSinglet atomSetSinglet;
         protected double nullCollisionTime;
 
         public Agent(IAtom a, IntegratorHard integrator) {
             atom = a;
-            eventLinker = new TreeLinker(this);
+            eventLinker = new EventHeap.HeapLinker(this);
             eventLinker.sortKey = Double.POSITIVE_INFINITY;
             nullCollisionTime = Double.POSITIVE_INFINITY;
             this.integrator = integrator;
@@ -779,12 +778,12 @@ public class IntegratorHard extends IntegratorMD
         /**
          * resets collision potential and partner.  If a null potnetial is in
          * use, the time is reset to the null potential collision time.
-         * caller should remove eventLinker from the tree if needed before
+         * caller should remove eventLinker from the heap if needed before
          * calling this method.
          */
         public void resetCollision() {
-            // events with a (non-null) potential must be in the tree
-            // events in the tree must have a potential
+            // events with a (non-null) potential must be in the heap
+            // events in the heap must have a potential
             collisionPotential = nullPotential;
             if (collisionPotential != null) {
                 eventLinker.sortKey = nullCollisionTime;
@@ -800,11 +799,11 @@ public class IntegratorHard extends IntegratorMD
 
         /**
          * resets time, potential and partner.  caller should remove
-         * eventLinker from the tree if needed before calling this method.
+         * eventLinker from the heap if needed before calling this method.
          */
         public void resetCollisionFull() {
-            // events with a (non-null) potential must be in the tree
-            // events in the tree must have a potential
+            // events with a (non-null) potential must be in the heap
+            // events in the heap must have a potential
             collisionPotential = nullPotential;
             if (collisionPotential != null) {
                 if (atomSetSinglet == null) {
@@ -14,11 +14,29 @@ import etomica.integrator.mcmove.MCMoveTrialInitiatedEvent;
 import etomica.util.Arrays;
 import etomica.util.IEvent;
 import etomica.util.IEventManager;
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Integrator manages other Integrators which either act on a Box, or manage
  * still other Integrators.  Each step, this class either performs global MC 
  * moves between the Integrators or runs the sub-integrators.
+ * <p>
+ * With more than one thread (see setNumThreads), a step of this integrator
+ * instead runs the sub-integrators concurrently for as many steps as would
+ * have been taken before the next global move, waits for all of them and
+ * then performs the global move.  The following steps of this integrator,
+ * up to the global move, then do nothing, so that each step still accounts
+ * for one global move or one step of each sub-integrator, and the sequence
+ * of global moves and sub-integrator steps is the same as with one thread.
+ * The sub-integrators may therefore be ahead of this integrator's step
+ * count by up to one global move interval.  The sub-integrators
+ * must then not share anything that changes as they run: each needs its
+ * own random number generator (also used by its MC moves), PotentialMaster
+ * and listeners.
  * 
  * @author David Kofke and Andrew Schultz
  */
@@ -61,6 +79,7 @@ public class IntegratorManagerMC extends Integrator {
      */
     public void reset() throws ConfigurationOverlapException {
         super.reset();
+        stepsAhead = 0;
 
         moveManager.recomputeMoveFrequencies();
         ConfigurationOverlapException overlapException = null;
@@ -121,6 +140,15 @@ public class IntegratorManagerMC extends Integrator {
      * a single doStep.
      */
     public void doStepInternal() {
+        if (stepsAhead > 0) {
+            // already done by the last concurrent step
+            stepsAhead--;
+            return;
+        }
+        if (parallelTasks != null) {
+            doStepConcurrent();
+            return;
+        }
         if(random.nextDouble() < globalMoveProbability) {
             doGlobalMoves();
         } else {
@@ -130,6 +158,75 @@ public class IntegratorManagerMC extends Integrator {
         }
     }
     
+    /**
+     * Draws (with the same random numbers as serial steps) the number of
+     * sub-integrator steps before the next global move, runs the
+     * sub-integrators for that many steps concurrently and then performs the
+     * global move.  The steps of this integrator beyond the current one that
+     * were done here are recorded in stepsAhead.
+     */
+    protected void doStepConcurrent() {
+        int nSteps = 0;
+        boolean global = false;
+        while (!global) {
+            global = random.nextDouble() < globalMoveProbability;
+            if (!global) {
+                nSteps++;
+                if (globalMoveProbability == 0) break;
+            }
+        }
+        if (nSteps > 0) {
+            final int n = nSteps;
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(nIntegrators);
+            for (int i=0; i<nIntegrators; i++) {
+                final Integrator integrator = integrators[i];
+                tasks.add(new Callable<Object>() {
+                    public Object call() {
+                        for (int j=0; j<n; j++) {
+                            integrator.doStep();
+                        }
+                        return null;
+                    }
+                });
+            }
+            parallelTasks.invokeAll(tasks);
+        }
+        if (global) {
+            doGlobalMoves();
+            stepsAhead = nSteps;
+        }
+        else {
+            stepsAhead = nSteps - 1;
+        }
+    }
+
+    /**
+     * Sets the number of threads used to run the sub-integrators.  With one
+     * thread (the default), the sub-integrators are run one after another.
+     * With more threads, a step of this integrator runs the sub-integrators
+     * concurrently until the next global move and then does the global move;
+     * the steps of this integrator up to the global move then do nothing.
+     * Either way, each step of this integrator accounts for either a global
+     * move or a single step of each sub-integrator.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (parallelTasks != null) {
+            parallelTasks.dispose();
+            parallelTasks = null;
+        }
+        numThreads = newNumThreads;
+        if (numThreads > 1) {
+            parallelTasks = new ParallelTasks(numThreads);
+        }
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     /**
      * Method to select and perform an elementary Monte Carlo move. The type of
      * move performed is chosen from all MCMoves that have been added to the
@@ -208,4 +305,7 @@ public class IntegratorManagerMC extends Integrator {
     private final IEvent trialEvent;
     private final IEvent acceptedEvent, rejectedEvent;
     protected final IRandom random;
+    protected int numThreads = 1;
+    protected transient ParallelTasks parallelTasks;
+    protected int stepsAhead;
 }
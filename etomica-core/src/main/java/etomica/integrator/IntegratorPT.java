@@ -6,6 +6,7 @@ package etomica.integrator;
 
 import etomica.box.Box;
 import etomica.util.random.IRandom;
+import etomica.util.random.RandomMersenneTwister;
 import etomica.data.DataTag;
 import etomica.data.IData;
 import etomica.data.IEtomicaDataInfo;
@@ -37,6 +38,10 @@ import etomica.util.IListener;
  * Every time an integrator is added to this one, a MCMoveSwap class is made (by this
  * integrator using the factory) to manage swap trials between the new integrator's
  * box and that of the one most recently added.
+ * <p>
+ * The replicas can be advanced concurrently between swap trials (see
+ * IntegratorManagerMC.setNumThreads); each replica then needs its own random
+ * number generator, which can be made with makeReplicaRandom.
  * 
  * @author David Kofke
  */
@@ -72,6 +77,20 @@ public class IntegratorPT extends IntegratorManagerMC {
 		}
 	}
     
+    /**
+     * Returns a new random number generator for one replica, seeded from the
+     * given one.  Replicas that run concurrently (see setNumThreads) each
+     * need their own generator, for the integrator and its moves.  Seeding
+     * them from the simulation's generator keeps the run reproducible.
+     */
+    public static IRandom makeReplicaRandom(IRandom random) {
+        int[] seeds = new int[4];
+        for (int i=0; i<seeds.length; i++) {
+            seeds[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+        return new RandomMersenneTwister(seeds);
+    }
+
     private static final long serialVersionUID = 1L;
 	private final MCMoveSwapFactory mcMoveSwapFactory;
 
@@ -128,8 +147,8 @@ public class IntegratorPT extends IntegratorManagerMC {
             if(evt instanceof MCMoveTrialInitiatedEvent || !((MCMoveTrialCompletedEvent)evt).isAccepted()) return;
             if(!(((MCMoveEvent)evt).getMCMove() instanceof MCMoveSwap)) return;
             Box[] boxes = ((MCMoveSwap)((MCMoveEvent)evt).getMCMove()).swappedBoxes();
-            int i0 = boxes[0].getIndex()-1;
-            int i1 = boxes[1].getIndex()-1;
+            int i0 = boxes[0].getIndex();
+            int i1 = boxes[1].getIndex();
             int temp = track[i0];
             track[i0] = track[i1];
             track[i1] = temp;
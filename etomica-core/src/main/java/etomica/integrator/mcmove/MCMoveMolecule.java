@@ -15,6 +15,7 @@ import etomica.molecule.MoleculeSource;
 import etomica.molecule.MoleculeSourceRandomMolecule;
 import etomica.molecule.iterator.MoleculeIterator;
 import etomica.molecule.iterator.MoleculeIteratorSinglet;
+import etomica.potential.EwaldSummation;
 import etomica.potential.PotentialMaster;
 import etomica.simulation.Simulation;
 import etomica.space.Space;
@@ -41,6 +42,7 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     protected final Vector groupTranslationVector;
     protected MoleculeSource moleculeSource;
     protected IMolecule molecule;
+    protected EwaldSummation ewald;
 
     public MCMoveMolecule(Simulation sim, PotentialMaster potentialMaster,
                           Space _space) {
@@ -80,6 +82,7 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
         
         molecule = moleculeSource.getMolecule();
         if (molecule == null) return false;
+        if (ewald != null) ewald.startMoleculeMove(molecule);
         energyMeter.setTarget(molecule);
         uOld = energyMeter.getDataAsScalar();
         if(Double.isInfinite(uOld)) {
@@ -116,12 +119,29 @@ public class MCMoveMolecule extends MCMoveBoxStep implements MCMoveMolecular {
     /**
      * Method called by IntegratorMC in the event that the most recent trial is accepted.
      */
-    public void acceptNotify() {  /* do nothing */
+    public void acceptNotify() {
+        if (ewald != null) ewald.acceptMoleculeMove();
     }
     
     public void rejectNotify() {
         groupTranslationVector.TE(-1);
         moveMoleculeAction.actionPerformed(molecule);
+        if (ewald != null) ewald.rejectMoleculeMove();
+    }
+
+    /**
+     * Sets the Ewald sum (which must also be in the PotentialMaster) to be
+     * notified of each trial, so that it can compute the energy change from
+     * its cached structure factors instead of recomputing the whole sum.
+     * Other moves need not do this; the cache is rebuilt when atoms move
+     * without notifying it.
+     */
+    public void setEwaldSummation(EwaldSummation newEwald) {
+        ewald = newEwald;
+    }
+
+    public EwaldSummation getEwaldSummation() {
+        return ewald;
     }
 
     public void setBox(Box p) {
@@ -44,6 +44,7 @@ public class MCMoveRotateMolecule3D extends MCMoveMolecule {
         if(box.getMoleculeList().getMoleculeCount()==0) {molecule = null; return false;}
             
         molecule = moleculeSource.getMolecule();
+        if (ewald != null) ewald.startMoleculeMove(molecule);
         energyMeter.setTarget(molecule);
         uOld = energyMeter.getDataAsScalar();
         
@@ -75,5 +76,6 @@ public class MCMoveRotateMolecule3D extends MCMoveMolecule {
     public void rejectNotify() {
         rotationTensor.invert();
         doTransform();
+        if (ewald != null) ewald.rejectMoleculeMove();
     }
 }
@@ -0,0 +1,162 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator.mcmove;
+
+import etomica.box.Box;
+import etomica.nbr.cell.PotentialMasterCell;
+import etomica.nbr.list.PotentialMasterList;
+import etomica.potential.IPotentialMolecular;
+import etomica.potential.IteratorDirective;
+import etomica.potential.PotentialCalculationEnergyPowers;
+import etomica.potential.PotentialGroup;
+import etomica.potential.PotentialMaster;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.space.Space;
+import etomica.util.random.IRandom;
+
+/**
+ * Volume-change move for the NPT ensemble that finds the energy of the
+ * trial volume without moving the atoms.  The energy at the current volume
+ * is summed with a PotentialCalculationEnergyPowers, from which the energy
+ * at the trial volume follows directly if all pair potentials are (possibly
+ * truncated) sums of inverse powers.  The atoms are scaled, and the cells or
+ * neighbor lists updated, only if the trial is accepted.
+ * <p>
+ * If the shortcut can't be used (other potentials, molecules with more
+ * than one atom, or a potential master that might not include all pairs
+ * that the trial could bring within the cutoff), the trial is done as in
+ * MCMoveVolume.  Up to roundoff in the energies, the sequence of states is
+ * the same as with MCMoveVolume.
+ */
+public class MCMoveVolumeScaled extends MCMoveVolume {
+
+    protected final PotentialCalculationEnergyPowers energyPowers;
+    protected final IteratorDirective allAtoms;
+    protected double pairRange;
+    protected boolean scaled;
+
+    /**
+     * @param potentialMaster an appropriate PotentialMaster instance for calculating energies
+     * @param space the governing space for the simulation
+     */
+    public MCMoveVolumeScaled(PotentialMaster potentialMaster, IRandom random,
+                              Space space, double pressure) {
+        super(potentialMaster, random, space, pressure);
+        energyPowers = new PotentialCalculationEnergyPowers(space);
+        allAtoms = new IteratorDirective();
+        allAtoms.includeLrc = true;
+        pairRange = Double.NaN;
+    }
+
+    public void setBox(Box p) {
+        super.setBox(p);
+        energyPowers.setBox(p);
+    }
+
+    /**
+     * Sets the separation within which the potential master is known to
+     * include all pairs.  By default (NaN), this is found from the standard
+     * potential masters; for others it is 0, so the shortcut is not used
+     * unless it is set.
+     */
+    public void setPairRange(double newPairRange) {
+        pairRange = newPairRange;
+    }
+
+    public double getPairRange() {
+        if (!Double.isNaN(pairRange)) return pairRange;
+        if (potential instanceof PotentialMasterList) {
+            // pairs can approach by at most safetyFactor*skin before the
+            // lists are updated
+            PotentialMasterList potentialMasterList = (PotentialMasterList)potential;
+            double range = potentialMasterList.getRange();
+            return range - potentialMasterList.getSafetyFactor()*(range - potentialMasterList.getMaxPotentialRange());
+        }
+        if (potential instanceof PotentialMasterCell) {
+            return ((PotentialMasterCell)potential).getRange();
+        }
+        if (potential.getClass() == PotentialMaster.class || potential.getClass() == PotentialMasterMonatomic.class) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns true if the energy of the last trial was found without moving
+     * the atoms.
+     */
+    public boolean isScaled() {
+        return scaled;
+    }
+
+    public boolean doTrial() {
+        if (!canScale()) {
+            scaled = false;
+            return super.doTrial();
+        }
+        double vOld = box.getBoundary().volume();
+        double sMin = Math.exp(-stepSize/D);
+        energyPowers.setScaleRange(sMin, Math.exp(stepSize/D));
+        energyPowers.zeroSum();
+        potential.calculate(box, allAtoms, energyPowers);
+        uOld = energyPowers.getSum();
+        hOld = uOld + pressure*vOld;
+        biasOld = vBias.f(vOld);
+        vScale = (2.*random.nextDouble()-1.)*stepSize;
+        vNew = vOld * Math.exp(vScale); //Step in ln(V)
+        double rScale = Math.exp(vScale/D);
+        inflate.setScale(rScale);
+        scaled = energyPowers.isScalable() && energyPowers.getMaxRange()/sMin <= getPairRange();
+        if (scaled) {
+            uNew = energyPowers.getScaledSum(rScale);
+        }
+        else {
+            //cells+neighbords get updated here
+            inflate.actionPerformed();
+            uNew = energyMeter.getDataAsScalar();
+        }
+        hNew = uNew + pressure*vNew;
+        return true;
+    }
+
+    /**
+     * Returns true if scaling the box scales every pair separation, and all
+     * potentials are seen by the energy sum.
+     */
+    protected boolean canScale() {
+        if (box.getMoleculeList().getMoleculeCount() != box.getLeafList().getAtomCount()) {
+            return false;
+        }
+        // molecular potentials other than groups would be skipped
+        IPotentialMolecular[] potentials = potential.getPotentials();
+        for (int i=0; i<potentials.length; i++) {
+            if (!(potentials[i] instanceof PotentialGroup)) return false;
+        }
+        return true;
+    }
+
+    public double getA() {
+        // N, not N+1 here because of the shell volume
+        // D. S. Corti, Mol. Phys. 100, 1887 (2002).
+        double biasNew = vBias.f(scaled ? vNew : box.getBoundary().volume());
+        if (temperature != 0) {
+            return biasNew/biasOld*Math.exp(box.getMoleculeList().getMoleculeCount()*vScale - (hNew-hOld)/temperature);
+        }
+        return biasNew/biasOld*Math.exp(box.getMoleculeList().getMoleculeCount()*vScale);
+    }
+
+    public void acceptNotify() {
+        if (scaled) {
+            //cells+neighbords get updated here
+            inflate.actionPerformed();
+        }
+    }
+
+    public void rejectNotify() {
+        if (!scaled) {
+            inflate.undo();
+        }
+    }
+}
@@ -0,0 +1,279 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.atom.AtomArrayList;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.lattice.CellLattice;
+import etomica.space.Boundary;
+import etomica.space.BoundaryRectangular;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Assigns all of the leaf atoms in a box to the cells of a CellLattice using
+ * several threads, and holds the result in compressed form.  The atoms in
+ * the cell with lattice index c are
+ * <pre>
+ *   getCellAtoms()[getCellOffsets()[c] ... getCellOffsets()[c+1]-1]
+ * </pre>
+ * given by leaf index, in increasing order.  getAtomCells() gives the cell
+ * index of each atom.
+ * <p>
+ * The assignment is a counting sort.  The atoms are split into contiguous
+ * chunks, one per thread; each thread finds the cell of each of its atoms and
+ * counts the atoms per cell.  The counts are then turned into offsets (on the
+ * calling thread) such that each chunk fills its own part of each cell, and
+ * the threads scatter their atoms into place.  Finally, the cells' occupant
+ * lists and the atoms' cell agents are filled from the sorted array, with the
+ * cells split among the threads.  Because the atoms within each cell end up in
+ * leaf-index order, the occupant lists are identical to those built by
+ * assigning the atoms one at a time.
+ * <p>
+ * The arrays reflect the state of the box as of the last call to assign;
+ * cell changes made later (for instance, by NeighborCellManager.assignCell
+ * after an MC move) are not reflected here.
+ */
+public class CellListsFlat {
+
+    protected final ParallelTasks parallelTasks;
+    protected final int numChunks;
+    protected final int[] chunkStart, cellChunkStart;
+    protected final Vector[] work;
+    protected final List<Callable<Object>> binTasks, scatterTasks, fillTasks;
+    protected int[][] chunkCounts;
+    protected int[] atomCells, cellOffsets, cellAtoms;
+    protected int nAtoms, nCells;
+    protected Box box;
+    protected Object[] sites;
+    protected CellLattice lattice;
+    protected AtomLeafAgentManager<Cell> agentManager;
+    protected boolean applyPBC;
+
+    /**
+     * @param space      the space
+     * @param numThreads the number of threads to use
+     */
+    public CellListsFlat(Space space, int numThreads) {
+        parallelTasks = new ParallelTasks(numThreads);
+        numChunks = numThreads;
+        chunkStart = new int[numChunks + 1];
+        cellChunkStart = new int[numChunks + 1];
+        work = new Vector[numChunks];
+        chunkCounts = new int[numChunks][0];
+        atomCells = new int[0];
+        cellAtoms = new int[0];
+        cellOffsets = new int[1];
+        binTasks = new ArrayList<Callable<Object>>(numChunks);
+        scatterTasks = new ArrayList<Callable<Object>>(numChunks);
+        fillTasks = new ArrayList<Callable<Object>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            work[i] = space.makeVector();
+            final int chunk = i;
+            binTasks.add(new Callable<Object>() {
+                public Object call() {
+                    binAtoms(chunk);
+                    return null;
+                }
+            });
+            scatterTasks.add(new Callable<Object>() {
+                public Object call() {
+                    scatterAtoms(chunk);
+                    return null;
+                }
+            });
+            fillTasks.add(new Callable<Object>() {
+                public Object call() {
+                    fillCells(chunk);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of threads used to assign cells
+     */
+    public int getNumThreads() {
+        return numChunks;
+    }
+
+    /**
+     * Assigns every leaf atom in the box to its cell.  The lattice must
+     * already have the proper size and dimensions.  Each cell's occupant list
+     * is replaced and each atom's agent (in the given agent manager) is set
+     * to its cell.
+     *
+     * @param applyPBC if true, the central image of each atom's position is
+     *                 used to find its cell
+     */
+    public void assign(Box box, CellLattice lattice, boolean applyPBC, AtomLeafAgentManager<Cell> agentManager) {
+        this.box = box;
+        this.lattice = lattice;
+        this.applyPBC = applyPBC;
+        this.agentManager = agentManager;
+        sites = lattice.sites();
+        nCells = sites.length;
+        nAtoms = box.getLeafList().getAtomCount();
+        if (atomCells.length < nAtoms) {
+            atomCells = new int[nAtoms];
+            cellAtoms = new int[nAtoms];
+        }
+        if (cellOffsets.length < nCells + 1) {
+            cellOffsets = new int[nCells + 1];
+            for (int i = 0; i < numChunks; i++) {
+                chunkCounts[i] = new int[nCells];
+            }
+        }
+        for (int i = 0; i <= numChunks; i++) {
+            chunkStart[i] = (int) (((long) i * nAtoms) / numChunks);
+            cellChunkStart[i] = (int) (((long) i * nCells) / numChunks);
+        }
+
+        if (applyPBC && !(box.getBoundary() instanceof BoundaryRectangular)) {
+            // we only know how to find the central image without touching the
+            // boundary's scratch vectors for rectangular boundaries
+            for (int i = 0; i < numChunks; i++) {
+                binAtoms(i);
+            }
+        }
+        else {
+            parallelTasks.invokeAll(binTasks);
+        }
+
+        // turn the per-chunk counts into the position where each chunk's
+        // first atom in each cell goes
+        int total = 0;
+        for (int c = 0; c < nCells; c++) {
+            cellOffsets[c] = total;
+            for (int i = 0; i < numChunks; i++) {
+                int n = chunkCounts[i][c];
+                chunkCounts[i][c] = total;
+                total += n;
+            }
+        }
+        cellOffsets[nCells] = total;
+
+        parallelTasks.invokeAll(scatterTasks);
+        parallelTasks.invokeAll(fillTasks);
+        sites = null;
+    }
+
+    /**
+     * Finds the cell of each atom in the chunk and counts the chunk's atoms
+     * in each cell.
+     */
+    protected void binAtoms(int chunk) {
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        boolean rectangular = boundary instanceof BoundaryRectangular;
+        Vector v = work[chunk];
+        int[] counts = chunkCounts[chunk];
+        java.util.Arrays.fill(counts, 0, nCells, 0);
+        for (int i = chunkStart[chunk]; i < chunkStart[chunk + 1]; i++) {
+            Vector r = leafList.getAtom(i).getPosition();
+            int c;
+            if (applyPBC) {
+                v.E(r);
+                if (rectangular) {
+                    // for rectangular boundaries, the central image is the
+                    // nearest image of the position relative to the origin
+                    boundary.nearestImage(v);
+                }
+                else {
+                    v.PE(boundary.centralImage(r));
+                }
+                c = lattice.siteIndex(v);
+            }
+            else {
+                c = lattice.siteIndex(r);
+            }
+            atomCells[i] = c;
+            counts[c]++;
+        }
+    }
+
+    /**
+     * Places the atoms of the chunk into the sorted array.
+     */
+    protected void scatterAtoms(int chunk) {
+        int[] cursor = chunkCounts[chunk];
+        for (int i = chunkStart[chunk]; i < chunkStart[chunk + 1]; i++) {
+            cellAtoms[cursor[atomCells[i]]++] = i;
+        }
+    }
+
+    /**
+     * Rebuilds the occupant lists of the chunk's cells and sets the cell
+     * agent of their atoms.
+     */
+    protected void fillCells(int chunk) {
+        IAtomList leafList = box.getLeafList();
+        for (int c = cellChunkStart[chunk]; c < cellChunkStart[chunk + 1]; c++) {
+            Cell cell = (Cell) sites[c];
+            AtomArrayList occupants = cell.occupants();
+            occupants.clear();
+            int start = cellOffsets[c], stop = cellOffsets[c + 1];
+            occupants.ensureCapacity(stop - start);
+            for (int k = start; k < stop; k++) {
+                IAtom atom = leafList.getAtom(cellAtoms[k]);
+                occupants.add(atom);
+                agentManager.setAgent(atom, cell);
+            }
+        }
+    }
+
+    /**
+     * @return the number of atoms assigned by the last call to assign
+     */
+    public int getAtomCount() {
+        return nAtoms;
+    }
+
+    /**
+     * @return the number of cells in the lattice as of the last call to assign
+     */
+    public int getCellCount() {
+        return nCells;
+    }
+
+    /**
+     * Returns the offsets into getCellAtoms() of the atoms in each cell.  The
+     * array has (at least) getCellCount()+1 elements.
+     */
+    public int[] getCellOffsets() {
+        return cellOffsets;
+    }
+
+    /**
+     * Returns the leaf indices of the atoms, sorted by cell.
+     */
+    public int[] getCellAtoms() {
+        return cellAtoms;
+    }
+
+    /**
+     * Returns the lattice index of the cell of each atom, indexed by leaf
+     * index.
+     */
+    public int[] getAtomCells() {
+        return atomCells;
+    }
+
+    /**
+     * Shuts down the threads used by this instance.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+}
@@ -48,6 +48,8 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
     protected final Vector v;
     protected final int[] numCells;
     protected boolean suppressBoxLengthWarning;
+    protected final Space space;
+    protected CellListsFlat cellListsFlat;
     
     /**
      * Constructs manager for neighbor cells in the given box.  The number of
@@ -69,6 +71,7 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
         this.positionDefinition = positionDefinition;
         this.box = box;
         this.sim = sim;
+        this.space = space;
         numCells = new int[space.D()];
 
         lattice = new CellLattice(space, box.getBoundary().getBoxSize(), Cell.FACTORY);
@@ -99,6 +102,40 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
         return lattice;
     }
 
+    /**
+     * Sets the number of threads used by assignCellAll.  With more than one
+     * thread, atoms are assigned to cells by a parallel counting sort (see
+     * {@link CellListsFlat}), and the resulting flat cell lists are available
+     * from getCellListsFlat.  The boundary's nearestImage method must be safe
+     * to call from several threads.
+     *
+     * @param numThreads the number of threads; 1 disables parallel assignment
+     */
+    public void setParallelThreads(int numThreads) {
+        if (cellListsFlat != null) {
+            cellListsFlat.dispose();
+            cellListsFlat = null;
+        }
+        if (numThreads > 1) {
+            cellListsFlat = new CellListsFlat(space, numThreads);
+        }
+    }
+
+    /**
+     * @return the number of threads used by assignCellAll
+     */
+    public int getParallelThreads() {
+        return cellListsFlat == null ? 1 : cellListsFlat.getNumThreads();
+    }
+
+    /**
+     * Returns the flat cell lists built by the last call to assignCellAll, or
+     * null if parallel assignment is not enabled.
+     */
+    public CellListsFlat getCellListsFlat() {
+        return cellListsFlat;
+    }
+
     /**
      * Sets the potential range to the given value.  Cells are made large 
      * enough so that {@code cellRange*cellSize > potentialRange}.
@@ -208,6 +245,11 @@ public class NeighborCellManager implements BoxCellManager, BoundaryEventListene
         // happens, our call into checkDimensions should 
         checkDimensions();
 
+        if (cellListsFlat != null) {
+            cellListsFlat.assign(box, lattice, doApplyPBC, agentManager);
+            return;
+        }
+
         Object[] allCells = lattice.sites();
         for (int i=0; i<allCells.length; i++) {
             ((Cell)allCells[i]).occupants().clear();
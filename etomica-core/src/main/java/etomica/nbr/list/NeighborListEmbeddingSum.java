@@ -0,0 +1,280 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.potential.IPotential;
+import etomica.potential.PairSumParallel;
+import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationPartialSum;
+import etomica.potential.PotentialEmbedding;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Sums a PotentialCalculation over the atoms interacting via a
+ * PotentialEmbedding, using the neighbor lists of a PotentialMasterList, in
+ * two passes.  The first pass finds the density of every atom; the second
+ * adds the pair energy and the pair force
+ * <pre>
+ *   r du/dr = r dphi/dr + (F'(rho_i) + F'(rho_j)) r df/dr
+ * </pre>
+ * for each pair in the up-lists, along with the embedding energies.  Both
+ * passes are split among threads by chunks of atoms, as in PairSumParallel,
+ * and the partial sums are added in chunk order.  Each atom's density is
+ * found once, instead of once for every atom whose neighbors include it.
+ * <p>
+ * With a single chunk, each pair is handled once.  With several, each chunk
+ * finds the densities of its own atoms from their up- and down-lists (and
+ * likewise for forces), so that the chunks do not each need an array for
+ * all atoms.
+ */
+public class NeighborListEmbeddingSum extends PairSumParallel {
+
+    protected final PotentialMasterList potentialMaster;
+    protected final List<Callable<Object>> densityTasks;
+    protected NeighborListManager neighborManager;
+    protected NeighborListsFlat flatLists;
+    protected PotentialEmbedding potential;
+    protected int[] typePotentialIndex;
+    protected int[] potentialIndex;
+    protected double[] rho, dEmbedding;
+    protected final List<Callable<Object>> embeddingTasks;
+    protected boolean energyOnly;
+
+    public NeighborListEmbeddingSum(PotentialMasterList potentialMaster, Space space, int numThreads) {
+        super(space, numThreads);
+        this.potentialMaster = potentialMaster;
+        typePotentialIndex = new int[0];
+        potentialIndex = new int[0];
+        rho = new double[0];
+        dEmbedding = new double[0];
+        densityTasks = new ArrayList<Callable<Object>>(numChunks);
+        embeddingTasks = new ArrayList<Callable<Object>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            final int chunk = i;
+            densityTasks.add(new Callable<Object>() {
+                public Object call() {
+                    sumDensities(box, chunkStart[chunk], chunkStart[chunk + 1], dr[chunk]);
+                    return null;
+                }
+            });
+            embeddingTasks.add(new Callable<Object>() {
+                public Object call() {
+                    sumEmbedding(chunkStart[chunk], chunkStart[chunk + 1]);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Performs the calculation for the given potential over the neighbors
+     * known to the given neighbor manager.
+     */
+    public void calculate(Box box, PotentialCalculation pc, NeighborListManager nbrManager, PotentialEmbedding newPotential) {
+        neighborManager = nbrManager;
+        potential = newPotential;
+        // retrieve (and maybe rebuild) the flat lists here, from a single thread
+        flatLists = neighborManager.isFlatLists() ? neighborManager.getFlatLists() : null;
+        this.box = box;
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        if (rho.length < nAtoms) {
+            rho = new double[nAtoms];
+            dEmbedding = new double[nAtoms];
+            potentialIndex = new int[nAtoms];
+        }
+        java.util.Arrays.fill(rho, 0, nAtoms, 0);
+        energyOnly = PotentialCalculationPartialSum.isEnergySum(pc);
+        // find each atom's index for the potential here, since
+        // PotentialArray.getPotentialIndex is not safe to call from several
+        // threads
+        java.util.Arrays.fill(typePotentialIndex, -2);
+        for (int i = 0; i < nAtoms; i++) {
+            AtomType type = leafList.getAtom(i).getType();
+            int t = type.getIndex();
+            if (t >= typePotentialIndex.length) {
+                int[] newTypePotentialIndex = new int[t + 1];
+                java.util.Arrays.fill(newTypePotentialIndex, -2);
+                typePotentialIndex = newTypePotentialIndex;
+            }
+            if (typePotentialIndex[t] == -2) {
+                typePotentialIndex[t] = -1;
+                IPotential[] potentials = potentialMaster.getRangedPotentials(type).getPotentials();
+                for (int p = 0; p < potentials.length; p++) {
+                    if (potentials[p] == potential) {
+                        typePotentialIndex[t] = p;
+                        break;
+                    }
+                }
+            }
+            potentialIndex[i] = typePotentialIndex[t];
+        }
+        computeChunks(nAtoms);
+        invokeAll(densityTasks);
+        invokeAll(embeddingTasks);
+        calculate(box, pc);
+    }
+
+    /**
+     * Adds the density contributions from the neighbors of atoms start
+     * through stop-1.  With a single chunk, each pair in the up-lists adds to
+     * the densities of both atoms.  With several, the up neighbors might be
+     * in another chunk, so each atom instead gets the contributions from its
+     * up- and down-lists.
+     */
+    protected void sumDensities(Box box, int start, int stop, Vector dr) {
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        boolean fullLists = numChunks > 1;
+        for (int i = start; i < stop; i++) {
+            int p = potentialIndex[i];
+            if (p < 0) continue;
+            Vector ri = leafList.getAtom(i).getPosition();
+            if (flatLists != null) {
+                if (p >= flatLists.getPotentialCount()) continue;
+                addDensities(leafList, boundary, i, ri, flatLists.getUpOffsets(p), flatLists.getUpNeighbors(p), fullLists, dr);
+                if (fullLists) {
+                    addDensities(leafList, boundary, i, ri, flatLists.getDownOffsets(p), flatLists.getDownNeighbors(p), true, dr);
+                }
+            }
+            else {
+                IAtom atom = leafList.getAtom(i);
+                IAtomList[] upLists = neighborManager.getUpList(atom);
+                if (p >= upLists.length) continue;
+                addDensities(boundary, i, ri, upLists[p], fullLists, dr);
+                if (fullLists) {
+                    addDensities(boundary, i, ri, neighborManager.getDownList(atom)[p], true, dr);
+                }
+            }
+        }
+    }
+
+    protected void addDensities(IAtomList leafList, Boundary boundary, int i, Vector ri, int[] offsets, int[] nbrs,
+                                boolean ownAtomOnly, Vector dr) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            int j = nbrs[k];
+            dr.Ev1Mv2(leafList.getAtom(j).getPosition(), ri);
+            boundary.nearestImage(dr);
+            double f = potential.rho(dr.squared());
+            rho[i] += f;
+            if (!ownAtomOnly) {
+                rho[j] += f;
+            }
+        }
+    }
+
+    protected void addDensities(Boundary boundary, int i, Vector ri, IAtomList list, boolean ownAtomOnly, Vector dr) {
+        int nNeighbors = list.getAtomCount();
+        for (int k = 0; k < nNeighbors; k++) {
+            IAtom atomj = list.getAtom(k);
+            dr.Ev1Mv2(atomj.getPosition(), ri);
+            boundary.nearestImage(dr);
+            double f = potential.rho(dr.squared());
+            rho[i] += f;
+            if (!ownAtomOnly) {
+                rho[atomj.getLeafIndex()] += f;
+            }
+        }
+    }
+
+    /**
+     * Finds the derivative of the embedding energy for atoms start through
+     * stop-1.
+     */
+    protected void sumEmbedding(int start, int stop) {
+        for (int i = start; i < stop; i++) {
+            dEmbedding[i] = energyOnly || potentialIndex[i] < 0 ? 0 : potential.dembedding(rho[i]);
+        }
+    }
+
+    protected void sumPairs(Box box, int start, int stop, PotentialCalculationPartialSum partial, Vector dr) {
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        for (int i = start; i < stop; i++) {
+            int p = potentialIndex[i];
+            if (p < 0) continue;
+            if (energyOnly) {
+                partial.addEnergy(potential.embedding(rho[i]));
+            }
+            Vector ri = leafList.getAtom(i).getPosition();
+            if (flatLists != null) {
+                if (p >= flatLists.getPotentialCount()) continue;
+                addPairs(leafList, boundary, i, ri, flatLists.getUpOffsets(p), flatLists.getUpNeighbors(p), partial, dr);
+                if (bothDirections) {
+                    addPairs(leafList, boundary, i, ri, flatLists.getDownOffsets(p), flatLists.getDownNeighbors(p), partial, dr);
+                }
+            }
+            else {
+                IAtom atom = leafList.getAtom(i);
+                IAtomList[] upLists = neighborManager.getUpList(atom);
+                if (p >= upLists.length) continue;
+                addPairs(boundary, i, ri, upLists[p], partial, dr);
+                if (bothDirections) {
+                    addPairs(boundary, i, ri, neighborManager.getDownList(atom)[p], partial, dr);
+                }
+            }
+        }
+    }
+
+    protected void addPairs(IAtomList leafList, Boundary boundary, int i, Vector ri, int[] offsets, int[] nbrs,
+                            PotentialCalculationPartialSum partial, Vector dr) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            int j = nbrs[k];
+            dr.Ev1Mv2(leafList.getAtom(j).getPosition(), ri);
+            boundary.nearestImage(dr);
+            addPair(partial, i, j, dr);
+        }
+    }
+
+    protected void addPairs(Boundary boundary, int i, Vector ri, IAtomList list, PotentialCalculationPartialSum partial, Vector dr) {
+        int nNeighbors = list.getAtomCount();
+        for (int k = 0; k < nNeighbors; k++) {
+            IAtom atomj = list.getAtom(k);
+            dr.Ev1Mv2(atomj.getPosition(), ri);
+            boundary.nearestImage(dr);
+            addPair(partial, i, atomj.getLeafIndex(), dr);
+        }
+    }
+
+    protected void addPair(PotentialCalculationPartialSum partial, int i, int j, Vector dr) {
+        double r2 = dr.squared();
+        if (energyOnly) {
+            partial.addPair(i, j, dr, potential.phi(r2), 0);
+            return;
+        }
+        double du = potential.dphi(r2);
+        double drho = potential.drho(r2);
+        if (drho != 0) {
+            // an atom with no density has an infinite F', but then its
+            // neighbors are all beyond the density's range
+            du += (dEmbedding[i] + dEmbedding[j]) * drho;
+        }
+        // the energy isn't needed here
+        if (bothDirections) {
+            partial.addHalfPair(i, dr, 0, du);
+        }
+        else {
+            partial.addPair(i, j, dr, 0, du);
+        }
+    }
+
+    /**
+     * Returns the density of the atom with the given leaf index, as found by
+     * the last calculation.
+     */
+    public double getDensity(int i) {
+        return rho[i];
+    }
+}
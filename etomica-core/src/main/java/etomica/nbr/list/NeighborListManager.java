@@ -51,6 +51,8 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
     private boolean quiet;
     private NeighborListEventManager eventManager;
     private NeighborCriterion[] oldCriteria;
+    protected boolean flatLists, flatListsStale;
+    protected final NeighborListsFlat flatNbrLists;
     
     /**
      * Configures instance for use by the given PotentialMaster.
@@ -74,6 +76,7 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         doApplyPBC = true;
         atomSetSinglet = new AtomSetSinglet();
         eventManager = new NeighborListEventManager();
+        flatNbrLists = new NeighborListsFlat();
     }
 
     public boolean getDoApplyPBC() {
@@ -84,6 +87,52 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         doApplyPBC = newDoApplyPBC;
     }
     
+    /**
+     * Directs the manager to hold the 2-body neighbor lists in flat arrays
+     * (see {@link NeighborListsFlat}) instead of in per-atom AtomArrayLists.
+     * PotentialMasterList uses the flat lists directly when they are enabled.
+     * With flat lists, getUpList and getDownList throw an
+     * IllegalStateException, so this must not be used with classes that look
+     * up neighbors through those methods.  Adding or removing atoms causes
+     * the flat lists to be rebuilt the next time they are requested.
+     */
+    public void setFlatLists(boolean newFlatLists) {
+        if (flatLists == newFlatLists) return;
+        flatLists = newFlatLists;
+        if (initialized) {
+            neighborSetup();
+        }
+    }
+
+    /**
+     * @return true if 2-body neighbor lists are held in flat arrays.
+     */
+    public boolean isFlatLists() {
+        return flatLists;
+    }
+
+    /**
+     * Returns the flat neighbor lists, rebuilding them first if atoms have
+     * been added or removed since they were constructed.  The lists are only
+     * meaningful if flat lists have been enabled.
+     */
+    public NeighborListsFlat getFlatLists() {
+        if (flatListsStale && initialized) {
+            if (doApplyPBC) {
+                pbcEnforcer.actionPerformed();
+            }
+            neighborSetup();
+        }
+        return flatNbrLists;
+    }
+
+    /**
+     * @return the box whose neighbors are tracked by this manager
+     */
+    public Box getBox() {
+        return box;
+    }
+
     public void updateLists() {
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
@@ -185,7 +234,7 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
             }
             if (unsafe) {
                 numUnsafe++;
-                if (numUnsafe == 1 || (Long.toString(numUnsafe).matches("10*"))) {
+                if (isPowerOfTen(numUnsafe)) {
                     System.err.print("Atoms exceeded the safe neighbor limit");
                     if (numUnsafe > 1) {
                         System.err.print(" ("+numUnsafe+" times)");
@@ -202,6 +251,17 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         }
     }
 
+    /**
+     * Returns true if n is 1, 10, 100, etc.  Used to throttle the unsafe
+     * neighbor update warning without allocating.
+     */
+    protected static boolean isPowerOfTen(long n) {
+        while (n >= 10 && n % 10 == 0) {
+            n /= 10;
+        }
+        return n == 1;
+    }
+
     /**
      * Returns the interval for which neighbor update checks are performed.  After receiving
      * this number of interval events, updateNbrsIfNeeded is invoked.
@@ -255,6 +315,7 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
 
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
+        int maxPotentials = 0;
         // reset criteria
         for (int j=0; j<nLeaf; j++) {
             IAtom atom = leafList.getAtom(j);
@@ -267,6 +328,9 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
             PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom.getType());
             IPotential[] potentials = potentialArray.getPotentials();
             NeighborCriterion[] criteria = potentialArray.getCriteria();
+            if (potentials.length > maxPotentials) {
+                maxPotentials = potentials.length;
+            }
 
             for (int i = 0; i < potentials.length; i++) {
                 if (potentials[i].nBody() != 1) {
@@ -276,6 +340,9 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
                 agentManager1Body.getAgent(atom).setIsInteracting(criteria[i].accept(atomSetSinglet),i);
             }
         }
+        if (flatLists) {
+            flatNbrLists.reset(nLeaf, maxPotentials);
+        }
 
         NeighborCellManager cellManager = potentialMaster.getNbrCellManager(box);
         cellManager.setDoApplyPBC(!doApplyPBC);
@@ -296,15 +363,33 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
                     continue;
                 }
                 if (criteria[i].accept(pair)) {
-                    agentManager2Body.getAgent(atom0).addUpNbr(atom1,i);
-                    agentManager2Body.getAgent(atom1).addDownNbr(atom0,
-                            potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
+                    addNbrPair(atom0, atom1, i, potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
                 }
             }
         }
+        if (flatLists) {
+            flatNbrLists.build();
+            flatListsStale = false;
+        }
         initialized = true;
     }
 
+    /**
+     * Records atom1 as an up-neighbor of atom0 and atom0 as a down-neighbor
+     * of atom1, either in the atoms' own lists or in the flat lists.
+     *
+     * @param potentialIndex0 index of the potential in atom0's PotentialArray
+     * @param potentialIndex1 index of the potential in atom1's PotentialArray
+     */
+    protected void addNbrPair(IAtom atom0, IAtom atom1, int potentialIndex0, int potentialIndex1) {
+        if (flatLists) {
+            flatNbrLists.addPair(atom0.getLeafIndex(), potentialIndex0, atom1.getLeafIndex(), potentialIndex1);
+            return;
+        }
+        agentManager2Body.getAgent(atom0).addUpNbr(atom1, potentialIndex0);
+        agentManager2Body.getAgent(atom1).addDownNbr(atom0, potentialIndex1);
+    }
+
     /**
      * Constructs neighbor lists for the given atom
      */
@@ -338,6 +423,11 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
             // nulling out agents for removed atoms.
             agentManager2Body.setAgent(atom, makeAgent(atom, box));
         }
+        if (flatLists) {
+            // the flat lists can't be extended; rebuild them when next needed
+            flatListsStale = true;
+            return;
+        }
         cell1ANbrIterator.setBox(box);
         cell1ANbrIterator.setTarget(atom);
         cell1ANbrIterator.reset();
@@ -392,11 +482,29 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
         this.quiet = quiet;
     }
 
+    /**
+     * Returns the up neighbors of the given atom, one list for each of its
+     * ranged potentials.
+     *
+     * @throws IllegalStateException if flat lists are enabled
+     */
     public IAtomList[] getUpList(IAtom atom) {
+        if (flatLists) {
+            throw new IllegalStateException("Neighbors are held in flat lists; use getFlatLists");
+        }
         return agentManager2Body.getAgent(atom).getUpList();
     }
 
+    /**
+     * Returns the down neighbors of the given atom, one list for each of its
+     * ranged potentials.
+     *
+     * @throws IllegalStateException if flat lists are enabled
+     */
     public IAtomList[] getDownList(IAtom atom) {
+        if (flatLists) {
+            throw new IllegalStateException("Neighbors are held in flat lists; use getFlatLists");
+        }
         return agentManager2Body.getAgent(atom).getDownList();
     }
 
@@ -429,6 +537,11 @@ public class NeighborListManager implements IntegratorListener, AgentSource<Atom
     }
     
     public void releaseAgent(AtomNeighborLists agent, IAtom atom, Box agentBox) {
+        if (flatLists) {
+            // leaf indices are about to change; rebuild the lists when next needed
+            flatListsStale = true;
+            return;
+        }
         // we need to remove this atom from the neighbor lists of its neighbors.
         AtomNeighborLists nbrLists = agent;
         IAtomList[] upDnLists = nbrLists.getUpList();
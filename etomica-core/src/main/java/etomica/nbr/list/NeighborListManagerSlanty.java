@@ -43,6 +43,7 @@ public class NeighborListManagerSlanty extends NeighborListManager {
 
         IAtomList leafList = box.getLeafList();
         int nLeaf = leafList.getAtomCount();
+        int maxPotentials = 0;
         // reset criteria
         for (int j=0; j<nLeaf; j++) {
             IAtom atom = leafList.getAtom(j);
@@ -55,6 +56,9 @@ public class NeighborListManagerSlanty extends NeighborListManager {
             PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom.getType());
             IPotential[] potentials = potentialArray.getPotentials();
             NeighborCriterion[] criteria = potentialArray.getCriteria();
+            if (potentials.length > maxPotentials) {
+                maxPotentials = potentials.length;
+            }
 
             for (int i = 0; i < potentials.length; i++) {
                 if (potentials[i].nBody() != 1) {
@@ -64,7 +68,10 @@ public class NeighborListManagerSlanty extends NeighborListManager {
                 agentManager1Body.getAgent(atom).setIsInteracting(criteria[i].accept(atomSetSinglet),i);
             }
         }
-        
+        if (flatLists) {
+            flatNbrLists.reset(nLeaf, maxPotentials);
+        }
+
         IAtomList atomList = box.getLeafList();
         for (int iAtom=0; iAtom<atomList.getAtomCount()-1; iAtom++) {
             IAtom atom0 = atomList.getAtom(iAtom);
@@ -82,13 +89,15 @@ public class NeighborListManagerSlanty extends NeighborListManager {
                         continue;
                     }
                     if (criteria[i].accept(pair)) {
-                        agentManager2Body.getAgent(atom0).addUpNbr(atom1,i);
-                        agentManager2Body.getAgent(atom1).addDownNbr(atom0,
-                                potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
+                        addNbrPair(atom0, atom1, i, potentialMaster.getRangedPotentials(atom1.getType()).getPotentialIndex(potentials[i]));
                     }
                 }
             }
         }
+        if (flatLists) {
+            flatNbrLists.build();
+            flatListsStale = false;
+        }
         initialized = true;
     }
 
@@ -109,6 +118,10 @@ public class NeighborListManagerSlanty extends NeighborListManager {
             // nulling out agents for removed atoms.
             agentManager2Body.setAgent(atom, makeAgent(atom, box));
         }
+        if (flatLists) {
+            flatListsStale = true;
+            return;
+        }
         pair.atom0 = atom;
         IAtomList atomList = box.getLeafList();
         PotentialArray potentialArray = potentialMaster.getRangedPotentials(atom.getType());
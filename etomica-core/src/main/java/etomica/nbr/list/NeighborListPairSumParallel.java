@@ -0,0 +1,106 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.potential.IPotential;
+import etomica.potential.PairSumParallel;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationPartialSum;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Sums a PotentialCalculation over neighbor-list pairs using several threads.
+ * Each atom handles the pairs in its up-lists (or, for a force sum split
+ * among several threads, its up- and down-lists) for every potential that
+ * PotentialCalculationPartialSum.isPairSummable accepts; other potentials are
+ * left for PotentialMasterList to handle serially.
+ */
+public class NeighborListPairSumParallel extends PairSumParallel {
+
+    protected final PotentialMasterList potentialMaster;
+    protected NeighborListManager neighborManager;
+    protected NeighborListsFlat flatLists;
+
+    public NeighborListPairSumParallel(PotentialMasterList potentialMaster, Space space, int numThreads) {
+        super(space, numThreads);
+        this.potentialMaster = potentialMaster;
+    }
+
+    /**
+     * Performs the calculation over the neighbor pairs known to the given
+     * neighbor manager.
+     */
+    public void calculate(Box box, PotentialCalculation pc, NeighborListManager nbrManager) {
+        neighborManager = nbrManager;
+        // retrieve (and maybe rebuild) the flat lists here, from a single thread
+        flatLists = neighborManager.isFlatLists() ? neighborManager.getFlatLists() : null;
+        calculate(box, pc);
+    }
+
+    protected void sumPairs(Box box, int start, int stop, PotentialCalculationPartialSum partial, Vector dr) {
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        for (int i = start; i < stop; i++) {
+            IAtom atom = leafList.getAtom(i);
+            Vector ri = atom.getPosition();
+            IPotential[] potentials = potentialMaster.getRangedPotentials(atom.getType()).getPotentials();
+            for (int p = 0; p < potentials.length; p++) {
+                if (potentials[p].nBody() != 2 || !PotentialCalculationPartialSum.isPairSummable(potentials[p])) {
+                    continue;
+                }
+                Potential2SoftSpherical p2 = (Potential2SoftSpherical) potentials[p];
+                if (flatLists != null) {
+                    sumFlat(leafList, boundary, i, ri, flatLists.getUpOffsets(p), flatLists.getUpNeighbors(p), partial, dr, p2);
+                    if (bothDirections) {
+                        sumFlat(leafList, boundary, i, ri, flatLists.getDownOffsets(p), flatLists.getDownNeighbors(p), partial, dr, p2);
+                    }
+                }
+                else {
+                    sumList(boundary, i, ri, neighborManager.getUpList(atom)[p], partial, dr, p2);
+                    if (bothDirections) {
+                        sumList(boundary, i, ri, neighborManager.getDownList(atom)[p], partial, dr, p2);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void sumFlat(IAtomList leafList, Boundary boundary, int i, Vector ri, int[] offsets, int[] nbrs,
+                           PotentialCalculationPartialSum partial, Vector dr, Potential2SoftSpherical p2) {
+        for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+            int j = nbrs[k];
+            dr.Ev1Mv2(leafList.getAtom(j).getPosition(), ri);
+            boundary.nearestImage(dr);
+            if (bothDirections) {
+                partial.addHalfPair(i, dr, p2);
+            }
+            else {
+                partial.addPair(i, j, dr, p2);
+            }
+        }
+    }
+
+    protected void sumList(Boundary boundary, int i, Vector ri, IAtomList list,
+                           PotentialCalculationPartialSum partial, Vector dr, Potential2SoftSpherical p2) {
+        int nNeighbors = list.getAtomCount();
+        for (int k = 0; k < nNeighbors; k++) {
+            IAtom atomj = list.getAtom(k);
+            dr.Ev1Mv2(atomj.getPosition(), ri);
+            boundary.nearestImage(dr);
+            if (bothDirections) {
+                partial.addHalfPair(i, dr, p2);
+            }
+            else {
+                partial.addPair(i, atomj.getLeafIndex(), dr, p2);
+            }
+        }
+    }
+}
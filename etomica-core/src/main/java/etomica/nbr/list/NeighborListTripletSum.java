@@ -0,0 +1,370 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.AtomArrayList;
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.potential.IPotential;
+import etomica.potential.IPotentialAtomic;
+import etomica.potential.PairSumParallel;
+import etomica.potential.PotentialCalculation;
+import etomica.potential.PotentialCalculationPartialSum;
+import etomica.potential.PotentialTriplet;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Sums a PotentialCalculation over the triplets of atoms interacting via a
+ * three-body potential, using the neighbor lists of a PotentialMasterList.
+ * A triplet is included if each of its three pair separations is less than
+ * the potential's range.  Each atom i collects (once) the separations to its
+ * neighbors j within range, and the triplets are then formed from pairs of
+ * those neighbors, with the third separation found as a difference of the
+ * first two.  The work is then proportional to N n^2 (n being the number of
+ * neighbors within range) rather than to the number of all triplets.
+ * <p>
+ * The third separation is only the nearest image if the box is at least 3
+ * times the range in each periodic direction, so a smaller box (or a
+ * potential with infinite range, whose neighbor lists would hold every
+ * atom) causes an IllegalArgumentException.
+ * <p>
+ * Energy sums for a PotentialTriplet are split among threads by chunks of
+ * atoms, as in PairSumParallel, with atom i handling the triplets whose
+ * other atoms have larger leaf indices.  The potential is given the
+ * separations found here.  Other calculations and potentials are handled on
+ * the calling thread, passing each triplet to the PotentialCalculation.
+ */
+public class NeighborListTripletSum extends PairSumParallel {
+
+    protected final PotentialMasterList potentialMaster;
+    protected NeighborListManager neighborManager;
+    protected NeighborListsFlat flatLists;
+    protected IPotentialAtomic potential;
+    protected PotentialTriplet tripletPotential;
+    protected double r2Cutoff;
+    protected int[] typePotentialIndex;
+    protected int[] potentialIndex;
+    protected double[] cost;
+    protected final TripletScratch[] scratch;
+
+    public NeighborListTripletSum(PotentialMasterList potentialMaster, Space space, int numThreads) {
+        super(space, numThreads);
+        this.potentialMaster = potentialMaster;
+        typePotentialIndex = new int[0];
+        potentialIndex = new int[0];
+        cost = new double[0];
+        scratch = new TripletScratch[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            scratch[i] = new TripletScratch(space);
+        }
+    }
+
+    /**
+     * Performs the calculation for the given three-body potential over all
+     * triplets of neighbors known to the given neighbor manager.
+     */
+    public void calculate(Box box, PotentialCalculation pc, NeighborListManager nbrManager, IPotentialAtomic newPotential) {
+        setPotential(box, nbrManager, newPotential);
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        if (potentialIndex.length < nAtoms) {
+            potentialIndex = new int[nAtoms];
+            cost = new double[nAtoms];
+        }
+        // find each atom's index for the potential here, since
+        // PotentialArray.getPotentialIndex is not safe to call from several
+        // threads
+        java.util.Arrays.fill(typePotentialIndex, -2);
+        for (int i = 0; i < nAtoms; i++) {
+            AtomType type = leafList.getAtom(i).getType();
+            int t = type.getIndex();
+            if (t >= typePotentialIndex.length) {
+                int[] newTypePotentialIndex = new int[t + 1];
+                java.util.Arrays.fill(newTypePotentialIndex, -2);
+                typePotentialIndex = newTypePotentialIndex;
+            }
+            if (typePotentialIndex[t] == -2) {
+                typePotentialIndex[t] = -1;
+                IPotential[] potentials = potentialMaster.getRangedPotentials(type).getPotentials();
+                for (int p = 0; p < potentials.length; p++) {
+                    if (potentials[p] == potential) {
+                        typePotentialIndex[t] = p;
+                        break;
+                    }
+                }
+            }
+            potentialIndex[i] = typePotentialIndex[t];
+        }
+        if (tripletPotential != null && PotentialCalculationPartialSum.isEnergySum(pc)) {
+            calculate(box, pc);
+            return;
+        }
+        Boundary boundary = box.getBoundary();
+        for (int i = 0; i < nAtoms; i++) {
+            if (potentialIndex[i] < 0) continue;
+            sumTriplets(leafList.getAtom(i), potentialIndex[i], true, boundary, scratch[0], null, pc);
+        }
+    }
+
+    /**
+     * Performs the calculation for the given three-body potential over the
+     * triplets that include the given atom.  This is done on the calling
+     * thread.
+     *
+     * @param p the atom's index for the potential
+     */
+    public void calculate(IAtom atom, int p, PotentialCalculation pc, NeighborListManager nbrManager, IPotentialAtomic newPotential) {
+        Box box = nbrManager.getBox();
+        setPotential(box, nbrManager, newPotential);
+        sumTriplets(atom, p, false, box.getBoundary(), scratch[0], null, pc);
+    }
+
+    protected void setPotential(Box box, NeighborListManager nbrManager, IPotentialAtomic newPotential) {
+        if (newPotential.nBody() != 3) {
+            throw new IllegalArgumentException("Potential must be three-body");
+        }
+        neighborManager = nbrManager;
+        potential = newPotential;
+        tripletPotential = potential instanceof PotentialTriplet ? (PotentialTriplet) potential : null;
+        double range = potential.getRange();
+        if (Double.isInfinite(range)) {
+            throw new IllegalArgumentException("Three-body potential must have a finite range (see P3Truncated)");
+        }
+        Boundary boundary = box.getBoundary();
+        Vector boxSize = boundary.getBoxSize();
+        for (int i = 0; i < boxSize.getD(); i++) {
+            if (boundary.getPeriodicity(i) && boxSize.getX(i) < 3 * range) {
+                throw new IllegalArgumentException("Box size ("+boxSize.getX(i)+") must be at least 3 times the three-body potential range ("+range+")");
+            }
+        }
+        r2Cutoff = range * range;
+        // retrieve (and maybe rebuild) the flat lists here, from a single thread
+        flatLists = neighborManager.isFlatLists() ? neighborManager.getFlatLists() : null;
+        this.box = box;
+    }
+
+    /**
+     * Chooses the chunks so that each has about the same number of triplets.
+     * Atom i handles about m(m-1)/2 triplets, m being the number of its
+     * neighbors with a larger leaf index, so the chunks are found from the
+     * sums of those.
+     */
+    protected void computeChunks(int nAtoms) {
+        IAtomList leafList = box.getLeafList();
+        double totalCost = 0;
+        for (int i = 0; i < nAtoms; i++) {
+            int m = potentialIndex[i] < 0 ? 0 : countUpperNeighbors(leafList.getAtom(i), potentialIndex[i]);
+            totalCost += 0.5 * m * (m - 1) + 1;
+            cost[i] = totalCost;
+        }
+        chunkStart[0] = 0;
+        int i = 0;
+        for (int c = 1; c < numChunks; c++) {
+            double target = totalCost * c / numChunks;
+            while (i < nAtoms && cost[i] < target) {
+                i++;
+            }
+            chunkStart[c] = i;
+        }
+        chunkStart[numChunks] = nAtoms;
+    }
+
+    /**
+     * Returns the number of neighbors of the given atom (in its lists for
+     * potential p) with a larger leaf index, without regard to distance.
+     */
+    protected int countUpperNeighbors(IAtom atom, int p) {
+        int i = atom.getLeafIndex();
+        int m = 0;
+        if (flatLists != null) {
+            if (p >= flatLists.getPotentialCount()) return 0;
+            int[] offsets = flatLists.getUpOffsets(p);
+            int[] nbrs = flatLists.getUpNeighbors(p);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (nbrs[k] > i) m++;
+            }
+            offsets = flatLists.getDownOffsets(p);
+            nbrs = flatLists.getDownNeighbors(p);
+            for (int k = offsets[i]; k < offsets[i + 1]; k++) {
+                if (nbrs[k] > i) m++;
+            }
+            return m;
+        }
+        IAtomList[] lists = neighborManager.getUpList(atom);
+        if (p < lists.length) {
+            for (int k = 0; k < lists[p].getAtomCount(); k++) {
+                if (lists[p].getAtom(k).getLeafIndex() > i) m++;
+            }
+        }
+        lists = neighborManager.getDownList(atom);
+        if (p < lists.length) {
+            for (int k = 0; k < lists[p].getAtomCount(); k++) {
+                if (lists[p].getAtom(k).getLeafIndex() > i) m++;
+            }
+        }
+        return m;
+    }
+
+    protected void sumPairs(Box box, int start, int stop, PotentialCalculationPartialSum partial, Vector dr) {
+        TripletScratch s = null;
+        for (int c = 0; c < numChunks; c++) {
+            if (partials[c] == partial) {
+                s = scratch[c];
+                break;
+            }
+        }
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        for (int i = start; i < stop; i++) {
+            if (potentialIndex[i] < 0) continue;
+            sumTriplets(leafList.getAtom(i), potentialIndex[i], true, boundary, s, partial, null);
+        }
+    }
+
+    /**
+     * Handles the triplets formed by the given atom and pairs of its
+     * neighbors within range.  If partial is not null, the triplet energies
+     * (from the PotentialTriplet) are added to it; otherwise each triplet is
+     * passed to pc.
+     *
+     * @param p     the atom's index for the potential
+     * @param upper if true, only neighbors with larger leaf indices are
+     *              included, so that each triplet is handled by one atom
+     */
+    protected void sumTriplets(IAtom atom, int p, boolean upper, Boundary boundary, TripletScratch s,
+                               PotentialCalculationPartialSum partial, PotentialCalculation pc) {
+        gatherNeighbors(atom, p, upper, boundary, s);
+        int n = s.nNbrs;
+        AtomArrayList atoms = s.atoms;
+        atoms.set(0, atom);
+        Vector drjk = s.drjk;
+        for (int a = 0; a < n - 1; a++) {
+            atoms.set(1, s.nbrs[a]);
+            s.dr[0] = s.nbrDr[a];
+            s.r2[0] = s.nbrR2[a];
+            for (int b = a + 1; b < n; b++) {
+                drjk.Ev1Mv2(s.nbrDr[b], s.nbrDr[a]);
+                double r2jk = drjk.squared();
+                if (r2jk >= r2Cutoff) continue;
+                atoms.set(2, s.nbrs[b]);
+                if (partial != null) {
+                    s.dr[1] = s.nbrDr[b];
+                    s.dr[2] = drjk;
+                    s.r2[1] = s.nbrR2[b];
+                    s.r2[2] = r2jk;
+                    partial.addEnergy(tripletPotential.energy(atoms, s.dr, s.r2));
+                }
+                else {
+                    pc.doCalculation(atoms, potential);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the neighbors of the given atom that are within range (and
+     * with larger leaf indices, if upper is true), along with their
+     * separations from the atom.
+     */
+    protected void gatherNeighbors(IAtom atom, int p, boolean upper, Boundary boundary, TripletScratch s) {
+        s.nNbrs = 0;
+        int i = upper ? atom.getLeafIndex() : -1;
+        Vector ri = atom.getPosition();
+        if (flatLists != null) {
+            if (p >= flatLists.getPotentialCount()) return;
+            IAtomList leafList = box.getLeafList();
+            int iAtom = atom.getLeafIndex();
+            int[] offsets = flatLists.getUpOffsets(p);
+            int[] nbrs = flatLists.getUpNeighbors(p);
+            for (int k = offsets[iAtom]; k < offsets[iAtom + 1]; k++) {
+                if (nbrs[k] > i) s.addNeighbor(leafList.getAtom(nbrs[k]), ri, boundary, r2Cutoff);
+            }
+            offsets = flatLists.getDownOffsets(p);
+            nbrs = flatLists.getDownNeighbors(p);
+            for (int k = offsets[iAtom]; k < offsets[iAtom + 1]; k++) {
+                if (nbrs[k] > i) s.addNeighbor(leafList.getAtom(nbrs[k]), ri, boundary, r2Cutoff);
+            }
+            return;
+        }
+        IAtomList[] lists = neighborManager.getUpList(atom);
+        if (p < lists.length) {
+            for (int k = 0; k < lists[p].getAtomCount(); k++) {
+                IAtom atomj = lists[p].getAtom(k);
+                if (atomj.getLeafIndex() > i) s.addNeighbor(atomj, ri, boundary, r2Cutoff);
+            }
+        }
+        lists = neighborManager.getDownList(atom);
+        if (p < lists.length) {
+            for (int k = 0; k < lists[p].getAtomCount(); k++) {
+                IAtom atomj = lists[p].getAtom(k);
+                if (atomj.getLeafIndex() > i) s.addNeighbor(atomj, ri, boundary, r2Cutoff);
+            }
+        }
+    }
+
+    /**
+     * Work space for one chunk: the neighbors of the current atom within
+     * range and their separations, and the current triplet.
+     */
+    protected static class TripletScratch {
+        protected final Space space;
+        protected IAtom[] nbrs;
+        protected Vector[] nbrDr;
+        protected double[] nbrR2;
+        protected int nNbrs;
+        protected final AtomArrayList atoms;
+        protected final Vector[] dr;
+        protected final double[] r2;
+        protected final Vector drjk;
+
+        public TripletScratch(Space space) {
+            this.space = space;
+            nbrs = new IAtom[0];
+            nbrDr = new Vector[0];
+            nbrR2 = new double[0];
+            atoms = new AtomArrayList(3);
+            for (int i = 0; i < 3; i++) {
+                atoms.add(null);
+            }
+            dr = new Vector[3];
+            r2 = new double[3];
+            drjk = space.makeVector();
+        }
+
+        /**
+         * Adds the given atom as a neighbor if its nearest-image separation
+         * from ri is less than the cutoff.
+         */
+        public void addNeighbor(IAtom atomj, Vector ri, Boundary boundary, double r2Cutoff) {
+            if (nNbrs == nbrs.length) {
+                int newLength = nNbrs + nNbrs / 2 + 10;
+                IAtom[] newNbrs = new IAtom[newLength];
+                Vector[] newNbrDr = new Vector[newLength];
+                double[] newNbrR2 = new double[newLength];
+                System.arraycopy(nbrs, 0, newNbrs, 0, nNbrs);
+                System.arraycopy(nbrDr, 0, newNbrDr, 0, nNbrs);
+                System.arraycopy(nbrR2, 0, newNbrR2, 0, nNbrs);
+                for (int k = nNbrs; k < newLength; k++) {
+                    newNbrDr[k] = space.makeVector();
+                }
+                nbrs = newNbrs;
+                nbrDr = newNbrDr;
+                nbrR2 = newNbrR2;
+            }
+            Vector drij = nbrDr[nNbrs];
+            drij.Ev1Mv2(atomj.getPosition(), ri);
+            boundary.nearestImage(drij);
+            double r2ij = drij.squared();
+            if (r2ij >= r2Cutoff) return;
+            nbrs[nNbrs] = atomj;
+            nbrR2[nNbrs] = r2ij;
+            nNbrs++;
+        }
+    }
+}
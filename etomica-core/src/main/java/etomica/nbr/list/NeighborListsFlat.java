@@ -0,0 +1,190 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+/**
+ * Neighbor lists for all of the leaf atoms in a box, held in compressed
+ * sparse row form.  For each potential index p (the index of the potential
+ * within the atom type's PotentialArray), the up-neighbors of the atom with
+ * leaf index i are
+ * <pre>
+ *   getUpNeighbors(p)[getUpOffsets(p)[i] ... getUpOffsets(p)[i+1]-1]
+ * </pre>
+ * and likewise for the down-neighbors.  Neighbors are given by leaf index.
+ * <p>
+ * Lists are built by calling reset, then addPair for each neighbor pair, then
+ * build.  All arrays are retained between builds and only reallocated when
+ * they need to grow, so rebuilding the lists does not allocate once the
+ * arrays have reached their working size.
+ */
+public class NeighborListsFlat {
+
+    protected int nAtoms, nPotentials, nPairs;
+    protected int[][] upOffsets, downOffsets;
+    protected int[][] upNbrs, downNbrs;
+    protected int[] pairAtom0, pairAtom1, pairPotential0, pairPotential1;
+
+    public NeighborListsFlat() {
+        upOffsets = new int[0][];
+        downOffsets = new int[0][];
+        upNbrs = new int[0][];
+        downNbrs = new int[0][];
+        pairAtom0 = new int[0];
+        pairAtom1 = new int[0];
+        pairPotential0 = new int[0];
+        pairPotential1 = new int[0];
+    }
+
+    /**
+     * Discards all pairs and prepares to receive pairs for a box with the
+     * given number of atoms and the given maximum number of potentials per
+     * atom type.
+     */
+    public void reset(int numAtoms, int numPotentials) {
+        nAtoms = numAtoms;
+        nPairs = 0;
+        if (numPotentials > upOffsets.length) {
+            upOffsets = java.util.Arrays.copyOf(upOffsets, numPotentials);
+            downOffsets = java.util.Arrays.copyOf(downOffsets, numPotentials);
+            upNbrs = java.util.Arrays.copyOf(upNbrs, numPotentials);
+            downNbrs = java.util.Arrays.copyOf(downNbrs, numPotentials);
+            for (int p = 0; p < numPotentials; p++) {
+                if (upNbrs[p] == null) {
+                    upNbrs[p] = new int[0];
+                    downNbrs[p] = new int[0];
+                    upOffsets[p] = new int[0];
+                    downOffsets[p] = new int[0];
+                }
+            }
+        }
+        nPotentials = numPotentials;
+        for (int p = 0; p < nPotentials; p++) {
+            if (upOffsets[p].length < nAtoms + 1) {
+                upOffsets[p] = new int[nAtoms + 1];
+                downOffsets[p] = new int[nAtoms + 1];
+            }
+        }
+    }
+
+    /**
+     * Records a neighbor pair.  atom1 becomes an up-neighbor of atom0 for
+     * atom0's potential index potential0, and atom0 becomes a down-neighbor of
+     * atom1 for atom1's potential index potential1.
+     */
+    public void addPair(int atom0, int potential0, int atom1, int potential1) {
+        if (nPairs == pairAtom0.length) {
+            int newSize = nPairs + 1 + nPairs / 2;
+            pairAtom0 = java.util.Arrays.copyOf(pairAtom0, newSize);
+            pairAtom1 = java.util.Arrays.copyOf(pairAtom1, newSize);
+            pairPotential0 = java.util.Arrays.copyOf(pairPotential0, newSize);
+            pairPotential1 = java.util.Arrays.copyOf(pairPotential1, newSize);
+        }
+        pairAtom0[nPairs] = atom0;
+        pairAtom1[nPairs] = atom1;
+        pairPotential0[nPairs] = potential0;
+        pairPotential1[nPairs] = potential1;
+        nPairs++;
+    }
+
+    /**
+     * Constructs the up and down lists from the pairs added since the last
+     * call to reset.  Within each atom's list, neighbors appear in the order
+     * in which the pairs were added.
+     */
+    public void build() {
+        for (int p = 0; p < nPotentials; p++) {
+            java.util.Arrays.fill(upOffsets[p], 0, nAtoms + 1, 0);
+            java.util.Arrays.fill(downOffsets[p], 0, nAtoms + 1, 0);
+        }
+        // count neighbors of each atom
+        for (int m = 0; m < nPairs; m++) {
+            upOffsets[pairPotential0[m]][pairAtom0[m] + 1]++;
+            downOffsets[pairPotential1[m]][pairAtom1[m] + 1]++;
+        }
+        for (int p = 0; p < nPotentials; p++) {
+            int[] up = upOffsets[p];
+            int[] down = downOffsets[p];
+            for (int i = 0; i < nAtoms; i++) {
+                up[i + 1] += up[i];
+                down[i + 1] += down[i];
+            }
+            if (upNbrs[p].length < up[nAtoms]) {
+                upNbrs[p] = new int[up[nAtoms] + up[nAtoms] / 4];
+            }
+            if (downNbrs[p].length < down[nAtoms]) {
+                downNbrs[p] = new int[down[nAtoms] + down[nAtoms] / 4];
+            }
+        }
+        // offsets[i] now points to the start of each row; use it as the fill
+        // cursor and then shift the offsets back
+        for (int m = 0; m < nPairs; m++) {
+            int p0 = pairPotential0[m];
+            upNbrs[p0][upOffsets[p0][pairAtom0[m]]++] = pairAtom1[m];
+            int p1 = pairPotential1[m];
+            downNbrs[p1][downOffsets[p1][pairAtom1[m]]++] = pairAtom0[m];
+        }
+        for (int p = 0; p < nPotentials; p++) {
+            int[] up = upOffsets[p];
+            int[] down = downOffsets[p];
+            for (int i = nAtoms; i > 0; i--) {
+                up[i] = up[i - 1];
+                down[i] = down[i - 1];
+            }
+            up[0] = 0;
+            down[0] = 0;
+        }
+    }
+
+    /**
+     * @return the number of atoms covered by the lists
+     */
+    public int getAtomCount() {
+        return nAtoms;
+    }
+
+    /**
+     * @return the number of potential indices covered by the lists
+     */
+    public int getPotentialCount() {
+        return nPotentials;
+    }
+
+    /**
+     * @return the total number of neighbor pairs
+     */
+    public int getPairCount() {
+        return nPairs;
+    }
+
+    /**
+     * Returns the row offsets of the up-lists for the given potential index.
+     * The array has (at least) getAtomCount()+1 elements.
+     */
+    public int[] getUpOffsets(int potentialIndex) {
+        return upOffsets[potentialIndex];
+    }
+
+    /**
+     * Returns the up-neighbor leaf indices for the given potential index.
+     */
+    public int[] getUpNeighbors(int potentialIndex) {
+        return upNbrs[potentialIndex];
+    }
+
+    /**
+     * Returns the row offsets of the down-lists for the given potential index.
+     * The array has (at least) getAtomCount()+1 elements.
+     */
+    public int[] getDownOffsets(int potentialIndex) {
+        return downOffsets[potentialIndex];
+    }
+
+    /**
+     * Returns the down-neighbor leaf indices for the given potential index.
+     */
+    public int[] getDownNeighbors(int potentialIndex) {
+        return downNbrs[potentialIndex];
+    }
+}
@@ -16,7 +16,9 @@ import etomica.nbr.*;
 import etomica.nbr.cell.NeighborCellManager;
 import etomica.potential.*;
 import etomica.simulation.Simulation;
+import etomica.space.Boundary;
 import etomica.space.Space;
+import etomica.space.Vector;
 import etomica.species.ISpecies;
 import etomica.util.Arrays;
 import etomica.util.Debug;
@@ -30,6 +32,7 @@ public class PotentialMasterList extends PotentialMasterNbr {
     protected final Space space;
     protected final AtomSetSinglet atomSetSinglet;
     protected final AtomPair atomPair;
+    protected final MoleculeIterator0 moleculeIterator0;
     protected final NeighborListAgentSource neighborListAgentSource;
     protected final BoxAgentManager<NeighborListManager> neighborListAgentManager;
     private final AtomIteratorSinglet singletIterator;
@@ -40,6 +43,22 @@ public class PotentialMasterList extends PotentialMasterNbr {
     private double safetyFactor = 0.4;
     // things needed for N-body potentials
     private AtomArrayList atomArrayList;
+    protected NeighborListPairSumParallel pairSumParallel;
+    protected boolean skipPairSummable;
+    // things needed for embedded-atom potentials
+    protected NeighborListEmbeddingSum embeddingSum;
+    protected boolean skipEmbedding;
+    // things needed for three-body potentials
+    protected NeighborListTripletSum tripletSum;
+    protected boolean skipTriplets;
+    // things needed for batched pair calculations
+    protected boolean batchPairs;
+    protected boolean doBatch;
+    protected PotentialCalculationPartialSum batchSum;
+    protected int[] batchNbrs;
+    protected double[][] batchDr;
+    protected double[] batchR2;
+    protected final Vector batchVector;
 
     /**
      * Default constructor uses range of 1.0.
@@ -86,6 +105,11 @@ public class PotentialMasterList extends PotentialMasterNbr {
         singletIterator = new AtomIteratorSinglet();
         atomSetSinglet = new AtomSetSinglet();
         atomPair = new AtomPair();
+        moleculeIterator0 = new MoleculeIterator0();
+        batchNbrs = new int[0];
+        batchDr = new double[space.D()][0];
+        batchR2 = new double[0];
+        batchVector = space.makeVector();
         cellRange = 2;
         allCriteria = new NeighborCriterion[0];
 
@@ -193,6 +217,28 @@ public class PotentialMasterList extends PotentialMasterNbr {
         recomputeCriteriaRanges();
     }
 
+    /**
+     * Adds the given potential for the given atom types.  A three-body
+     * potential is held directly (rather than by a PotentialGroup) and
+     * applies to any triplet whose atoms all have one of the given types.
+     * Neighbor lists are kept for pairs of those types within the potential's
+     * range, and triplets are formed from them by a NeighborListTripletSum.
+     * Other potentials are handled by the superclass.
+     */
+    public void addPotential(IPotentialAtomic potential, AtomType[] atomTypes) {
+        if (potential.nBody() != 3) {
+            super.addPotential(potential, atomTypes);
+            return;
+        }
+        if (atomTypes.length != 3) {
+            throw new IllegalArgumentException("nBody of potential must match number of atom types");
+        }
+        for (int i=0; i<atomTypes.length; i++) {
+            addRangedPotential(potential, atomTypes[i]);
+        }
+        addRangedPotentialForTypes(potential, atomTypes);
+    }
+
     /**
      * Add the given potential to be used for the given atom types and the
      * given criterion.  If multiple types are given, then the potential will
@@ -240,7 +286,23 @@ public class PotentialMasterList extends PotentialMasterNbr {
         // 0 guarantees the simulation to be hosed if our range is less than the potential range
         // (since recomputeCriteriaRange will bail in that case)
         NeighborCriterion criterion;
-        if (atomType.length == 2) {
+        if (potential.nBody() == 3) {
+            // pairs of any of the types are neighbors; triplets are formed
+            // from the pairs
+            NeighborCriterion rangedCriterion;
+            if (potential.getRange() < Double.POSITIVE_INFINITY) {
+                rangedCriterion = new CriterionSimple(getSimulation(), space, potential.getRange(), 0.0);
+            }
+            else {
+                rangedCriterion = new CriterionAll();
+            }
+            criterion = new CriterionTypesCombination(rangedCriterion, atomType);
+            ISpecies species = atomType[0].getSpecies();
+            if (species == atomType[1].getSpecies() && species == atomType[2].getSpecies()) {
+                criterion = new CriterionInterMolecular(criterion);
+            }
+        }
+        else if (atomType.length == 2) {
             NeighborCriterion rangedCriterion;
             if (potential.getRange() < Double.POSITIVE_INFINITY) {
                 rangedCriterion = new CriterionSimple(getSimulation(), space, potential.getRange(), 0.0);
@@ -432,6 +494,75 @@ public class PotentialMasterList extends PotentialMasterNbr {
         return allCriteria;
     }
 
+    /**
+     * Sets the number of threads used to compute energies, virials and forces
+     * for the whole box.  With more than one thread, calculate splits the
+     * pairs interacting via Potential2SoftSpherical potentials among the
+     * threads (see {@link PotentialCalculationPartialSum}) and combines the
+     * per-thread sums in a fixed order.  Other potentials, and calculations
+     * for a target atom or molecule, are still handled on the calling thread.
+     * The potentials' u(r2) and du(r2) methods and the boundary's nearestImage
+     * method must be safe to call from several threads.
+     * <p>
+     * With more than one thread, PotentialEmbedding potentials are also
+     * summed in two passes by a NeighborListEmbeddingSum, which uses the same
+     * number of threads.  Embedding potentials that do not implement
+     * PotentialEmbedding (such as the angular densities of MEAM) are summed
+     * atom by atom.
+     *
+     * @param numThreads the number of threads; 1 disables parallel calculation
+     */
+    public void setParallelThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (pairSumParallel != null) {
+            pairSumParallel.dispose();
+            pairSumParallel = null;
+        }
+        if (embeddingSum != null) {
+            embeddingSum.dispose();
+            embeddingSum = null;
+        }
+        if (tripletSum != null) {
+            tripletSum.dispose();
+            tripletSum = null;
+        }
+        if (numThreads > 1) {
+            pairSumParallel = new NeighborListPairSumParallel(this, space, numThreads);
+        }
+        parallelThreads = numThreads;
+    }
+
+    /**
+     * @return the number of threads used to compute energies and forces for
+     * the whole box
+     */
+    public int getParallelThreads() {
+        return parallelThreads;
+    }
+
+    /**
+     * Sets whether pairs interacting via Potential2SoftSpherical potentials
+     * are evaluated in blocks.  When enabled, energies, virials
+     * and forces are computed by gathering each atom's neighbors and passing
+     * their separations to the potential's batched u or du method (see
+     * {@link PotentialCalculationPartialSum#addPairs}) rather than invoking
+     * the PotentialCalculation for each pair.  Other calculations and
+     * potentials are handled pair by pair either way.  This is disabled by
+     * default.
+     */
+    public void setBatchPairs(boolean newBatchPairs) {
+        batchPairs = newBatchPairs;
+    }
+
+    /**
+     * @return true if pairs are evaluated in blocks when possible
+     */
+    public boolean isBatchPairs() {
+        return batchPairs;
+    }
+
     /**
      * Overrides superclass method to enable direct neighbor-list iteration
      * instead of iteration via species/potential hierarchy. If no target atoms are
@@ -454,10 +585,20 @@ public class PotentialMasterList extends PotentialMasterNbr {
             for (int i=0; i<allPotentials.length; i++) {
                 allPotentials[i].setBox(box);
                 if(allPotentials[i].nBody() == 0){
-                	((PotentialGroup)allPotentials[i]).calculate(new MoleculeIterator0(), id.direction(), null, pc);
+                	((PotentialGroup)allPotentials[i]).calculate(moleculeIterator0, id.direction(), null, pc);
                 }
             }
 
+            // with a parallel calculation, pairs are done separately below
+            boolean doParallel = pairSumParallel != null && PotentialCalculationPartialSum.isSupported(pc);
+            skipPairSummable = doParallel;
+            // and so are embedded-atom potentials, when using several threads
+            skipEmbedding = parallelThreads > 1 && PotentialCalculationPartialSum.isSupported(pc);
+            // three-body potentials are always summed separately below
+            skipTriplets = true;
+            if (!doParallel) {
+                startBatch(box, pc, true);
+            }
             //no target atoms specified
             //call calculate with each SpeciesAgent
             IMoleculeList list = box.getMoleculeList();
@@ -465,8 +606,36 @@ public class PotentialMasterList extends PotentialMasterNbr {
             for (int i=0; i<size; i++) {
                 calculate(list.getMolecule(i), id.direction(), pc, neighborManager);//call calculate with the SpeciesAgent
             }
+            skipPairSummable = false;
+            finishBatch(box);
+            if (doParallel) {
+                pairSumParallel.calculate(box, pc, neighborManager);
+            }
+            if (skipEmbedding) {
+                skipEmbedding = false;
+                for (int i=0; i<allPotentials.length; i++) {
+                    if (allPotentials[i] instanceof PotentialEmbedding) {
+                        if (embeddingSum == null) {
+                            embeddingSum = new NeighborListEmbeddingSum(this, space, parallelThreads);
+                        }
+                        embeddingSum.calculate(box, pc, neighborManager, (PotentialEmbedding)allPotentials[i]);
+                    }
+                }
+            }
+            skipTriplets = false;
+            for (int i=0; i<allPotentials.length; i++) {
+                if (allPotentials[i].nBody() == 3 && allPotentials[i] instanceof IPotentialAtomic) {
+                    if (tripletSum == null) {
+                        tripletSum = new NeighborListTripletSum(this, space, parallelThreads);
+                    }
+                    tripletSum.calculate(box, pc, neighborManager, (IPotentialAtomic)allPotentials[i]);
+                }
+            }
         }
         else {
+            // forces from a target-atom calculation are rare, and would not
+            // be worth zeroing a force array for every atom
+            startBatch(box, pc, false);
             if (targetAtom != null) {
                 PotentialArray potentialArray = (PotentialArray)rangedAgentManager.getAgent(targetAtom.getType());
                 IPotential[] potentials = potentialArray.getPotentials();
@@ -493,6 +662,7 @@ public class PotentialMasterList extends PotentialMasterNbr {
 
                 calculate(targetMolecule, id.direction(), pc, neighborManager);
             }
+            finishBatch(box);
         }
         if(lrcMaster != null) {
             lrcMaster.calculate(box, id, pc);
@@ -534,6 +704,22 @@ public class PotentialMasterList extends PotentialMasterNbr {
                 }
                 break;
             case 2:
+                if (skipPairSummable && PotentialCalculationPartialSum.isPairSummable(potentials[i])) {
+                    break;
+                }
+                if (doBatch && PotentialCalculationPartialSum.isPairSummable(potentials[i])) {
+                    if (batchPairs) {
+                        calculateBatch(atom, i, direction, (Potential2SoftSpherical)potentials[i], neighborManager);
+                    }
+                    else {
+                        calculateFlatSum(atom, i, direction, (Potential2SoftSpherical)potentials[i], neighborManager);
+                    }
+                    break;
+                }
+                if (neighborManager.isFlatLists()) {
+                    calculateFlat(atom, i, direction, pc, (IPotentialAtomic)potentials[i], neighborManager);
+                    break;
+                }
                 if (direction != IteratorDirective.Direction.DOWN) {
                     IAtomList list = neighborManager.getUpList(atom)[i];
                     int nNeighbors = list.getAtomCount();
@@ -553,7 +739,20 @@ public class PotentialMasterList extends PotentialMasterNbr {
                     }
                 }
                 break;//switch
+            case 3:
+                if (skipTriplets) {
+                    break;
+                }
+                // all triplets that include the atom
+                if (tripletSum == null) {
+                    tripletSum = new NeighborListTripletSum(this, space, parallelThreads);
+                }
+                tripletSum.calculate(atom, i, pc, neighborManager, (IPotentialAtomic)potentials[i]);
+                break;
             case Integer.MAX_VALUE: //N-body
+                if (skipEmbedding && potentials[i] instanceof PotentialEmbedding) {
+                    break;
+                }
                 // do the calculation considering the current Atom as the
                 // "central" Atom.
             	if(atomArrayList==null){
@@ -564,6 +763,22 @@ public class PotentialMasterList extends PotentialMasterNbr {
                     // must have a target and be doing "both"
                     // we have to do the calculation considering each of the
                     // target's neighbors
+                    if (neighborManager.isFlatLists()) {
+                        NeighborListsFlat flatLists = neighborManager.getFlatLists();
+                        IAtomList leafList = neighborManager.getBox().getLeafList();
+                        int iAtom = atom.getLeafIndex();
+                        int[] offsets = flatLists.getUpOffsets(i);
+                        int[] nbrs = flatLists.getUpNeighbors(i);
+                        for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                            doNBodyStuff(leafList.getAtom(nbrs[j]), pc, i, (IPotentialAtomic)potentials[i], neighborManager);
+                        }
+                        offsets = flatLists.getDownOffsets(i);
+                        nbrs = flatLists.getDownNeighbors(i);
+                        for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                            doNBodyStuff(leafList.getAtom(nbrs[j]), pc, i, (IPotentialAtomic)potentials[i], neighborManager);
+                        }
+                        break;
+                    }
                     IAtomList list = neighborManager.getUpList(atom)[i];
                     for (int j=0; j<list.getAtomCount(); j++) {
                         IAtom otherAtom = list.getAtom(j);
@@ -580,12 +795,198 @@ public class PotentialMasterList extends PotentialMasterNbr {
         }//end of for
     }
 
+    /**
+     * Prepares batchSum to collect contributions for the given calculation,
+     * if batched pair calculations or flat neighbor lists are enabled and the
+     * calculation is supported.
+     *
+     * @param allowForces if false, force calculations are not batched
+     */
+    protected void startBatch(Box box, PotentialCalculation pc, boolean allowForces) {
+        doBatch = false;
+        if (!batchPairs && !neighborListAgentManager.getAgent(box).isFlatLists()) return;
+        if (!PotentialCalculationPartialSum.isSupported(pc)) return;
+        if (!allowForces && pc instanceof PotentialCalculationForceSum) return;
+        if (batchSum == null) {
+            batchSum = new PotentialCalculationPartialSum(space, pc);
+        }
+        else {
+            batchSum.setPotentialCalculation(pc);
+        }
+        batchSum.reset(box.getLeafList().getAtomCount());
+        doBatch = true;
+    }
+
+    /**
+     * Adds the contributions collected in batchSum (if any) to the
+     * calculation.
+     */
+    protected void finishBatch(Box box) {
+        if (doBatch) {
+            batchSum.addTo(box);
+            doBatch = false;
+        }
+    }
+
+    /**
+     * Gathers the neighbors of the given atom for the given 2-body potential
+     * and adds their contributions to batchSum with a single batched call to
+     * the potential.
+     */
+    protected void calculateBatch(IAtom atom, int potentialIndex, IteratorDirective.Direction direction,
+                                  Potential2SoftSpherical potential, NeighborListManager neighborManager) {
+        int n = 0;
+        if (direction != IteratorDirective.Direction.DOWN) {
+            n = gatherNeighbors(atom, potentialIndex, true, neighborManager, n);
+        }
+        if (direction != IteratorDirective.Direction.UP) {
+            n = gatherNeighbors(atom, potentialIndex, false, neighborManager, n);
+        }
+        if (n == 0) return;
+        if (batchR2.length < n) {
+            int newSize = n + n / 4;
+            batchR2 = new double[newSize];
+            for (int d = 0; d < batchDr.length; d++) {
+                batchDr[d] = new double[newSize];
+            }
+        }
+        Box box = neighborManager.getBox();
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        Vector ri = atom.getPosition();
+        for (int k = 0; k < n; k++) {
+            batchVector.Ev1Mv2(leafList.getAtom(batchNbrs[k]).getPosition(), ri);
+            boundary.nearestImage(batchVector);
+            for (int d = 0; d < batchDr.length; d++) {
+                batchDr[d][k] = batchVector.getX(d);
+            }
+            batchR2[k] = batchVector.squared();
+        }
+        batchSum.addPairs(atom.getLeafIndex(), batchNbrs, batchDr, batchR2, n, potential);
+    }
+
+    /**
+     * Appends the leaf indices of the up (or down) neighbors of the given
+     * atom to batchNbrs, starting at index n.
+     *
+     * @return the new number of neighbors in batchNbrs
+     */
+    protected int gatherNeighbors(IAtom atom, int potentialIndex, boolean up, NeighborListManager neighborManager, int n) {
+        if (neighborManager.isFlatLists()) {
+            NeighborListsFlat flatLists = neighborManager.getFlatLists();
+            int iAtom = atom.getLeafIndex();
+            int[] offsets = up ? flatLists.getUpOffsets(potentialIndex) : flatLists.getDownOffsets(potentialIndex);
+            int[] nbrs = up ? flatLists.getUpNeighbors(potentialIndex) : flatLists.getDownNeighbors(potentialIndex);
+            int count = offsets[iAtom + 1] - offsets[iAtom];
+            ensureBatchCapacity(n + count);
+            System.arraycopy(nbrs, offsets[iAtom], batchNbrs, n, count);
+            return n + count;
+        }
+        IAtomList list = up ? neighborManager.getUpList(atom)[potentialIndex] : neighborManager.getDownList(atom)[potentialIndex];
+        int count = list.getAtomCount();
+        ensureBatchCapacity(n + count);
+        for (int k = 0; k < count; k++) {
+            batchNbrs[n + k] = list.getAtom(k).getLeafIndex();
+        }
+        return n + count;
+    }
+
+    protected void ensureBatchCapacity(int n) {
+        if (batchNbrs.length < n) {
+            batchNbrs = java.util.Arrays.copyOf(batchNbrs, n + n / 4);
+        }
+    }
+
+    /**
+     * Adds the contributions of the given atom and its neighbors for the
+     * given 2-body potential to batchSum, walking the neighbor manager's flat
+     * neighbor lists by leaf index.
+     */
+    protected void calculateFlatSum(IAtom atom, int potentialIndex, IteratorDirective.Direction direction,
+                                    Potential2SoftSpherical potential, NeighborListManager neighborManager) {
+        NeighborListsFlat flatLists = neighborManager.getFlatLists();
+        Box box = neighborManager.getBox();
+        IAtomList leafList = box.getLeafList();
+        Boundary boundary = box.getBoundary();
+        int iAtom = atom.getLeafIndex();
+        Vector ri = atom.getPosition();
+        if (direction != IteratorDirective.Direction.DOWN) {
+            int[] offsets = flatLists.getUpOffsets(potentialIndex);
+            int[] nbrs = flatLists.getUpNeighbors(potentialIndex);
+            for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                batchVector.Ev1Mv2(leafList.getAtom(nbrs[j]).getPosition(), ri);
+                boundary.nearestImage(batchVector);
+                batchSum.addPair(iAtom, nbrs[j], batchVector, potential);
+            }
+        }
+        if (direction != IteratorDirective.Direction.UP) {
+            int[] offsets = flatLists.getDownOffsets(potentialIndex);
+            int[] nbrs = flatLists.getDownNeighbors(potentialIndex);
+            for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                batchVector.Ev1Mv2(leafList.getAtom(nbrs[j]).getPosition(), ri);
+                boundary.nearestImage(batchVector);
+                batchSum.addPair(iAtom, nbrs[j], batchVector, potential);
+            }
+        }
+    }
+
+    /**
+     * Performs the PotentialCalculation for the given atom and 2-body
+     * potential using the neighbor manager's flat neighbor lists.  This
+     * handles calculations and potentials that calculateFlatSum cannot.
+     */
+    protected void calculateFlat(IAtom atom, int potentialIndex, IteratorDirective.Direction direction,
+                                 PotentialCalculation pc, IPotentialAtomic potential, NeighborListManager neighborManager) {
+        NeighborListsFlat flatLists = neighborManager.getFlatLists();
+        IAtomList leafList = neighborManager.getBox().getLeafList();
+        int iAtom = atom.getLeafIndex();
+        if (direction != IteratorDirective.Direction.DOWN) {
+            int[] offsets = flatLists.getUpOffsets(potentialIndex);
+            int[] nbrs = flatLists.getUpNeighbors(potentialIndex);
+            atomPair.atom0 = atom;
+            for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                atomPair.atom1 = leafList.getAtom(nbrs[j]);
+                pc.doCalculation(atomPair, potential);
+            }
+        }
+        if (direction != IteratorDirective.Direction.UP) {
+            int[] offsets = flatLists.getDownOffsets(potentialIndex);
+            int[] nbrs = flatLists.getDownNeighbors(potentialIndex);
+            atomPair.atom1 = atom;
+            for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                atomPair.atom0 = leafList.getAtom(nbrs[j]);
+                pc.doCalculation(atomPair, potential);
+            }
+        }
+    }
+
     /**
      * Invokes the PotentialCalculation for the given Atom with its up and down
      * neighbors as a single AtomSet.
      */
     protected void doNBodyStuff(IAtom atom, PotentialCalculation pc, int potentialIndex,
                                 IPotentialAtomic potential, NeighborListManager neighborManager) {
+        if (neighborManager.isFlatLists()) {
+            NeighborListsFlat flatLists = neighborManager.getFlatLists();
+            IAtomList leafList = neighborManager.getBox().getLeafList();
+            int iAtom = atom.getLeafIndex();
+            atomArrayList.add(atom);
+            if (potentialIndex < flatLists.getPotentialCount()) {
+                int[] offsets = flatLists.getUpOffsets(potentialIndex);
+                int[] nbrs = flatLists.getUpNeighbors(potentialIndex);
+                for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                    atomArrayList.add(leafList.getAtom(nbrs[j]));
+                }
+                offsets = flatLists.getDownOffsets(potentialIndex);
+                nbrs = flatLists.getDownNeighbors(potentialIndex);
+                for (int j=offsets[iAtom]; j<offsets[iAtom+1]; j++) {
+                    atomArrayList.add(leafList.getAtom(nbrs[j]));
+                }
+            }
+            pc.doCalculation(atomArrayList, potential);
+            atomArrayList.clear();
+            return;
+        }
         atomArrayList.add(atom);
         IAtomList[] list = neighborManager.getUpList(atom);
         if (potentialIndex < list.length) {
@@ -0,0 +1,128 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Sums a PotentialCalculation over all pairs of leaf atoms using several
+ * threads, without neighbor lists.  The potential for each pair is looked up
+ * from a table indexed by the atom types, which the PotentialMaster fills
+ * (via setPairPotential) with the pair-summable potentials it wants handled
+ * here; pairs whose types have no entry are skipped.
+ * <p>
+ * Atom i handles its pairs with atoms j>i, so the chunks are chosen to give
+ * each thread about the same number of pairs rather than of atoms.  For a
+ * force sum split among several threads, atom i handles its pairs with all
+ * other atoms and the chunks have the same number of atoms.
+ */
+public class AllPairsSumParallel extends PairSumParallel {
+
+    protected Potential2SoftSpherical[][] pairPotentials;
+
+    public AllPairsSumParallel(Space space, int numThreads) {
+        super(space, numThreads);
+        pairPotentials = new Potential2SoftSpherical[0][0];
+    }
+
+    /**
+     * Removes all entries from the table of pair potentials.
+     */
+    public void clearPairPotentials() {
+        for (int i = 0; i < pairPotentials.length; i++) {
+            for (int j = 0; j < pairPotentials.length; j++) {
+                pairPotentials[i][j] = null;
+            }
+        }
+    }
+
+    /**
+     * Sets the potential for pairs of atoms with the given types (in either
+     * order).  If the table already has a potential for the pair, the table
+     * is left alone and false is returned.
+     */
+    public boolean setPairPotential(AtomType type0, AtomType type1, Potential2SoftSpherical p2) {
+        int i0 = type0.getIndex();
+        int i1 = type1.getIndex();
+        int n = Math.max(i0, i1) + 1;
+        if (n > pairPotentials.length) {
+            Potential2SoftSpherical[][] newPairPotentials = new Potential2SoftSpherical[n][n];
+            for (int i = 0; i < pairPotentials.length; i++) {
+                System.arraycopy(pairPotentials[i], 0, newPairPotentials[i], 0, pairPotentials.length);
+            }
+            pairPotentials = newPairPotentials;
+        }
+        if (pairPotentials[i0][i1] != null) {
+            return false;
+        }
+        pairPotentials[i0][i1] = p2;
+        pairPotentials[i1][i0] = p2;
+        return true;
+    }
+
+    /**
+     * Returns the potential for pairs of atoms with the given types, or null
+     * if the table has none.
+     */
+    public Potential2SoftSpherical getPairPotential(AtomType type0, AtomType type1) {
+        int i0 = type0.getIndex();
+        int i1 = type1.getIndex();
+        if (i0 >= pairPotentials.length || i1 >= pairPotentials.length) {
+            return null;
+        }
+        return pairPotentials[i0][i1];
+    }
+
+    /**
+     * Chooses the chunks so that each has about the same number of pairs.
+     * The atoms from s onward own (n-s)(n-s-1)/2 pairs, so chunk c starts
+     * where that is (1-c/numChunks) of the total.
+     */
+    protected void computeChunks(int nAtoms) {
+        if (bothDirections) {
+            super.computeChunks(nAtoms);
+            return;
+        }
+        chunkStart[0] = 0;
+        for (int i = 1; i < numChunks; i++) {
+            int start = (int) Math.round(nAtoms * (1 - Math.sqrt(1 - (double) i / numChunks)));
+            chunkStart[i] = Math.max(chunkStart[i - 1], Math.min(start, nAtoms));
+        }
+        chunkStart[numChunks] = nAtoms;
+    }
+
+    protected void sumPairs(Box box, int start, int stop, PotentialCalculationPartialSum partial, Vector dr) {
+        IAtomList leafList = box.getLeafList();
+        int nLeaf = leafList.getAtomCount();
+        Boundary boundary = box.getBoundary();
+        int nTypes = pairPotentials.length;
+        for (int i = start; i < stop; i++) {
+            int iType = leafList.getAtom(i).getType().getIndex();
+            if (iType >= nTypes) continue;
+            Potential2SoftSpherical[] iPotentials = pairPotentials[iType];
+            Vector ri = leafList.getAtom(i).getPosition();
+            for (int j = bothDirections ? 0 : i + 1; j < nLeaf; j++) {
+                if (j == i) continue;
+                int jType = leafList.getAtom(j).getType().getIndex();
+                if (jType >= nTypes) continue;
+                Potential2SoftSpherical p2 = iPotentials[jType];
+                if (p2 == null) continue;
+                dr.Ev1Mv2(leafList.getAtom(j).getPosition(), ri);
+                boundary.nearestImage(dr);
+                if (bothDirections) {
+                    partial.addHalfPair(i, dr, p2);
+                }
+                else {
+                    partial.addPair(i, j, dr, p2);
+                }
+            }
+        }
+    }
+}
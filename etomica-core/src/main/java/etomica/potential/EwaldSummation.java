@@ -18,6 +18,8 @@ import etomica.units.Joule;
 import etomica.util.Constants;
 import org.apache.commons.math3.special.Erf;
 
+import java.util.Arrays;
+
 /**Sabry*/
 //Given: rc=L/2  ,  s  ,  
 //Calc.: alpha = s/rc    ,  F&S: radius => nc=(s*alpha/PI)*L Sabry: n_max=N  , nx = ny = nz ~ N^1/3   ,
@@ -45,6 +47,15 @@ public class EwaldSummation implements PotentialSoft{
     protected double rCutRealES, rCutSquared, kCut;
     protected final double sqrtPI = Math.sqrt(Math.PI);
     protected boolean doRealSum = true;
+    // cached structure factors for incremental molecule moves
+    protected double[] kxs, kys, kzs, kCoef;
+    protected double[] sReal, sImag, sRealTrial, sImagTrial, moleculeReal, moleculeImag;
+    protected double[] trialPositions;
+    protected boolean cacheValid;
+    protected int cacheAtomCount;
+    protected double uCached, uFourierCached, uTrial, uFourierTrial, uMoleculeOld;
+    protected IMolecule trialMolecule;
+    protected boolean trialEvaluated, trialChanged;
 
 	// *********************************************** constructor ************************************ // 
     public EwaldSummation(Box box, AtomLeafAgentManager<MyCharge> atomAgentManager, Space _space, double kCut, double rCutRealES){
@@ -125,7 +136,6 @@ public class EwaldSummation implements PotentialSoft{
             if (chargeA==0) continue;
  
             int aIndex = atomA.getParentGroup().getIndex();
-            Vector positionA = atomA.getPosition();
             for (int j=i; j < nAtoms; j++){
                 IAtom atomB = box.getLeafList().getAtom(j);
                 int bIndex = atomB.getParentGroup().getIndex();
@@ -136,34 +146,74 @@ public class EwaldSummation implements PotentialSoft{
               
                 if (chargeB==0) continue;
 
-                Vector positionB = atomB.getPosition();
-                rAB.Ev1Mv2(positionA, positionB);// get vector rAB
-                box.getBoundary().nearestImage(rAB);// minimum image
-            	boolean isSelf = i == j;
-                for(int nx = -nRealShells[0]; nx <= nRealShells[0]; nx++) {
-                    Lxyz.setX(0, nx*boxSize[0]); 
-                    for(int ny = -nRealShells[1]; ny <= nRealShells[1]; ny++) {
-                        Lxyz.setX(1, ny*boxSize[1]);
-                        for(int nz = -nRealShells[2]; nz <= nRealShells[2]; nz++) {
-                        	boolean centerImage = nx*nx+ny*ny+nz*nz == 0;
-                        	
-                            if (aIndex==bIndex && centerImage) continue;//Skip atom-pairs in the same molecule in the orig. cell & ignores self+centerImage too
-                            
-                            Lxyz.setX(2, nz*boxSize[2]);
-                            drTmp.Ev1Pv2(rAB, Lxyz);
-                            double r2 = drTmp.squared();
-                            if(r2 > rCutSquared) continue;
-                            double drTmpM = Math.sqrt(r2);
-                            double tmepReal = chargeA * chargeB * Erf.erfc(alpha * drTmpM) / drTmpM;//Don't worry about 1/2 factor;j>i
-                            uReal+= (isSelf ? 0.5 : 1.0)*tmepReal;
-                        }
-                    }
-                }
+                uReal += uRealPair(atomA, chargeA, atomB, chargeB, aIndex == bIndex, i == j);
             }// close for all sites in j-th molecule
         } // close for the outside loop
         return uReal;
     }
 
+    /**
+     * Returns the real-space energy between atomA and all images of atomB.
+     * If the atoms are in the same molecule, the image in the original cell
+     * is skipped.  If atomA is atomB, the energy is halved.
+     */
+    protected double uRealPair(IAtom atomA, double chargeA, IAtom atomB, double chargeB, boolean sameMolecule, boolean isSelf) {
+        double uReal = 0;
+        rAB.Ev1Mv2(atomA.getPosition(), atomB.getPosition());// get vector rAB
+        box.getBoundary().nearestImage(rAB);// minimum image
+        for(int nx = -nRealShells[0]; nx <= nRealShells[0]; nx++) {
+            Lxyz.setX(0, nx*boxSize[0]); 
+            for(int ny = -nRealShells[1]; ny <= nRealShells[1]; ny++) {
+                Lxyz.setX(1, ny*boxSize[1]);
+                for(int nz = -nRealShells[2]; nz <= nRealShells[2]; nz++) {
+                    boolean centerImage = nx*nx+ny*ny+nz*nz == 0;
+
+                    if (sameMolecule && centerImage) continue;//Skip atom-pairs in the same molecule in the orig. cell & ignores self+centerImage too
+
+                    Lxyz.setX(2, nz*boxSize[2]);
+                    drTmp.Ev1Pv2(rAB, Lxyz);
+                    double r2 = drTmp.squared();
+                    if(r2 > rCutSquared) continue;
+                    double drTmpM = Math.sqrt(r2);
+                    double tmepReal = chargeA * chargeB * Erf.erfc(alpha * drTmpM) / drTmpM;//Don't worry about 1/2 factor;j>i
+                    uReal+= (isSelf ? 0.5 : 1.0)*tmepReal;
+                }
+            }
+        }
+        return uReal;
+    }
+
+    /**
+     * Returns the real-space energy of the given molecule's atoms with all
+     * other atoms, including the intramolecular image terms, counted the
+     * same way as uReal.
+     */
+    protected double uRealMolecule(IMolecule molecule) {
+        IAtomList leafList = box.getLeafList();
+        int nAtoms = leafList.getAtomCount();
+        IAtomList childList = molecule.getChildList();
+        double uReal = 0.0;
+        for (int iChild=0; iChild < childList.getAtomCount(); iChild++) {
+            IAtom atomA = childList.getAtom(iChild);
+            double chargeA = atomAgentManager.getAgent(atomA).charge;
+            if (chargeA==0) continue;
+            int i = atomA.getLeafIndex();
+            int aIndex = atomA.getParentGroup().getIndex();
+            for (int j=0; j < nAtoms; j++){
+                IAtom atomB = leafList.getAtom(j);
+                int bIndex = atomB.getParentGroup().getIndex();
+                boolean sameMolecule = aIndex == bIndex;
+                // count pairs within the molecule only once
+                if (atomB.getParentGroup() == molecule && j < i) continue;
+                if (sameMolecule && nRealShells[0]==0 && nRealShells[1]==0 && nRealShells[2]==0) continue;
+                double chargeB = atomAgentManager.getAgent(atomB).charge;
+                if (chargeB==0) continue;
+                uReal += uRealPair(atomA, chargeA, atomB, chargeB, sameMolecule, i == j);
+            }
+        }
+        return uReal;
+    }
+
     // *********************************************************************************************//
     // *************************************  Fourier-space ****************************************//
     // *********************************************************************************************//
@@ -228,28 +278,36 @@ public class EwaldSummation implements PotentialSoft{
     public double uBondCorr(){
         double uCorr = 0.0;
         for (int i=0; i< numMolecules; i++){
-            IMolecule molecule = moleculeList.getMolecule(i);
-            int numSites = molecule.getChildList().getAtomCount();
-            for (int siteA=0; siteA<numSites; siteA++){
-                IAtom atomA = molecule.getChildList().getAtom(siteA);
-                Vector positionA = atomA.getPosition();
-                double chargeA = atomAgentManager.getAgent(atomA).charge;
-                if (chargeA==0) continue;
-                for (int siteB=siteA+1; siteB<numSites; siteB++){
-                    IAtom atomB = molecule.getChildList().getAtom(siteB);
-                    Vector positionB = atomB.getPosition();
-                    double chargeB = atomAgentManager.getAgent(atomB).charge;
-                    if (chargeB==0) continue;
-                    rAB.Ev1Mv2(positionA, positionB);
-                    double rABMagnitudeSquared = rAB.squared();
-                    double rABMagnitude = Math.sqrt(rABMagnitudeSquared);
-                    uCorr += chargeA*chargeB*Erf.erf(alpha*rABMagnitude)/rABMagnitude;
-                }
-            }
+            uCorr += uBondCorr(moleculeList.getMolecule(i));
         }		
         return uCorr;
     }
 
+    /**
+     * Returns the intramolecular correction for the given molecule.
+     */
+    protected double uBondCorr(IMolecule molecule){
+        double uCorr = 0.0;
+        int numSites = molecule.getChildList().getAtomCount();
+        for (int siteA=0; siteA<numSites; siteA++){
+            IAtom atomA = molecule.getChildList().getAtom(siteA);
+            Vector positionA = atomA.getPosition();
+            double chargeA = atomAgentManager.getAgent(atomA).charge;
+            if (chargeA==0) continue;
+            for (int siteB=siteA+1; siteB<numSites; siteB++){
+                IAtom atomB = molecule.getChildList().getAtom(siteB);
+                Vector positionB = atomB.getPosition();
+                double chargeB = atomAgentManager.getAgent(atomB).charge;
+                if (chargeB==0) continue;
+                rAB.Ev1Mv2(positionA, positionB);
+                double rABMagnitudeSquared = rAB.squared();
+                double rABMagnitude = Math.sqrt(rABMagnitudeSquared);
+                uCorr += chargeA*chargeB*Erf.erf(alpha*rABMagnitude)/rABMagnitude;
+            }
+        }
+        return uCorr;
+    }
+
     public double getRange() {
         return Double.POSITIVE_INFINITY;
     }
@@ -270,6 +328,11 @@ public class EwaldSummation implements PotentialSoft{
     }
 
     public double energy(IAtomList atoms) {
+        if (trialMolecule != null) {
+            return trialEnergy();
+        }
+        // whoever asks for the full energy might have moved atoms
+        cacheValid = false;
         double real = doRealSum ? uReal() : 0;
         double fourier = uFourier();
         double self = uSelf();
@@ -287,6 +350,232 @@ public class EwaldSummation implements PotentialSoft{
         return totalEnergy;
     }
 
+    // *********************************************************************************************//
+    // ******************************* incremental molecule moves ***********************************//
+    // *********************************************************************************************//
+
+    /**
+     * Computes the structure factor S(k) for every wave vector and the total
+     * energy, which are then updated incrementally by molecule moves (see
+     * startMoleculeMove).  This is called as needed by startMoleculeMove and
+     * need not be called directly.
+     */
+    public void resetStructureFactors() {
+        if (kCoef == null) {
+            makeKVectors();
+        }
+        IAtomList atoms = box.getLeafList();
+        int nAtoms = atoms.getAtomCount();
+        for (int k=0; k<kCoef.length; k++) {
+            sReal[k] = 0;
+            sImag[k] = 0;
+        }
+        for (int i=0; i<nAtoms; i++) {
+            IAtom atom = atoms.getAtom(i);
+            double charge = atomAgentManager.getAgent(atom).charge;
+            if (charge==0) continue;
+            addStructureFactor(atom.getPosition(), charge, sReal, sImag);
+        }
+        uFourierCached = uFourier(sReal, sImag);
+        uCached = (doRealSum ? uReal() : 0) + uFourierCached + uSelf() - uBondCorr();
+        cacheValid = true;
+        cacheAtomCount = nAtoms;
+    }
+
+    /**
+     * Marks the cached structure factors as out of date, so that they are
+     * rebuilt by the next startMoleculeMove.  This need only be called after
+     * atoms are moved some way other than by a molecule move, with nothing
+     * asking for the full energy or gradient (which mark the cache out of
+     * date themselves).
+     */
+    public void invalidateStructureFactors() {
+        cacheValid = false;
+    }
+
+    /**
+     * Returns true if this sum can update its energy for a molecule move
+     * from the cached structure factors.  Subclasses with a different
+     * Fourier sum return false, and then compute every energy in full.
+     */
+    protected boolean isIncremental() {
+        return true;
+    }
+
+    /**
+     * Notifies this potential that the given molecule is about to be moved
+     * (translated, rotated or otherwise changed) by a Monte Carlo trial.
+     * Until acceptMoleculeMove or rejectMoleculeMove is called, energy()
+     * returns the energy from cached structure factors, updated for the new
+     * positions of the molecule in O(nK) operations (plus O(N) for the real-space
+     * part if it is computed here), instead of recomputing the whole sum.
+     * <p>
+     * The cache is rebuilt first if it is out of date, which is the case
+     * after the full energy or gradient has been computed (as any other move
+     * or an MD step does) or invalidateStructureFactors has been called.  A
+     * rejected move must restore the molecule's positions; the cache is
+     * then still used, even if the restored positions differ by round-off.
+     */
+    public void startMoleculeMove(IMolecule molecule) {
+        if (!isIncremental()) return;
+        if (trialMolecule != null) {
+            throw new IllegalStateException("molecule move already in progress");
+        }
+        IAtomList atoms = box.getLeafList();
+        if (!cacheValid || cacheAtomCount != atoms.getAtomCount()) {
+            resetStructureFactors();
+        }
+        trialMolecule = molecule;
+        trialEvaluated = false;
+        IAtomList childList = molecule.getChildList();
+        if (trialPositions == null || trialPositions.length < 3*childList.getAtomCount()) {
+            trialPositions = new double[3*childList.getAtomCount()];
+        }
+        for (int iChild=0; iChild<childList.getAtomCount(); iChild++) {
+            Vector position = childList.getAtom(iChild).getPosition();
+            for (int d=0; d<3; d++) {
+                trialPositions[3*iChild+d] = position.getX(d);
+            }
+        }
+        moleculeStructureFactor(molecule, moleculeReal, moleculeImag);
+        uMoleculeOld = (doRealSum ? uRealMolecule(molecule) : 0) - uBondCorr(molecule);
+    }
+
+    /**
+     * Commits the molecule move started by startMoleculeMove.  The molecule
+     * must be at its new position.
+     */
+    public void acceptMoleculeMove() {
+        if (trialMolecule == null) return;
+        if (!trialEvaluated || !trialChanged) {
+            // energy was not computed since the molecule moved
+            trialEnergy();
+        }
+        if (trialChanged) {
+            double[] tmp = sReal;
+            sReal = sRealTrial;
+            sRealTrial = tmp;
+            tmp = sImag;
+            sImag = sImagTrial;
+            sImagTrial = tmp;
+            uFourierCached = uFourierTrial;
+            uCached = uTrial;
+        }
+        trialMolecule = null;
+    }
+
+    /**
+     * Discards the molecule move started by startMoleculeMove.  The molecule
+     * must be returned to its original position (before or after this call).
+     */
+    public void rejectMoleculeMove() {
+        trialMolecule = null;
+    }
+
+    protected double trialEnergy() {
+        trialEvaluated = true;
+        trialChanged = !isTrialCurrent();
+        if (!trialChanged) {
+            return uCached;
+        }
+        IAtomList childList = trialMolecule.getChildList();
+        for (int k=0; k<kCoef.length; k++) {
+            sRealTrial[k] = sReal[k] - moleculeReal[k];
+            sImagTrial[k] = sImag[k] - moleculeImag[k];
+        }
+        for (int iChild=0; iChild<childList.getAtomCount(); iChild++) {
+            IAtom atom = childList.getAtom(iChild);
+            double charge = atomAgentManager.getAgent(atom).charge;
+            if (charge==0) continue;
+            addStructureFactor(atom.getPosition(), charge, sRealTrial, sImagTrial);
+        }
+        uFourierTrial = uFourier(sRealTrial, sImagTrial);
+        double uMoleculeNew = (doRealSum ? uRealMolecule(trialMolecule) : 0) - uBondCorr(trialMolecule);
+        uTrial = uCached + (uFourierTrial - uFourierCached) + (uMoleculeNew - uMoleculeOld);
+        return uTrial;
+    }
+
+    /**
+     * Returns true if the trial molecule is where it was when the move
+     * started.
+     */
+    protected boolean isTrialCurrent() {
+        IAtomList childList = trialMolecule.getChildList();
+        for (int iChild=0; iChild<childList.getAtomCount(); iChild++) {
+            Vector position = childList.getAtom(iChild).getPosition();
+            for (int d=0; d<3; d++) {
+                if (trialPositions[3*iChild+d] != position.getX(d)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the wave vectors within kCut.  Only one of each pair k, -k is
+     * kept, since both contribute the same energy.
+     */
+    protected void makeKVectors() {
+        double kCutSquared = kCut * kCut;
+        double coefficient = 2.0*Math.PI/volume;
+        int nK = 0;
+        double[][] kTmp = new double[4][(2*nKs[0]+1)*(2*nKs[1]+1)*(nKs[2]+1)];
+        for (int xAxis = 0; xAxis < nKs[0]+1; xAxis++){
+            for (int yAxis = xAxis == 0 ? 0 : -nKs[1]; yAxis < nKs[1]+1; yAxis++ ){
+                for (int zAxis = (xAxis == 0 && yAxis == 0) ? 1 : -nKs[2]; zAxis < nKs[2]+1; zAxis++ ){
+                    double kx = xAxis * basis[0], ky = yAxis * basis[1], kz = zAxis * basis[2];
+                    double kSquared = kx*kx + ky*ky + kz*kz;
+                    if (kSquared > kCutSquared) continue;
+                    kTmp[0][nK] = kx;
+                    kTmp[1][nK] = ky;
+                    kTmp[2][nK] = kz;
+                    kTmp[3][nK] = 2*coefficient*Math.exp(-0.25 * kSquared / alpha2) / kSquared;
+                    nK++;
+                }
+            }
+        }
+        kxs = Arrays.copyOf(kTmp[0], nK);
+        kys = Arrays.copyOf(kTmp[1], nK);
+        kzs = Arrays.copyOf(kTmp[2], nK);
+        kCoef = Arrays.copyOf(kTmp[3], nK);
+        sReal = new double[nK];
+        sImag = new double[nK];
+        sRealTrial = new double[nK];
+        sImagTrial = new double[nK];
+        moleculeReal = new double[nK];
+        moleculeImag = new double[nK];
+    }
+
+    protected void addStructureFactor(Vector position, double charge, double[] re, double[] im) {
+        double x = position.getX(0), y = position.getX(1), z = position.getX(2);
+        for (int k=0; k<kCoef.length; k++) {
+            double kr = kxs[k]*x + kys[k]*y + kzs[k]*z;
+            re[k] += charge*Math.cos(kr);
+            im[k] += charge*Math.sin(kr);
+        }
+    }
+
+    protected void moleculeStructureFactor(IMolecule molecule, double[] re, double[] im) {
+        for (int k=0; k<kCoef.length; k++) {
+            re[k] = 0;
+            im[k] = 0;
+        }
+        IAtomList childList = molecule.getChildList();
+        for (int iChild=0; iChild<childList.getAtomCount(); iChild++) {
+            IAtom atom = childList.getAtom(iChild);
+            double charge = atomAgentManager.getAgent(atom).charge;
+            if (charge==0) continue;
+            addStructureFactor(atom.getPosition(), charge, re, im);
+        }
+    }
+
+    protected double uFourier(double[] re, double[] im) {
+        double u = 0;
+        for (int k=0; k<kCoef.length; k++) {
+            u += kCoef[k]*(re[k]*re[k] + im[k]*im[k]);
+        }
+        return u;
+    }
+
     public double virial(IAtomList atoms) {
         return 0;
     }
@@ -296,9 +585,8 @@ public class EwaldSummation implements PotentialSoft{
     //////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     public Vector[] gradient(IAtomList atoms) {
+        cacheValid = false;
         int nAtoms = box.getLeafList().getAtomCount();
-        double coeff = 4.0*Math.PI/volume;
-        double kCutSquared = kCut * kCut; // criteria for spherical cutoff in fourier space
 
         if(gradient.length < nAtoms){
             gradient = new Vector[nAtoms];
@@ -359,7 +647,19 @@ public class EwaldSummation implements PotentialSoft{
         }
 
         //Fourier gradient Part		
+        gradientFourier(nAtoms);
+
+        //Intra-Molecular  gradient:
+        gradientBondCorr();
+        return gradient;
+    }
 
+    /**
+     * Adds the gradient of the Fourier-space energy to the gradient array.
+     */
+    protected void gradientFourier(int nAtoms) {
+        double coeff = 4.0*Math.PI/volume;
+        double kCutSquared = kCut * kCut; // criteria for spherical cutoff in fourier space
         for (int xAxis = -nKs[0]; xAxis < nKs[0]+1; xAxis++){
             kVector.setX(0, (xAxis * basis[0]));// assign value to the x-axis
             for (int yAxis = -nKs[1]; yAxis < nKs[1]+1; yAxis++ ){
@@ -392,8 +692,12 @@ public class EwaldSummation implements PotentialSoft{
                 }//end of storing Sin and Cos
             }
         }//End loop over ks
+    }
 
-        //Intra-Molecular  gradient:
+    /**
+     * Adds the gradient of the intramolecular correction to the gradient array.
+     */
+    protected void gradientBondCorr() {
         for (int i=0; i< numMolecules; i++){
             IMolecule molecule = moleculeList.getMolecule(i);	
             int numSites = molecule.getChildList().getAtomCount();
@@ -419,7 +723,6 @@ public class EwaldSummation implements PotentialSoft{
                 }
             }
         }
-        return gradient;
     }
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////// 
@@ -0,0 +1,341 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.math.numerical.FastFourierTransform;
+import etomica.space.Boundary;
+import etomica.space.BoundaryRectangular;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Smooth particle-mesh Ewald (Essmann et al., J. Chem. Phys. 103, 8577
+ * (1995)).  The real-space, self and intramolecular parts are the same as
+ * EwaldSummation, but the Fourier-space energy and gradient are computed by
+ * spreading the charges onto a grid with cardinal B-splines and transforming
+ * the grid with FastFourierTransform, which costs O(N log N) instead of
+ * O(N nK).
+ * <p>
+ * The Ewald parameter alpha is determined from kCut and rCutRealES as in
+ * EwaldSummation.  All wave vectors on the grid are included, so the grid
+ * should be fine enough to resolve kCut; by default each grid dimension is
+ * the smallest power of 2 with at least 4 points per shortest wavelength of
+ * kCut.  The grid must be a power of 2 in each direction, and the box must be
+ * rectangular and periodic in every direction (or an IllegalArgumentException
+ * is thrown).  secondDerivative still uses the Ewald sum, and molecule moves
+ * (startMoleculeMove) do not update the energy incrementally.
+ */
+public class EwaldSummationPME extends EwaldSummation {
+
+    protected final int order;
+    protected final int[] nGrid;
+    protected final int nGridTotal;
+    // (2pi/V) exp(-k^2/4alpha^2)/k^2 times the B-spline factor, for each grid point
+    protected final double[] influence;
+    protected final double[] gridReal, gridImag;
+    protected final double[][] lineReal, lineImag;
+    protected final FastFourierTransform fft;
+    protected double[][] theta, dTheta;
+    protected int[][] gridBase;
+
+    public EwaldSummationPME(Box box, AtomLeafAgentManager<MyCharge> atomAgentManager, Space _space, double kCut, double rCutRealES) {
+        this(box, atomAgentManager, _space, kCut, rCutRealES, null, 4);
+    }
+
+    /**
+     * @param nGrid number of grid points in each direction (each a power of
+     *              2), or null to choose them from kCut.
+     * @param order order of the B-splines used to spread the charges (even,
+     *              at least 4)
+     */
+    public EwaldSummationPME(Box box, AtomLeafAgentManager<MyCharge> atomAgentManager, Space _space, double kCut, double rCutRealES, int[] nGrid, int order) {
+        super(box, atomAgentManager, _space, kCut, rCutRealES);
+        Boundary boundary = box.getBoundary();
+        if (!(boundary instanceof BoundaryRectangular)) {
+            throw new IllegalArgumentException("PME requires a rectangular boundary");
+        }
+        for (int d = 0; d < 3; d++) {
+            if (!boundary.getPeriodicity(d)) {
+                throw new IllegalArgumentException("PME requires a boundary that is periodic in every direction");
+            }
+        }
+        if (order < 4 || order % 2 != 0) {
+            throw new IllegalArgumentException("B-spline order must be even and at least 4");
+        }
+        this.order = order;
+        if (nGrid == null) {
+            nGrid = new int[3];
+            for (int d = 0; d < 3; d++) {
+                nGrid[d] = Math.max(Integer.highestOneBit(4 * nKs[d] - 1) * 2, 2 * order);
+            }
+        }
+        else {
+            nGrid = nGrid.clone();
+        }
+        for (int d = 0; d < 3; d++) {
+            if (Integer.bitCount(nGrid[d]) != 1 || nGrid[d] < order) {
+                throw new IllegalArgumentException("grid size must be a power of 2 and no smaller than the B-spline order");
+            }
+        }
+        this.nGrid = nGrid;
+        nGridTotal = nGrid[0] * nGrid[1] * nGrid[2];
+        gridReal = new double[nGridTotal];
+        gridImag = new double[nGridTotal];
+        lineReal = new double[3][];
+        lineImag = new double[3][];
+        for (int d = 0; d < 3; d++) {
+            lineReal[d] = new double[nGrid[d]];
+            lineImag[d] = new double[nGrid[d]];
+        }
+        fft = new FastFourierTransform();
+        theta = new double[3][0];
+        dTheta = new double[3][0];
+        gridBase = new int[3][0];
+
+        // |b(m)|^2 for each dimension
+        double[][] bSquared = new double[3][];
+        double[] m0 = new double[order];
+        double[] dm0 = new double[order];
+        bSpline(0, m0, dm0, 0);
+        for (int d = 0; d < 3; d++) {
+            bSquared[d] = new double[nGrid[d]];
+            for (int m = 0; m < nGrid[d]; m++) {
+                double sr = 0, si = 0;
+                for (int j = 0; j < order; j++) {
+                    double arg = 2 * Math.PI * m * j / nGrid[d];
+                    sr += m0[j] * Math.cos(arg);
+                    si += m0[j] * Math.sin(arg);
+                }
+                bSquared[d][m] = 1 / (sr * sr + si * si);
+            }
+        }
+
+        influence = new double[nGridTotal];
+        double coefficient = 2.0 * Math.PI / volume;
+        for (int x = 0; x < nGrid[0]; x++) {
+            double kx = basis[0] * (x <= nGrid[0] / 2 ? x : x - nGrid[0]);
+            for (int y = 0; y < nGrid[1]; y++) {
+                double ky = basis[1] * (y <= nGrid[1] / 2 ? y : y - nGrid[1]);
+                for (int z = 0; z < nGrid[2]; z++) {
+                    if (x == 0 && y == 0 && z == 0) continue;
+                    double kz = basis[2] * (z <= nGrid[2] / 2 ? z : z - nGrid[2]);
+                    double kSquared = kx * kx + ky * ky + kz * kz;
+                    influence[(x * nGrid[1] + y) * nGrid[2] + z] = coefficient * Math.exp(-0.25 * kSquared / alpha2) / kSquared
+                            * bSquared[0][x] * bSquared[1][y] * bSquared[2][z];
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of grid points in each direction.
+     */
+    public int[] getGridSize() {
+        return nGrid.clone();
+    }
+
+    /**
+     * Computes the weights of a B-spline of the given order for the grid
+     * points following a charge whose scaled coordinate has fractional part
+     * w.  The weights go into m[offset] ... m[offset+order-1] and their
+     * derivatives with respect to w into dm.
+     */
+    protected void bSpline(double w, double[] m, double[] dm, int offset) {
+        // start with order 2 (linear) and work up
+        m[offset + order - 1] = 0;
+        m[offset + 1] = w;
+        m[offset] = 1 - w;
+        for (int j = 3; j < order; j++) {
+            double div = 1.0 / (j - 1);
+            m[offset + j - 1] = div * w * m[offset + j - 2];
+            for (int k = 1; k < j - 1; k++) {
+                m[offset + j - k - 1] = div * ((w + k) * m[offset + j - k - 2] + (j - k - w) * m[offset + j - k - 1]);
+            }
+            m[offset] = div * (1 - w) * m[offset];
+        }
+        // derivatives come from the spline one order lower
+        dm[offset] = -m[offset];
+        for (int j = 1; j < order; j++) {
+            dm[offset + j] = m[offset + j - 1] - m[offset + j];
+        }
+        double div = 1.0 / (order - 1);
+        m[offset + order - 1] = div * w * m[offset + order - 2];
+        for (int k = 1; k < order - 1; k++) {
+            m[offset + order - k - 1] = div * ((w + k) * m[offset + order - k - 2] + (order - k - w) * m[offset + order - k - 1]);
+        }
+        m[offset] = div * (1 - w) * m[offset];
+    }
+
+    /**
+     * Spreads the charges onto the grid, keeping the B-spline weights for
+     * each atom so that the gradient can be computed afterwards.
+     */
+    protected void spreadCharges() {
+        IAtomList atoms = box.getLeafList();
+        int nAtoms = atoms.getAtomCount();
+        if (gridBase[0].length < nAtoms) {
+            for (int d = 0; d < 3; d++) {
+                theta[d] = new double[nAtoms * order];
+                dTheta[d] = new double[nAtoms * order];
+                gridBase[d] = new int[nAtoms];
+            }
+        }
+        for (int i = 0; i < nGridTotal; i++) {
+            gridReal[i] = 0;
+            gridImag[i] = 0;
+        }
+        int nY = nGrid[1], nZ = nGrid[2];
+        double[] thetaX = theta[0], thetaY = theta[1], thetaZ = theta[2];
+        for (int i = 0; i < nAtoms; i++) {
+            IAtom atom = atoms.getAtom(i);
+            double charge = atomAgentManager.getAgent(atom).charge;
+            if (charge == 0) continue;
+            Vector position = atom.getPosition();
+            for (int d = 0; d < 3; d++) {
+                double u = nGrid[d] * position.getX(d) / boxSize[d];
+                double floor = Math.floor(u);
+                int base = ((int) floor) % nGrid[d];
+                gridBase[d][i] = base < 0 ? base + nGrid[d] : base;
+                bSpline(u - floor, theta[d], dTheta[d], i * order);
+            }
+            int io = i * order;
+            for (int jx = 0; jx < order; jx++) {
+                int x = (gridBase[0][i] + jx) & (nGrid[0] - 1);
+                double qx = charge * thetaX[io + jx];
+                for (int jy = 0; jy < order; jy++) {
+                    int y = (gridBase[1][i] + jy) & (nY - 1);
+                    double qxy = qx * thetaY[io + jy];
+                    int xy = (x * nY + y) * nZ;
+                    for (int jz = 0; jz < order; jz++) {
+                        int z = (gridBase[2][i] + jz) & (nZ - 1);
+                        gridReal[xy + z] += qxy * thetaZ[io + jz];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the grid in place, along each of the three directions.
+     */
+    protected void transformGrid(boolean forward) {
+        int nX = nGrid[0], nY = nGrid[1], nZ = nGrid[2];
+        // along z
+        double[] re = lineReal[2], im = lineImag[2];
+        fft.setData(re, im);
+        for (int xy = 0; xy < nX * nY; xy++) {
+            int offset = xy * nZ;
+            System.arraycopy(gridReal, offset, re, 0, nZ);
+            System.arraycopy(gridImag, offset, im, 0, nZ);
+            if (forward) fft.transform();
+            else fft.invert();
+            System.arraycopy(re, 0, gridReal, offset, nZ);
+            System.arraycopy(im, 0, gridImag, offset, nZ);
+        }
+        // along y
+        re = lineReal[1];
+        im = lineImag[1];
+        fft.setData(re, im);
+        for (int x = 0; x < nX; x++) {
+            for (int z = 0; z < nZ; z++) {
+                int offset = x * nY * nZ + z;
+                for (int y = 0; y < nY; y++) {
+                    re[y] = gridReal[offset + y * nZ];
+                    im[y] = gridImag[offset + y * nZ];
+                }
+                if (forward) fft.transform();
+                else fft.invert();
+                for (int y = 0; y < nY; y++) {
+                    gridReal[offset + y * nZ] = re[y];
+                    gridImag[offset + y * nZ] = im[y];
+                }
+            }
+        }
+        // along x
+        re = lineReal[0];
+        im = lineImag[0];
+        fft.setData(re, im);
+        int strideX = nY * nZ;
+        for (int yz = 0; yz < strideX; yz++) {
+            for (int x = 0; x < nX; x++) {
+                re[x] = gridReal[yz + x * strideX];
+                im[x] = gridImag[yz + x * strideX];
+            }
+            if (forward) fft.transform();
+            else fft.invert();
+            for (int x = 0; x < nX; x++) {
+                gridReal[yz + x * strideX] = re[x];
+                gridImag[yz + x * strideX] = im[x];
+            }
+        }
+    }
+
+    /**
+     * Returns false; the cached structure factors belong to the Ewald sum,
+     * not to the grid, so molecule moves are handled by the full sum.
+     */
+    protected boolean isIncremental() {
+        return false;
+    }
+
+    public double uFourier() {
+        spreadCharges();
+        transformGrid(true);
+        // the forward transform is scaled by 1/nGridTotal
+        double u = 0;
+        for (int i = 0; i < nGridTotal; i++) {
+            u += influence[i] * (gridReal[i] * gridReal[i] + gridImag[i] * gridImag[i]);
+        }
+        return u * nGridTotal * nGridTotal;
+    }
+
+    protected void gradientFourier(int nAtoms) {
+        spreadCharges();
+        transformGrid(true);
+        // convolve the charges with the influence function to get dU/dQ on the grid
+        double fac = 2.0 * nGridTotal;
+        for (int i = 0; i < nGridTotal; i++) {
+            gridReal[i] *= fac * influence[i];
+            gridImag[i] *= fac * influence[i];
+        }
+        transformGrid(false);
+
+        IAtomList atoms = box.getLeafList();
+        int nY = nGrid[1], nZ = nGrid[2];
+        double[] thetaX = theta[0], thetaY = theta[1], thetaZ = theta[2];
+        double[] dThetaX = dTheta[0], dThetaY = dTheta[1], dThetaZ = dTheta[2];
+        for (int i = 0; i < nAtoms; i++) {
+            IAtom atom = atoms.getAtom(i);
+            double charge = atomAgentManager.getAgent(atom).charge;
+            if (charge == 0) continue;
+            int io = i * order;
+            double gx = 0, gy = 0, gz = 0;
+            for (int jx = 0; jx < order; jx++) {
+                int x = (gridBase[0][i] + jx) & (nGrid[0] - 1);
+                double tx = thetaX[io + jx], dtx = dThetaX[io + jx];
+                for (int jy = 0; jy < order; jy++) {
+                    int y = (gridBase[1][i] + jy) & (nY - 1);
+                    double ty = thetaY[io + jy], dty = dThetaY[io + jy];
+                    int xy = (x * nY + y) * nZ;
+                    for (int jz = 0; jz < order; jz++) {
+                        int z = (gridBase[2][i] + jz) & (nZ - 1);
+                        double phi = gridReal[xy + z];
+                        gx += phi * dtx * ty * thetaZ[io + jz];
+                        gy += phi * tx * dty * thetaZ[io + jz];
+                        gz += phi * tx * ty * dThetaZ[io + jz];
+                    }
+                }
+            }
+            Vector g = gradient[i];
+            g.setX(0, g.getX(0) + charge * gx * nGrid[0] / boxSize[0]);
+            g.setX(1, g.getX(1) + charge * gy * nY / boxSize[1]);
+            g.setX(2, g.getX(2) + charge * gz * nZ / boxSize[2]);
+        }
+    }
+}
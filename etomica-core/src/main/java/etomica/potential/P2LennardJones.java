@@ -16,7 +16,7 @@ import etomica.units.dimensions.Length;
  *
  * @author David Kofke
  */
-public class P2LennardJones extends Potential2SoftSpherical {
+public class P2LennardJones extends Potential2SoftSpherical implements PotentialPowerSum {
 
     public P2LennardJones(Space space) {
         this(space, 1.0, 1.0);
@@ -37,6 +37,17 @@ public class P2LennardJones extends Potential2SoftSpherical {
         return epsilon4*s6*(s6 - 1.0);
     }
 
+    public int[] getPowers() {
+        return new int[]{12, 6};
+    }
+
+    public void uTerms(double r2, double[] terms) {
+        double s2 = sigmaSquared/r2;
+        double s6 = s2*s2*s2;
+        terms[0] = epsilon4*s6*s6;
+        terms[1] = -epsilon4*s6;
+    }
+
     /**
      * The derivative r*du/dr.
      */
@@ -46,6 +57,22 @@ public class P2LennardJones extends Potential2SoftSpherical {
         return -epsilon48*s6*(s6 - 0.5);
     }
 
+    public void u(double[] r2, double[] u, int n) {
+        for (int i = 0; i < n; i++) {
+            double s2 = sigmaSquared/r2[i];
+            double s6 = s2*s2*s2;
+            u[i] = epsilon4*s6*(s6 - 1.0);
+        }
+    }
+
+    public void du(double[] r2, double[] du, int n) {
+        for (int i = 0; i < n; i++) {
+            double s2 = sigmaSquared/r2[i];
+            double s6 = s2*s2*s2;
+            du[i] = -epsilon48*s6*(s6 - 0.5);
+        }
+    }
+
    /**
     * The second derivative of the pair energy, times the square of the
     * separation:  r^2 d^2u/dr^2.
@@ -25,7 +25,7 @@ import etomica.units.dimensions.Length;
  *
  * @author Tai Boon Tan
  */
-public final class P2SoftSphere extends Potential2SoftSpherical {
+public final class P2SoftSphere extends Potential2SoftSpherical implements PotentialPowerSum {
 
     public P2SoftSphere(Space space) {
         this(space, 1.0, 1.0, 12);
@@ -99,6 +99,14 @@ public final class P2SoftSphere extends Potential2SoftSpherical {
     	return epsilon*sig_rn;
     }
 
+    public int[] getPowers() {
+        return new int[]{n};
+    }
+
+    public void uTerms(double r2, double[] terms) {
+        terms[0] = u(r2);
+    }
+
     /**
      * The derivative r*du/dr.
      */
@@ -106,6 +114,27 @@ public final class P2SoftSphere extends Potential2SoftSpherical {
         return -n*u(r2);
     }
 
+    public void u(double[] r2, double[] u, int nPairs) {
+        if (n == 12) {
+            for (int i = 0; i < nPairs; i++) {
+                double s2 = sigma2/r2[i];
+                double s6 = s2*s2*s2;
+                u[i] = epsilon*(s6*s6);
+            }
+            return;
+        }
+        for (int i = 0; i < nPairs; i++) {
+            u[i] = u(r2[i]);
+        }
+    }
+
+    public void du(double[] r2, double[] du, int nPairs) {
+        u(r2, du, nPairs);
+        for (int i = 0; i < nPairs; i++) {
+            du[i] = -n*du[i];
+        }
+    }
+
    /**
     * The second derivative of the pair energy, times the square of the
     * separation:  r^2 d^2u/dr^2.
@@ -0,0 +1,347 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.space.Space;
+
+import java.io.*;
+
+/**
+ * Wraps a soft-spherical potential and serves its energy from a cubic spline
+ * in r^2, which is much cheaper than evaluating potentials that involve
+ * exponentials and damping functions for every pair.  The derivatives du and
+ * d2u come from the spline as well.
+ * <p>
+ * The table covers rMin to rMax.  Points are spaced evenly in r^2 and the
+ * number of points is doubled until the spline reproduces the wrapped
+ * potential's u to within tolerance*max(1,|u|) at the midpoint of each
+ * interval, and its du to within tolerance*max(1,|du|) at the midpoint and
+ * quarter points, so that forces are as good as energies.  The table is
+ * built from u alone: du is checked against a finite-difference derivative
+ * of u, since some potentials do not implement du.  d2u is not checked.  Outside of the table, the wrapped potential is called directly;
+ * wrap this in P2SoftSphericalTruncated to truncate it.
+ * <p>
+ * If a cache directory is given, the table is read from that directory if a
+ * table for the same potential class, range, tolerance and potential values
+ * was written there before, and written there otherwise.
+ */
+public class P2SoftSphericalTabulated extends Potential2SoftSpherical {
+
+    protected static final int MAX_INTERVALS = 1 << 20;
+    protected static final int NUM_FINGERPRINT = 16;
+
+    protected final Potential2SoftSpherical potential;
+    protected final double rMin, rMax, tolerance;
+    protected final double r2Min, r2Max;
+    protected double h, invH;
+    protected int nIntervals;
+    // 4 coefficients per interval: u = c0 + t*(c1 + t*(c2 + t*c3))
+    protected double[] coef;
+
+    public P2SoftSphericalTabulated(Space space, Potential2SoftSpherical potential, double rMin, double rMax, double tolerance) {
+        this(space, potential, rMin, rMax, tolerance, null);
+    }
+
+    /**
+     * @param cacheDir directory where tables are cached, or null to always
+     *                 build the table.
+     */
+    public P2SoftSphericalTabulated(Space space, Potential2SoftSpherical potential, double rMin, double rMax, double tolerance, File cacheDir) {
+        super(space);
+        if (rMin <= 0 || rMax <= rMin) {
+            throw new IllegalArgumentException("need 0 < rMin < rMax");
+        }
+        if (tolerance <= 0) {
+            throw new IllegalArgumentException("tolerance must be positive");
+        }
+        this.potential = potential;
+        this.rMin = rMin;
+        this.rMax = rMax;
+        this.tolerance = tolerance;
+        r2Min = rMin * rMin;
+        r2Max = rMax * rMax;
+
+        double[] fingerprint = fingerprint();
+        File cacheFile = null;
+        if (cacheDir != null) {
+            cacheFile = new File(cacheDir, cacheFileName(fingerprint));
+            if (cacheFile.exists() && readTable(cacheFile, fingerprint)) {
+                return;
+            }
+        }
+        makeTable();
+        if (cacheFile != null) {
+            writeTable(cacheFile, fingerprint);
+        }
+    }
+
+    /**
+     * Returns the wrapped potential.
+     */
+    public Potential2SoftSpherical getWrappedPotential() {
+        return potential;
+    }
+
+    /**
+     * Returns the number of intervals in the table.
+     */
+    public int getNumIntervals() {
+        return nIntervals;
+    }
+
+    /**
+     * Builds the table, doubling the number of intervals until the spline
+     * is within the tolerance (see checkTable).
+     */
+    protected void makeTable() {
+        for (int n = 64; n <= MAX_INTERVALS; n *= 2) {
+            double[] y = new double[n + 1];
+            double hn = (r2Max - r2Min) / n;
+            for (int k = 0; k <= n; k++) {
+                y[k] = potential.u(r2Min + k * hn);
+            }
+            setSpline(y, n);
+            if (checkTable()) return;
+        }
+        throw new RuntimeException("could not tabulate " + potential.getClass().getName()
+                + " to within " + tolerance + " using " + MAX_INTERVALS + " intervals");
+    }
+
+    /**
+     * Computes the spline coefficients from the values y at n+1 evenly
+     * spaced points.  The slopes at the ends are taken from one-sided finite
+     * differences so that the error there is not much worse than in the
+     * middle of the table.
+     */
+    protected void setSpline(double[] y, int n) {
+        nIntervals = n;
+        h = (r2Max - r2Min) / n;
+        invH = 1 / h;
+        // second derivatives (times h^2) of the clamped spline, by the Thomas algorithm
+        double yp0 = (-11 * y[0] + 18 * y[1] - 9 * y[2] + 2 * y[3]) / 6;
+        double ypn = (11 * y[n] - 18 * y[n - 1] + 9 * y[n - 2] - 2 * y[n - 3]) / 6;
+        double[] diag = new double[n + 1];
+        double[] rhs = new double[n + 1];
+        diag[0] = 2;
+        rhs[0] = 6 * (y[1] - y[0] - yp0);
+        for (int k = 1; k <= n; k++) {
+            double b = k < n ? 4 : 2;
+            double r = k < n ? 6 * (y[k + 1] - 2 * y[k] + y[k - 1]) : 6 * (ypn - y[n] + y[n - 1]);
+            double w = 1 / diag[k - 1];
+            diag[k] = b - w;
+            rhs[k] = r - w * rhs[k - 1];
+        }
+        double[] m = new double[n + 1];
+        m[n] = rhs[n] / diag[n];
+        for (int k = n - 1; k >= 0; k--) {
+            m[k] = (rhs[k] - m[k + 1]) / diag[k];
+        }
+        coef = new double[4 * n];
+        for (int k = 0; k < n; k++) {
+            coef[4 * k] = y[k];
+            coef[4 * k + 1] = y[k + 1] - y[k] - (2 * m[k] + m[k + 1]) / 6;
+            coef[4 * k + 2] = m[k] / 2;
+            coef[4 * k + 3] = (m[k + 1] - m[k]) / 6;
+        }
+    }
+
+    /**
+     * Returns true if the spline's u is within the tolerance at the midpoint
+     * of every interval and its du is within the tolerance at the midpoint
+     * and quarter points.  The error in du from a spline peaks away from the
+     * midpoint, and shrinks more slowly than that in u as intervals are
+     * added.
+     */
+    protected boolean checkTable() {
+        for (int k = 0; k < nIntervals; k++) {
+            double r2 = r2Min + (k + 0.5) * h;
+            double u = potential.u(r2);
+            if (Math.abs(u(r2) - u) > tolerance * Math.max(1, Math.abs(u))) {
+                return false;
+            }
+            for (int j = 1; j < 4; j++) {
+                r2 = r2Min + (k + 0.25 * j) * h;
+                double du = duFiniteDifference(r2);
+                if (Math.abs(du(r2) - du) > tolerance * Math.max(1, Math.abs(du))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns r du/dr of the wrapped potential, from a fourth-order central
+     * difference of u in r^2.
+     */
+    protected double duFiniteDifference(double r2) {
+        double d = 1e-4 * r2;
+        double du2 = (8 * (potential.u(r2 + d) - potential.u(r2 - d))
+                - (potential.u(r2 + 2 * d) - potential.u(r2 - 2 * d))) / (12 * d);
+        return 2 * r2 * du2;
+    }
+
+    /**
+     * Returns values of the wrapped potential at a few points, which
+     * identify the potential (and its parameters) for the cache.
+     */
+    protected double[] fingerprint() {
+        double[] f = new double[NUM_FINGERPRINT];
+        for (int i = 0; i < NUM_FINGERPRINT; i++) {
+            f[i] = potential.u(r2Min + (r2Max - r2Min) * (i + 0.37) / NUM_FINGERPRINT);
+        }
+        return f;
+    }
+
+    protected String cacheFileName(double[] fingerprint) {
+        long hash = Double.doubleToLongBits(rMin);
+        hash = 31 * hash + Double.doubleToLongBits(rMax);
+        hash = 31 * hash + Double.doubleToLongBits(tolerance);
+        for (double f : fingerprint) {
+            hash = 31 * hash + Double.doubleToLongBits(f);
+        }
+        return potential.getClass().getSimpleName() + "-" + Long.toHexString(hash) + ".tab";
+    }
+
+    /**
+     * Reads the table from the given file.  Returns false if the file was
+     * written for a different potential or range.
+     */
+    protected boolean readTable(File file, double[] fingerprint) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!in.readUTF().equals(potential.getClass().getName())) return false;
+            if (in.readDouble() != rMin || in.readDouble() != rMax || in.readDouble() != tolerance) return false;
+            for (double f : fingerprint) {
+                if (in.readDouble() != f) return false;
+            }
+            int n = in.readInt();
+            if (n < 4 || n > MAX_INTERVALS) return false;
+            double[] c = new double[4 * n];
+            for (int i = 0; i < c.length; i++) {
+                c[i] = in.readDouble();
+            }
+            nIntervals = n;
+            h = (r2Max - r2Min) / n;
+            invH = 1 / h;
+            coef = c;
+            return true;
+        } catch (IOException e) {
+            // unreadable or truncated; just build the table again
+            return false;
+        }
+    }
+
+    /**
+     * Writes the table to the given file.  The table is written under a
+     * temporary name and then renamed, so that a concurrent run never reads
+     * a partial table.  If writing fails, a warning is printed and the table
+     * is only kept in memory.
+     */
+    protected void writeTable(File file, double[] fingerprint) {
+        File tmpFile = new File(file.getPath() + ".tmp" + System.nanoTime());
+        try {
+            File dir = file.getParentFile();
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("could not create " + dir);
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeUTF(potential.getClass().getName());
+                out.writeDouble(rMin);
+                out.writeDouble(rMax);
+                out.writeDouble(tolerance);
+                for (double f : fingerprint) {
+                    out.writeDouble(f);
+                }
+                out.writeInt(nIntervals);
+                for (double c : coef) {
+                    out.writeDouble(c);
+                }
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("could not rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Warning: could not write potential table " + file + ": " + e.getMessage());
+            tmpFile.delete();
+        }
+    }
+
+    public double u(double r2) {
+        if (r2 < r2Min || r2 >= r2Max) return potential.u(r2);
+        double x = (r2 - r2Min) * invH;
+        int k = Math.min((int) x, nIntervals - 1);
+        double t = x - k;
+        k *= 4;
+        return coef[k] + t * (coef[k + 1] + t * (coef[k + 2] + t * coef[k + 3]));
+    }
+
+    /**
+     * Returns r du/dr = 2 r^2 du/d(r^2), from the spline.
+     */
+    public double du(double r2) {
+        if (r2 < r2Min || r2 >= r2Max) return potential.du(r2);
+        double x = (r2 - r2Min) * invH;
+        int k = Math.min((int) x, nIntervals - 1);
+        double t = x - k;
+        k *= 4;
+        return 2 * r2 * invH * (coef[k + 1] + t * (2 * coef[k + 2] + t * 3 * coef[k + 3]));
+    }
+
+    /**
+     * Returns r^2 d^2u/dr^2 = 2 r^2 du/d(r^2) + 4 r^4 d^2u/d(r^2)^2, from
+     * the spline.
+     */
+    public double d2u(double r2) {
+        if (r2 < r2Min || r2 >= r2Max) return potential.d2u(r2);
+        double x = (r2 - r2Min) * invH;
+        int k = Math.min((int) x, nIntervals - 1);
+        double t = x - k;
+        k *= 4;
+        double d1 = invH * (coef[k + 1] + t * (2 * coef[k + 2] + t * 3 * coef[k + 3]));
+        double d2 = invH * invH * (2 * coef[k + 2] + t * 6 * coef[k + 3]);
+        return 2 * r2 * d1 + 4 * r2 * r2 * d2;
+    }
+
+    public void u(double[] r2, double[] u, int n) {
+        for (int i = 0; i < n; i++) {
+            double s = r2[i];
+            if (s < r2Min || s >= r2Max) {
+                u[i] = potential.u(s);
+                continue;
+            }
+            double x = (s - r2Min) * invH;
+            int k = Math.min((int) x, nIntervals - 1);
+            double t = x - k;
+            k *= 4;
+            u[i] = coef[k] + t * (coef[k + 1] + t * (coef[k + 2] + t * coef[k + 3]));
+        }
+    }
+
+    public void du(double[] r2, double[] du, int n) {
+        for (int i = 0; i < n; i++) {
+            double s = r2[i];
+            if (s < r2Min || s >= r2Max) {
+                du[i] = potential.du(s);
+                continue;
+            }
+            double x = (s - r2Min) * invH;
+            int k = Math.min((int) x, nIntervals - 1);
+            double t = x - k;
+            k *= 4;
+            du[i] = 2 * s * invH * (coef[k + 1] + t * (2 * coef[k + 2] + t * 3 * coef[k + 3]));
+        }
+    }
+
+    /**
+     * Returns the value of uInt for the wrapped potential.
+     */
+    public double uInt(double rC) {
+        return potential.uInt(rC);
+    }
+
+    public double getRange() {
+        return potential.getRange();
+    }
+}
@@ -73,6 +73,20 @@ public class P2SoftSphericalTruncated extends Potential2SoftSpherical
         return (r2 < r2Cutoff) ? potential.d2u(r2) : 0.0;
     }
 
+    public void u(double[] r2, double[] u, int n) {
+        potential.u(r2, u, n);
+        for (int i = 0; i < n; i++) {
+            if (r2[i] >= r2Cutoff) u[i] = 0.0;
+        }
+    }
+
+    public void du(double[] r2, double[] du, int n) {
+        potential.du(r2, du, n);
+        for (int i = 0; i < n; i++) {
+            if (r2[i] >= r2Cutoff) du[i] = 0.0;
+        }
+    }
+
     /**
      * Returns the value of uInt for the wrapped potential.
      */
@@ -38,5 +38,19 @@ public class P2SoftSphericalTruncatedForceShifted extends
         return (r2 < r2Cutoff) ? (potential.du(r2) - fShift*Math.sqrt(r2)) : 0.0;
     }
 
+    public void u(double[] r2, double[] u, int n) {
+        potential.u(r2, u, n);
+        for (int i = 0; i < n; i++) {
+            u[i] = (r2[i] < r2Cutoff) ? (u[i] - fShift*Math.sqrt(r2[i]) - shift) : 0.0;
+        }
+    }
+
+    public void du(double[] r2, double[] du, int n) {
+        potential.du(r2, du, n);
+        for (int i = 0; i < n; i++) {
+            du[i] = (r2[i] < r2Cutoff) ? (du[i] - fShift*Math.sqrt(r2[i])) : 0.0;
+        }
+    }
+
     protected double fShift;
 }
@@ -40,6 +40,13 @@ public class P2SoftSphericalTruncatedShifted extends P2SoftSphericalTruncated {
         return (r2 < r2Cutoff) ? (potential.u(r2) - shift) : 0.0;
     }
 
+    public void u(double[] r2, double[] u, int n) {
+        potential.u(r2, u, n);
+        for (int i = 0; i < n; i++) {
+            u[i] = (r2[i] < r2Cutoff) ? (u[i] - shift) : 0.0;
+        }
+    }
+
     /**
      * Mutator method for the radial cutoff distance.
      */
@@ -45,7 +45,7 @@ public class P2WCA extends Potential2SoftSpherical {
     public double u(double r2) {
         if(r2 < rangeSquared) {
             double s2 = sigmaSquared/r2;
-            s6 = s2*s2*s2;
+            double s6 = s2*s2*s2;
             return epsilon4*s6*(s6 - 1.0) + epsilon;
         }
         return 0.0;
@@ -59,13 +59,39 @@ public class P2WCA extends Potential2SoftSpherical {
         double du = 0.0;
         if(r2 < rangeSquared) {
             double s2 = sigmaSquared/r2;
-            s6 = s2*s2*s2;
+            double s6 = s2*s2*s2;
             du = -epsilon48*s6*(s6 - 0.5);
         }
 //        System.out.println("r2, du: "+r2 + "  "+du);
         return du;
     }
 
+    public void u(double[] r2, double[] u, int n) {
+        for (int i = 0; i < n; i++) {
+            if (r2[i] < rangeSquared) {
+                double s2 = sigmaSquared/r2[i];
+                double s6 = s2*s2*s2;
+                u[i] = epsilon4*s6*(s6 - 1.0) + epsilon;
+            }
+            else {
+                u[i] = 0.0;
+            }
+        }
+    }
+
+    public void du(double[] r2, double[] du, int n) {
+        for (int i = 0; i < n; i++) {
+            if (r2[i] < rangeSquared) {
+                double s2 = sigmaSquared/r2[i];
+                double s6 = s2*s2*s2;
+                du[i] = -epsilon48*s6*(s6 - 0.5);
+            }
+            else {
+                du[i] = 0.0;
+            }
+        }
+    }
+
    /**
     * The second derivative of the pair energy, times the square of the
     * separation:  r^2 d^2u/dr^2.
@@ -73,7 +99,7 @@ public class P2WCA extends Potential2SoftSpherical {
     public double d2u(double r2) {
         if(r2 < rangeSquared) {
             double s2 = sigmaSquared/r2;
-            s6 = s2*s2*s2;
+            double s6 = s2*s2*s2;
             return epsilon624*s6*(s6 - _168div624);
         }
         return 0.0;
@@ -124,5 +150,4 @@ public class P2WCA extends Potential2SoftSpherical {
     private double epsilon;
     private double epsilon4, epsilon48, epsilon624;
     private static final double _168div624 = 168./624.;
-    private double s6;
 }
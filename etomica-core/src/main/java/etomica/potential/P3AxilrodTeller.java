@@ -14,10 +14,13 @@ import etomica.space.Vector;
 /**
  * Axilrod-Teller potential.  The potential is atomic.  Ionization energy and
  * polarizability are required as input for each atom type. 
+ * <p>
+ * Given the separations of a triplet (as from a neighbor-list triplet
+ * engine), the energy is computed without boundary calls or allocation.
  * 
  * @author Andrew Schultz
  */
-public class P3AxilrodTeller implements IPotentialAtomic {
+public class P3AxilrodTeller implements PotentialTriplet {
 
     protected final AtomTypeAgentManager paramsManager;
     protected final Space space;
@@ -32,20 +35,9 @@ public class P3AxilrodTeller implements IPotentialAtomic {
     }
 
     public double energy(IAtomList atoms) {
-        double ep = 1;
-        double es = 0;
-        double[] eps = new double[3];
-        double ap = 1;
         double cp = 3;
         double rp = 1;
         for (int i=0; i<3; i++) {
-            MyAgent ag =  (MyAgent)paramsManager.getAgent(atoms.getAtom(i).getType());
-            eps[(i+1)%3] += ag.E;
-            eps[(i+2)%3] += ag.E;
-            ep *= ag.E;
-            es += ag.E;
-
-            ap *= ag.alpha;
             dr1.Ev1Mv2(atoms.getAtom(i).getPosition(),atoms.getAtom((i+1)%3).getPosition());
             boundary.nearestImage(dr1);
             double r2 = dr1.squared();
@@ -55,12 +47,32 @@ public class P3AxilrodTeller implements IPotentialAtomic {
             double cos = dr1.dot(dr2)/Math.sqrt(r2*dr2.squared());
             cp *= cos;
         }
-        double e123 = ep*es;
-        for (int i=0; i<3; i++) {
-            e123 /= eps[i];
-        }
-        
-        return 1.5*e123*ap*(cp+1)/rp;
+        return prefactor(atoms)*(cp+1)/rp;
+    }
+
+    public double energy(IAtomList atoms, Vector[] dr, double[] r2) {
+        // cosines of the angles at atoms 0, 1 and 2
+        double cos0 = dr[0].dot(dr[1])/Math.sqrt(r2[0]*r2[1]);
+        double cos1 = -dr[0].dot(dr[2])/Math.sqrt(r2[0]*r2[2]);
+        double cos2 = dr[1].dot(dr[2])/Math.sqrt(r2[1]*r2[2]);
+        double rp = r2[0]*r2[1]*r2[2];
+        rp *= Math.sqrt(rp);
+        return prefactor(atoms)*(3*cos0*cos1*cos2+1)/rp;
+    }
+
+    /**
+     * Returns 3/2 alpha0 alpha1 alpha2 E0 E1 E2 (E0+E1+E2) / ((E0+E1)(E0+E2)(E1+E2))
+     * for the given atoms.
+     */
+    protected double prefactor(IAtomList atoms) {
+        MyAgent ag0 = (MyAgent)paramsManager.getAgent(atoms.getAtom(0).getType());
+        MyAgent ag1 = (MyAgent)paramsManager.getAgent(atoms.getAtom(1).getType());
+        MyAgent ag2 = (MyAgent)paramsManager.getAgent(atoms.getAtom(2).getType());
+        double ep = ag0.E*ag1.E*ag2.E;
+        double es = ag0.E+ag1.E+ag2.E;
+        double ap = ag0.alpha*ag1.alpha*ag2.alpha;
+        double e123 = ep*es/((ag1.E+ag2.E)*(ag0.E+ag2.E)*(ag0.E+ag1.E));
+        return 1.5*e123*ap;
     }
 
     public double getRange() {
@@ -0,0 +1,88 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Wraps a three-body potential so that a triplet interacts only if all three
+ * of its pair separations are less than a cutoff.  The cutoff is returned as
+ * the range, so that a PotentialMasterList keeps neighbor lists for the
+ * triplets that are separate from (and typically shorter than) those of the
+ * pair potentials.  No long-range correction is made.
+ */
+public class P3Truncated implements PotentialTriplet {
+
+    protected final PotentialTriplet wrappedPotential;
+    protected final Vector dr;
+    protected double rCutoff, r2Cutoff;
+    protected Boundary boundary;
+
+    public P3Truncated(Space space, PotentialTriplet wrappedPotential, double rCutoff) {
+        this.wrappedPotential = wrappedPotential;
+        dr = space.makeVector();
+        setTruncationRadius(rCutoff);
+    }
+
+    public double energy(IAtomList atoms) {
+        for (int i = 0; i < 3; i++) {
+            dr.Ev1Mv2(atoms.getAtom((i + 1) % 3).getPosition(), atoms.getAtom(i).getPosition());
+            boundary.nearestImage(dr);
+            if (dr.squared() >= r2Cutoff) {
+                return 0;
+            }
+        }
+        return wrappedPotential.energy(atoms);
+    }
+
+    public double energy(IAtomList atoms, Vector[] dr, double[] r2) {
+        if (r2[0] >= r2Cutoff || r2[1] >= r2Cutoff || r2[2] >= r2Cutoff) {
+            return 0;
+        }
+        return wrappedPotential.energy(atoms, dr, r2);
+    }
+
+    /**
+     * Returns the truncation radius.
+     */
+    public double getRange() {
+        return rCutoff;
+    }
+
+    /**
+     * Mutator method for the radial cutoff distance.
+     */
+    public void setTruncationRadius(double rCut) {
+        rCutoff = rCut;
+        r2Cutoff = rCut * rCut;
+    }
+
+    /**
+     * Accessor method for the radial cutoff distance.
+     */
+    public double getTruncationRadius() {
+        return rCutoff;
+    }
+
+    /**
+     * Returns the wrapped potential.
+     */
+    public PotentialTriplet getWrappedPotential() {
+        return wrappedPotential;
+    }
+
+    public void setBox(Box box) {
+        boundary = box.getBoundary();
+        wrappedPotential.setBox(box);
+    }
+
+    public int nBody() {
+        return 3;
+    }
+}
@@ -0,0 +1,133 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.box.Box;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.util.ParallelTasks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Sums a PotentialCalculation over pairs of atoms using several threads.  The
+ * leaf atoms of the box are split into a fixed number of contiguous chunks;
+ * each chunk is handled by one task, which collects its contribution in its
+ * own PotentialCalculationPartialSum.  When all tasks are done, the partial
+ * sums are added to the PotentialCalculation in chunk order, so the result
+ * is reproducible for a given number of chunks no matter how the tasks were
+ * scheduled.
+ * <p>
+ * A force sum split among several chunks would need a force array for all
+ * atoms in each chunk.  Instead, each pair is then visited from both of its
+ * atoms (see bothDirections), each visit adding force only to its own atom,
+ * and the chunks share a single force array.
+ * <p>
+ * Subclasses decide which pairs belong to a chunk by implementing sumPairs.
+ */
+public abstract class PairSumParallel {
+
+    protected final Space space;
+    protected final ParallelTasks parallelTasks;
+    protected final int numChunks;
+    protected final int[] chunkStart;
+    protected final PotentialCalculationPartialSum[] partials;
+    protected final Vector[] dr;
+    protected final List<Callable<Object>> tasks;
+    protected Box box;
+    protected boolean bothDirections;
+
+    /**
+     * @param space      the space
+     * @param numThreads the number of threads to use; the atoms are split
+     *                   into the same number of chunks
+     */
+    public PairSumParallel(Space space, int numThreads) {
+        this.space = space;
+        parallelTasks = new ParallelTasks(numThreads);
+        numChunks = numThreads;
+        chunkStart = new int[numChunks + 1];
+        partials = new PotentialCalculationPartialSum[numChunks];
+        dr = new Vector[numChunks];
+        tasks = new ArrayList<Callable<Object>>(numChunks);
+        for (int i = 0; i < numChunks; i++) {
+            dr[i] = space.makeVector();
+            final int chunk = i;
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    sumPairs(box, chunkStart[chunk], chunkStart[chunk + 1], partials[chunk], dr[chunk]);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the number of threads (and chunks) used for the calculation
+     */
+    public int getNumThreads() {
+        return numChunks;
+    }
+
+    /**
+     * Performs the calculation over all pairs handled by this class and adds
+     * the result to the given PotentialCalculation.  The calculation must be
+     * supported by PotentialCalculationPartialSum.
+     */
+    public void calculate(Box box, PotentialCalculation pc) {
+        this.box = box;
+        int nAtoms = box.getLeafList().getAtomCount();
+        bothDirections = numChunks > 1 && PotentialCalculationPartialSum.isForceSum(pc);
+        for (int i = 0; i < numChunks; i++) {
+            if (partials[i] == null || partials[i].getPotentialCalculation() != pc) {
+                partials[i] = new PotentialCalculationPartialSum(space, pc);
+            }
+            partials[i].reset(nAtoms, bothDirections && i > 0 ? partials[0] : null);
+        }
+        computeChunks(nAtoms);
+        invokeAll(tasks);
+        for (int i = 0; i < numChunks; i++) {
+            partials[i].addTo(box);
+        }
+    }
+
+    /**
+     * Runs the given tasks, one for each chunk, and waits for them to
+     * finish.  With a single chunk, the task is run on the calling thread.
+     */
+    protected void invokeAll(List<Callable<Object>> chunkTasks) {
+        parallelTasks.invokeAll(chunkTasks);
+    }
+
+    /**
+     * Fills chunkStart with the first atom of each chunk (and nAtoms at the
+     * end).  By default, each chunk gets the same number of atoms; subclasses
+     * can override this if the work per atom is uneven.
+     */
+    protected void computeChunks(int nAtoms) {
+        for (int i = 0; i <= numChunks; i++) {
+            chunkStart[i] = (int) (((long) i * nAtoms) / numChunks);
+        }
+    }
+
+    /**
+     * Adds the contributions of all pairs owned by atoms start through
+     * stop-1 to the given partial sum.  If bothDirections is true, all pairs
+     * of those atoms must be added, with addHalfPair.  This is called from
+     * several threads at once, so it must not modify shared state.
+     *
+     * @param dr a work vector for use by this chunk only
+     */
+    protected abstract void sumPairs(Box box, int start, int stop, PotentialCalculationPartialSum partial, Vector dr);
+
+    /**
+     * Shuts down the threads used by this instance.
+     */
+    public void dispose() {
+        parallelTasks.dispose();
+    }
+}
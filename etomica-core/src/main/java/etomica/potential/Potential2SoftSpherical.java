@@ -49,6 +49,30 @@ public abstract class Potential2SoftSpherical extends Potential2 implements Pote
      * affected by this potential, and V is the volume they occupy.
      */
     public abstract double uInt(double rC);
+
+    /**
+     * Computes the energy for each of the first n squared separations in r2,
+     * putting u(r2[i]) in u[i].  This lets callers that have gathered a block
+     * of pairs evaluate them without a call per pair.  The default
+     * implementation just calls u(double); subclasses with a simple energy
+     * expression override this with a tight loop, which must give the same
+     * results as u(double).
+     */
+    public void u(double[] r2, double[] u, int n) {
+        for (int i = 0; i < n; i++) {
+            u[i] = u(r2[i]);
+        }
+    }
+
+    /**
+     * Computes r du/dr for each of the first n squared separations in r2,
+     * putting du(r2[i]) in du[i].  See u(double[], double[], int).
+     */
+    public void du(double[] r2, double[] du, int n) {
+        for (int i = 0; i < n; i++) {
+            du[i] = du(r2[i]);
+        }
+    }
     
     /**
      * Energy of the pair as given by the u(double) method
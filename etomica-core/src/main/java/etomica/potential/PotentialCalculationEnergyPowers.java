@@ -0,0 +1,228 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Sums the energy so that it can also be found (exactly) for the
+ * configuration obtained by scaling every pair separation, and the volume,
+ * by a factor s in a given range [sMin, sMax].  This is possible when the
+ * pair potentials are PotentialPowerSums, either bare or truncated with
+ * P2SoftSphericalTruncated or P2SoftSphericalTruncatedShifted:
+ * <ul>
+ * <li>pairs that are within the cutoff for any s in the range contribute to
+ *     per-power sums, each of which is multiplied by s^-n for the scaled
+ *     configuration.
+ * <li>pairs that could cross the cutoff for some s in the range are kept
+ *     and evaluated again for the scaled configuration.
+ * <li>long-range corrections scale with the inverse volume.
+ * </ul>
+ * If any other potential contributes, the energy is still summed, but
+ * isScalable returns false.
+ */
+public class PotentialCalculationEnergyPowers implements PotentialCalculation {
+
+    public PotentialCalculationEnergyPowers(Space space) {
+        D = space.D();
+        dr = space.makeVector();
+        powers = new int[0];
+        powerSums = new double[0];
+        terms = new double[0];
+        shellR2 = new double[16];
+        shellPotential = new Potential2SoftSpherical[16];
+        setScaleRange(1, 1);
+    }
+
+    public void setBox(Box newBox) {
+        box = newBox;
+    }
+
+    /**
+     * Sets the range of scaling factors for which getScaledSum will be
+     * called.  Changes take effect with the next sum.
+     */
+    public void setScaleRange(double newSMin, double newSMax) {
+        if (newSMin > 1 || newSMax < 1) {
+            throw new IllegalArgumentException("range must include 1");
+        }
+        sMin = newSMin;
+        sMax = newSMax;
+    }
+
+    public void zeroSum() {
+        for (int i=0; i<powerSums.length; i++) {
+            powerSums[i] = 0;
+        }
+        nShell = 0;
+        uShell = uLrc = uOther = 0;
+        maxRange = 0;
+        scalable = true;
+    }
+
+    public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+        // check for the truncated potentials first; a failed instanceof
+        // check against an interface is slow enough to matter here
+        Class<?> c = potential.getClass();
+        if (c == P2SoftSphericalTruncated.class || c == P2SoftSphericalTruncatedShifted.class) {
+            P2SoftSphericalTruncated p2 = (P2SoftSphericalTruncated)potential;
+            if (p2.getWrappedPotential() instanceof PotentialPowerSum) {
+                double r2 = r2(atoms);
+                double r2Cut = p2.r2Cutoff;
+                maxRange = Math.max(maxRange, p2.rCutoff);
+                if (r2*sMax*sMax < r2Cut) {
+                    // inside the cutoff for any scaling
+                    double shift = (c == P2SoftSphericalTruncatedShifted.class) ? ((P2SoftSphericalTruncatedShifted)p2).shift : 0;
+                    addTerms((PotentialPowerSum)p2.getWrappedPotential(), r2, shift);
+                }
+                else if (r2*sMin*sMin < r2Cut) {
+                    addShell(p2, r2);
+                }
+                return;
+            }
+        }
+        else if (potential instanceof Potential0Lrc) {
+            uLrc += potential.energy(atoms);
+            return;
+        }
+        else if (potential instanceof PotentialPowerSum && atoms.getAtomCount() == 2) {
+            addTerms((PotentialPowerSum)potential, r2(atoms), 0);
+            maxRange = Math.max(maxRange, potential.getRange());
+            return;
+        }
+        uOther += potential.energy(atoms);
+        scalable = false;
+    }
+
+    /**
+     * Keeps a pair that might cross the cutoff, to be evaluated again for
+     * the scaled configuration.
+     */
+    protected void addShell(P2SoftSphericalTruncated p2, double r2) {
+        if (nShell == shellR2.length) {
+            double[] newShellR2 = new double[2*nShell];
+            System.arraycopy(shellR2, 0, newShellR2, 0, nShell);
+            shellR2 = newShellR2;
+            Potential2SoftSpherical[] newShellPotential = new Potential2SoftSpherical[2*nShell];
+            System.arraycopy(shellPotential, 0, newShellPotential, 0, nShell);
+            shellPotential = newShellPotential;
+        }
+        shellR2[nShell] = r2;
+        shellPotential[nShell] = p2;
+        nShell++;
+        uShell += p2.u(r2);
+    }
+
+    protected double r2(IAtomList atoms) {
+        dr.Ev1Mv2(atoms.getAtom(1).getPosition(), atoms.getAtom(0).getPosition());
+        box.getBoundary().nearestImage(dr);
+        return dr.squared();
+    }
+
+    protected void addTerms(PotentialPowerSum potential, double r2, double shift) {
+        if (potential != lastPotential) {
+            // look up the sums for this potential's powers
+            int[] p = potential.getPowers();
+            lastIndex = new int[p.length];
+            for (int i=0; i<p.length; i++) {
+                lastIndex[i] = powerIndex(p[i]);
+            }
+            if (terms.length < p.length) {
+                terms = new double[p.length];
+            }
+            lastPotential = potential;
+        }
+        potential.uTerms(r2, terms);
+        for (int i=0; i<lastIndex.length; i++) {
+            powerSums[lastIndex[i]] += terms[i];
+        }
+        if (shift != 0) {
+            int i0 = powerIndex(0);
+            powerSums[i0] -= shift;
+        }
+    }
+
+    /**
+     * Returns the index of the sum for the given power, adding it if needed.
+     */
+    protected int powerIndex(int n) {
+        for (int i=0; i<powers.length; i++) {
+            if (powers[i] == n) return i;
+        }
+        int[] newPowers = new int[powers.length+1];
+        System.arraycopy(powers, 0, newPowers, 0, powers.length);
+        newPowers[powers.length] = n;
+        powers = newPowers;
+        double[] newPowerSums = new double[powers.length];
+        System.arraycopy(powerSums, 0, newPowerSums, 0, powerSums.length);
+        powerSums = newPowerSums;
+        return powers.length-1;
+    }
+
+    /**
+     * Returns true if only potentials that can be scaled have contributed
+     * since the last call to zeroSum.
+     */
+    public boolean isScalable() {
+        return scalable;
+    }
+
+    /**
+     * Returns the largest truncation radius of the scalable pair potentials
+     * that have contributed.  Pairs this far apart, divided by sMin, must
+     * have been included for the scaled sum to be exact.
+     */
+    public double getMaxRange() {
+        return maxRange;
+    }
+
+    /**
+     * Returns the energy of the configuration.
+     */
+    public double getSum() {
+        double sum = uShell + uLrc + uOther;
+        for (int i=0; i<powers.length; i++) {
+            sum += powerSums[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the energy of the configuration with all separations scaled by
+     * s, which must be within the scale range.  The result is valid only if
+     * isScalable returns true.
+     */
+    public double getScaledSum(double s) {
+        if (s < sMin || s > sMax) {
+            throw new IllegalArgumentException("scale "+s+" is outside the range ["+sMin+","+sMax+"]");
+        }
+        double sum = uLrc*Math.pow(s, -D);
+        for (int i=0; i<powers.length; i++) {
+            sum += powerSums[i]*Math.pow(s, -powers[i]);
+        }
+        double s2 = s*s;
+        for (int i=0; i<nShell; i++) {
+            sum += shellPotential[i].u(shellR2[i]*s2);
+        }
+        return sum;
+    }
+
+    protected final int D;
+    protected final Vector dr;
+    protected Box box;
+    protected double sMin, sMax;
+    protected int[] powers;
+    protected double[] powerSums, terms;
+    protected double[] shellR2;
+    protected Potential2SoftSpherical[] shellPotential;
+    protected int nShell;
+    protected double uShell, uLrc, uOther, maxRange;
+    protected boolean scalable;
+    protected PotentialPowerSum lastPotential;
+    protected int[] lastIndex;
+}
@@ -0,0 +1,434 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.integrator.IntegratorBox;
+import etomica.space.Space;
+import etomica.space.Tensor;
+import etomica.space.Vector;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one worker's share of a PotentialCalculation summed over pairs of
+ * atoms that interact with a Potential2SoftSpherical.  Potential masters that
+ * split the pair loop among threads give each thread (or each chunk of atoms)
+ * its own instance, feed it pairs with addPair and then fold the partial sums
+ * into the original PotentialCalculation with addTo, always in the same order
+ * so that the result does not depend on thread scheduling.
+ * <p>
+ * The pair contribution is computed from the potential's u(r2) and du(r2)
+ * methods, which are assumed to be safe to call from several threads at once
+ * (as they are for potentials that only read their parameters).  The
+ * potential's own energy and gradient methods, which use shared scratch
+ * vectors, are never called.
+ * <p>
+ * A potential master working on a single thread can also use an instance to
+ * evaluate a block of pairs at once with addPairs, which calls the
+ * potential's batched u or du method for the whole block.
+ * <p>
+ * Workers that visit each pair twice, once from each atom, can instead use
+ * addHalfPair, which adds force only to the visiting atom.  Their partial
+ * sums can then share a single force array (see reset), instead of each
+ * holding forces for every atom.
+ * <p>
+ * PotentialCalculationEnergySum, PotentialCalculationVirialSum,
+ * PotentialCalculationForceSum and PotentialCalculationForcePressureSum are
+ * supported, along with subclasses that do not declare their own
+ * doCalculation methods; see isSupported.
+ */
+public class PotentialCalculationPartialSum {
+
+    protected static final ConcurrentHashMap<Class<?>, Boolean> pairSummable = new ConcurrentHashMap<Class<?>, Boolean>();
+    protected static final ConcurrentHashMap<Class<?>, Integer> calculationKinds = new ConcurrentHashMap<Class<?>, Integer>();
+
+    protected final int D;
+    protected PotentialCalculation pc;
+    protected int kind;
+    protected double sum;
+    protected double[] force;
+    protected final double[][] pressure;
+    protected double[] work;
+    protected int nAtoms;
+    protected boolean sharedForce;
+
+    protected static final int ENERGY = 0, VIRIAL = 1, FORCE = 2, FORCE_PRESSURE = 3;
+
+    /**
+     * @param space the space
+     * @param pc    the calculation whose partial sums are collected here
+     */
+    public PotentialCalculationPartialSum(Space space, PotentialCalculation pc) {
+        D = space.D();
+        force = new double[0];
+        pressure = new double[D][D];
+        work = new double[0];
+        setPotentialCalculation(pc);
+    }
+
+    /**
+     * Sets the calculation whose partial sums are collected here.  reset
+     * must be called before any pairs are added.
+     */
+    public void setPotentialCalculation(PotentialCalculation newPc) {
+        int newKind = kindOf(newPc);
+        if (newKind < 0) {
+            throw new IllegalArgumentException("Unsupported PotentialCalculation " + newPc);
+        }
+        pc = newPc;
+        kind = newKind;
+    }
+
+    protected static int kindOf(PotentialCalculation pc) {
+        Class<?> c = pc.getClass();
+        Integer kind = calculationKinds.get(c);
+        if (kind == null) {
+            kind = findKind(c);
+            calculationKinds.put(c, kind);
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the kind of the given class, which is that of the nearest
+     * supported superclass, or -1 if there is none or if a class before it
+     * declares a doCalculation method.
+     */
+    protected static int findKind(Class<?> c) {
+        for (; c != null; c = c.getSuperclass()) {
+            if (c == PotentialCalculationEnergySum.class) return ENERGY;
+            if (c == PotentialCalculationVirialSum.class) return VIRIAL;
+            if (c == PotentialCalculationForcePressureSum.class) return FORCE_PRESSURE;
+            if (c == PotentialCalculationForceSum.class) return FORCE;
+            for (Method m : c.getDeclaredMethods()) {
+                if (m.getName().equals("doCalculation")) return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns true if partial sums can be collected for the given
+     * calculation.
+     */
+    public static boolean isSupported(PotentialCalculation pc) {
+        return kindOf(pc) >= 0;
+    }
+
+    /**
+     * Returns true if the given calculation is a supported energy sum.
+     */
+    public static boolean isEnergySum(PotentialCalculation pc) {
+        return kindOf(pc) == ENERGY;
+    }
+
+    /**
+     * Returns true if the given calculation is a supported force sum (with
+     * or without the pressure tensor).
+     */
+    public static boolean isForceSum(PotentialCalculation pc) {
+        return kindOf(pc) >= FORCE;
+    }
+
+    /**
+     * Returns true if the given potential is a Potential2SoftSpherical whose
+     * energy, virial and gradient are given by u(r2) and du(r2) -- that is,
+     * it does not override those methods.  Only such potentials may be
+     * passed to addPair.
+     */
+    public static boolean isPairSummable(IPotential potential) {
+        if (!(potential instanceof Potential2SoftSpherical)) return false;
+        Class<?> c = potential.getClass();
+        Boolean summable = pairSummable.get(c);
+        if (summable == null) {
+            try {
+                summable = c.getMethod("energy", IAtomList.class).getDeclaringClass() == Potential2SoftSpherical.class
+                        && c.getMethod("virial", IAtomList.class).getDeclaringClass() == Potential2SoftSpherical.class
+                        && c.getMethod("gradient", IAtomList.class).getDeclaringClass() == Potential2SoftSpherical.class
+                        && c.getMethod("gradient", IAtomList.class, Tensor.class).getDeclaringClass() == Potential2SoftSpherical.class;
+            }
+            catch (NoSuchMethodException e) {
+                summable = false;
+            }
+            pairSummable.put(c, summable);
+        }
+        return summable;
+    }
+
+    /**
+     * @return the PotentialCalculation whose partial sums are held here
+     */
+    public PotentialCalculation getPotentialCalculation() {
+        return pc;
+    }
+
+    /**
+     * Zeros the partial sums in preparation for a calculation on a box with
+     * the given number of leaf atoms.
+     */
+    public void reset(int numAtoms) {
+        reset(numAtoms, null);
+    }
+
+    /**
+     * Zeros the partial sums in preparation for a calculation on a box with
+     * the given number of leaf atoms.  If forceOwner is not null, forces are
+     * added to its force array (so it must have been reset already) and are
+     * left for it to add to the PotentialCalculation.  Each atom's force
+     * must then come from only one of the partial sums sharing the array,
+     * via addHalfPair.
+     */
+    public void reset(int numAtoms, PotentialCalculationPartialSum forceOwner) {
+        nAtoms = numAtoms;
+        sum = 0;
+        boolean wasShared = sharedForce;
+        sharedForce = forceOwner != null;
+        if (kind >= FORCE) {
+            if (sharedForce) {
+                force = forceOwner.force;
+            }
+            else if (wasShared || force.length < nAtoms * D) {
+                // don't keep zeroing the array of the partial sum shared with
+                force = new double[nAtoms * D];
+            }
+            else {
+                java.util.Arrays.fill(force, 0, nAtoms * D, 0);
+            }
+            for (int i = 0; i < D; i++) {
+                java.util.Arrays.fill(pressure[i], 0);
+            }
+        }
+    }
+
+    /**
+     * Adds the contribution from the pair of atoms with leaf indices i and j.
+     *
+     * @param dr the nearest-image separation, r_j - r_i
+     * @param p  the potential acting between the atoms
+     */
+    public void addPair(int i, int j, Vector dr, Potential2SoftSpherical p) {
+        double r2 = dr.squared();
+        switch (kind) {
+            case ENERGY:
+                sum += p.u(r2);
+                break;
+            case VIRIAL:
+                sum += p.du(r2);
+                break;
+            default:
+                if (r2 < 1.e-10) return;
+                double fac = p.du(r2) / r2;
+                int iOffset = i * D, jOffset = j * D;
+                for (int k = 0; k < D; k++) {
+                    double fk = fac * dr.getX(k);
+                    force[iOffset + k] += fk;
+                    force[jOffset + k] -= fk;
+                }
+                if (kind == FORCE_PRESSURE) {
+                    for (int k = 0; k < D; k++) {
+                        double fk = -fac * dr.getX(k);
+                        for (int l = 0; l < D; l++) {
+                            pressure[k][l] += fk * dr.getX(l);
+                        }
+                    }
+                }
+        }
+    }
+
+    /**
+     * Adds the contribution from the pair of atoms with leaf indices i and j,
+     * given the pair's energy and r du/dr.  This is for many-body potentials
+     * whose forces are sums of pair forces, but whose pair terms depend on
+     * more than the separation.
+     *
+     * @param dr the nearest-image separation, r_j - r_i
+     * @param u  the energy of the pair
+     * @param du r du/dr for the pair
+     */
+    public void addPair(int i, int j, Vector dr, double u, double du) {
+        switch (kind) {
+            case ENERGY:
+                sum += u;
+                break;
+            case VIRIAL:
+                sum += du;
+                break;
+            default:
+                double r2 = dr.squared();
+                if (r2 < 1.e-10) return;
+                double fac = du / r2;
+                int iOffset = i * D, jOffset = j * D;
+                for (int k = 0; k < D; k++) {
+                    double fk = fac * dr.getX(k);
+                    force[iOffset + k] += fk;
+                    force[jOffset + k] -= fk;
+                }
+                if (kind == FORCE_PRESSURE) {
+                    for (int k = 0; k < D; k++) {
+                        double fk = -fac * dr.getX(k);
+                        for (int l = 0; l < D; l++) {
+                            pressure[k][l] += fk * dr.getX(l);
+                        }
+                    }
+                }
+        }
+    }
+
+    /**
+     * Adds half of the contribution from the pair of atoms with leaf indices
+     * i and j, but all of the force on atom i (and none on j).  This is for
+     * workers that visit each pair from both of its atoms.
+     *
+     * @param dr the nearest-image separation, r_j - r_i
+     * @param p  the potential acting between the atoms
+     */
+    public void addHalfPair(int i, Vector dr, Potential2SoftSpherical p) {
+        double r2 = dr.squared();
+        if (kind == ENERGY) {
+            sum += 0.5 * p.u(r2);
+            return;
+        }
+        addHalfPair(i, dr, 0, p.du(r2));
+    }
+
+    /**
+     * Adds half of the contribution from the pair of atoms with leaf indices
+     * i and j, given the pair's energy and r du/dr, but all of the force on
+     * atom i (and none on j).  This is for workers that visit each pair from
+     * both of its atoms.
+     *
+     * @param dr the nearest-image separation, r_j - r_i
+     * @param u  the energy of the pair
+     * @param du r du/dr for the pair
+     */
+    public void addHalfPair(int i, Vector dr, double u, double du) {
+        switch (kind) {
+            case ENERGY:
+                sum += 0.5 * u;
+                break;
+            case VIRIAL:
+                sum += 0.5 * du;
+                break;
+            default:
+                double r2 = dr.squared();
+                if (r2 < 1.e-10) return;
+                double fac = du / r2;
+                int iOffset = i * D;
+                for (int k = 0; k < D; k++) {
+                    force[iOffset + k] += fac * dr.getX(k);
+                }
+                if (kind == FORCE_PRESSURE) {
+                    for (int k = 0; k < D; k++) {
+                        double fk = -0.5 * fac * dr.getX(k);
+                        for (int l = 0; l < D; l++) {
+                            pressure[k][l] += fk * dr.getX(l);
+                        }
+                    }
+                }
+        }
+    }
+
+    /**
+     * Adds energy that does not come with a force (such as an atom's
+     * embedding energy).  This only affects energy sums.
+     */
+    public void addEnergy(double u) {
+        if (kind == ENERGY) {
+            sum += u;
+        }
+    }
+
+    /**
+     * Adds the contributions from pairs of the atom with leaf index i with
+     * each of the n atoms with leaf indices j[0..n-1].  The energies or
+     * derivatives are computed with a single call to the potential's batch
+     * u or du method.
+     *
+     * @param dr the nearest-image separations, dr[d][k] being component d of
+     *           r_j[k] - r_i
+     * @param r2 the squared separations
+     */
+    public void addPairs(int i, int[] j, double[][] dr, double[] r2, int n, Potential2SoftSpherical p) {
+        if (work.length < n) {
+            work = new double[n + n / 4];
+        }
+        double s = 0;
+        switch (kind) {
+            case ENERGY:
+                p.u(r2, work, n);
+                for (int k = 0; k < n; k++) {
+                    s += work[k];
+                }
+                sum += s;
+                break;
+            case VIRIAL:
+                p.du(r2, work, n);
+                for (int k = 0; k < n; k++) {
+                    s += work[k];
+                }
+                sum += s;
+                break;
+            default:
+                p.du(r2, work, n);
+                int iOffset = i * D;
+                for (int k = 0; k < n; k++) {
+                    if (r2[k] < 1.e-10) continue;
+                    double fac = work[k] / r2[k];
+                    int jOffset = j[k] * D;
+                    for (int d = 0; d < D; d++) {
+                        double fd = fac * dr[d][k];
+                        force[iOffset + d] += fd;
+                        force[jOffset + d] -= fd;
+                    }
+                    if (kind == FORCE_PRESSURE) {
+                        for (int d = 0; d < D; d++) {
+                            double fd = -fac * dr[d][k];
+                            for (int l = 0; l < D; l++) {
+                                pressure[d][l] += fd * dr[l][k];
+                            }
+                        }
+                    }
+                }
+        }
+    }
+
+    /**
+     * Adds the partial sums held here to the PotentialCalculation.
+     */
+    public void addTo(Box box) {
+        switch (kind) {
+            case ENERGY:
+                ((PotentialCalculationEnergySum) pc).sum += sum;
+                break;
+            case VIRIAL:
+                ((PotentialCalculationVirialSum) pc).sum += sum;
+                break;
+            default:
+                if (!sharedForce) {
+                    AtomLeafAgentManager<? extends IntegratorBox.Forcible> agentManager = ((PotentialCalculationForceSum) pc).integratorAgentManager;
+                    IAtomList leafList = box.getLeafList();
+                    for (int i = 0; i < nAtoms; i++) {
+                        Vector f = agentManager.getAgent(leafList.getAtom(i)).force();
+                        int iOffset = i * D;
+                        for (int k = 0; k < D; k++) {
+                            f.setX(k, f.getX(k) + force[iOffset + k]);
+                        }
+                    }
+                }
+                if (kind == FORCE_PRESSURE) {
+                    Tensor pressureTensor = ((PotentialCalculationForcePressureSum) pc).pressureTensor;
+                    for (int k = 0; k < D; k++) {
+                        for (int l = 0; l < D; l++) {
+                            pressureTensor.PE(k, l, pressure[k][l]);
+                        }
+                    }
+                }
+        }
+    }
+}
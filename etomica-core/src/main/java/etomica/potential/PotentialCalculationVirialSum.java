@@ -41,6 +41,6 @@ public class PotentialCalculationVirialSum implements PotentialCalculation {
 	 */
 	public double getSum() {return sum;}
 	
-	private double sum = 0.0;
+	protected double sum = 0.0;
 
  }//end VirialSum
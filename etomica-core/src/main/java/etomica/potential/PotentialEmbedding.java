@@ -0,0 +1,53 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+/**
+ * Interface for a many-body potential of the embedded-atom form,
+ * <pre>
+ *   U = sum_{i&lt;j} phi(r_ij) + sum_i F(rho_i),  rho_i = sum_{j!=i} f(r_ij)
+ * </pre>
+ * with the same functions for every atom the potential applies to.  Such a
+ * potential can be summed over a box in two passes, first finding every
+ * atom's density and then the pair forces, rather than once for each atom
+ * with all of its neighbors.
+ * <p>
+ * As with Potential2SoftSpherical.du, the derivatives with respect to the
+ * separation are returned multiplied by r.  The methods must not modify the
+ * potential, so that they can be called from several threads at once.
+ */
+public interface PotentialEmbedding extends IPotentialAtomic {
+
+    /**
+     * Returns the pair energy phi for the given squared separation.
+     */
+    public double phi(double r2);
+
+    /**
+     * Returns r dphi/dr for the given squared separation.
+     */
+    public double dphi(double r2);
+
+    /**
+     * Returns the contribution f to an atom's density from a neighbor at
+     * the given squared separation.
+     */
+    public double rho(double r2);
+
+    /**
+     * Returns r df/dr for the given squared separation.
+     */
+    public double drho(double r2);
+
+    /**
+     * Returns the embedding energy F of an atom with the given density.
+     */
+    public double embedding(double rho);
+
+    /**
+     * Returns dF/drho for the given density.
+     */
+    public double dembedding(double rho);
+}
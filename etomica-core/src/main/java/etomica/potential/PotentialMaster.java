@@ -18,6 +18,7 @@ import etomica.molecule.MoleculeArrayList;
 import etomica.molecule.iterator.IteratorFactory;
 import etomica.molecule.iterator.MoleculeIteratorAll;
 import etomica.molecule.iterator.MoleculesetIteratorPDT;
+import etomica.space.Space;
 import etomica.species.ISpecies;
 
 import java.util.ArrayList;
@@ -39,6 +40,8 @@ public class PotentialMaster {
     protected IteratorFactory iteratorFactory;
     protected List<PotentialLinker> potentialList;
     protected boolean enabled = true;
+    protected int parallelThreads = 1;
+    protected AllPairsSumParallel allPairsSumParallel;
 
     public PotentialMaster() {
         this(IteratorFactory.INSTANCE);
@@ -81,8 +84,13 @@ public class PotentialMaster {
             targetMolecule = targetAtomLeaf.getParentGroup();
         }
 
+        // with a parallel calculation, some pairs are done separately below
+        boolean doParallel = targetMolecule == null && parallelThreads > 1
+                && PotentialCalculationPartialSum.isSupported(pc) && setupParallel(box);
+
         for (PotentialLinker link : potentialList) {
             if (!link.enabled) continue;
+            if (doParallel && link.parallel) continue;
             final MoleculesetIteratorPDT atomIterator = link.iterator;
             final IPotentialMolecular potential = link.potential;
             atomIterator.setBox(box);
@@ -100,11 +108,104 @@ public class PotentialMaster {
             }
         }
 
+        if (doParallel) {
+            allPairsSumParallel.calculate(box, pc);
+        }
+
         if (lrcMaster != null) {
             lrcMaster.calculate(box, id, pc);
         }
     }
 
+    /**
+     * Sets the number of threads used to compute energies, virials and forces
+     * for the whole box.  With more than one thread, calculate splits the
+     * pairs of monatomic molecules interacting via a Potential2SoftSpherical
+     * potential among the threads (see {@link PotentialCalculationPartialSum})
+     * and combines the per-thread sums in a fixed order, so the result does
+     * not depend on how the threads were scheduled.  Other potentials, and
+     * calculations for a target atom or molecule, are still handled on the
+     * calling thread.  The potentials' u(r2) and du(r2) methods and the
+     * boundary's nearestImage method must be safe to call from several
+     * threads.
+     * <p>
+     * Subclasses that iterate over neighbors instead of all pairs either
+     * handle this themselves (PotentialMasterList) or ignore it.
+     *
+     * @param numThreads the number of threads; 1 disables parallel calculation
+     */
+    public void setParallelThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        if (allPairsSumParallel != null) {
+            allPairsSumParallel.dispose();
+            allPairsSumParallel = null;
+        }
+        parallelThreads = numThreads;
+    }
+
+    /**
+     * @return the number of threads used to compute energies and forces for
+     * the whole box
+     */
+    public int getParallelThreads() {
+        return parallelThreads;
+    }
+
+    /**
+     * Fills the pair table of allPairsSumParallel (creating it if needed)
+     * with the potentials to be handled in parallel, and marks the
+     * PotentialLinkers it replaces.  These are 2-body PotentialGroups between
+     * species with one atom per molecule, holding a single pair-summable
+     * potential.
+     *
+     * @return true if any pairs are to be handled in parallel
+     */
+    protected boolean setupParallel(Box box) {
+        int D = box.getBoundary().getBoxSize().getD();
+        if (allPairsSumParallel == null || allPairsSumParallel.space.D() != D) {
+            if (allPairsSumParallel != null) {
+                allPairsSumParallel.dispose();
+            }
+            allPairsSumParallel = new AllPairsSumParallel(Space.getInstance(D), parallelThreads);
+        }
+        allPairsSumParallel.clearPairPotentials();
+        boolean any = false;
+        for (PotentialLinker link : potentialList) {
+            link.parallel = false;
+            if (!link.enabled || link.types == null || link.types.length != 2
+                    || !(link.potential instanceof PotentialGroup)) {
+                continue;
+            }
+            if (!isMonatomic(box, link.types[0]) || !isMonatomic(box, link.types[1])) {
+                continue;
+            }
+            PotentialGroup.PotentialLinker groupLink = ((PotentialGroup) link.potential).first;
+            if (groupLink == null || groupLink.next != null || !groupLink.enabled
+                    || groupLink.types == null || groupLink.types.length != 2
+                    || !PotentialCalculationPartialSum.isPairSummable(groupLink.potential)) {
+                continue;
+            }
+            if (allPairsSumParallel.setPairPotential(groupLink.types[0], groupLink.types[1],
+                    (Potential2SoftSpherical) groupLink.potential)) {
+                groupLink.potential.setBox(box);
+                link.parallel = true;
+                any = true;
+            }
+        }
+        return any;
+    }
+
+    /**
+     * Returns true if the molecules of the given species in the box have a
+     * single atom (or the box has no molecules of the species).
+     */
+    protected static boolean isMonatomic(Box box, ISpecies species) {
+        IMoleculeList molecules = box.getMoleculeList(species);
+        return molecules.getMoleculeCount() == 0 || molecules.getMolecule(0).getChildList().getAtomCount() == 1;
+    }
+
     /**
      * Add the given Model's intramolecular potentials to this PotentialMaster
      */
@@ -421,6 +522,8 @@ public class PotentialMaster {
         public final MoleculesetIteratorPDT iterator;
         public final ISpecies[] types;
         public boolean enabled = true;
+        // set when the pairs are handled by allPairsSumParallel
+        public boolean parallel;
 
         //Constructors
         public PotentialLinker(IPotentialMolecular a, MoleculesetIteratorPDT i, ISpecies[] t) {
@@ -8,6 +8,7 @@ import etomica.atom.*;
 import etomica.box.Box;
 import etomica.molecule.IMolecule;
 import etomica.simulation.Simulation;
+import etomica.space.Space;
 import etomica.species.ISpecies;
 import etomica.util.Arrays;
 
@@ -29,6 +30,7 @@ public class PotentialMasterMonatomic extends PotentialMaster implements AtomTyp
     protected final AtomSetSinglet atomSetSinglet;
     protected final AtomPair atomPair;
     protected IPotential[] allPotentials = new IPotential[0];
+    protected boolean skipPairSummable;
     
     public PotentialMasterMonatomic(Simulation sim) {
         super();
@@ -106,11 +108,18 @@ public class PotentialMasterMonatomic extends PotentialMaster implements AtomTyp
             for (int i=0; i<allPotentials.length; i++) {
                 allPotentials[i].setBox(box);
             }
+            // with a parallel calculation, pairs are done separately below
+            boolean doParallel = parallelThreads > 1 && PotentialCalculationPartialSum.isSupported(pc) && setupParallel(box);
+            skipPairSummable = doParallel;
             for (int i=0; i<leafList.getAtomCount(); i++) {
                 IAtom atom = leafList.getAtom(i);
                 PotentialArrayByType potentialArray = (PotentialArrayByType)potentialAgentManager.getAgent(atom.getType());
                 calculate(atom, leafList, i, potentialArray, IteratorDirective.Direction.UP, pc);
             }
+            skipPairSummable = false;
+            if (doParallel) {
+                allPairsSumParallel.calculate(box, pc);
+            }
         }
         if(lrcMaster != null) {
             lrcMaster.calculate(box, id, pc);
@@ -129,6 +138,10 @@ public class PotentialMasterMonatomic extends PotentialMaster implements AtomTyp
         }
 
         AtomType[] types = potentialArray.getTypes();
+        if (skipPairSummable && allPairsParallel(leafAtom.getType(), types)) {
+            // all of this atom's pairs are handled by allPairsSumParallel
+            return;
+        }
         if (direction != IteratorDirective.Direction.DOWN) {
             atomPair.atom0 = leafAtom;
             for (int j=leafIndex+1; j<leafCount; j++) {
@@ -136,7 +149,9 @@ public class PotentialMasterMonatomic extends PotentialMaster implements AtomTyp
                 AtomType type1 = atomPair.atom1.getType();
                 for (int i=0; i<types.length; i++) {
                     if (types[i] == type1) {
-                        pc.doCalculation(atomPair, (IPotentialAtomic)potentials[i]);
+                        if (!skipPairSummable || allPairsSumParallel.getPairPotential(leafAtom.getType(), type1) == null) {
+                            pc.doCalculation(atomPair, (IPotentialAtomic)potentials[i]);
+                        }
                         break;
                     }
                 }
@@ -157,6 +172,74 @@ public class PotentialMasterMonatomic extends PotentialMaster implements AtomTyp
         }
     }
 
+    /**
+     * Returns true if allPairsSumParallel handles the pairs of the given type
+     * with every type in the array.
+     */
+    protected boolean allPairsParallel(AtomType type, AtomType[] types) {
+        for (int i=0; i<types.length; i++) {
+            if (types[i] != null && allPairsSumParallel.getPairPotential(type, types[i]) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the potential used for pairs of atoms with the given types in
+     * the serial calculation: the first one in the PotentialArrayByType of
+     * type0 that applies to type1.
+     */
+    protected IPotential getPairPotential(AtomType type0, AtomType type1) {
+        PotentialArrayByType potentialArray = (PotentialArrayByType)potentialAgentManager.getAgent(type0);
+        AtomType[] types = potentialArray.getTypes();
+        for (int i=0; i<types.length; i++) {
+            if (types[i] == type1) {
+                return potentialArray.getPotentials()[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Fills the pair table of allPairsSumParallel (creating it if needed)
+     * with the pair potentials that are pair-summable.  A pair potential is
+     * used only if it is found for the two types in either order, so that
+     * the pairs handled in parallel don't depend on the order of the atoms.
+     *
+     * @return true if any pairs are to be handled in parallel
+     */
+    protected boolean setupParallel(Box box) {
+        int D = box.getBoundary().getBoxSize().getD();
+        if (allPairsSumParallel == null || allPairsSumParallel.space.D() != D) {
+            if (allPairsSumParallel != null) {
+                allPairsSumParallel.dispose();
+            }
+            allPairsSumParallel = new AllPairsSumParallel(Space.getInstance(D), parallelThreads);
+        }
+        allPairsSumParallel.clearPairPotentials();
+        boolean any = false;
+        potentialIterator.reset();
+        while (potentialIterator.hasNext()) {
+            // every type with a pair potential is a partner type of another
+            AtomType[] partnerTypes = ((PotentialArrayByType)potentialIterator.next()).getTypes();
+            for (int k=0; k<partnerTypes.length; k++) {
+                AtomType type0 = partnerTypes[k];
+                if (type0 == null) continue;
+                AtomType[] types = ((PotentialArrayByType)potentialAgentManager.getAgent(type0)).getTypes();
+                for (int i=0; i<types.length; i++) {
+                    if (types[i] == null) continue;
+                    IPotential p2 = getPairPotential(type0, types[i]);
+                    if (PotentialCalculationPartialSum.isPairSummable(p2) && getPairPotential(types[i], type0) == p2) {
+                        allPairsSumParallel.setPairPotential(type0, types[i], (Potential2SoftSpherical)p2);
+                        any = true;
+                    }
+                }
+            }
+        }
+        return any;
+    }
+
     public Class getSpeciesAgentClass() {
         return PotentialArrayByType.class;
     }
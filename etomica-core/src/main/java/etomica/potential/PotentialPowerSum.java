@@ -0,0 +1,27 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+/**
+ * Interface for a pair potential that is a sum of inverse powers of the
+ * separation, u(r) = sum_i c_i r^-n_i.  Scaling every separation by s scales
+ * term i by s^-n_i, so the energy of a configuration after a uniform
+ * scaling can be found from the terms summed before it.
+ *
+ * @see PotentialCalculationEnergyPowers
+ */
+public interface PotentialPowerSum extends Potential2Soft {
+
+    /**
+     * Returns the power of each term, n_i.
+     */
+    public int[] getPowers();
+
+    /**
+     * Puts the value of each term at the given squared separation into
+     * terms, in the order given by getPowers.
+     */
+    public void uTerms(double r2, double[] terms);
+}
@@ -0,0 +1,31 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.IAtomList;
+import etomica.space.Vector;
+
+/**
+ * Interface for a three-body potential whose energy can be computed from
+ * separations that the caller has already found.  A neighbor-list engine
+ * that enumerates triplets from the pairs it has visited can then pass
+ * along the pair separations instead of having the potential compute them
+ * again, with the boundary, for every triplet.
+ * <p>
+ * The energy method here must not modify the potential, so that it can be
+ * called from several threads at once.
+ */
+public interface PotentialTriplet extends IPotentialAtomic {
+
+    /**
+     * Returns the energy of the given three atoms.
+     *
+     * @param atoms the atoms, in the order used for dr
+     * @param dr    the nearest-image separations r1-r0, r2-r0 and r2-r1
+     *              (so that dr[2] = dr[1] - dr[0])
+     * @param r2    the squares of the separations in dr
+     */
+    public double energy(IAtomList atoms, Vector[] dr, double[] r2);
+}
@@ -0,0 +1,172 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+/**
+ * EventHeap is a binary min-heap of HeapLinkers, ordered by their sortKey.
+ * Each linker knows its position in the heap, so the first element can be
+ * found in constant time and linkers can be added and removed in
+ * O(log N) time, regardless of the order in which the sort keys arrive.
+ * <p>
+ * The sortKey of a linker must not be changed while it is in the heap
+ * (remove it, change the key and add it back), except that the keys of
+ * all linkers may be shifted by the same amount since that does not
+ * change their order.
+ */
+public class EventHeap implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+    protected HeapLinker[] heap;
+    protected int size;
+
+    public EventHeap() {
+        heap = new HeapLinker[16];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the linker to the heap.  The linker must not already be in a heap.
+     */
+    public void add(HeapLinker newNode) {
+        if (newNode.heap != null) {
+            throw new RuntimeException("attempting to add a node to the heap which is already part of a heap");
+        }
+        if (size == heap.length) {
+            HeapLinker[] newHeap = new HeapLinker[2*size];
+            System.arraycopy(heap, 0, newHeap, 0, size);
+            heap = newHeap;
+        }
+        newNode.heap = this;
+        siftUp(newNode, size);
+        size++;
+    }
+
+    /**
+     * Removes the linker from the heap.  Nothing happens if the linker is
+     * not in this heap.
+     */
+    public void remove(HeapLinker oldNode) {
+        if (oldNode.heap != this) return;
+        int i = oldNode.index;
+        oldNode.heap = null;
+        oldNode.index = -1;
+        size--;
+        if (i == size) {
+            heap[size] = null;
+            return;
+        }
+        // move the last node into the hole and restore the heap from there
+        HeapLinker last = heap[size];
+        heap[size] = null;
+        if (i > 0 && last.sortKey < heap[(i-1)/2].sortKey) {
+            siftUp(last, i);
+        }
+        else {
+            siftDown(last, i);
+        }
+    }
+
+    /**
+     * returns the object from the heap associated with the lowest sort-key,
+     * or null if the heap is empty
+     * @return first object in the heap
+     */
+    public Object firstElement() {
+        return size == 0 ? null : heap[0].obj;
+    }
+
+    /**
+     * Removes all linkers from the heap.
+     */
+    public void reset() {
+        for (int i=0; i<size; i++) {
+            heap[i].heap = null;
+            heap[i].index = -1;
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    protected void siftUp(HeapLinker node, int i) {
+        while (i > 0) {
+            int parent = (i-1)/2;
+            HeapLinker p = heap[parent];
+            if (node.sortKey >= p.sortKey) break;
+            heap[i] = p;
+            p.index = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.index = i;
+    }
+
+    protected void siftDown(HeapLinker node, int i) {
+        int half = size/2;
+        while (i < half) {
+            int child = 2*i+1;
+            HeapLinker c = heap[child];
+            if (child+1 < size && heap[child+1].sortKey < c.sortKey) {
+                child++;
+                c = heap[child];
+            }
+            if (node.sortKey <= c.sortKey) break;
+            heap[i] = c;
+            c.index = i;
+            i = child;
+        }
+        heap[i] = node;
+        node.index = i;
+    }
+
+    /**
+     * checks the heap for consistency of indices and ordering by sortKey.
+     */
+    public void check() {
+        for (int i=0; i<size; i++) {
+            if (heap[i].heap != this || heap[i].index != i) {
+                throw new IllegalStateException("node "+heap[i]+" at "+i+" has index "+heap[i].index);
+            }
+            if (i > 0 && heap[i].sortKey < heap[(i-1)/2].sortKey) {
+                throw new IllegalStateException("node "+heap[i]+" has a lower sortKey than its parent "+heap[(i-1)/2]);
+            }
+        }
+    }
+
+    /**
+     * Linker used in the EventHeap.  Holds an object, its sort key and its
+     * position within the heap.
+     */
+    public static class HeapLinker implements java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        public final Object obj;
+        public double sortKey;
+        protected EventHeap heap;
+        protected int index = -1;
+
+        public HeapLinker(Object o) {
+            obj = o;
+        }
+
+        /**
+         * Removes this linker from the heap it is in, if any.
+         */
+        public void remove() {
+            if (heap != null) {
+                heap.remove(this);
+            }
+        }
+
+        public boolean isInHeap() {
+            return heap != null;
+        }
+
+        public String toString() {
+            return "HeapLinker ("+obj+" "+sortKey+")";
+        }
+    }
+}
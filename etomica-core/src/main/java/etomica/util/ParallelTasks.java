@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs lists of tasks on a fixed number of threads and waits for them to
+ * finish.  This holds the thread pool used by the classes that split a
+ * calculation into one task per thread (or per chunk of atoms).  A task that
+ * throws a RuntimeException has it rethrown (unwrapped) on the calling
+ * thread; other exceptions are wrapped in a RuntimeException.
+ * <p>
+ * With a single thread, no pool is made and the tasks are run on the calling
+ * thread.
+ */
+public class ParallelTasks {
+
+    protected final int numThreads;
+    protected final ForkJoinPool pool;
+
+    /**
+     * @param numThreads the number of threads to use
+     */
+    public ParallelTasks(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+        pool = numThreads > 1 ? new ForkJoinPool(numThreads) : null;
+    }
+
+    /**
+     * @return the number of threads used to run tasks
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Runs the given tasks and waits for all of them to finish.  A single
+     * task is run on the calling thread.
+     */
+    public void invokeAll(List<? extends Callable<Object>> tasks) {
+        if (pool == null || tasks.size() == 1) {
+            for (Callable<Object> task : tasks) {
+                try {
+                    task.call();
+                }
+                catch (Exception e) {
+                    throw unchecked(e);
+                }
+            }
+            return;
+        }
+        List<Future<Object>> futures = pool.invokeAll(tasks);
+        try {
+            for (Future<Object> f : futures) {
+                f.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw unchecked(e.getCause());
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable t) {
+        return t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+    }
+
+    /**
+     * Shuts down the threads used by this instance.
+     */
+    public void dispose() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.action.activity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import etomica.action.IAction;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchRunnerTest {
+
+    protected static class MCSim extends Simulation {
+        final Box box;
+        final ActivityIntegrate activityIntegrate;
+        int nBefore, nAfter;
+
+        MCSim() {
+            this(false);
+        }
+
+        /**
+         * @param grouped if true, the integrator is run by a subclass of
+         *                ActivityIntegrate within an ActivityGroupSeries
+         */
+        MCSim(boolean grouped) {
+            super(Space3D.getInstance());
+            setRandom(new RandomMersenneTwister(new int[]{1, 2, 3, 4}));
+            Space space = getSpace();
+            SpeciesSpheresMono species = new SpeciesSpheresMono(this, space);
+            addSpecies(species);
+            PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(this);
+            potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5),
+                    new etomica.atom.AtomType[]{species.getLeafType(), species.getLeafType()});
+            box = new Box(space);
+            addBox(box);
+            box.setNMolecules(species, 32);
+            box.getBoundary().setBoxSize(space.makeVector(new double[]{6, 6, 6}));
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+            IntegratorMC integrator = new IntegratorMC(potentialMaster, getRandom(), 1.0);
+            integrator.setBox(box);
+            integrator.getMoveManager().addMCMove(new MCMoveAtom(getRandom(), potentialMaster, space));
+            activityIntegrate = grouped ? new ActivityIntegrateSubclass(integrator) : new ActivityIntegrate(integrator);
+            activityIntegrate.setMaxSteps(250);
+            IAction before = new IAction() {
+                public void actionPerformed() {
+                    nBefore++;
+                }
+            };
+            IAction after = new IAction() {
+                public void actionPerformed() {
+                    nAfter++;
+                }
+            };
+            if (grouped) {
+                ActivityGroupSeries group = new ActivityGroupSeries();
+                group.addAction(before);
+                group.addAction(activityIntegrate);
+                group.addAction(after);
+                getController().addAction(group);
+            }
+            else {
+                getController().addAction(before);
+                getController().addAction(activityIntegrate);
+                getController().addAction(after);
+            }
+        }
+    }
+
+    /**
+     * Checks that the runner performs the same actions and integrator steps
+     * as the Controller, with checkpoints and progress reports at the
+     * requested intervals.
+     */
+    @Test
+    public void testRun() {
+        MCSim controllerSim = new MCSim();
+        controllerSim.getController().actionPerformed();
+
+        MCSim batchSim = new MCSim();
+        BatchRunner runner = new BatchRunner(batchSim);
+        final int[] nCheckpoints = new int[1];
+        runner.setCheckpoint(new IAction() {
+            public void actionPerformed() {
+                nCheckpoints[0]++;
+            }
+        }, 100);
+        ByteArrayOutputStream progress = new ByteArrayOutputStream();
+        runner.setProgressStream(new PrintStream(progress));
+        runner.setProgressInterval(125);
+        runner.run();
+
+        assertEquals(1, batchSim.nBefore);
+        assertEquals(1, batchSim.nAfter);
+        // checkpoints after steps 100, 200 and the last step
+        assertEquals(3, nCheckpoints[0]);
+        assertEquals(2, progress.toString().split("\n").length);
+        assertEquals(250, batchSim.activityIntegrate.getCurrentStep());
+        assertEquals(250, batchSim.activityIntegrate.getIntegrator().getStepCount());
+        Controller controller = batchSim.getController();
+        assertEquals(0, controller.getPendingActions().length);
+        for (IAction action : controller.getCompletedActions()) {
+            assertEquals(Controller.ActionStatus.COMPLETED, controller.getActionStatus(action));
+        }
+
+        IAtomList atoms1 = controllerSim.box.getLeafList();
+        IAtomList atoms2 = batchSim.box.getLeafList();
+        for (int i = 0; i < atoms1.getAtomCount(); i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(atoms1.getAtom(i).getPosition().getX(j), atoms2.getAtom(i).getPosition().getX(j), 0);
+            }
+        }
+    }
+
+    /**
+     * Checks that a subclass of ActivityIntegrate within an ActivityGroup is
+     * also run by the runner (with checkpoints).
+     */
+    @Test
+    public void testGroup() {
+        MCSim batchSim = new MCSim(true);
+        BatchRunner runner = new BatchRunner(batchSim);
+        final int[] nCheckpoints = new int[1];
+        runner.setCheckpoint(new IAction() {
+            public void actionPerformed() {
+                nCheckpoints[0]++;
+            }
+        }, 100);
+        runner.run();
+
+        assertEquals(1, batchSim.nBefore);
+        assertEquals(1, batchSim.nAfter);
+        assertEquals(3, nCheckpoints[0]);
+        assertEquals(250, batchSim.activityIntegrate.getIntegrator().getStepCount());
+    }
+
+    static class ActivityIntegrateSubclass extends ActivityIntegrate {
+        private static final long serialVersionUID = 1L;
+
+        ActivityIntegrateSubclass(IntegratorMC integrator) {
+            super(integrator);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import etomica.action.WriteTrajectoryBinary;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConfigurationFileTrajectoryTest {
+
+    private File file;
+    private Space space;
+    private Box box;
+    private List<double[]> frames;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("traj", ".bin");
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 32);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{6, 6, 6}));
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        frames = new ArrayList<double[]>();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Moves the atoms and changes the box size, then writes the frame and
+     * remembers what was written.
+     */
+    protected void writeFrame(WriteTrajectoryBinary writer, int i) {
+        double L = 6 + 0.1*i;
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{L, L, L}));
+        IAtomList atoms = box.getLeafList();
+        double[] x = new double[atoms.getAtomCount()*3];
+        for (int j=0; j<atoms.getAtomCount(); j++) {
+            Vector p = atoms.getAtom(j).getPosition();
+            p.setX(0, (0.01*(i+j)) % 2.9);
+            for (int k=0; k<3; k++) {
+                x[3*j+k] = p.getX(k);
+            }
+        }
+        writer.actionPerformed();
+        frames.add(x);
+    }
+
+    protected void checkFrame(ConfigurationFileTrajectory config, int i, double tol) {
+        config.setFrame(i);
+        config.initializeCoordinates(box);
+        assertEquals(6 + 0.1*i, box.getBoundary().getBoxSize().getX(1), 0);
+        IAtomList atoms = box.getLeafList();
+        for (int j=0; j<atoms.getAtomCount(); j++) {
+            for (int k=0; k<3; k++) {
+                assertEquals(frames.get(i)[3*j+k], atoms.getAtom(j).getPosition().getX(k), tol);
+            }
+        }
+    }
+
+    /**
+     * Checks that frames written in two sessions (the second appending to
+     * the first) can be read back in any order.
+     */
+    @Test
+    public void testAppend() {
+        WriteTrajectoryBinary writer = new WriteTrajectoryBinary(space);
+        writer.setFileName(file.getPath());
+        writer.setBox(box);
+        writer.setDoApplyPBC(false);
+        for (int i=0; i<5; i++) {
+            writeFrame(writer, i);
+        }
+        writer.close();
+
+        writer = new WriteTrajectoryBinary(space);
+        writer.setFileName(file.getPath());
+        writer.setBox(box);
+        writer.setDoApplyPBC(false);
+        writer.setAppend(true);
+        for (int i=5; i<8; i++) {
+            writeFrame(writer, i);
+        }
+        // not closed yet, so there is no footer
+        ConfigurationFileTrajectory config = new ConfigurationFileTrajectory(file.getPath());
+        assertEquals(8, config.getFrameCount());
+        assertEquals(7, config.getFrame());
+        writer.close();
+
+        config.reload();
+        assertEquals(8, config.getFrameCount());
+        assertEquals(32, config.getAtomCount());
+        for (int i=7; i>=0; i-=3) {
+            checkFrame(config, i, 0);
+        }
+        assertEquals(6, config.getStep(6));
+        assertEquals(3, config.findFrame(3));
+        assertEquals(-1, config.findFrame(-1));
+        assertEquals(7, config.findFrame(100));
+    }
+
+    @Test
+    public void testFloat() {
+        WriteTrajectoryBinary writer = new WriteTrajectoryBinary(space);
+        writer.setFileName(file.getPath());
+        writer.setBox(box);
+        writer.setDoApplyPBC(false);
+        writer.setDoublePrecision(false);
+        for (int i=0; i<3; i++) {
+            writeFrame(writer, i);
+        }
+        writer.close();
+        ConfigurationFileTrajectory config = new ConfigurationFileTrajectory(file.getPath());
+        assertEquals(3, config.getFrameCount());
+        checkFrame(config, 1, 1e-6);
+    }
+}
@@ -0,0 +1,178 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataGroup;
+import etomica.units.dimensions.Null;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AccumulatorMergeTest {
+
+    /**
+     * Feeds the same data stream to one accumulator and, split in two, to two
+     * other accumulators.  Merging the two should give the statistics of the
+     * first.
+     */
+    @Test
+    public void testMerge() {
+        DataDoubleArray.DataInfoDoubleArray info = new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{3});
+        AccumulatorRatioAverageCovarianceFull all = new AccumulatorRatioAverageCovarianceFull(100);
+        AccumulatorRatioAverageCovarianceFull first = new AccumulatorRatioAverageCovarianceFull(100);
+        AccumulatorRatioAverageCovarianceFull second = new AccumulatorRatioAverageCovarianceFull(100);
+        AccumulatorRatioAverageCovarianceFull merged = new AccumulatorRatioAverageCovarianceFull(100);
+        all.putDataInfo(info);
+        first.putDataInfo(info);
+        second.putDataInfo(info);
+        merged.putDataInfo(info);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(new int[]{1, 2, 3});
+        DataDoubleArray data = new DataDoubleArray(3);
+        double[] x = data.getData();
+        for (int i = 0; i < 10050; i++) {
+            // correlated values, so that the block correlation is not trivial
+            x[0] = 0.9 * x[0] + random.nextGaussian();
+            x[1] = 2 + x[0] + random.nextGaussian();
+            x[2] = 5 + 0.5 * random.nextDouble();
+            all.putData(data);
+            if (i < 6000) {
+                first.putData(data);
+            }
+            else {
+                second.putData(data);
+            }
+        }
+        merged.merge(first);
+        merged.merge(second);
+
+        assertEquals(all.getBlockCount(), merged.getBlockCount());
+        assertEquals(all.getSampleCount(), merged.getSampleCount());
+        DataGroup expected = (DataGroup) all.getData();
+        DataGroup actual = (DataGroup) merged.getData();
+        for (int i = 0; i < expected.getNData(); i++) {
+            IData e = expected.getData(i);
+            IData a = actual.getData(i);
+            for (int j = 0; j < e.getLength(); j++) {
+                assertEquals("stat " + i + " value " + j, e.getValue(j), a.getValue(j), 1e-8 * Math.max(1, Math.abs(e.getValue(j))));
+            }
+        }
+    }
+
+    /**
+     * Fills data with the next (correlated) values from the given random stream.
+     */
+    protected static void nextData(DataDoubleArray data, RandomMersenneTwister random) {
+        double[] x = data.getData();
+        x[0] = 0.9 * x[0] + random.nextGaussian();
+        x[1] = 2 + x[0] + random.nextGaussian();
+        x[2] = 5 + 0.5 * random.nextDouble();
+    }
+
+    /**
+     * Has several threads feed an AccumulatorAverageParallel, both through
+     * accumulators made for each worker and through the threads' own
+     * accumulators, and compares the merged statistics with those from a
+     * single accumulator fed all of the data in order.
+     */
+    @Test
+    public void testParallel() throws Exception {
+        final DataDoubleArray.DataInfoDoubleArray info = new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{3});
+        AccumulatorAverageParallel.AccumulatorFactory<AccumulatorRatioAverageCovarianceFull> factory = new AccumulatorAverageParallel.AccumulatorFactory<AccumulatorRatioAverageCovarianceFull>() {
+            public AccumulatorRatioAverageCovarianceFull makeAccumulator() {
+                return new AccumulatorRatioAverageCovarianceFull(100);
+            }
+        };
+        final AccumulatorAverageParallel<AccumulatorRatioAverageCovarianceFull> perWorker = new AccumulatorAverageParallel<AccumulatorRatioAverageCovarianceFull>(factory);
+        final AccumulatorAverageParallel<AccumulatorRatioAverageCovarianceFull> perThread = new AccumulatorAverageParallel<AccumulatorRatioAverageCovarianceFull>(factory);
+        perWorker.putDataInfo(info);
+        perThread.putDataInfo(info);
+        AccumulatorRatioAverageCovarianceFull all = new AccumulatorRatioAverageCovarianceFull(100);
+        all.putDataInfo(info);
+
+        final int nWorkers = 4, nSamples = 2500;
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for (int w = 0; w < nWorkers; w++) {
+            final int seed = w + 1;
+            final AccumulatorRatioAverageCovarianceFull workerAccumulator = perWorker.makeAccumulator();
+            tasks.add(new Callable<Object>() {
+                public Object call() {
+                    RandomMersenneTwister random = new RandomMersenneTwister(new int[]{seed, 2, 3});
+                    DataDoubleArray data = new DataDoubleArray(3);
+                    for (int i = 0; i < nSamples; i++) {
+                        nextData(data, random);
+                        workerAccumulator.putData(data);
+                        perThread.putData(data);
+                    }
+                    return null;
+                }
+            });
+            RandomMersenneTwister random = new RandomMersenneTwister(new int[]{seed, 2, 3});
+            DataDoubleArray data = new DataDoubleArray(3);
+            for (int i = 0; i < nSamples; i++) {
+                nextData(data, random);
+                all.putData(data);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        for (Future<Object> f : executor.invokeAll(tasks)) {
+            f.get();
+        }
+        executor.shutdown();
+
+        AccumulatorRatioAverageCovarianceFull merged = perWorker.merge();
+        assertEquals(all.getSampleCount(), merged.getSampleCount());
+        DataGroup expected = (DataGroup) all.getData();
+        DataGroup actual = (DataGroup) merged.getData();
+        for (int i = 0; i < expected.getNData(); i++) {
+            // the most recent value depends on the order of the workers
+            if (i == AccumulatorAverage.MOST_RECENT.index) continue;
+            IData e = expected.getData(i);
+            IData a = actual.getData(i);
+            for (int j = 0; j < e.getLength(); j++) {
+                assertEquals("stat " + i + " value " + j, e.getValue(j), a.getValue(j), 1e-8 * Math.max(1, Math.abs(e.getValue(j))));
+            }
+        }
+
+        // the threads' accumulators might be merged in any order, which
+        // affects the block correlation, but not the average
+        merged = perThread.merge();
+        assertEquals(all.getSampleCount(), merged.getSampleCount());
+        IData e = all.getData(AccumulatorAverage.AVERAGE);
+        IData a = merged.getData(AccumulatorAverage.AVERAGE);
+        for (int j = 0; j < e.getLength(); j++) {
+            assertEquals(e.getValue(j), a.getValue(j), 1e-10 * Math.max(1, Math.abs(e.getValue(j))));
+        }
+    }
+
+    /**
+     * Checks that data given before the DataInfo is refused.
+     */
+    @Test
+    public void testNoDataInfo() {
+        AccumulatorAverageParallel<AccumulatorAverageFixed> parallel = new AccumulatorAverageParallel<AccumulatorAverageFixed>(new AccumulatorAverageParallel.AccumulatorFactory<AccumulatorAverageFixed>() {
+            public AccumulatorAverageFixed makeAccumulator() {
+                return new AccumulatorAverageFixed(100);
+            }
+        });
+        try {
+            parallel.putData(new DataDoubleArray(3));
+            fail("putData before putDataInfo");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("no DataInfo has been received", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.box.Box;
+import etomica.data.types.DataFunction;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MeterRDFParallelTest {
+    Space space;
+    Box box;
+    SpeciesSpheresMono species1, species2;
+
+    @Before
+    public void setUp() throws Exception {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        species1 = new SpeciesSpheresMono(sim, space);
+        species2 = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species1);
+        sim.addSpecies(species2);
+        box = new Box(space);
+        sim.addBox(box);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{10, 11, 12}));
+        box.setNMolecules(species1, 300);
+        box.setNMolecules(species2, 100);
+        Random random = new Random(12345);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            Vector r = box.getLeafList().getAtom(i).getPosition();
+            for (int j = 0; j < 3; j++) {
+                r.setX(j, (random.nextDouble() - 0.5) * box.getBoundary().getBoxSize().getX(j));
+            }
+        }
+    }
+
+    protected double[] rdf(MeterRDF meter, double xMax) {
+        meter.setBox(box);
+        meter.getXDataSource().setXMax(xMax);
+        meter.getXDataSource().setNValues(100);
+        meter.reset();
+        meter.actionPerformed();
+        return ((DataFunction) meter.getData()).getData().clone();
+    }
+
+    @Test
+    public void testRDF() {
+        // xMax=3 allows cells, xMax=4.5 does not
+        for (double xMax : new double[]{3, 4.5}) {
+            double[] g = rdf(new MeterRDF(space), xMax);
+            for (int nThreads = 1; nThreads < 4; nThreads++) {
+                MeterRDFParallel meter = new MeterRDFParallel(space, nThreads);
+                assertArrayEquals(g, rdf(meter, xMax), 0);
+
+                MeterRDF meterTyped = new MeterRDF(space);
+                meterTyped.setAtomTypes(species2.getLeafType(), species1.getLeafType());
+                meter.setAtomTypes(species2.getLeafType(), species1.getLeafType());
+                assertArrayEquals(rdf(meterTyped, xMax), rdf(meter, xMax), 0);
+                meter.dispose();
+            }
+        }
+    }
+
+    @Test
+    public void testStructureFactor() {
+        MeterStructureFactor meter = new MeterStructureFactor(space, box, 2);
+        double[] s = ((DataFunction) meter.getData()).getData().clone();
+        for (int nThreads = 1; nThreads < 4; nThreads++) {
+            MeterStructureFactorParallel meterParallel = new MeterStructureFactorParallel(space, box, 2, nThreads);
+            assertArrayEquals(s, ((DataFunction) meterParallel.getData()).getData(), 0);
+            meterParallel.dispose();
+        }
+    }
+}
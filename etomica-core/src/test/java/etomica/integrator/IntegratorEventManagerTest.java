@@ -0,0 +1,57 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntegratorEventManagerTest {
+
+    protected static class CountingListener implements IntegratorListener {
+        int nSteps;
+
+        public void integratorInitialized(IntegratorEvent e) {}
+
+        public void integratorStepStarted(IntegratorEvent e) {}
+
+        public void integratorStepFinished(IntegratorEvent e) {
+            nSteps++;
+        }
+    }
+
+    /**
+     * Listeners added or removed during an event take effect with the next
+     * event; the current event still goes to the listeners it started with.
+     */
+    @Test
+    public void testChangeDuringEvent() throws Exception {
+        final IntegratorEventManager eventManager = new IntegratorEventManager(null);
+        final CountingListener added = new CountingListener();
+        final CountingListener removed = new CountingListener();
+        IntegratorListener changer = new CountingListener() {
+            public void integratorStepFinished(IntegratorEvent e) {
+                super.integratorStepFinished(e);
+                if (nSteps == 1) {
+                    eventManager.removeListener(this);
+                    eventManager.removeListener(removed);
+                    eventManager.addListener(added);
+                }
+            }
+        };
+        eventManager.addListener(changer);
+        eventManager.addListener(removed);
+
+        eventManager.stepFinished();
+        assertEquals(1, ((CountingListener) changer).nSteps);
+        assertEquals(1, removed.nSteps);
+        assertEquals(0, added.nSteps);
+
+        eventManager.stepFinished();
+        assertEquals(1, ((CountingListener) changer).nSteps);
+        assertEquals(1, removed.nSteps);
+        assertEquals(1, added.nSteps);
+    }
+}
@@ -0,0 +1,110 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.mcmove.MCMoveAtom;
+import etomica.integrator.mcmove.MCMoveTrialInitiatedEvent;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.IEvent;
+import etomica.util.IListener;
+import etomica.util.random.IRandom;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntegratorPTTest {
+
+    protected static class PTSim extends Simulation {
+        final IntegratorPT integratorPT;
+        final Box[] boxes;
+        final IntegratorPT.BoxTracker tracker;
+        int nSwapTrials;
+
+        PTSim(int nReplicas) {
+            super(Space3D.getInstance());
+            setRandom(new RandomMersenneTwister(new int[]{1, 2, 3, 4}));
+            Space space = getSpace();
+            SpeciesSpheresMono species = new SpeciesSpheresMono(this, space);
+            addSpecies(species);
+            integratorPT = new IntegratorPT(getRandom(), space);
+            integratorPT.setGlobalMoveInterval(10);
+            boxes = new Box[nReplicas];
+            for (int i = 0; i < nReplicas; i++) {
+                IRandom replicaRandom = IntegratorPT.makeReplicaRandom(getRandom());
+                PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(this);
+                potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5),
+                        new etomica.atom.AtomType[]{species.getLeafType(), species.getLeafType()});
+                boxes[i] = new Box(space);
+                addBox(boxes[i]);
+                boxes[i].setNMolecules(species, 32);
+                boxes[i].getBoundary().setBoxSize(space.makeVector(new double[]{6, 6, 6}));
+                new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(boxes[i]);
+                IntegratorMC integrator = new IntegratorMC(potentialMaster, replicaRandom, 1.0 + 0.2 * i);
+                integrator.setBox(boxes[i]);
+                integrator.getMoveManager().addMCMove(new MCMoveAtom(replicaRandom, potentialMaster, space));
+                integratorPT.addIntegrator(integrator);
+            }
+            tracker = new IntegratorPT.BoxTracker();
+            tracker.setNumBoxes(nReplicas);
+            integratorPT.getMoveEventManager().addListener(tracker);
+            integratorPT.getMoveEventManager().addListener(new IListener() {
+                public void actionPerformed(IEvent event) {
+                    if (event instanceof MCMoveTrialInitiatedEvent) nSwapTrials++;
+                }
+            });
+            integratorPT.reset();
+        }
+    }
+
+    /**
+     * Checks that running the replicas concurrently gives exactly the same
+     * configurations, swaps and BoxTracker data as running them serially,
+     * after the same number of steps.
+     */
+    @Test
+    public void testConcurrent() {
+        PTSim serial = new PTSim(4);
+        while (serial.nSwapTrials < 50) {
+            serial.integratorPT.doStep();
+        }
+        long nSteps = serial.integratorPT.getStepCount();
+
+        PTSim concurrent = new PTSim(4);
+        concurrent.integratorPT.setNumThreads(3);
+        for (long i = 0; i < nSteps; i++) {
+            concurrent.integratorPT.doStep();
+        }
+        concurrent.integratorPT.setNumThreads(1);
+        assertEquals(nSteps, concurrent.integratorPT.getStepCount());
+        assertEquals(serial.nSwapTrials, concurrent.nSwapTrials);
+
+        Integrator[] serialIntegrators = serial.integratorPT.getIntegrators();
+        Integrator[] concurrentIntegrators = concurrent.integratorPT.getIntegrators();
+        for (int i = 0; i < serial.boxes.length; i++) {
+            assertEquals(serialIntegrators[i].getStepCount(), concurrentIntegrators[i].getStepCount());
+            IAtomList atoms1 = serial.boxes[i].getLeafList();
+            IAtomList atoms2 = concurrent.boxes[i].getLeafList();
+            for (int j = 0; j < atoms1.getAtomCount(); j++) {
+                for (int k = 0; k < 3; k++) {
+                    assertEquals(atoms1.getAtom(j).getPosition().getX(k), atoms2.getAtom(j).getPosition().getX(k), 0);
+                }
+            }
+        }
+        for (int i = 0; i < serial.boxes.length; i++) {
+            assertEquals(serial.tracker.getData().getValue(i), concurrent.tracker.getData().getValue(i), 0);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.integrator.mcmove;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorMC;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.P2SoftSphericalTruncatedShifted;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MCMoveVolumeScaledTest {
+
+    protected static class NPTSim extends Simulation {
+        final Box box;
+        final IntegratorMC integrator;
+        final MCMoveVolume mcMoveVolume;
+
+        NPTSim(boolean scaled, boolean shifted) {
+            super(Space3D.getInstance());
+            setRandom(new RandomMersenneTwister(new int[]{1, 2, 3, 4}));
+            Space space = getSpace();
+            SpeciesSpheresMono species = new SpeciesSpheresMono(this, space);
+            addSpecies(species);
+            PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(this);
+            P2LennardJones p2 = new P2LennardJones(space);
+            P2SoftSphericalTruncated p2t = shifted ? new P2SoftSphericalTruncatedShifted(space, p2, 3)
+                    : new P2SoftSphericalTruncated(space, p2, 3);
+            potentialMaster.addPotential(p2t, new AtomType[]{species.getLeafType(), species.getLeafType()});
+            box = new Box(space);
+            addBox(box);
+            box.setNMolecules(species, 256);
+            double L = Math.pow(256/0.8, 1.0/3.0);
+            box.getBoundary().setBoxSize(space.makeVector(new double[]{L, L, L}));
+            new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+            integrator = new IntegratorMC(potentialMaster, getRandom(), 1.2);
+            integrator.setBox(box);
+            MCMoveAtom mcMoveAtom = new MCMoveAtom(getRandom(), potentialMaster, space);
+            integrator.getMoveManager().addMCMove(mcMoveAtom);
+            mcMoveVolume = scaled ? new MCMoveVolumeScaled(potentialMaster, getRandom(), space, 1.0)
+                    : new MCMoveVolume(potentialMaster, getRandom(), space, 1.0);
+            integrator.getMoveManager().addMCMove(mcMoveVolume);
+            integrator.getMoveManager().setFrequency(mcMoveVolume, 10);
+            integrator.reset();
+        }
+    }
+
+    protected void checkSame(boolean shifted) {
+        NPTSim sim = new NPTSim(false, shifted);
+        NPTSim simScaled = new NPTSim(true, shifted);
+        for (int i = 0; i < 5000; i++) {
+            sim.integrator.doStep();
+            simScaled.integrator.doStep();
+        }
+        MCMoveVolumeScaled move = (MCMoveVolumeScaled) simScaled.mcMoveVolume;
+        assertTrue(move.isScaled());
+        assertEquals(sim.mcMoveVolume.getTracker().nAccept, move.getTracker().nAccept);
+        double v = sim.box.getBoundary().volume();
+        assertEquals(v, simScaled.box.getBoundary().volume(), 1e-9 * v);
+        assertEquals(sim.integrator.getPotentialEnergy(), simScaled.integrator.getPotentialEnergy(), 1e-7);
+        IAtomList atoms = sim.box.getLeafList();
+        IAtomList atomsScaled = simScaled.box.getLeafList();
+        for (int i = 0; i < atoms.getAtomCount(); i++) {
+            for (int j = 0; j < 3; j++) {
+                assertEquals(atoms.getAtom(i).getPosition().getX(j), atomsScaled.getAtom(i).getPosition().getX(j), 1e-9);
+            }
+        }
+    }
+
+    /**
+     * Checks that the scaled move follows the same trajectory as MCMoveVolume
+     * for a truncated Lennard-Jones system with long-range correction.
+     */
+    @Test
+    public void testTruncated() {
+        checkSame(false);
+    }
+
+    @Test
+    public void testTruncatedShifted() {
+        checkSame(true);
+    }
+}
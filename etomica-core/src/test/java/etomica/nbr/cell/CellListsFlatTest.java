@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.cell;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomArrayList;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CellListsFlatTest {
+    Box box;
+    NeighborCellManager cellManager;
+
+    @Before
+    public void setUp() throws Exception {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        // move some atoms outside the box so that PBC matters
+        double L = box.getBoundary().getBoxSize().getX(0);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.05 * ((i * 7) % 5 - 2) + (i % 4 == 0 ? L : 0));
+        }
+        cellManager = new NeighborCellManager(sim, box, 3.0, space);
+        cellManager.setDoApplyPBC(true);
+    }
+
+    @After
+    public void tearDown() {
+        cellManager.setParallelThreads(1);
+    }
+
+    @Test
+    public void testAssign() throws Exception {
+        cellManager.assignCellAll();
+        Object[] cells = cellManager.getLattice().sites();
+        AtomArrayList[] serial = new AtomArrayList[cells.length];
+        for (int c = 0; c < cells.length; c++) {
+            serial[c] = new AtomArrayList();
+            serial[c].addAll(((Cell) cells[c]).occupants());
+        }
+
+        cellManager.setParallelThreads(3);
+        cellManager.assignCellAll();
+        CellListsFlat flat = cellManager.getCellListsFlat();
+        assertEquals(500, flat.getAtomCount());
+        assertEquals(cells.length, flat.getCellCount());
+        int[] offsets = flat.getCellOffsets();
+        int[] cellAtoms = flat.getCellAtoms();
+        int[] atomCells = flat.getAtomCells();
+        assertEquals(500, offsets[cells.length]);
+        IAtomList leafList = box.getLeafList();
+        for (int c = 0; c < cells.length; c++) {
+            Cell cell = (Cell) cells[c];
+            IAtomList occupants = cell.occupants();
+            assertEquals(serial[c].getAtomCount(), occupants.getAtomCount());
+            assertEquals(serial[c].getAtomCount(), offsets[c + 1] - offsets[c]);
+            for (int k = 0; k < occupants.getAtomCount(); k++) {
+                IAtom atom = occupants.getAtom(k);
+                assertSame(serial[c].getAtom(k), atom);
+                assertSame(atom, leafList.getAtom(cellAtoms[offsets[c] + k]));
+                assertEquals(c, atomCells[atom.getLeafIndex()]);
+                assertSame(cell, cellManager.getCell(atom));
+            }
+        }
+    }
+}
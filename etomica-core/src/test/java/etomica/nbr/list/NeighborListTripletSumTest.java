@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomArrayList;
+import etomica.atom.AtomType;
+import etomica.atom.AtomTypeAgentManager;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.*;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class NeighborListTripletSumTest {
+    Space space;
+    Box box;
+    PotentialMasterList potentialMaster;
+    P3Truncated p3;
+    AtomTypeAgentManager paramsManager;
+    IteratorDirective id;
+    double EPSILON = 1e-10;
+
+    @Before
+    public void setUp() throws Exception {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        potentialMaster = new PotentialMasterList(sim, 2.4, space);
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(speciesA, 80);
+        box.setNMolecules(speciesB, 28);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.6);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.05 * ((i * 7) % 5 - 2));
+        }
+        AtomType typeA = speciesA.getLeafType();
+        AtomType typeB = speciesB.getLeafType();
+        paramsManager = new AtomTypeAgentManager(null);
+        paramsManager.setAgent(typeA, new P3AxilrodTeller.MyAgent(1.0, 5.0));
+        paramsManager.setAgent(typeB, new P3AxilrodTeller.MyAgent(1.5, 4.0));
+        p3 = new P3Truncated(space, new P3AxilrodTeller(space, paramsManager), 1.8);
+        potentialMaster.addPotential(p3, new AtomType[]{typeA, typeA, typeB});
+        potentialMaster.getNeighborManager(box).reset();
+        id = new IteratorDirective();
+    }
+
+    protected double energy(IteratorDirective directive) {
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, directive, pc);
+        return pc.getSum();
+    }
+
+    /**
+     * Returns the energy of all triplets (or those including atom, if it is
+     * not null), found by brute force.
+     */
+    protected double bruteForce(IAtom atom) {
+        p3.setBox(box);
+        IAtomList leafList = box.getLeafList();
+        int n = leafList.getAtomCount();
+        AtomArrayList triplet = new AtomArrayList(3);
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                for (int k = j + 1; k < n; k++) {
+                    triplet.clear();
+                    triplet.add(leafList.getAtom(i));
+                    triplet.add(leafList.getAtom(j));
+                    triplet.add(leafList.getAtom(k));
+                    if (atom != null && !triplet.contains(atom)) continue;
+                    sum += p3.energy(triplet);
+                }
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void testTriplets() throws Exception {
+        double u = bruteForce(null);
+        assertEquals(u, energy(id), EPSILON);
+
+        IAtom atom = box.getLeafList().getAtom(31);
+        double uAtom = bruteForce(atom);
+        assertEquals(uAtom, energy(new IteratorDirective(null, atom)), EPSILON);
+
+        potentialMaster.setParallelThreads(3);
+        assertEquals(u, energy(id), EPSILON);
+        // same answer (bit for bit) every time
+        assertEquals(energy(id), energy(id), 0);
+
+        potentialMaster.getNeighborManager(box).setFlatLists(true);
+        assertEquals(u, energy(id), EPSILON);
+        assertEquals(uAtom, energy(new IteratorDirective(null, atom)), EPSILON);
+        potentialMaster.setParallelThreads(1);
+    }
+
+    /**
+     * Checks that a box too small for the range, or a potential with
+     * infinite range, is refused.
+     */
+    @Test
+    public void testRange() throws Exception {
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{5, 5, 5}));
+        try {
+            energy(id);
+            fail("box smaller than 3 times the range");
+        }
+        catch (IllegalArgumentException e) {
+        }
+
+        NeighborListTripletSum tripletSum = new NeighborListTripletSum(potentialMaster, space, 1);
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        try {
+            tripletSum.calculate(box, pc, potentialMaster.getNeighborManager(box), new P3AxilrodTeller(space, paramsManager));
+            fail("infinite range");
+        }
+        catch (IllegalArgumentException e) {
+        }
+        tripletSum.dispose();
+    }
+}
@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class NeighborListsFlatTest {
+    Box box;
+    SpeciesSpheresMono species;
+    PotentialMasterList potentialMaster;
+    MeterPotentialEnergy meter;
+    double EPSILON = 1e-9;
+
+    @Before
+    public void setUp() throws Exception {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 256);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        // perturb the lattice so that not all neighbor distances are equal
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.05 * ((i * 7) % 5 - 2));
+        }
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5);
+        AtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new AtomType[]{leafType, leafType});
+        potentialMaster.getNeighborManager(box).reset();
+        meter = new MeterPotentialEnergy(potentialMaster);
+        meter.setBox(box);
+    }
+
+    @Test
+    public void testEnergy() throws Exception {
+        NeighborListManager nbrManager = potentialMaster.getNeighborManager(box);
+        double u = meter.getDataAsScalar();
+        IAtom target = box.getLeafList().getAtom(17);
+        meter.setTarget(target);
+        double uTarget = meter.getDataAsScalar();
+        meter.setTarget((IAtom) null);
+
+        nbrManager.setFlatLists(true);
+        NeighborListsFlat flatLists = nbrManager.getFlatLists();
+        assertEquals(256, flatLists.getAtomCount());
+        int[] offsets = flatLists.getUpOffsets(0);
+        assertEquals(flatLists.getPairCount(), offsets[256]);
+        try {
+            nbrManager.getUpList(target);
+            fail("object lists are not kept with flat lists");
+        }
+        catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(u, meter.getDataAsScalar(), EPSILON);
+        meter.setTarget(target);
+        assertEquals(uTarget, meter.getDataAsScalar(), EPSILON);
+    }
+
+    @Test
+    public void testRemoveMolecules() throws Exception {
+        NeighborListManager nbrManager = potentialMaster.getNeighborManager(box);
+        nbrManager.setFlatLists(true);
+        box.setNMolecules(species, 200);
+        double uFlat = meter.getDataAsScalar();
+        nbrManager.setFlatLists(false);
+        assertEquals(meter.getDataAsScalar(), uFlat, EPSILON);
+    }
+}
@@ -0,0 +1,58 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncatedForceShifted;
+import etomica.potential.PotentialCalculationEnergySum;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class PotentialMasterListBatchTest extends PotentialMasterListParallelTest {
+
+    protected double targetEnergy(IAtom target) {
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        pc.zeroSum();
+        id.setTargetAtom(target);
+        potentialMaster.calculate(box, id, pc);
+        id.setTargetAtom(null);
+        return pc.getSum();
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        AtomType leafType = box.getLeafList().getAtom(0).getType();
+        potentialMaster.addPotential(new P2SoftSphericalTruncatedForceShifted(space, new P2LennardJones(space, 0.8, 0.5), 2.5),
+                new AtomType[]{leafType, leafType});
+        potentialMaster.getNeighborManager(box).reset();
+        assertFalse(potentialMaster.isBatchPairs());
+        IAtom target = box.getLeafList().getAtom(42);
+        double u = energy();
+        double w = virial();
+        double[] f = forces();
+        double uTarget = targetEnergy(target);
+
+        potentialMaster.setBatchPairs(true);
+        assertEquals(u, energy(), EPSILON);
+        assertEquals(w, virial(), EPSILON);
+        double[] fBatch = forces();
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(f[i], fBatch[i], EPSILON);
+        }
+        assertEquals(uTarget, targetEnergy(target), EPSILON);
+
+        potentialMaster.getNeighborManager(box).setFlatLists(true);
+        assertEquals(u, energy(), EPSILON);
+        assertEquals(uTarget, targetEnergy(target), EPSILON);
+        fBatch = forces();
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(f[i], fBatch[i], EPSILON);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.nbr.list;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.potential.*;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PotentialMasterListParallelTest {
+    Space space;
+    Box box;
+    PotentialMasterList potentialMaster;
+    IteratorDirective id;
+    double EPSILON = 1e-9;
+
+    @Before
+    public void setUp() throws Exception {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        potentialMaster = new PotentialMasterList(sim, 3.0, space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(species, 500);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.03 * ((i * 7) % 5 - 2));
+        }
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5);
+        AtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new AtomType[]{leafType, leafType});
+        potentialMaster.getNeighborManager(box).reset();
+        id = new IteratorDirective();
+    }
+
+    protected double energy() {
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, id, pc);
+        return pc.getSum();
+    }
+
+    protected double virial() {
+        PotentialCalculationVirialSum pc = new PotentialCalculationVirialSum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, id, pc);
+        return pc.getSum();
+    }
+
+    protected double[] forces() {
+        IntegratorVelocityVerlet integrator = new IntegratorVelocityVerlet(potentialMaster, null, 0.001, 1, space);
+        integrator.setBox(box);
+        PotentialCalculationForcePressureSum pc = new PotentialCalculationForcePressureSum(space);
+        AtomLeafAgentManager<IntegratorVelocityVerlet.MyAgent> agentManager = integrator.getAgentManager();
+        pc.setAgentManager(agentManager);
+        pc.reset();
+        potentialMaster.calculate(box, id, pc);
+        int n = box.getLeafList().getAtomCount();
+        double[] f = new double[3 * n + 9];
+        for (int i = 0; i < n; i++) {
+            Vector fi = agentManager.getAgent(box.getLeafList().getAtom(i)).force;
+            for (int k = 0; k < 3; k++) {
+                f[3 * i + k] = fi.getX(k);
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            for (int l = 0; l < 3; l++) {
+                f[3 * n + 3 * k + l] = pc.getPressureTensor().component(k, l);
+            }
+        }
+        agentManager.dispose();
+        return f;
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        double u = energy();
+        double w = virial();
+        double[] f = forces();
+
+        potentialMaster.setParallelThreads(4);
+        assertEquals(4, potentialMaster.getParallelThreads());
+        assertEquals(u, energy(), EPSILON);
+        assertEquals(w, virial(), EPSILON);
+        double[] fParallel = forces();
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(f[i], fParallel[i], EPSILON);
+        }
+
+        // same answer (bit for bit) every time
+        assertEquals(energy(), energy(), 0);
+
+        potentialMaster.getNeighborManager(box).setFlatLists(true);
+        assertEquals(u, energy(), EPSILON);
+        fParallel = forces();
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(f[i], fParallel[i], EPSILON);
+        }
+        potentialMaster.setParallelThreads(1);
+    }
+
+    @Test
+    public void testSubclasses() throws Exception {
+        double u = energy();
+        potentialMaster.setParallelThreads(4);
+        PotentialCalculationEnergySum pc = new EnergySubclass();
+        assertTrue(PotentialCalculationPartialSum.isSupported(pc));
+        pc.zeroSum();
+        potentialMaster.calculate(box, id, pc);
+        assertEquals(u, pc.getSum(), EPSILON);
+        potentialMaster.setParallelThreads(1);
+
+        assertFalse(PotentialCalculationPartialSum.isSupported(new SerialEnergySum()));
+        assertTrue(PotentialCalculationPartialSum.isForceSum(new PotentialCalculationForcePressureSum(space) {}));
+    }
+
+    static class EnergySubclass extends PotentialCalculationEnergySum {
+        private static final long serialVersionUID = 1L;
+    }
+
+    static class SerialEnergySum extends PotentialCalculationEnergySum {
+        private static final long serialVersionUID = 1L;
+
+        public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+            super.doCalculation(atoms, potential);
+        }
+    }
+}
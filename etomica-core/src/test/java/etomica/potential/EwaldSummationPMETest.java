@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.lattice.LatticeCubicSimple;
+import etomica.models.water.ChargeAgentSourceTIP4PWater;
+import etomica.models.water.SpeciesWater4P;
+import etomica.potential.EwaldSummation.MyCharge;
+import etomica.simulation.Simulation;
+import etomica.space.BoundaryDeformablePeriodic;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class EwaldSummationPMETest {
+
+    private final Space space = Space3D.getInstance();
+    private Box box;
+    private EwaldSummation ewald;
+    private EwaldSummationPME pme;
+    private AtomLeafAgentManager<MyCharge> agentManager;
+
+    @Before
+    public void setUp() {
+        Simulation sim = new Simulation(space);
+        SpeciesWater4P species = new SpeciesWater4P(space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{15, 15, 15}));
+        box.setNMolecules(species, 64);
+        new ConfigurationLattice(new LatticeCubicSimple(space), space).initializeCoordinates(box);
+        // move the atoms around a bit so the configuration has no symmetry
+        IAtomList atoms = box.getLeafList();
+        for (int i = 0; i < atoms.getAtomCount(); i++) {
+            Vector p = atoms.getAtom(i).getPosition();
+            for (int j = 0; j < 3; j++) {
+                p.setX(j, p.getX(j) + 0.4 * (sim.getRandom().nextDouble() - 0.5));
+            }
+        }
+        agentManager = new AtomLeafAgentManager<MyCharge>(new ChargeAgentSourceTIP4PWater(), box, MyCharge.class);
+        ewald = new EwaldSummation(box, agentManager, space, 3.0, 7);
+        pme = new EwaldSummationPME(box, agentManager, space, 3.0, 7);
+    }
+
+    @Test
+    public void testEnergy() {
+        // same alpha, but enough wave vectors that the Ewald sum is converged
+        EwaldSummation ewaldConverged = new EwaldSummation(box, agentManager, space, 6.0, 14);
+        double uEwald = ewaldConverged.uFourier();
+        assertEquals(uEwald, pme.uFourier(), 2e-3 * Math.abs(uEwald));
+        EwaldSummationPME pmeFine = new EwaldSummationPME(box, agentManager, space, 3.0, 7, new int[]{64, 64, 64}, 6);
+        assertEquals(uEwald, pmeFine.uFourier(), 1e-5 * Math.abs(uEwald));
+    }
+
+    @Test
+    public void testGradient() {
+        IAtomList atoms = box.getLeafList();
+        Vector[] gEwald = ewald.gradient(atoms);
+        Vector[] gPME = pme.gradient(atoms);
+        double maxDiff = 0, maxG = 0;
+        for (int i = 0; i < atoms.getAtomCount(); i++) {
+            for (int j = 0; j < 3; j++) {
+                maxDiff = Math.max(maxDiff, Math.abs(gEwald[i].getX(j) - gPME[i].getX(j)));
+                maxG = Math.max(maxG, Math.abs(gEwald[i].getX(j)));
+            }
+        }
+        assertEquals(0, maxDiff, 2e-3 * maxG);
+
+        // the PME gradient is the derivative of the PME energy
+        double h = 1e-5;
+        for (int i = 0; i < atoms.getAtomCount(); i += 37) {
+            Vector p = atoms.getAtom(i).getPosition();
+            for (int j = 0; j < 3; j++) {
+                double x = p.getX(j);
+                p.setX(j, x + h);
+                double uPlus = pme.energy(null);
+                p.setX(j, x - h);
+                double uMinus = pme.energy(null);
+                p.setX(j, x);
+                assertEquals((uPlus - uMinus) / (2 * h), gPME[i].getX(j), 1e-6 * maxG);
+            }
+        }
+    }
+
+    @Test
+    public void testMoleculeMove() {
+        // PME computes the full energy even during a molecule move
+        double u0 = pme.energy(null);
+        IAtomList childList = box.getMoleculeList().getMolecule(3).getChildList();
+        pme.startMoleculeMove(box.getMoleculeList().getMolecule(3));
+        assertEquals(u0, pme.energy(null), 0);
+        for (int i = 0; i < childList.getAtomCount(); i++) {
+            childList.getAtom(i).getPosition().PE(0.2);
+        }
+        double u1 = pme.energy(null);
+        pme.acceptMoleculeMove();
+        assertEquals(u1, pme.energy(null), 0);
+    }
+
+    @Test
+    public void testNonRectangular() {
+        Simulation sim = new Simulation(space);
+        SpeciesWater4P species = new SpeciesWater4P(space);
+        sim.addSpecies(species);
+        Vector[] edges = new Vector[]{space.makeVector(new double[]{15, 0, 0}),
+                space.makeVector(new double[]{3, 15, 0}), space.makeVector(new double[]{0, 0, 15})};
+        Box slantBox = new Box(new BoundaryDeformablePeriodic(space, edges), space);
+        sim.addBox(slantBox);
+        slantBox.setNMolecules(species, 8);
+        AtomLeafAgentManager<MyCharge> slantAgents = new AtomLeafAgentManager<MyCharge>(new ChargeAgentSourceTIP4PWater(), slantBox, MyCharge.class);
+        try {
+            new EwaldSummationPME(slantBox, slantAgents, space, 3.0, 7);
+            fail("PME with a non-rectangular box");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals("PME requires a rectangular boundary", e.getMessage());
+        }
+    }
+}
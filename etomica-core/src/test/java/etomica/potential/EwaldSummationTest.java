@@ -0,0 +1,123 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.action.MoleculeChildAtomAction;
+import etomica.action.AtomActionTranslateBy;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.mcmove.MCMoveMolecule;
+import etomica.integrator.mcmove.MCMoveRotateMolecule3D;
+import etomica.lattice.LatticeCubicSimple;
+import etomica.models.water.ChargeAgentSourceTIP4PWater;
+import etomica.models.water.SpeciesWater4P;
+import etomica.molecule.IMolecule;
+import etomica.potential.EwaldSummation.MyCharge;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class EwaldSummationTest {
+
+    private final Space space = Space3D.getInstance();
+    private Simulation sim;
+    private SpeciesWater4P species;
+    private Box box;
+    private AtomLeafAgentManager<MyCharge> agentManager;
+    private EwaldSummation ewald;
+
+    @Before
+    public void setUp() {
+        sim = new Simulation(space);
+        species = new SpeciesWater4P(space);
+        sim.addSpecies(species);
+        box = new Box(space);
+        sim.addBox(box);
+        box.getBoundary().setBoxSize(space.makeVector(new double[]{12, 12, 12}));
+        box.setNMolecules(species, 27);
+        new ConfigurationLattice(new LatticeCubicSimple(space), space).initializeCoordinates(box);
+        agentManager = new AtomLeafAgentManager<MyCharge>(new ChargeAgentSourceTIP4PWater(), box, MyCharge.class);
+        ewald = new EwaldSummation(box, agentManager, space, 3.0, 6);
+    }
+
+    @Test
+    public void testMoleculeMove() {
+        // a second instance that always does the full sum
+        EwaldSummation ewaldFull = new EwaldSummation(box, agentManager, space, 3.0, 6);
+        AtomActionTranslateBy translator = new AtomActionTranslateBy(space);
+        MoleculeChildAtomAction moveAction = new MoleculeChildAtomAction(translator);
+        double u0 = ewaldFull.energy(null);
+
+        IMolecule molecule = box.getMoleculeList().getMolecule(5);
+        ewald.startMoleculeMove(molecule);
+        assertEquals(u0, ewald.energy(null), 1e-8 * Math.abs(u0));
+        translator.getTranslationVector().E(new double[]{0.3, -0.2, 0.5});
+        moveAction.actionPerformed(molecule);
+        double u1 = ewaldFull.energy(null);
+        assertEquals(u1, ewald.energy(null), 1e-8 * Math.abs(u1));
+        ewald.acceptMoleculeMove();
+        assertEquals(u1, ewald.energy(null), 1e-8 * Math.abs(u1));
+
+        molecule = box.getMoleculeList().getMolecule(11);
+        ewald.startMoleculeMove(molecule);
+        moveAction.actionPerformed(molecule);
+        assertEquals(ewaldFull.energy(null), ewald.energy(null), 1e-8 * Math.abs(u1));
+        translator.getTranslationVector().TE(-1);
+        moveAction.actionPerformed(molecule);
+        ewald.rejectMoleculeMove();
+
+        // move a molecule some other way; computing the full energy (as any
+        // other move would) marks the cache out of date
+        moveAction.actionPerformed(box.getMoleculeList().getMolecule(2));
+        double u2 = ewaldFull.energy(null);
+        assertEquals(u2, ewald.energy(null), 1e-8 * Math.abs(u2));
+        ewald.startMoleculeMove(molecule);
+        assertEquals(u2, ewald.energy(null), 1e-8 * Math.abs(u2));
+        ewald.rejectMoleculeMove();
+    }
+
+    @Test
+    public void testMC() {
+        final int[] nResets = new int[1];
+        ewald = new EwaldSummation(box, agentManager, space, 3.0, 6) {
+            public void resetStructureFactors() {
+                nResets[0]++;
+                super.resetStructureFactors();
+            }
+        };
+        PotentialMaster potentialMaster = new PotentialMaster();
+        potentialMaster.addPotential(new P2LennardJones(space, 3.154, 0.65), new AtomType[]{species.getOxygenType(), species.getOxygenType()});
+        potentialMaster.addPotential(ewald, new AtomType[0]);
+        IntegratorMC integrator = new IntegratorMC(sim, potentialMaster);
+        integrator.setTemperature(300);
+        MCMoveMolecule translate = new MCMoveMolecule(sim, potentialMaster, space);
+        translate.setStepSize(0.3);
+        translate.setEwaldSummation(ewald);
+        MCMoveRotateMolecule3D rotate = new MCMoveRotateMolecule3D(potentialMaster, sim.getRandom(), space);
+        rotate.setEwaldSummation(ewald);
+        integrator.getMoveManager().addMCMove(translate);
+        integrator.getMoveManager().addMCMove(rotate);
+        integrator.setBox(box);
+        integrator.reset();
+        for (int i = 0; i < 500; i++) {
+            integrator.doStep();
+        }
+        // rejected moves (with round-off in the restored positions) don't
+        // throw out the cache
+        assertEquals(1, nResets[0]);
+        MeterPotentialEnergy meterPE = new MeterPotentialEnergy(potentialMaster);
+        meterPE.setBox(box);
+        double u = meterPE.getDataAsScalar();
+        assertEquals(u, integrator.getPotentialEnergy(), 1e-7 * Math.abs(u));
+    }
+}
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class P2SoftSphericalTabulatedTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Space space = Space3D.getInstance();
+
+    @Test
+    public void testAccuracy() {
+        P2LennardJones p2 = new P2LennardJones(space);
+        double tol = 1e-7;
+        P2SoftSphericalTabulated p2Table = new P2SoftSphericalTabulated(space, p2, 0.8, 3.0, tol);
+        for (int i = 0; i < 1000; i++) {
+            double r = 0.8 + 2.2 * (i + 0.123) / 1000;
+            double r2 = r * r;
+            double u = p2.u(r2);
+            assertEquals(u, p2Table.u(r2), tol * Math.max(1, Math.abs(u)));
+            assertEquals(p2.du(r2), p2Table.du(r2), tol * Math.max(1, Math.abs(p2.du(r2))));
+            // d2u is not checked when building the table
+            assertEquals(p2.d2u(r2), p2Table.d2u(r2), 1e-3 * Math.max(1, Math.abs(p2.d2u(r2))));
+        }
+        // outside the table we get the wrapped potential
+        assertEquals(p2.u(0.5), p2Table.u(0.5), 0);
+        assertEquals(p2.u(16), p2Table.u(16), 0);
+
+        double[] r2 = new double[]{0.5, 0.7, 1.0, 2.0, 8.9, 9.0, 16.0};
+        double[] u = new double[r2.length];
+        double[] du = new double[r2.length];
+        p2Table.u(r2, u, r2.length);
+        p2Table.du(r2, du, r2.length);
+        for (int i = 0; i < r2.length; i++) {
+            assertEquals(p2Table.u(r2[i]), u[i], 0);
+            assertEquals(p2Table.du(r2[i]), du[i], 0);
+        }
+    }
+
+    /**
+     * P2ArgonAziz1993 implements only u, which is all the table needs.
+     */
+    @Test
+    public void testUOnly() {
+        P2ArgonAziz1993 p2 = new P2ArgonAziz1993(space);
+        double tol = 1e-6;
+        P2SoftSphericalTabulated p2Table = new P2SoftSphericalTabulated(space, p2, 3.0, 10.0, tol);
+        for (int i = 0; i < 1000; i++) {
+            double r = 3.0 + 7.0 * (i + 0.123) / 1000;
+            double r2 = r * r;
+            double u = p2.u(r2);
+            assertEquals(u, p2Table.u(r2), tol * Math.max(1, Math.abs(u)));
+            // r du/dr from a central difference in r
+            double dr = 1e-5 * r;
+            double du = r * (p2.u((r + dr) * (r + dr)) - p2.u((r - dr) * (r - dr))) / (2 * dr);
+            assertEquals(du, p2Table.du(r2), 1e-5 * Math.max(1, Math.abs(du)));
+        }
+    }
+
+    @Test
+    public void testCache() throws Exception {
+        File dir = folder.newFolder();
+        P2SoftSphericalTabulated p2Table = new P2SoftSphericalTabulated(space, new P2LennardJones(space), 0.8, 3.0, 1e-6, dir);
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        long modified = files[0].lastModified();
+
+        P2SoftSphericalTabulated p2Cached = new P2SoftSphericalTabulated(space, new P2LennardJones(space), 0.8, 3.0, 1e-6, dir);
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(modified, dir.listFiles()[0].lastModified());
+        assertEquals(p2Table.getNumIntervals(), p2Cached.getNumIntervals());
+        for (double r2 = 0.7; r2 < 9; r2 += 0.0123) {
+            assertEquals(p2Table.u(r2), p2Cached.u(r2), 0);
+        }
+
+        // different parameters get a different table
+        new P2SoftSphericalTabulated(space, new P2LennardJones(space, 1.1, 1.0), 0.8, 3.0, 1e-6, dir);
+        assertTrue(dir.listFiles().length == 2);
+    }
+
+    @Test
+    public void testUnwritableCache() throws Exception {
+        // the cache "directory" is a file, so the table can't be written
+        File notDir = folder.newFile();
+        P2SoftSphericalTabulated p2Table = new P2SoftSphericalTabulated(space, new P2LennardJones(space), 0.8, 3.0, 1e-6, notDir);
+        assertEquals(new P2LennardJones(space).u(1.5), p2Table.u(1.5), 1e-6);
+    }
+}
@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Potential2SoftSphericalBatchTest {
+
+    /**
+     * Checks that the batched u and du methods give exactly the same values
+     * as u(double) and du(double).
+     */
+    protected void check(Potential2SoftSpherical p) {
+        int n = 200;
+        double[] r2 = new double[n];
+        for (int i = 0; i < n; i++) {
+            double r = 0.8 + 2.5 * i / n;
+            r2[i] = r * r;
+        }
+        double[] u = new double[n];
+        double[] du = new double[n];
+        p.u(r2, u, n);
+        p.du(r2, du, n);
+        for (int i = 0; i < n; i++) {
+            assertEquals(p.u(r2[i]), u[i], 0);
+            assertEquals(p.du(r2[i]), du[i], 0);
+        }
+    }
+
+    @Test
+    public void testBatch() {
+        Space space = Space3D.getInstance();
+        P2LennardJones p2LJ = new P2LennardJones(space, 1.1, 0.9);
+        check(p2LJ);
+        check(new P2WCA(space, 1.1, 0.9));
+        check(new P2SoftSphere(space, 1.0, 1.5, 12));
+        check(new P2SoftSphere(space, 1.0, 1.5, 9));
+        check(new P2SoftSphericalTruncated(space, p2LJ, 2.5));
+        check(new P2SoftSphericalTruncatedShifted(space, p2LJ, 2.5));
+        check(new P2SoftSphericalTruncatedForceShifted(space, p2LJ, 2.5));
+        check(new P2SoftSphericalTruncated(space, new P2Morse(space), 2.5));
+    }
+}
@@ -0,0 +1,152 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+import etomica.action.BoxInflate;
+import etomica.atom.AtomLeafAgentManager;
+import etomica.atom.AtomType;
+import etomica.atom.IAtom;
+import etomica.box.Box;
+import etomica.config.ConfigurationLattice;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.LatticeCubicFcc;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PotentialMasterParallelTest {
+    Space space = Space3D.getInstance();
+    IteratorDirective id = new IteratorDirective();
+    double EPSILON = 1e-9;
+
+    protected Box makeBox(Simulation sim, PotentialMaster potentialMaster) {
+        return makeBox(sim, potentialMaster, true);
+    }
+
+    protected Box makeBox(Simulation sim, PotentialMaster potentialMaster, boolean hardSpheres) {
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        Box box = new Box(space);
+        sim.addBox(box);
+        box.setNMolecules(speciesA, 200);
+        box.setNMolecules(speciesB, 56);
+        BoxInflate inflater = new BoxInflate(box, space);
+        inflater.setTargetDensity(0.8);
+        inflater.actionPerformed();
+        new ConfigurationLattice(new LatticeCubicFcc(space), space).initializeCoordinates(box);
+        for (int i = 0; i < box.getLeafList().getAtomCount(); i++) {
+            IAtom a = box.getLeafList().getAtom(i);
+            a.getPosition().setX(i % 3, a.getPosition().getX(i % 3) + 0.03 * ((i * 7) % 5 - 2));
+        }
+        AtomType typeA = speciesA.getLeafType();
+        AtomType typeB = speciesB.getLeafType();
+        potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space), 2.5), new AtomType[]{typeA, typeA});
+        potentialMaster.addPotential(new P2SoftSphericalTruncated(space, new P2LennardJones(space, 1.1, 0.8), 2.5), new AtomType[]{typeA, typeB});
+        if (hardSpheres) {
+            // not pair-summable, so handled serially
+            potentialMaster.addPotential(new P2HardSphere(space, 0.5, true), new AtomType[]{typeB, typeB});
+        }
+        return box;
+    }
+
+    protected double energy(PotentialMaster potentialMaster, Box box) {
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, id, pc);
+        return pc.getSum();
+    }
+
+    protected double virial(PotentialMaster potentialMaster, Box box) {
+        PotentialCalculationVirialSum pc = new PotentialCalculationVirialSum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, id, pc);
+        return pc.getSum();
+    }
+
+    protected void checkParallel(PotentialMaster potentialMaster, Box box) {
+        double u = energy(potentialMaster, box);
+        double w = virial(potentialMaster, box);
+
+        potentialMaster.setParallelThreads(3);
+        assertEquals(3, potentialMaster.getParallelThreads());
+        assertEquals(u, energy(potentialMaster, box), EPSILON);
+        assertEquals(w, virial(potentialMaster, box), EPSILON);
+
+        // same answer (bit for bit) every time
+        assertEquals(energy(potentialMaster, box), energy(potentialMaster, box), 0);
+
+        // a target atom is still handled serially
+        IteratorDirective targetId = new IteratorDirective(null, box.getLeafList().getAtom(7));
+        PotentialCalculationEnergySum pc = new PotentialCalculationEnergySum();
+        pc.zeroSum();
+        potentialMaster.calculate(box, targetId, pc);
+        double uTarget = pc.getSum();
+        potentialMaster.setParallelThreads(1);
+        pc.zeroSum();
+        potentialMaster.calculate(box, targetId, pc);
+        assertEquals(pc.getSum(), uTarget, 0);
+        assertEquals(u, energy(potentialMaster, box), 0);
+    }
+
+    protected double[] forces(PotentialMaster potentialMaster, Box box) {
+        IntegratorVelocityVerlet integrator = new IntegratorVelocityVerlet(potentialMaster, null, 0.001, 1, space);
+        integrator.setBox(box);
+        PotentialCalculationForcePressureSum pc = new PotentialCalculationForcePressureSum(space);
+        AtomLeafAgentManager<IntegratorVelocityVerlet.MyAgent> agentManager = integrator.getAgentManager();
+        pc.setAgentManager(agentManager);
+        pc.reset();
+        potentialMaster.calculate(box, id, pc);
+        int n = box.getLeafList().getAtomCount();
+        double[] f = new double[3 * n + 9];
+        for (int i = 0; i < n; i++) {
+            Vector fi = agentManager.getAgent(box.getLeafList().getAtom(i)).force;
+            for (int k = 0; k < 3; k++) {
+                f[3 * i + k] = fi.getX(k);
+            }
+        }
+        for (int k = 0; k < 3; k++) {
+            for (int l = 0; l < 3; l++) {
+                f[3 * n + 3 * k + l] = pc.getPressureTensor().component(k, l);
+            }
+        }
+        agentManager.dispose();
+        return f;
+    }
+
+    @Test
+    public void testForces() throws Exception {
+        Simulation sim = new Simulation(space);
+        PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(sim);
+        Box box = makeBox(sim, potentialMaster, false);
+        double[] f = forces(potentialMaster, box);
+        potentialMaster.setParallelThreads(3);
+        double[] fParallel = forces(potentialMaster, box);
+        for (int i = 0; i < f.length; i++) {
+            assertEquals(f[i], fParallel[i], EPSILON);
+        }
+        potentialMaster.setParallelThreads(1);
+    }
+
+    @Test
+    public void testMonatomic() throws Exception {
+        Simulation sim = new Simulation(space);
+        PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(sim);
+        checkParallel(potentialMaster, makeBox(sim, potentialMaster));
+    }
+
+    @Test
+    public void testBruteForce() throws Exception {
+        Simulation sim = new Simulation(space);
+        PotentialMaster potentialMaster = new PotentialMaster();
+        checkParallel(potentialMaster, makeBox(sim, potentialMaster));
+    }
+}
@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class EventHeapTest {
+
+    /**
+     * Randomly adds and removes linkers and checks that the first element is
+     * always the one with the lowest key.
+     */
+    @Test
+    public void testFirst() {
+        RandomMersenneTwister random = new RandomMersenneTwister(new int[]{1, 2, 3});
+        EventHeap heap = new EventHeap();
+        List<EventHeap.HeapLinker> inHeap = new ArrayList<EventHeap.HeapLinker>();
+        for (int i = 0; i < 5000; i++) {
+            if (inHeap.size() > 0 && random.nextInt(3) == 0) {
+                EventHeap.HeapLinker linker = inHeap.remove(random.nextInt(inHeap.size()));
+                linker.remove();
+                assertFalse(linker.isInHeap());
+                // removing again does nothing
+                linker.remove();
+            }
+            else {
+                EventHeap.HeapLinker linker = new EventHeap.HeapLinker(i);
+                linker.sortKey = random.nextDouble();
+                heap.add(linker);
+                inHeap.add(linker);
+            }
+            if (i % 100 == 0) {
+                // shifting all keys keeps the order
+                for (EventHeap.HeapLinker linker : inHeap) {
+                    linker.sortKey -= 0.25;
+                }
+            }
+            heap.check();
+            assertEquals(inHeap.size(), heap.size());
+            EventHeap.HeapLinker min = null;
+            for (EventHeap.HeapLinker linker : inHeap) {
+                if (min == null || linker.sortKey < min.sortKey) min = linker;
+            }
+            if (min == null) {
+                assertNull(heap.firstElement());
+            }
+            else {
+                assertEquals(min.obj, heap.firstElement());
+            }
+        }
+        heap.reset();
+        assertEquals(0, heap.size());
+        assertFalse(inHeap.get(0).isInHeap());
+    }
+}
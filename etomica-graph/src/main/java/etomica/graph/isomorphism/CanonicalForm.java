@@ -0,0 +1,319 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.isomorphism;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.Node;
+import etomica.graph.model.impl.MetadataImpl;
+
+/**
+ * Computes a canonical labeling of a graph, so that two graphs are
+ * isomorphic (in the sense of Match) if and only if their canonical keys are
+ * equal.  Nodes are compatible if they have the same color (and type, if
+ * root points are special); edges likewise.
+ * <p>
+ * The labeling is found as in nauty: the node coloring is refined until it
+ * is equitable, and while any color class has more than one node, each
+ * node of the first such class is individualized in turn and the coloring
+ * refined again.  Each discrete coloring gives a labeling; the canonical one
+ * is the one whose adjacency code is smallest.  Automorphisms found along
+ * the way are used to skip branches that must give the same codes.
+ */
+public class CanonicalForm {
+
+  protected final int n;
+  // compatibility class of each node, and of the edge for each ordered pair
+  // (0 if there is no edge)
+  protected final int[] nodeClass;
+  protected final int[][] edgeClass;
+  // small integer rank of each ordered pair's edge class, used in refinement
+  protected final int[][] edgeRank;
+  protected final int nEdgeRanks;
+
+  protected int[] firstPath, firstInv, firstCode;
+  protected int[] bestInv, bestCode;
+  protected final List<int[]> automorphisms = new ArrayList<int[]>();
+
+  public CanonicalForm(Graph g) {
+
+    n = g.nodeCount();
+    nodeClass = new int[n];
+    for (byte i = 0; i < n; i++) {
+      Node node = g.getNode(i);
+      nodeClass[i] = classOf(node.getType(), node.getColor());
+    }
+    edgeClass = new int[n][n];
+    TreeSet<Integer> classes = new TreeSet<Integer>();
+    classes.add(0);
+    for (byte i = 0; i < n; i++) {
+      for (byte j = 0; j < n; j++) {
+        if (i == j || !g.hasEdge(i, j)) continue;
+        Edge edge = g.getEdge(i, j);
+        edgeClass[i][j] = classOf(edge.getType(), edge.getColor());
+        classes.add(edgeClass[i][j]);
+      }
+    }
+    List<Integer> classList = new ArrayList<Integer>(classes);
+    nEdgeRanks = classList.size();
+    edgeRank = new int[n][n];
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < n; j++) {
+        edgeRank[i][j] = classList.indexOf(edgeClass[i][j]);
+      }
+    }
+
+    if (n == 0) {
+      bestInv = new int[0];
+      bestCode = new int[0];
+      return;
+    }
+    // initial coloring by node class
+    TreeSet<Integer> nodeClasses = new TreeSet<Integer>();
+    for (int i = 0; i < n; i++) {
+      nodeClasses.add(nodeClass[i]);
+    }
+    List<Integer> nodeClassList = new ArrayList<Integer>(nodeClasses);
+    int[] color = new int[n];
+    for (int i = 0; i < n; i++) {
+      color[i] = nodeClassList.indexOf(nodeClass[i]);
+    }
+    search(color, new int[n], 0);
+  }
+
+  /**
+   * Returns a key that is equal for two graphs if and only if they are
+   * isomorphic.
+   */
+  public static String getKey(Graph g) {
+
+    return new CanonicalForm(g).getKey();
+  }
+
+  public String getKey() {
+
+    StringBuilder sb = new StringBuilder(2 * bestCode.length);
+    for (int c : bestCode) {
+      sb.append((char) (c >>> 16)).append((char) c);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the canonical label of each node: the canonical form is obtained
+   * by relabeling node i as labels[i].
+   */
+  public byte[] getLabels() {
+
+    byte[] labels = new byte[n];
+    for (int i = 0; i < n; i++) {
+      labels[bestInv[i]] = (byte) i;
+    }
+    return labels;
+  }
+
+  protected static int classOf(char type, char color) {
+
+    // nodes or edges with different types are compatible unless root
+    // points are special
+    return ((MetadataImpl.rootPointsSpecial ? type : 0) << 16) | color;
+  }
+
+  /**
+   * Refines color (in place) until it is equitable and returns the number
+   * of colors.  Colors are numbered so that the result depends only on the
+   * structure of the graph and the initial coloring.
+   */
+  protected int refine(int[] color) {
+
+    int nColors = countColors(color);
+    int k = nEdgeRanks;
+    int[][] sig = new int[n][n + 1];
+    Integer[] order = new Integer[n];
+    while (nColors < n) {
+      for (int v = 0; v < n; v++) {
+        int[] s = sig[v];
+        s[0] = color[v];
+        for (int u = 0; u < n; u++) {
+          s[u + 1] = u == v ? -1 : (color[u] * k + edgeRank[v][u]) * k + edgeRank[u][v];
+        }
+        Arrays.sort(s, 1, n + 1);
+        order[v] = v;
+      }
+      final int[][] fsig = sig;
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return compareCodes(fsig[a], fsig[b]);
+        }
+      });
+      int newColors = 0;
+      int[] newColor = new int[n];
+      for (int i = 0; i < n; i++) {
+        if (i > 0 && compareCodes(sig[order[i]], sig[order[i - 1]]) != 0) {
+          newColors++;
+        }
+        newColor[order[i]] = newColors;
+      }
+      newColors++;
+      System.arraycopy(newColor, 0, color, 0, n);
+      if (newColors == nColors) break;
+      nColors = newColors;
+    }
+    return nColors;
+  }
+
+  protected int countColors(int[] color) {
+
+    boolean[] seen = new boolean[n];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (!seen[color[i]]) {
+        seen[color[i]] = true;
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Explores the search tree below the given coloring.  Returns the depth
+   * to which the search should jump back (if an automorphism mapping the
+   * first leaf to a leaf below this node was found), or n otherwise.
+   */
+  protected int search(int[] color, int[] path, int depth) {
+
+    int nColors = refine(color);
+    if (nColors == n) {
+      return leaf(color, path, depth);
+    }
+    // target cell is the first color class with more than one node
+    int[] cellSize = new int[n];
+    for (int i = 0; i < n; i++) {
+      cellSize[color[i]]++;
+    }
+    int target = 0;
+    while (cellSize[target] < 2) {
+      target++;
+    }
+    List<Integer> tried = new ArrayList<Integer>();
+    int[] newColor = new int[n];
+    for (int v = 0; v < n; v++) {
+      if (color[v] != target || isPruned(v, tried, path, depth)) continue;
+      // individualize v: it keeps the target color and the rest of the
+      // cell (and all higher colors) moves up by one
+      for (int u = 0; u < n; u++) {
+        newColor[u] = (color[u] > target || (color[u] == target && u != v)) ? color[u] + 1 : color[u];
+      }
+      path[depth] = v;
+      int jump = search(newColor.clone(), path, depth + 1);
+      if (jump < depth) {
+        return jump;
+      }
+      tried.add(v);
+    }
+    return n;
+  }
+
+  /**
+   * Returns true if v is in the same orbit as a node already tried at this
+   * level, under the automorphisms found so far that fix the path.
+   */
+  protected boolean isPruned(int v, List<Integer> tried, int[] path, int depth) {
+
+    if (tried.isEmpty()) return false;
+    int[] parent = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+    }
+    for (int[] gamma : automorphisms) {
+      boolean fixes = true;
+      for (int i = 0; i < depth && fixes; i++) {
+        fixes = gamma[path[i]] == path[i];
+      }
+      if (!fixes) continue;
+      for (int i = 0; i < n; i++) {
+        int a = find(parent, i), b = find(parent, gamma[i]);
+        if (a != b) parent[a] = b;
+      }
+    }
+    int rv = find(parent, v);
+    for (int w : tried) {
+      if (find(parent, w) == rv) return true;
+    }
+    return false;
+  }
+
+  protected static int find(int[] parent, int i) {
+
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+  protected int leaf(int[] color, int[] path, int depth) {
+
+    int[] inv = new int[n];
+    for (int v = 0; v < n; v++) {
+      inv[color[v]] = v;
+    }
+    int[] code = new int[n + n * n];
+    for (int i = 0; i < n; i++) {
+      code[i] = nodeClass[inv[i]];
+      for (int j = 0; j < n; j++) {
+        code[n + i * n + j] = edgeClass[inv[i]][inv[j]];
+      }
+    }
+    if (firstCode == null) {
+      firstCode = bestCode = code;
+      firstInv = bestInv = inv;
+      firstPath = path.clone();
+      return n;
+    }
+    if (Arrays.equals(code, firstCode)) {
+      automorphisms.add(makeAutomorphism(firstInv, inv));
+      // every leaf below the point where we left the first path is
+      // equivalent to one below the first path
+      int d = 0;
+      while (path[d] == firstPath[d]) {
+        d++;
+      }
+      return d;
+    }
+    int c = compareCodes(code, bestCode);
+    if (c < 0) {
+      bestCode = code;
+      bestInv = inv;
+    }
+    else if (c == 0) {
+      automorphisms.add(makeAutomorphism(bestInv, inv));
+    }
+    return n;
+  }
+
+  protected int[] makeAutomorphism(int[] inv1, int[] inv2) {
+
+    int[] gamma = new int[n];
+    for (int i = 0; i < n; i++) {
+      gamma[inv1[i]] = inv2[i];
+    }
+    return gamma;
+  }
+
+  protected static int compareCodes(int[] a, int[] b) {
+
+    for (int i = 0; i < a.length; i++) {
+      if (a[i] != b[i]) return a[i] < b[i] ? -1 : 1;
+    }
+    return 0;
+  }
+}
@@ -6,25 +6,63 @@ package etomica.graph.iterators.filters;
 
 import java.util.Set;
 
+import etomica.graph.isomorphism.CanonicalForm;
 import etomica.graph.isomorphism.Match;
 import etomica.graph.model.Graph;
 import etomica.graph.model.GraphIterator;
+import etomica.graph.model.impl.GraphImpl;
 
 public class IsomorphismFilter extends GlobalFilter {
 
   public static boolean DEBUG_MODE = true;
+  // when true (and edges are not directed), graphs are grouped by their
+  // canonical form, so that each group holds only isomorphs and no
+  // pairwise matching is needed
+  public static boolean USE_CANONICAL_FORM = true;
   private static int DEBUG_FREQUENCY = 2500;
 
   private int countSeen = 0;
   private int countDiscarded = 0;
   private long debugStart = System.nanoTime();
+  private final boolean canonical;
 
   public IsomorphismFilter(GraphIterator iterator) {
     this(iterator, null);
   }
 
   public IsomorphismFilter(GraphIterator iterator, SignatureMaker signatureMaker) {
+    this(iterator, makeSignatureMaker(signatureMaker), isCanonical());
+  }
+
+  /**
+   * Creates a filter that uses the given signatures as they are.  If
+   * canonical is true, graphs with the same signature are taken to be
+   * isomorphs without checking; the signature must then include the
+   * canonical key (see makeSignatureMaker).
+   */
+  public IsomorphismFilter(GraphIterator iterator, SignatureMaker signatureMaker, boolean canonical) {
     super(iterator, signatureMaker);
+    this.canonical = canonical;
+  }
+
+  /**
+   * Returns true if isomorphs are currently found with canonical keys.
+   */
+  public static boolean isCanonical() {
+
+    return USE_CANONICAL_FORM && !GraphImpl.useReverseEdges;
+  }
+
+  /**
+   * Returns the SignatureMaker used by a filter constructed with the given
+   * one (which may be null).
+   */
+  public static SignatureMaker makeSignatureMaker(SignatureMaker signatureMaker) {
+
+    if (isCanonical()) {
+      return new CanonicalSignatureMaker(signatureMaker);
+    }
+    return signatureMaker == null ? new SignatureMaker() : signatureMaker;
   }
 
   protected boolean accept(Graph g1, Set<Graph> set) {
@@ -34,7 +72,7 @@ public class IsomorphismFilter extends GlobalFilter {
       for (Graph isoGraph : set) {
         // test for isomorphism and, if they don't match, keep the graph lower in the
         // graph order; update the graph coefficients;
-        if (Match.match(isoGraph, g1, false)) {
+        if (canonical || Match.match(isoGraph, g1, false)) {
           countDiscarded++;
           if (isoGraph.compareTo(g1) >= 0) {
             isoGraph.coefficient().add(g1.coefficient());
@@ -72,4 +110,20 @@ public class IsomorphismFilter extends GlobalFilter {
     System.out.println(String.format("unique: %d; discarded: %d; total: %d; time: %d sec (%d min)",
         countUnique, countDiscarded, countSeen, debugDuration, (debugDuration / 60)));
   }
-}
\ No newline at end of file
+
+  /**
+   * Appends the canonical key to the signature from another SignatureMaker.
+   */
+  public static class CanonicalSignatureMaker extends SignatureMaker {
+
+    private final SignatureMaker signatureMaker;
+
+    public CanonicalSignatureMaker(SignatureMaker signatureMaker) {
+      this.signatureMaker = signatureMaker == null ? new SignatureMaker() : signatureMaker;
+    }
+
+    public String getSignature(Graph g) {
+      return signatureMaker.getSignature(g) + "/K" + CanonicalForm.getKey(g);
+    }
+  }
+}
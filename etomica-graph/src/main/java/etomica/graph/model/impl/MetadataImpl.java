@@ -34,7 +34,7 @@ public class MetadataImpl implements Metadata {
     this.color = color;
   }
 
-  public static Metadata getStockComponent(char type, char color) {
+  public static synchronized Metadata getStockComponent(char type, char color) {
 
     String key = "" + type + color;
     if (!stock.containsKey(key)) {
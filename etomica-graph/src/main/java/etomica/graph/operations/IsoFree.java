@@ -4,11 +4,16 @@
 
 package etomica.graph.operations;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import etomica.graph.iterators.IteratorWrapper;
 import etomica.graph.iterators.filters.GlobalFilter;
+import etomica.graph.iterators.filters.GlobalFilter.SignatureMaker;
 import etomica.graph.iterators.filters.IsomorphismFilter;
 import etomica.graph.model.Graph;
 import etomica.graph.model.GraphIterator;
@@ -17,6 +22,9 @@ public class IsoFree implements Unary {
 
   public Set<Graph> apply(Set<Graph> argument, Parameters params) {
 
+    if (ParallelOps.isParallel(argument.size())) {
+      return applyParallel(argument, (IsoFreeParams)params);
+    }
     IteratorWrapper wrapper = new IteratorWrapper(argument.iterator(), true);
     GraphIterator isomorphs = new IsomorphismFilter(wrapper, (IsoFreeParams)params);
     Set<Graph> result = new HashSet<Graph>();
@@ -26,6 +34,56 @@ public class IsoFree implements Unary {
     return result;
   }
 
+  /**
+   * Computes the signatures of the graphs in parallel and then filters the
+   * graphs with each signature in parallel.  Graphs with a given signature
+   * are filtered in the same order as they would be serially, so the result
+   * is the same.
+   */
+  protected Set<Graph> applyParallel(Set<Graph> argument, IsoFreeParams params) {
+
+    final SignatureMaker signatureMaker = IsomorphismFilter.makeSignatureMaker(params);
+    final boolean canonical = IsomorphismFilter.isCanonical();
+    List<Graph> graphs = new ArrayList<Graph>(argument);
+    List<String> signatures = ParallelOps.map(graphs, new ParallelOps.Task<Graph, String>() {
+      public String apply(Graph g) {
+        return signatureMaker.getSignature(g);
+      }
+    });
+    Map<String, List<Graph>> bucketMap = new LinkedHashMap<String, List<Graph>>();
+    for (int i = 0; i < graphs.size(); i++) {
+      List<Graph> bucket = bucketMap.get(signatures.get(i));
+      if (bucket == null) {
+        bucket = new ArrayList<Graph>();
+        bucketMap.put(signatures.get(i), bucket);
+      }
+      bucket.add(graphs.get(i));
+    }
+    // every graph in a bucket has the same signature
+    final SignatureMaker bucketSignature = new SignatureMaker() {
+      public String getSignature(Graph g) {
+        return "";
+      }
+    };
+    List<Set<Graph>> bucketResults = ParallelOps.map(new ArrayList<List<Graph>>(bucketMap.values()),
+        new ParallelOps.Task<List<Graph>, Set<Graph>>() {
+      public Set<Graph> apply(List<Graph> bucket) {
+        Set<Graph> bucketResult = new HashSet<Graph>();
+        IteratorWrapper wrapper = new IteratorWrapper(bucket.iterator(), true);
+        GraphIterator isomorphs = new IsomorphismFilter(wrapper, bucketSignature, canonical);
+        while (isomorphs.hasNext()) {
+          bucketResult.add(isomorphs.next());
+        }
+        return bucketResult;
+      }
+    });
+    Set<Graph> result = new HashSet<Graph>();
+    for (Set<Graph> bucketResult : bucketResults) {
+      result.addAll(bucketResult);
+    }
+    return result;
+  }
+
   public static class IsoFreeParams extends GlobalFilter.SignatureMaker implements Parameters {
   }
-}
\ No newline at end of file
+}
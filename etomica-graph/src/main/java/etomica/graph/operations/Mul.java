@@ -17,21 +17,44 @@ import static etomica.graph.model.Metadata.*;
 
 public class Mul implements Binary {
 
-  public Set<Graph> apply(Set<Graph> left, Set<Graph> right, Parameters params) {
+  public Set<Graph> apply(Set<Graph> left, final Set<Graph> right, Parameters params) {
     assert(params instanceof MulParameters);
+    final MulParameters mp = (MulParameters)params;
     Unary isoFree = new IsoFree();
     Set<Graph> result = new HashSet<Graph>();
-    for (Graph lg : left) {
-      for (Graph rg : right) {
-        Graph graph = apply(lg, rg, (MulParameters)params);
-        if (graph != null) {
-          result.add(graph);
+    if (ParallelOps.isParallel(left.size())) {
+      // each graph from left is multiplied by right in parallel
+      List<Set<Graph>> products = ParallelOps.map(new ArrayList<Graph>(left), new ParallelOps.Task<Graph, Set<Graph>>() {
+        public Set<Graph> apply(Graph lg) {
+          Set<Graph> product = new HashSet<Graph>();
+          Mul.this.apply(lg, right, mp, product);
+          return product;
         }
+      });
+      for (Set<Graph> product : products) {
+        result.addAll(product);
+      }
+    }
+    else {
+      for (Graph lg : left) {
+        apply(lg, right, mp, result);
       }
     }
     return isoFree.apply(result, null);
   }
 
+  /**
+   * Adds the products of lg with the graphs in right to result.
+   */
+  protected void apply(Graph lg, Set<Graph> right, MulParameters params, Set<Graph> result) {
+    for (Graph rg : right) {
+      Graph graph = apply(lg, rg, params);
+      if (graph != null) {
+        result.add(graph);
+      }
+    }
+  }
+
   public Graph apply(Graph left, Graph right, MulParameters params) {
 
     int numNodes = 0;
@@ -6,6 +6,7 @@ package etomica.graph.operations;
 
 import static etomica.graph.model.Metadata.TYPE_NODE_ROOT;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -61,24 +62,46 @@ public class MulFlexible implements Binary {
     return apply(argument, sets2, params);
   }
 
-  public Set<Graph> apply(Set<Graph> argument, Set<Graph>[] sets2, Parameters params) {
+  public Set<Graph> apply(Set<Graph> argument, final Set<Graph>[] sets2, Parameters params) {
     assert (params instanceof MulFlexibleParameters);
-    Set<Graph> result = new HashSet<Graph>();
-    int maxNField = ((MulFlexibleParameters)params).nFieldPoints;
-    for (Graph g : argument) {
-      int numField1 = NumFieldNodes.value(g);
-      // look only at graphs from g2 that will result in a product with less
-      // than the max # of field nodes
-      for (int i=0; i<=maxNField-numField1; i++) {
-        for (Graph g2 : sets2[i]) {
-          Graph newGraph = apply(g, g2, (MulFlexibleParameters)params);
-          result.add(newGraph);
+    final MulFlexibleParameters mfp = (MulFlexibleParameters)params;
+    if (ParallelOps.isParallel(argument.size())) {
+      // each graph from argument is multiplied by sets2 in parallel
+      List<Set<Graph>> products = ParallelOps.map(new ArrayList<Graph>(argument), new ParallelOps.Task<Graph, Set<Graph>>() {
+        public Set<Graph> apply(Graph g) {
+          Set<Graph> product = new HashSet<Graph>();
+          MulFlexible.this.apply(g, sets2, mfp, product);
+          return product;
         }
+      });
+      Set<Graph> result = new HashSet<Graph>();
+      for (Set<Graph> product : products) {
+        result.addAll(product);
       }
+      return result;
+    }
+    Set<Graph> result = new HashSet<Graph>();
+    for (Graph g : argument) {
+      apply(g, sets2, mfp, result);
     }
     return result;
   }
 
+  /**
+   * Adds the products of g with the graphs in sets2 to result.
+   */
+  protected void apply(Graph g, Set<Graph>[] sets2, MulFlexibleParameters params, Set<Graph> result) {
+    int numField1 = NumFieldNodes.value(g);
+    // look only at graphs from g2 that will result in a product with less
+    // than the max # of field nodes
+    for (int i=0; i<=params.nFieldPoints-numField1; i++) {
+      for (Graph g2 : sets2[i]) {
+        Graph newGraph = apply(g, g2, params);
+        result.add(newGraph);
+      }
+    }
+  }
+
   public Graph apply(Graph g1, Graph g2, MulFlexibleParameters params) {
 
     Graph result;
@@ -0,0 +1,135 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.operations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Holds the threads used by the graph operations.  By default (1 thread)
+ * everything is done serially.  With more threads, Mul, MulFlexible and
+ * IsoFree divide their work among the threads, and so do the operations
+ * built from them (Pow, Exp, Decorate, ...).  The results are the same as
+ * with a single thread.
+ * <p>
+ * Graph operations called from several threads at once must not change
+ * the static settings (GraphImpl.useReverseEdges,
+ * MetadataImpl.rootPointsSpecial, ...) while they run.
+ */
+public class ParallelOps {
+
+  // sets with fewer graphs than this are handled serially
+  public static int MIN_PARALLEL_SIZE = 16;
+
+  private static int numThreads = 1;
+  private static ForkJoinPool pool = null;
+
+  /**
+   * Sets the number of threads used by graph operations.
+   */
+  public static synchronized void setNumThreads(int newNumThreads) {
+
+    if (newNumThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be positive");
+    }
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    numThreads = newNumThreads;
+    if (numThreads > 1) {
+      pool = new ForkJoinPool(numThreads);
+    }
+  }
+
+  public static int getNumThreads() {
+
+    return numThreads;
+  }
+
+  /**
+   * Returns true if a set of the given size should be handled in parallel.
+   */
+  public static boolean isParallel(int size) {
+
+    return numThreads > 1 && size >= MIN_PARALLEL_SIZE;
+  }
+
+  /**
+   * Something to compute for each item of a list.
+   */
+  public interface Task<S, T> {
+
+    public T apply(S item);
+  }
+
+  /**
+   * Applies task to every item and returns the results in the same order
+   * as the items.  The items are divided into chunks, several per thread,
+   * so that chunks with more work are balanced by others.
+   */
+  public static <S, T> List<T> map(final List<S> items, final Task<S, T> task) {
+
+    final Object[] results = new Object[items.size()];
+    ForkJoinPool myPool;
+    synchronized (ParallelOps.class) {
+      myPool = pool;
+    }
+    if (myPool == null || items.size() < 2) {
+      for (int i = 0; i < results.length; i++) {
+        results[i] = task.apply(items.get(i));
+      }
+    }
+    else {
+      int nChunks = Math.min(items.size(), 4 * numThreads);
+      List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(nChunks);
+      for (int c = 0; c < nChunks; c++) {
+        final int start = (int) ((long) items.size() * c / nChunks);
+        final int end = (int) ((long) items.size() * (c + 1) / nChunks);
+        tasks.add(new Callable<Object>() {
+          public Object call() {
+            for (int i = start; i < end; i++) {
+              results[i] = task.apply(items.get(i));
+            }
+            return null;
+          }
+        });
+      }
+      invokeAll(myPool, tasks);
+    }
+    @SuppressWarnings("unchecked")
+    List<T> list = (List<T>) Arrays.asList(results);
+    return list;
+  }
+
+  protected static void invokeAll(ForkJoinPool myPool, List<Callable<Object>> tasks) {
+
+    List<Future<Object>> futures = myPool.invokeAll(tasks);
+    try {
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+}
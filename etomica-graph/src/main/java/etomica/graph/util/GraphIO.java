@@ -0,0 +1,106 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+import etomica.graph.model.Coefficient;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphFactory;
+import etomica.graph.model.Node;
+
+/**
+ * Writes graphs in a compact binary form and reads them back.  A graph is
+ * stored as its nodes (type and color), coefficient, factors and edges (id,
+ * type and color).  Coefficients that have overflowed to a double can't be
+ * written.
+ */
+public class GraphIO {
+
+  public static void writeGraph(DataOutput out, Graph g) throws IOException {
+
+    out.writeByte(g.nodeCount());
+    for (Node node : g.nodes()) {
+      out.writeChar(node.getType());
+      out.writeChar(node.getColor());
+    }
+    Coefficient c = g.coefficient();
+    if (c.hasOverflow()) {
+      throw new IOException("can't write a graph whose coefficient has overflowed");
+    }
+    out.writeInt(c.getNumerator());
+    out.writeInt(c.getDenominator());
+    int[] factors = g.factors();
+    out.writeByte(factors.length);
+    for (int i = 0; i < factors.length; i++) {
+      out.writeInt(factors[i]);
+    }
+    out.writeByte(g.edgeCount());
+    for (Edge edge : g.edges()) {
+      out.writeByte(edge.getId());
+      out.writeChar(edge.getType());
+      out.writeChar(edge.getColor());
+    }
+  }
+
+  public static Graph readGraph(DataInput in) throws IOException {
+
+    byte nodeCount = in.readByte();
+    Node[] nodes = new Node[nodeCount];
+    for (byte i = 0; i < nodeCount; i++) {
+      char type = in.readChar();
+      char color = in.readChar();
+      nodes[i] = GraphFactory.createNode(i, color, type);
+      if (nodes[i] == null) {
+        throw new IOException("unknown node type " + type);
+      }
+    }
+    Graph g = GraphFactory.createGraph(nodes);
+    g.coefficient().setNumerator(in.readInt());
+    g.coefficient().setDenominator(in.readInt());
+    int[] factors = new int[in.readByte()];
+    for (int i = 0; i < factors.length; i++) {
+      factors[i] = in.readInt();
+    }
+    g.setNumFactors(factors.length);
+    g.addFactors(factors);
+    byte edgeCount = in.readByte();
+    for (int i = 0; i < edgeCount; i++) {
+      byte edgeId = in.readByte();
+      g.putEdge(edgeId);
+      Edge edge = g.getEdge(edgeId);
+      edge.setType(in.readChar());
+      edge.setColor(in.readChar());
+    }
+    g.createReverseEdges();
+    return g;
+  }
+
+  /**
+   * Writes the number of graphs followed by each graph, in iteration order.
+   */
+  public static void writeGraphs(DataOutput out, Collection<Graph> graphs) throws IOException {
+
+    out.writeInt(graphs.size());
+    for (Graph g : graphs) {
+      writeGraph(out, g);
+    }
+  }
+
+  /**
+   * Reads graphs written by writeGraphs and adds them to graphs.
+   */
+  public static void readGraphs(DataInput in, Collection<Graph> graphs) throws IOException {
+
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      graphs.add(readGraph(in));
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import etomica.graph.isomorphism.CanonicalForm;
+import etomica.graph.isomorphism.Match;
+import etomica.graph.iterators.DefaultIterator;
+import etomica.graph.model.Edge;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.model.Node;
+import etomica.graph.operations.Relabel;
+import etomica.graph.operations.RelabelParameters;
+import junit.framework.TestCase;
+
+public class CanonicalFormTest extends TestCase {
+
+  private Random random = new Random(12345);
+
+  protected Graph randomColors(Graph g) {
+
+    g = g.copy();
+    for (Node node : g.nodes()) {
+      node.setColor(random.nextInt(3) == 0 ? 'B' : 'A');
+    }
+    for (Edge edge : g.edges()) {
+      edge.setColor(random.nextInt(3) == 0 ? 'f' : 'e');
+    }
+    return g;
+  }
+
+  protected Graph randomRelabel(Graph g) {
+
+    byte n = g.nodeCount();
+    byte[] p = new byte[n];
+    for (byte i = 0; i < n; i++) {
+      p[i] = i;
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      byte t = p[i];
+      p[i] = p[j];
+      p[j] = t;
+    }
+    return new Relabel().apply(g, new RelabelParameters(p));
+  }
+
+  /**
+   * Checks that keys are equal exactly when Match finds the graphs
+   * isomorphic, for plain and colored graphs.
+   */
+  public void testMatch() {
+
+    for (byte nodeCount = 3; nodeCount <= 5; nodeCount++) {
+      List<Graph> graphs = new ArrayList<Graph>();
+      GraphIterator iterator = new DefaultIterator(nodeCount);
+      while (iterator.hasNext()) {
+        Graph g = iterator.next();
+        graphs.add(g);
+        if (random.nextInt(4) == 0) {
+          graphs.add(randomColors(g));
+        }
+      }
+      List<String> keys = new ArrayList<String>();
+      for (Graph g : graphs) {
+        String key = CanonicalForm.getKey(g);
+        keys.add(key);
+        assertEquals(key, CanonicalForm.getKey(randomRelabel(g)));
+      }
+      for (int i = 0; i < graphs.size(); i += 3) {
+        for (int j = i + 1; j < graphs.size(); j++) {
+          boolean match = Match.match(graphs.get(i), graphs.get(j), false);
+          assertEquals(match, keys.get(i).equals(keys.get(j)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks that relabeling a graph with its canonical labels gives the same
+   * graph for all isomorphs.
+   */
+  public void testLabels() {
+
+    GraphIterator iterator = new DefaultIterator((byte) 6);
+    while (iterator.hasNext()) {
+      Graph g = iterator.next();
+      if (random.nextInt(50) != 0) continue;
+      g = randomColors(g);
+      Graph canonical = new Relabel().apply(g, new RelabelParameters(new CanonicalForm(g).getLabels()));
+      Graph g2 = randomRelabel(g);
+      Graph canonical2 = new Relabel().apply(g2, new RelabelParameters(new CanonicalForm(g2).getLabels()));
+      assertEquals(canonical.toString(), canonical2.toString());
+    }
+  }
+}
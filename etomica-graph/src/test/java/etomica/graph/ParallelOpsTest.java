@@ -0,0 +1,78 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import etomica.graph.isomorphism.Match;
+import etomica.graph.iterators.DefaultIterator;
+import etomica.graph.iterators.filters.IsomorphismFilter;
+import etomica.graph.model.Graph;
+import etomica.graph.model.GraphIterator;
+import etomica.graph.operations.IsoFree;
+import etomica.graph.operations.Mul;
+import etomica.graph.operations.Mul.MulParameters;
+import etomica.graph.operations.MulFlexible;
+import etomica.graph.operations.MulFlexible.MulFlexibleParameters;
+import etomica.graph.operations.ParallelOps;
+import junit.framework.TestCase;
+
+public class ParallelOpsTest extends TestCase {
+
+  protected List<String> strings(Set<Graph> graphs) {
+
+    List<String> result = new ArrayList<String>();
+    for (Graph g : graphs) {
+      result.add(g.toString());
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  protected Set<Graph> allGraphs(byte nodeCount) {
+
+    Set<Graph> graphs = new HashSet<Graph>();
+    GraphIterator iterator = new DefaultIterator(nodeCount);
+    while (iterator.hasNext()) {
+      graphs.add(iterator.next());
+    }
+    return graphs;
+  }
+
+  /**
+   * Checks that IsoFree, Mul and MulFlexible give the same graphs with several
+   * threads as with one.
+   */
+  public void testSameResult() {
+
+    boolean debugMode = IsomorphismFilter.DEBUG_MODE;
+    IsomorphismFilter.DEBUG_MODE = false;
+    IsoFree isoFree = new IsoFree();
+    Mul mul = new Mul();
+    MulParameters mp = new MulParameters((byte) 0);
+    MulFlexible mulFlex = new MulFlexible();
+    MulFlexibleParameters mfp = MulFlexibleParameters.makeParameters(new char[0], (byte) 7);
+    try {
+      Set<Graph> set1 = allGraphs((byte) 4);
+      Set<Graph> set2 = allGraphs((byte) 4);
+      List<String> serialMul = strings(mul.apply(set1, set2, mp));
+      List<String> serialProduct = strings(mulFlex.apply(set1, set2, mfp));
+      List<String> serial = strings(isoFree.apply(allGraphs((byte) 5), null));
+      ParallelOps.setNumThreads(3);
+      assertEquals(serialMul, strings(mul.apply(set1, set2, mp)));
+      assertEquals(serialProduct, strings(mulFlex.apply(set1, set2, mfp)));
+      assertEquals(serial, strings(isoFree.apply(allGraphs((byte) 5), null)));
+      assertEquals(serial.size(), Match.ISMORPHS_COUNT[4]);
+    }
+    finally {
+      ParallelOps.setNumThreads(1);
+      IsomorphismFilter.DEBUG_MODE = debugMode;
+    }
+  }
+}